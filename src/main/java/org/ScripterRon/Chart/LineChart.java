@@ -15,6 +15,7 @@
  */
 package org.ScripterRon.Chart;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -45,6 +46,10 @@ import javax.swing.event.*;
  * draw the lines connecting the values.
  *
  * <p>The setTitle() method should be called if a chart title is desired.
+ *
+ * <p>Additional data series can be added using the addDataSeries() method.  Each
+ * additional series is drawn using its own plot color and the chart coordinates are
+ * scaled to include all of the series.
  */
 public class LineChart extends JComponent {
 
@@ -72,6 +77,12 @@ public class LineChart extends JComponent {
     /** Chart title */
     private String chartTitle;
 
+    /** Additional data series */
+    private List<List<LineChartElement>> seriesList = new ArrayList<>();
+
+    /** Plot colors for the additional data series */
+    private List<Color> seriesColors = new ArrayList<>();
+
     /** Minimum coordinate values */
     private LineChartElement minPoint = new LineChartElement();
 
@@ -212,6 +223,32 @@ public class LineChart extends JComponent {
         return getForeground();
     }
 
+    /**
+     * Add a data series to the chart
+     *
+     * @param       dataPoints      List of data points
+     * @param       color           The plot color for the series
+     */
+    public void addDataSeries(List<LineChartElement> dataPoints, Color color) {
+        if (dataPoints == null)
+            throw new NullPointerException("No data point list provided");
+
+        if (color == null)
+            throw new NullPointerException("No plot color supplied");
+
+        seriesList.add(dataPoints);
+        seriesColors.add(color);
+    }
+
+    /**
+     * Get the additional data series
+     *
+     * @return                      List of data series
+     */
+    public List<List<LineChartElement>> getDataSeries() {
+        return seriesList;
+    }
+
     /**
      * Indicate that the chart data has been modified.  This will cause the
      * chart to be redrawn.
@@ -353,20 +390,25 @@ public class LineChart extends JComponent {
         // Get the minimum and maximum coordinate values
         //
         boolean firstPoint = true;
-        for (LineChartElement dataPoint : dataPoints) {
-            x1 = dataPoint.getX();
-            y1 = dataPoint.getY();
-            if (firstPoint) {
-                minPoint.setX(x1);
-                minPoint.setY(y1);
-                maxPoint.setX(x1);
-                maxPoint.setY(y1);
-                firstPoint = false;
-            } else {
-                minPoint.setX(Math.min(minPoint.getX(), x1));
-                minPoint.setY(Math.min(minPoint.getY(), y1));
-                maxPoint.setX(Math.max(maxPoint.getX(), x1));
-                maxPoint.setY(Math.max(maxPoint.getY(), y1));
+        List<List<LineChartElement>> allSeries = new ArrayList<>(seriesList.size()+1);
+        allSeries.add(dataPoints);
+        allSeries.addAll(seriesList);
+        for (List<LineChartElement> series : allSeries) {
+            for (LineChartElement dataPoint : series) {
+                x1 = dataPoint.getX();
+                y1 = dataPoint.getY();
+                if (firstPoint) {
+                    minPoint.setX(x1);
+                    minPoint.setY(y1);
+                    maxPoint.setX(x1);
+                    maxPoint.setY(y1);
+                    firstPoint = false;
+                } else {
+                    minPoint.setX(Math.min(minPoint.getX(), x1));
+                    minPoint.setY(Math.min(minPoint.getY(), y1));
+                    maxPoint.setX(Math.max(maxPoint.getX(), x1));
+                    maxPoint.setY(Math.max(maxPoint.getY(), y1));
+                }
             }
         }
 
@@ -638,24 +680,49 @@ public class LineChart extends JComponent {
 
             double xAdjust = (double)gridWidth/(maxPoint.getX()-minPoint.getX());
             double yAdjust = (double)gridHeight/(maxPoint.getY()-minPoint.getY());
-            LineChartElement prevPoint = null;
 
             //
             // Plot the data points
             //
-            for (LineChartElement dataPoint : dataPoints) {
-                x2 = xGrid+(dataPoint.getX()-minPoint.getX())*xAdjust;
-                y2 = yGrid+gridHeight-(dataPoint.getY()-minPoint.getY())*yAdjust;
-
-                if (prevPoint != null) {
-                    x1 = xGrid+(prevPoint.getX()-minPoint.getX())*xAdjust;
-                    y1 = yGrid+gridHeight-(prevPoint.getY()-minPoint.getY())*yAdjust;
-                    g.draw(new Line2D.Double(x1, y1, x2, y2));
-                }
+            plotSeries(g, dataPoints, xGrid, yGrid, gridHeight, xAdjust, yAdjust);
+
+            //
+            // Plot the additional data series
+            //
+            for (i=0; i<seriesList.size(); i++) {
+                g.setPaint(seriesColors.get(i));
+                plotSeries(g, seriesList.get(i), xGrid, yGrid, gridHeight, xAdjust, yAdjust);
+            }
+        }
+    }
 
-                g.fillOval((int)x2-2, (int)y2-2, 4, 4);
-                prevPoint = dataPoint;
+    /**
+     * Plot a data series using the current paint
+     *
+     * @param       g               Graphics context
+     * @param       series          Data points
+     * @param       xGrid           Grid x-origin
+     * @param       yGrid           Grid y-origin
+     * @param       gridHeight      Grid height
+     * @param       xAdjust         X-coordinate scale
+     * @param       yAdjust         Y-coordinate scale
+     */
+    private void plotSeries(Graphics2D g, List<LineChartElement> series, int xGrid, int yGrid,
+                                        int gridHeight, double xAdjust, double yAdjust) {
+        double x1, x2, y1, y2;
+        LineChartElement prevPoint = null;
+        for (LineChartElement dataPoint : series) {
+            x2 = xGrid+(dataPoint.getX()-minPoint.getX())*xAdjust;
+            y2 = yGrid+gridHeight-(dataPoint.getY()-minPoint.getY())*yAdjust;
+
+            if (prevPoint != null) {
+                x1 = xGrid+(prevPoint.getX()-minPoint.getX())*xAdjust;
+                y1 = yGrid+gridHeight-(prevPoint.getY()-minPoint.getY())*yAdjust;
+                g.draw(new Line2D.Double(x1, y1, x2, y2));
             }
+
+            g.fillOval((int)x2-2, (int)y2-2, 4, 4);
+            prevPoint = dataPoint;
         }
     }
 }
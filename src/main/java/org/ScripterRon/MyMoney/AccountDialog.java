@@ -45,7 +45,7 @@ public final class AccountDialog extends JDialog implements ActionListener {
         //
         // Create the list model
         //
-        listModel = new DBElementListModel(AccountRecord.accounts);
+        listModel = new DBElementListModel(AccountRecord.getAccounts());
 
         //
         // Create the account list
@@ -168,7 +168,8 @@ public final class AccountDialog extends JDialog implements ActionListener {
                                         "Error", JOptionPane.ERROR_MESSAGE);
                         } else {
                             account.setLinkedAccount(null);
-                            AccountRecord.accounts.remove(account);
+                            AccountRecord.getAccounts().remove(account);
+                            LedgerSnapshot.ledgerModified();
                             listModel.removeDBElement(account);
                             Main.dataModified = true;
                         }
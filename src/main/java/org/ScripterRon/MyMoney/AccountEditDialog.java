@@ -307,7 +307,7 @@ public final class AccountEditDialog extends JDialog implements ActionListener {
             return false;
         }
         
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (name.equals(a.getName()) && a != account) {
                 JOptionPane.showMessageDialog(this, "Account name '"+name+"' is already in use",
                                               "Error", JOptionPane.ERROR_MESSAGE);
@@ -362,22 +362,24 @@ public final class AccountEditDialog extends JDialog implements ActionListener {
         if (account == null) {
             newAccount = true;
             account = new AccountRecord(name, type);
-            if (AccountRecord.accounts.contains(account)) {
+            if (AccountRecord.getAccounts().contains(account)) {
                 JOptionPane.showMessageDialog(this, "Account '"+name+"' already exists",
                                               "Error", JOptionPane.ERROR_MESSAGE);
                 return false;
             }
             
-            AccountRecord.accounts.add(account);
+            AccountRecord.getAccounts().add(account);
         } else {
             newAccount = false;
             if (!account.getName().equals(name)) {
-                AccountRecord.accounts.remove(account);
+                AccountRecord.getAccounts().remove(account);
                 account.setName(name);
-                AccountRecord.accounts.add(account);
+                AccountRecord.getAccounts().add(account);
             }
         }
 
+        LedgerSnapshot.ledgerModified();
+
         if (type == AccountRecord.INVESTMENT)
             account.setLinkedAccount(linkedAccountModel.getAccountAt(linkedAccount.getSelectedIndex()));
 
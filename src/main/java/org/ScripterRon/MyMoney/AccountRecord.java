@@ -30,9 +30,9 @@ import java.util.*;
  * <li>LOAN
  * </ul>
  * <p>
- * All account records are contained in the <code>accounts</code> sorted set.  The
- * entries in the set are sorted by the account name.  Two account records are
- * equal if they have the same account name.
+ * All account records are contained in the <code>getAccounts()</code> sorted set
+ * for the current database context.  The entries in the set are sorted by the
+ * account name.  Two account records are equal if they have the same account name.
  * <p>
  * The account record is encoded as follows:
  * <pre>
@@ -70,15 +70,6 @@ public final class AccountRecord extends DBElement {
     /** Account type strings */
     private static final String[] accountTypeStrings = {"Bank", "Investment", "Asset", "Loan", "Credit"};
 
-    /** The set of defined accounts */
-    public static SortedSet<AccountRecord> accounts;
-    
-    /** The account map */
-    private static Map<Integer, AccountRecord> map;
-
-    /** The next AccountRecord identifier */
-    private static int nextRecordID = 1;
-
     /** The encoded AccountRecord ASN.1 tag identifier */
     private static final byte tagID = (byte)(Asn1Stream.ASN1_APPLICATION+4);
 
@@ -116,7 +107,8 @@ public final class AccountRecord extends DBElement {
         //
         // Create the new account
         //
-        recordID = nextRecordID++;
+        DatabaseContext context = DatabaseContext.getCurrent();
+        recordID = context.nextAccountID++;
         elementName = name;
         setType(type);
         accountNumber = new String();
@@ -124,10 +116,7 @@ public final class AccountRecord extends DBElement {
         //
         // Add the account to the map
         //
-        if (map == null)
-            map = new HashMap<>();
-        
-        map.put(new Integer(recordID), this);
+        context.accountMap.put(new Integer(recordID), this);
     }
 
     /**
@@ -201,16 +190,14 @@ public final class AccountRecord extends DBElement {
             //
             //  Update the next record identifier
             //
-            if (recordID >= nextRecordID)
-                nextRecordID = recordID+1;
+            DatabaseContext context = DatabaseContext.getCurrent();
+            if (recordID >= context.nextAccountID)
+                context.nextAccountID = recordID+1;
         
             //
             // Add the new account to the map
             //
-            if (map == null)
-                map = new HashMap<>();
-        
-            map.put(new Integer(recordID), this);
+            context.accountMap.put(new Integer(recordID), this);
         } catch (Asn1Exception exc) {
             throw new DBException("ASN.1 decode error", exc);
         }
@@ -279,6 +266,15 @@ public final class AccountRecord extends DBElement {
         return stream.getData();
     }
     
+    /**
+     * Get the set of defined accounts for the current database context
+     *
+     * @return                      Set of accounts sorted by name
+     */
+    public static SortedSet<AccountRecord> getAccounts() {
+        return DatabaseContext.getCurrent().accounts;
+    }
+
     /**
      * Get the account associated with the supplied record identifier.
      *
@@ -286,11 +282,7 @@ public final class AccountRecord extends DBElement {
      * @return                      The account or NULL
      */
     public static AccountRecord getAccount(int recordID) {
-        AccountRecord account = null;
-        if (map != null)
-            account = map.get(new Integer(recordID));
-        
-        return account;
+        return DatabaseContext.getCurrent().accountMap.get(new Integer(recordID));
     }
 
     /**
@@ -15,12 +15,15 @@
  */
 package org.ScripterRon.MyMoney;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Set;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -29,9 +32,22 @@ import javax.swing.table.AbstractTableModel;
  * consists of transactions and associated account balance.  To create a
  * concrete TableModel as a subclass of AccountTableModel, the subclass needs
  * to provide just the getValueAt() method.
+ * <p>
+ * The account transactions are obtained from the transaction index and the running
+ * balance for each row is kept in a prefix-balance array, so opening a register does
+ * not create a table row object for each transaction.  The AccountTransaction rows
+ * are created a window at a time as the table asks for them.  The most recent window
+ * is created when the model is built since the register is normally positioned to
+ * the last row.
+ * <p>
+ * When the older transaction partitions are not loaded, the running balance starts
+ * with the account balance from the checkpoint preceding the first loaded partition.
  */
 public abstract class AccountTableModel extends AbstractTableModel {
 
+    /** Number of rows in a window */
+    private static final int WINDOW_SIZE = 256;
+
     /** Account */
     protected AccountRecord account;
 
@@ -41,11 +57,20 @@ public abstract class AccountTableModel extends AbstractTableModel {
     /** Column classes */
     protected Class<?>[] columnClasses;
 
-    /** List data */
+    /** List data (rows are created when they are first referenced) */
     protected List<AccountTransaction> listData;
-    
-    /** Transaction names */
-    protected SortedSet<String> transactionNames;
+
+    /** Account transactions sorted by date */
+    private final List<TransactionRecord> rowTransactions;
+
+    /** Table rows that have been created (null if the row has not been referenced) */
+    private final List<AccountTransaction> rows;
+
+    /** Running balance after each row */
+    private double[] balances;
+
+    /** Account balance before the first row */
+    private final double openingBalance;
 
     /**
      * Create the account table model
@@ -69,47 +94,34 @@ public abstract class AccountTableModel extends AbstractTableModel {
         this.columnClasses = columnClasses;
 
         //
-        // Create the transaction lists
+        // Get the account transactions from the transaction index
         //
-        int listSize = TransactionRecord.transactions.size();
-        listData = new ArrayList<AccountTransaction>(listSize);
-        transactionNames = new TreeSet<>();
-        double balance = 0.00;
+        rowTransactions = new ArrayList<>(TransactionIndex.getIndex().getTransactions(account));
+        int listSize = rowTransactions.size();
+        rows = new ArrayList<>(Collections.<AccountTransaction>nCopies(listSize, null));
+        listData = new RowList();
 
         //
-        // Add the transactions for the current account to the list and
-        // update the running balance.  We will also update the transaction
-        // name list.
+        // Get the opening balance for the loaded transaction partitions
         //
-        for (TransactionRecord t : TransactionRecord.transactions) {
-            boolean addTransaction = false;
-            String name = t.getName();
-            if (t.getAccount() == account) {
-                balance += t.getAmount();
-                addTransaction = true;
-            } else if (t.getTransferAccount() == account) {
-                balance -= t.getAmount();
-                addTransaction = true;
-            } else {
-                List<TransactionSplit> splits = t.getSplits();
-                if (splits != null) {
-                    for (TransactionSplit split : splits) {
-                        if (split.getAccount() == account) {
-                            balance -= split.getAmount();
-                            name = split.getDescription();
-                            addTransaction = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            
-            if (addTransaction) {
-                listData.add(new AccountTransaction(t, balance));
-                if (name != null && name.length() > 0)
-                    transactionNames.add(name);
-            }
+        CheckpointRecord checkpoint = TransactionPartitions.getOpeningCheckpoint();
+        openingBalance = (checkpoint != null ? checkpoint.getBalance(account) : 0.00);
+
+        //
+        // Build the prefix-balance array
+        //
+        balances = new double[Math.max(listSize, 16)];
+        double balance = openingBalance;
+        for (int i=0; i<listSize; i++) {
+            balance += getAccountAmount(rowTransactions.get(i));
+            balances[i] = balance;
         }
+
+        //
+        // Create the rows for the most recent window
+        //
+        if (listSize > 0)
+            createWindow(listSize-1);
     }
 
     /**
@@ -147,7 +159,7 @@ public abstract class AccountTableModel extends AbstractTableModel {
      * @return                  The number of rows
      */
     public int getRowCount() {
-        return listData.size();
+        return rowTransactions.size();
     }
 
     /**
@@ -157,19 +169,10 @@ public abstract class AccountTableModel extends AbstractTableModel {
      * @return                  The TransactionRecord reference
      */
     public TransactionRecord getTransactionAt(int row) {
-        if (row >= listData.size())
+        if (row >= rowTransactions.size())
             throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
 
-        return listData.get(row).transaction;
-    }
-
-    /**
-     * Get the transaction names
-     * 
-     * @return                      Transaction name list or null
-     */
-    public SortedSet<String> getTransactionNames() {
-        return transactionNames;
+        return rowTransactions.get(row);
     }
 
     /**
@@ -181,110 +184,41 @@ public abstract class AccountTableModel extends AbstractTableModel {
      */
     public int transactionAdded(int position, TransactionRecord transaction) {
         Date date = transaction.getDate();
-        int listSize = listData.size();
-        double balance = 0.00;
-        int index = 0, lowIndex, highIndex;
-        boolean transactionInserted = false;
+        int listSize = rowTransactions.size();
+        int index;
 
         //
         // Insert the new transaction based on the transaction date (position == -1)
         // or at the specified position (position >= 0).  Since the transactions are
         // sorted by date, we can use a binary search to find the insertion point.
         //
-        if (position >= 0) {
-            index = position;
-
-            if (position < listSize)
-                transactionInserted = true;
-
-            if (position > 0)
-                balance = listData.get(index-1).balance;
-        } else if (listSize != 0) {
-            AccountTransaction r = listData.get(listSize-1);
-            if (date.compareTo(r.transaction.getDate()) >= 0) {
-                index = listSize;
-                balance = r.balance;
-            } else {
-                lowIndex = -1;
-                highIndex = listSize-1;
-                while (highIndex-lowIndex > 1) {
-                    index = (highIndex-lowIndex)/2+lowIndex;
-                    r = listData.get(index);
-                    if (date.compareTo(r.transaction.getDate()) < 0)
-                        highIndex = index;
-                    else
-                        lowIndex = index;
-                }
-
-                transactionInserted = true;
-                index = highIndex;
-                if (lowIndex != -1)
-                    balance = listData.get(lowIndex).balance;
-            }
-        }
-
-        //
-        // Update the account balance for the new transaction
-        //
-        if (transaction.getAccount() == account) {
-            balance += transaction.getAmount();
-        } else if (transaction.getTransferAccount() == account) {
-            balance -= transaction.getAmount();
-        } else {
-            List<TransactionSplit> splits = transaction.getSplits();
-            if (splits != null) {
-                for (TransactionSplit split : splits) {
-                    if (split.getAccount() == account) {
-                        balance -= split.getAmount();
-                        break;
-                    }
-                }
-            }
-        }
-
-        //
-        // Add the new account transaction
-        //
-        AccountTransaction record = new AccountTransaction(transaction, balance);
-        if (transactionInserted)
-            listData.add(index, record);
+        if (position >= 0)
+            index = Math.min(position, listSize);
         else
-            listData.add(record);
+            index = TransactionIndex.findAfter(rowTransactions, date);
+
+        rowTransactions.add(index, transaction);
+        rows.add(index, null);
 
         //
-        // Update the running balance for the transactions after the new
-        // transaction
+        // Update the running balance for the new transaction and the transactions
+        // after the new transaction
         //
-        if (transactionInserted) {
-            ListIterator<AccountTransaction> i = listData.listIterator(index+1);
-            while (i.hasNext()) {
-                AccountTransaction r = i.next();
-                if (r.transaction.getAccount() == account) {
-                    balance += r.transaction.getAmount();
-                } else if (r.transaction.getTransferAccount() == account) {
-                    balance -= r.transaction.getAmount();
-                } else {
-                    List<TransactionSplit> splits = r.transaction.getSplits();
-                    if (splits != null) {
-                        for (TransactionSplit split : splits) {
-                            if (split.getAccount() == account) {
-                                balance -= split.getAmount();
-                                break;
-                            }
-                        }
-                    }
-                }
+        if (listSize+1 > balances.length)
+            balances = Arrays.copyOf(balances, Math.max(2*balances.length, listSize+1));
 
-                r.balance = balance;
-            }
-        }
+        double amount = getAccountAmount(transaction);
+        System.arraycopy(balances, index, balances, index+1, listSize-index);
+        balances[index] = (index > 0 ? balances[index-1] : openingBalance) + amount;
+        for (int i=index+1; i<=listSize; i++)
+            balances[i] += amount;
 
         //
         // Notify table listeners
         //
         fireTableRowsInserted(index, index);
-        if (transactionInserted)
-            fireTableRowsUpdated(index+1, listData.size()-1);
+        if (index < listSize)
+            fireTableRowsUpdated(index+1, listSize);
 
         return index;
     }
@@ -296,58 +230,39 @@ public abstract class AccountTableModel extends AbstractTableModel {
      * @return                      The index of the removed transaction
      */
     public int transactionRemoved(TransactionRecord transaction) {
-        double balance = 0.00;
+        int listSize = rowTransactions.size();
         int index = 0;
 
         //
-        // Remove the transaction from our list
+        // Locate the transaction in our list.  The transaction references may
+        // have been cleared, so the account amount is obtained from the running
+        // balance.
         //
-        ListIterator<AccountTransaction> i = listData.listIterator();
-        while (i.hasNext()) {
-            AccountTransaction r = i.next();
-            if (r.transaction == transaction) {
-                i.remove();
-                break;
-            }
-
-            balance = r.balance;
+        while (index < listSize && rowTransactions.get(index) != transaction)
             index++;
-        }
+
+        if (index == listSize)
+            return index;
+
+        double amount = balances[index] - (index > 0 ? balances[index-1] : openingBalance);
+        rowTransactions.remove(index);
+        rows.remove(index);
+        listSize--;
 
         //
         // Update the running balance for the transactions after the
         // deleted transaction
         //
-        if (index < listData.size()) {
-            i = listData.listIterator(index);
-            while (i.hasNext()) {
-                AccountTransaction r = i.next();
-                if (r.transaction.getAccount() == account) {
-                    balance += r.transaction.getAmount();
-                } else if (r.transaction.getTransferAccount() == account) {
-                    balance -= r.transaction.getAmount();
-                } else {
-                    List<TransactionSplit> splits = r.transaction.getSplits();
-                    if (splits != null) {
-                        for (TransactionSplit split : splits) {
-                            if (split.getAccount() == account) {
-                                balance -= split.getAmount();
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                r.balance = balance;
-            }
-        }
+        System.arraycopy(balances, index+1, balances, index, listSize-index);
+        for (int i=index; i<listSize; i++)
+            balances[i] -= amount;
 
         //
         // Notify table listeners
         //
         fireTableRowsDeleted(index, index);
-        if (index < listData.size())
-            fireTableRowsUpdated(index, listData.size()-1);
+        if (index < listSize)
+            fireTableRowsUpdated(index, listSize-1);
 
         return index;
     }
@@ -359,8 +274,8 @@ public abstract class AccountTableModel extends AbstractTableModel {
      */
     public void transactionModified(TransactionRecord transaction) {
         int index = 0;
-        for (AccountTransaction r : listData) {
-            if (r.transaction == transaction) {
+        for (TransactionRecord t : rowTransactions) {
+            if (t == transaction) {
                 fireTableRowsUpdated(index, index);
                 break;
             }
@@ -368,4 +283,121 @@ public abstract class AccountTableModel extends AbstractTableModel {
             index++;
         }
     }
+
+    /**
+     * A group of existing transactions has been modified.  The running balances are
+     * recomputed for the modified rows and the table listeners are notified just
+     * once using the range of modified rows and any rows whose balance changed.
+     *
+     * @param       transactions    The modified transactions
+     */
+    public void transactionsModified(Collection<TransactionRecord> transactions) {
+        if (transactions.isEmpty())
+            return;
+
+        Set<TransactionRecord> modified = Collections.newSetFromMap(
+                                        new IdentityHashMap<TransactionRecord, Boolean>());
+        modified.addAll(transactions);
+        int listSize = rowTransactions.size();
+        int firstRow = -1;
+        int lastRow = -1;
+        double correction = 0.00;
+        for (int index=0; index<listSize; index++) {
+            balances[index] += correction;
+            TransactionRecord t = rowTransactions.get(index);
+            if (modified.contains(t)) {
+                if (firstRow < 0)
+                    firstRow = index;
+
+                lastRow = index;
+                double balance = (index > 0 ? balances[index-1] : openingBalance) + getAccountAmount(t);
+                correction += balance - balances[index];
+                balances[index] = balance;
+            }
+        }
+
+        if (firstRow >= 0) {
+            if (correction != 0.00)
+                lastRow = listSize-1;
+
+            fireTableRowsUpdated(firstRow, lastRow);
+        }
+    }
+
+    /**
+     * Get the amount of a transaction for this account
+     *
+     * @param       t               Transaction
+     * @return                      Account amount
+     */
+    private double getAccountAmount(TransactionRecord t) {
+        double amount = 0.00;
+        if (t.getAccount() == account) {
+            amount = t.getAmount();
+        } else if (t.getTransferAccount() == account) {
+            amount = -t.getAmount();
+        } else {
+            List<TransactionSplit> splits = t.getSplits();
+            if (splits != null) {
+                for (TransactionSplit split : splits) {
+                    if (split.getAccount() == account) {
+                        amount = -split.getAmount();
+                        break;
+                    }
+                }
+            }
+        }
+
+        return amount;
+    }
+
+    /**
+     * Create the table rows for the window containing a row
+     *
+     * @param       row             Table row
+     */
+    private void createWindow(int row) {
+        int start = row - row%WINDOW_SIZE;
+        int end = Math.min(start+WINDOW_SIZE, rows.size());
+        for (int i=start; i<end; i++) {
+            if (rows.get(i) == null)
+                rows.set(i, new AccountTransaction(rowTransactions.get(i), balances[i]));
+        }
+    }
+
+    /**
+     * List view of the table rows.  A row is created when it is first referenced
+     * and the row balance is refreshed from the prefix-balance array each time the
+     * row is referenced.
+     */
+    private class RowList extends AbstractList<AccountTransaction> {
+
+        /**
+         * Get a table row
+         *
+         * @param       index       Row index
+         * @return                  Table row
+         */
+        @Override
+        public AccountTransaction get(int index) {
+            AccountTransaction r = rows.get(index);
+            if (r == null) {
+                createWindow(index);
+                r = rows.get(index);
+            }
+
+            r.balance = balances[index];
+            return r;
+        }
+
+        /**
+         * Get the number of table rows
+         *
+         * @return                  Number of rows
+         */
+        @Override
+        public int size() {
+            return rows.size();
+        }
+    }
 }
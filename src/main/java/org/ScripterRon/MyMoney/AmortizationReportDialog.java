@@ -21,6 +21,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.*;
 
@@ -35,7 +36,7 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
 
     /** Report column names */
     private static final String[] columnNames = {
-        "Date", "Security", "Category", "Amount"};
+        "Year", "Security", "Type", "Amount"};
 
     /** Report element sizes */
     private static final int[] elementSizes = {80, 185, 140, 80};
@@ -96,7 +97,7 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
         //
         // Get the investment account
         //
-        accountFieldModel = new DBElementComboBoxModel(AccountRecord.accounts,
+        accountFieldModel = new DBElementComboBoxModel(AccountRecord.getAccounts(),
                                                        AccountRecord.INVESTMENT);
         accountField = new JComboBox(accountFieldModel);
         if (accountFieldModel.getSize() > 0)
@@ -217,7 +218,7 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
         //
         // Create the report data model
         //
-        ReportModel reportModel = new TransactionModel(startDate, endDate, account);
+        ReportModel reportModel = new ScheduleModel(startDate, endDate, account);
 
         //
         // Create the report
@@ -395,12 +396,18 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
     }
     
     /**
-     * Transaction report model
+     * Amortization schedule report model
      */
-    private class TransactionModel implements ReportModel {
+    private class ScheduleModel implements ReportModel {
 
-        /** The investment transactions data */
-        private List<TransactionRecord> listData;
+        /** Security names */
+        private List<String> securityNames;
+
+        /** Years */
+        private List<Integer> years;
+
+        /** Amounts in cents */
+        private List<Long> amounts;
 
         /**
          * Create the report model
@@ -409,59 +416,23 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
          * @param       endDate         The end date
          * @param       account         The investment account
          */
-        public TransactionModel(Date startDate, Date endDate, AccountRecord account) {
-
-            //
-            // Create the report transaction list
-            //
-            listData = new ArrayList<>(TransactionRecord.transactions.size());
+        public ScheduleModel(Date startDate, Date endDate, AccountRecord account) {
 
             //
-            // Build the report data using transactions for the specified investment account.
+            // Build the report data using the yearly totals from the amortization
+            // schedules for the bonds in the specified investment account.  The
+            // totals are sorted by security name and then by year.
             //
-            for (TransactionRecord t : TransactionRecord.transactions) {
-
-                //
-                // Skip the transaction if it is not for the requested account,
-                // is not a security transaction, is not within the specified date range,
-                // or is not an accretion/amortization action.
-                //
-                if (t.getAccount() != account)
-                    continue;
-
-                SecurityRecord s = t.getSecurity();
-                if (s == null)
-                    continue;
-
-                Date date = t.getDate();
-                if (date.compareTo(startDate) < 0 || date.compareTo(endDate) > 0)
-                    continue;
-                
-                int action = t.getAction();
-                if (action != TransactionRecord.ACCRETION && action != TransactionRecord.AMORTIZATION)
-                    continue;
-                
-                //
-                // Add the security to our list based on the security name
-                //
-                String name = s.getName();
-                int lastElem = listData.size()-1;
-                if (lastElem < 0) {
-                    listData.add(t);
-                } else if (name.compareTo(listData.get(lastElem).getSecurity().getName()) >= 0) {
-                    listData.add(t);
-                } else {
-                    int lowIndex = -1;
-                    int highIndex = lastElem;
-                    while (highIndex-lowIndex > 1) {
-                        int index = (highIndex-lowIndex)/2+lowIndex;
-                        if (name.compareTo(listData.get(index).getSecurity().getName()) < 0)
-                            highIndex = index;
-                        else
-                            lowIndex = index;
-                    }
-
-                    listData.add(highIndex, t);
+            Map<String, Map<Integer, Long>> totals = BondAmortization.getYearlyTotals(account,
+                                                                                     startDate, endDate);
+            securityNames = new ArrayList<>();
+            years = new ArrayList<>();
+            amounts = new ArrayList<>();
+            for (Map.Entry<String, Map<Integer, Long>> securityEntry : totals.entrySet()) {
+                for (Map.Entry<Integer, Long> yearEntry : securityEntry.getValue().entrySet()) {
+                    securityNames.add(securityEntry.getKey());
+                    years.add(yearEntry.getKey());
+                    amounts.add(yearEntry.getValue());
                 }
             }
         }
@@ -481,7 +452,7 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
          * @return                  The number of rows
          */
         public int getRowCount() {
-            return listData.size();
+            return securityNames.size();
         }
 
         /**
@@ -505,8 +476,8 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
         }
 
         /**
-         * Get the value for a cell.  
-         * 
+         * Get the value for a cell.
+         *
          * Amortization values will be negative while accretion values will be positive.
          *
          * @param       row         Row index
@@ -514,31 +485,27 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
          * @return                  Cell value
          */
         public Object getValueAt(int row, int column) {
-            if (row >= listData.size())
+            if (row >= securityNames.size())
                 throw new IndexOutOfBoundsException("Report row "+row+" is not valid");
 
             Object value;
-            TransactionRecord t = listData.get(row);
+            long amount = amounts.get(row);
 
             switch (column) {
-                case 0:                             // Date (mm/dd/yyyy)
-                    value = Main.getDateString(t.getDate());
+                case 0:                             // Year
+                    value = years.get(row).toString();
                     break;
 
                 case 1:                             // Security
-                    value = t.getSecurity().getName();
+                    value = securityNames.get(row);
                     break;
 
-                case 2:                             // Category
-                    CategoryRecord c = t.getCategory();
-                    if (c != null)
-                        value = c.getName();
-                    else
-                        value = " ";
+                case 2:                             // Type
+                    value = (amount > 0 ? "Accretion" : "Amortization");
                     break;
-                    
+
                 case 3:                             // Amount
-                    value = String.format("%,.2f", -t.getAmount());
+                    value = String.format("%,.2f", (double)amount/100.0);
                     break;
 
                 default:
@@ -548,4 +515,4 @@ public final class AmortizationReportDialog extends JDialog implements ActionLis
             return value;
         }
     }
-}
\ No newline at end of file
+}
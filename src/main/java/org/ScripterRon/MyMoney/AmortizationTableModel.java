@@ -15,11 +15,7 @@
  */
 package org.ScripterRon.MyMoney;
 
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.List;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -38,8 +34,8 @@ public final class AmortizationTableModel extends AbstractTableModel {
     /** Column classes */
     private Class<?>[] columnClasses;
 
-    /** List data */
-    private List<AmortizationElement> listData;
+    /** Amortization schedule */
+    private BondAmortization.Schedule schedule;
 
     /**
      * Create the bond amortization table model
@@ -70,151 +66,11 @@ public final class AmortizationTableModel extends AbstractTableModel {
         this.columnClasses = columnClasses;
 
         //
-        // Get the purchase date
+        // Compute the amortization schedule
         //
-        GregorianCalendar calendar = new GregorianCalendar();
-        calendar.setTime(purchaseDate);
-        int purchaseYear = calendar.get(Calendar.YEAR);
-        int purchaseMonth = calendar.get(Calendar.MONTH);
-        int purchaseDay = calendar.get(Calendar.DATE);
-                        
-        //
-        // Get the maturity date
-        //
-        calendar.setTime(maturityDate);
-        int maturityYear = calendar.get(Calendar.YEAR);
-        int maturityMonth = calendar.get(Calendar.MONTH);
-        int maturityDay = calendar.get(Calendar.DATE);
-                
-        //
-        // Calculate the interest payment for each interval
-        //
-        int intervals = 12/paymentInterval;
-        double interestPayment = (double)Math.round(faceValue*couponYield)/100.0;
-        double intervalPayment = (double)Math.round((interestPayment/intervals)*100.0)/100.0;
-        double intervalYield = yieldToMaturity/intervals;
-
-        //
-        // Create the amortization element list
-        //
-        listData = new ArrayList<>((maturityYear-purchaseYear+1)*intervals);
-        
-        //
-        // Get the first interest payment date in the year
-        //
-        int firstMonth = maturityMonth;
-        while (true) {
-            int testMonth = firstMonth - paymentInterval;
-            if (testMonth < 0)
-                break;
-            
-            firstMonth = testMonth;
-        }
-        
-        //
-        // Calculate the first interest payment date following the purchase date
-        //
-        int paymentMonth = firstMonth;
-        int paymentYear = purchaseYear;
-        double totalPayment = interestPayment;
-        int paymentCount = 1;
-        
-        while (paymentMonth < purchaseMonth) {
-            paymentCount++;
-            paymentMonth += paymentInterval;
-            totalPayment -= intervalPayment;
-        }
-        
-        if (paymentMonth == purchaseMonth && maturityDay <= purchaseDay) {
-            paymentCount++;
-            paymentMonth += paymentInterval;
-            totalPayment -= intervalPayment;
-        }
-        
-        if (paymentMonth >= 12) {
-            paymentCount = 1;
-            totalPayment = interestPayment;
-            paymentYear++;
-            paymentMonth = firstMonth;
-        }
-        
-        //
-        // Build the amortization elements
-        //
-        double currentBasis = purchaseCost;
-        boolean done = false;
-        while (!done) {
-            Date date;
-            double interest;
-            double adjustment;
-            double amortizedPayment;
-
-            //
-            // Stop after processing the final interest payment
-            //
-            if (paymentYear >= maturityYear && paymentMonth >= maturityMonth)
-                done = true;
-            
-            //
-            // Compute the interest payment for this interval.  If the
-            // yearly payment is not evenly divisible, we will make up
-            // the difference in the final interval each year.
-            //
-            calendar.setTime(maturityDate);
-            calendar.set(Calendar.YEAR, paymentYear);
-            calendar.set(Calendar.MONTH, paymentMonth);
-            date = calendar.getTime();
-                
-            if (paymentCount == intervals) {
-                interest = totalPayment;
-                paymentCount = 1;
-                totalPayment = interestPayment;
-                paymentYear++;
-                paymentMonth = firstMonth;
-            } else {
-                interest = intervalPayment;
-                paymentCount++;
-                totalPayment -= intervalPayment;
-                paymentMonth += paymentInterval;
-            }
-            
-            //
-            // Calculate the amortized payment based on the yield-to-maturity.
-            // The interest adjustment is the difference between the amortized
-            // yield and the coupon yield for the current cost basis.  For
-            // the first interest payment, we will use the accrued interest to 
-            // prorate the adjustment amount.
-            //
-            amortizedPayment = (double)Math.round(currentBasis*intervalYield)/100.0;
-            adjustment = amortizedPayment-interest;
-            
-            if (listData.isEmpty() && accruedInterest != 0.0) {
-                double ratio = 1.00-(accruedInterest/interest);
-                adjustment *= ratio;
-            }
-            
-            //
-            // Adjust the current basis based on the amortization amount.
-            // We will stop amortizing if we reach the face value of the bond
-            // or this is the final interest payment.
-            //
-            currentBasis += adjustment;
-            if ((adjustment > 0.0 && currentBasis > faceValue) ||
-                        (adjustment < 0.0 && currentBasis < faceValue)) {
-                
-                adjustment -= currentBasis-faceValue;
-                currentBasis = faceValue;
-            } else if (done) {
-                adjustment += faceValue-currentBasis;
-                currentBasis = faceValue;
-            }
-                
-            AmortizationElement element = new AmortizationElement(date, 
-                            Double.valueOf(interest), 
-                            Double.valueOf(adjustment),
-                            Double.valueOf(currentBasis));
-            listData.add(element);
-        }
+        schedule = BondAmortization.computeSchedule(faceValue, purchaseCost, couponYield,
+                                                    purchaseDate, maturityDate, accruedInterest,
+                                                    yieldToMaturity, paymentInterval);
     }
 
     /**
@@ -252,7 +108,7 @@ public final class AmortizationTableModel extends AbstractTableModel {
      * @return                  The number of rows
      */
     public int getRowCount() {
-        return listData.size();
+        return schedule.size();
     }
 
     /**
@@ -263,26 +119,25 @@ public final class AmortizationTableModel extends AbstractTableModel {
      * @return                  Returns the object associated with the cell
      */
     public Object getValueAt(int row, int column) {
-        if (row >= listData.size())
+        if (row >= schedule.size())
             throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
 
-        AmortizationElement element = listData.get(row);
         Object value;
         switch (column) {
             case 0:                             // Payment date
-                value = element.getDate();
+                value = schedule.getDate(row);
                 break;
 
             case 1:                             // Interest payment
-                value = element.getInterest();
+                value = Double.valueOf(schedule.getInterest(row));
                 break;
 
             case 2:                             // Interest adjustment
-                value = element.getAdjustment();
+                value = Double.valueOf(schedule.getAdjustment(row));
                 break;
 
             case 3:                             // Updated cost basis
-                value = element.getCostBasis();
+                value = Double.valueOf(schedule.getCostBasis(row));
                 break;
                 
             default:
@@ -291,66 +146,4 @@ public final class AmortizationTableModel extends AbstractTableModel {
 
         return value;
     }
-    
-    /**
-     * Amortization element
-     */
-    private final class AmortizationElement {
-    
-        /** Payment date */
-        private Date date;
-        
-        /** Interest payment */
-        private Double interest;
-        
-        /** Interest adjustment */
-        private Double adjustment;
-        
-        /** Updated cost basis */
-        private Double costBasis;
-        
-        /**
-         * Create the amortization element
-         * 
-         * @param   date              Payment date
-         * @param   interest          Interest payment
-         * @param   adjustment        Interest adjustment
-         * @param   costBasis         Updated cost basis
-         */
-        private AmortizationElement(Date date, Double interest, Double adjustment,
-                            Double costBasis) {
-            this.date = date;
-            this.interest = interest;
-            this.adjustment = adjustment;
-            this.costBasis = costBasis;
-        }
-        
-        /**
-         * Get the payment date
-         */
-        private Date getDate() {
-            return date;
-        }
-        
-        /**
-         *  Get the interest payment
-         */
-        private Double getInterest() {
-            return interest;
-        }
-        
-        /**
-         *  Get the interest adjustment
-         */         
-        private Double getAdjustment() {
-            return adjustment;
-        }
-        
-        /**
-         *  Get the updated cost basis
-         */
-        private Double getCostBasis() {
-            return costBasis;
-        }
-    }
 }
@@ -17,7 +17,6 @@ package org.ScripterRon.MyMoney;
 
 import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -264,6 +263,7 @@ public final class AssetTransactionEditDialog extends JDialog implements ActionL
     private boolean processFields() {
         int transactionPosition = -1;
         int modelPosition = -1;
+        TransactionRecord oldTransaction = null;
 
         //
         // Validate the transaction information
@@ -288,17 +288,8 @@ public final class AssetTransactionEditDialog extends JDialog implements ActionL
         // Remove an existing transaction
         //
         if (transaction != null) {
-            ListIterator<TransactionRecord> i = TransactionRecord.transactions.listIterator();
-            transactionPosition = 0;
-
-            while (i.hasNext()) {
-                if (i.next() == transaction) {
-                    i.remove();
-                    break;
-                }
-
-                transactionPosition++;
-            }
+            oldTransaction = transaction;
+            transactionPosition = TransactionRecord.removeTransaction(transaction);
 
             transaction.clearReferences();
             modelPosition = tableModel.transactionRemoved(transaction);
@@ -327,9 +318,9 @@ public final class AssetTransactionEditDialog extends JDialog implements ActionL
         // Add the transaction and scroll the table to display the transaction.
         //
         if (transactionPosition >= 0)
-            TransactionRecord.transactions.add(transactionPosition, transaction);
+            TransactionRecord.insertTransaction(transactionPosition, transaction, oldTransaction);
         else
-            TransactionRecord.insertTransaction(transaction);
+            TransactionRecord.insertTransaction(transaction, oldTransaction);
 
         int modelRow = tableModel.transactionAdded(modelPosition, transaction);
         transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
@@ -189,7 +189,7 @@ public final class AssetTransactionPanel extends TransactionPanel implements Act
                         if (option == JOptionPane.YES_OPTION) {
                             modelRow = table.convertRowIndexToModel(row);
                             TransactionRecord transaction = tableModel.getTransactionAt(modelRow);
-                            TransactionRecord.transactions.remove(transaction);
+                            TransactionRecord.removeTransaction(transaction);
                             transaction.clearReferences();
                             tableModel.transactionRemoved(transaction);
                             Main.dataModified = true;
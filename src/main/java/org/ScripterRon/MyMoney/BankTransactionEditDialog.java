@@ -18,7 +18,6 @@ package org.ScripterRon.MyMoney;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -114,7 +113,14 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
         splits = null;
         showSplits = false;
         if (transaction != null) {
+            //
+            // Edit a copy of the splits since the transaction is still in the
+            // transaction list until the changes are saved
+            //
             splits = transaction.getSplits();
+            if (splits != null)
+                splits = TransactionSplit.copySplits(splits);
+
             if (transaction.getAccount() == account) {
                 transferAccount = transaction.getTransferAccount();
                 category = transaction.getCategory();
@@ -219,9 +225,7 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
         if (securityTransaction) {
             nameField.setEditable(false);
         } else {
-            JTable table = transactionPanel.getTransactionTable();
-            AccountTableModel model = (AccountTableModel)table.getModel();
-            NameDocumentListener.addInstance(nameField, model.getTransactionNames());
+            NameDocumentListener.addInstance(nameField);
         }
 
         //
@@ -538,6 +542,7 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
         AccountRecord a, t;
         int index, reconciled;
         int transactionPosition = -1, modelPosition = -1;
+        TransactionRecord oldTransaction = null;
         double amount;
         String name;
 
@@ -561,9 +566,9 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
         AccountTableModel tableModel = (AccountTableModel)table.getModel();
 
         //
-        // Remove an existing transaction (an investment transaction is not
-        // removed since the investment fields cannot be changed from the
-        // linked account)
+        // Remove an existing transaction.  An investment transaction is replaced
+        // by a copy of the transaction since the investment fields cannot be
+        // changed from the linked account.
         //
         if (transaction != null) {
             a = transaction.getAccount();
@@ -571,20 +576,14 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
             name = transaction.getName();
             amount = transaction.getAmount();
             reconciled = transaction.getReconciled();
-            if (!securityTransaction) {
-                ListIterator<TransactionRecord> i = TransactionRecord.transactions.listIterator();
-                transactionPosition = 0;
-                while (i.hasNext()) {
-                    if (i.next() == transaction) {
-                        i.remove();
-                        break;
-                    }
-
-                    transactionPosition++;
-                }
+            oldTransaction = transaction;
+            transactionPosition = TransactionRecord.removeTransaction(transaction);
+            if (securityTransaction)
+                transaction = (TransactionRecord)oldTransaction.clone();
 
-                transaction.clearReferences();
-                modelPosition = tableModel.transactionRemoved(transaction);
+            oldTransaction.clearReferences();
+            modelPosition = tableModel.transactionRemoved(oldTransaction);
+            if (!securityTransaction) {
                 if (date.compareTo(transaction.getDate()) != 0) {
                     transactionPosition = -1;
                     modelPosition = -1;
@@ -621,11 +620,9 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
         }
 
         //
-        // Get the transaction name and update the name list
+        // Get the transaction name
         //
         name = nameField.getText();
-        if (name.length() > 0 && !securityTransaction)
-            tableModel.getTransactionNames().add(name);
         
         //
         // Build the new transaction
@@ -689,20 +686,15 @@ public final class BankTransactionEditDialog extends JDialog implements ActionLi
 
         //
         // Add the new transaction and scroll the table to display the
-        // transaction.  A security transaction is not added since it was
-        // not removed earlier.
+        // transaction
         //
-        if (!securityTransaction) {
-            if (transactionPosition >= 0)
-                TransactionRecord.transactions.add(transactionPosition, transaction);
-            else
-                TransactionRecord.insertTransaction(transaction);
+        if (transactionPosition >= 0)
+            TransactionRecord.insertTransaction(transactionPosition, transaction, oldTransaction);
+        else
+            TransactionRecord.insertTransaction(transaction, oldTransaction);
 
-            int modelRow = tableModel.transactionAdded(modelPosition, transaction);
-            transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
-        } else {
-            tableModel.transactionModified(transaction);
-        }
+        int modelRow = tableModel.transactionAdded(modelPosition, transaction);
+        transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
 
         Main.dataModified = true;
         return true;
@@ -208,7 +208,7 @@ public final class BankTransactionPanel extends TransactionPanel implements Acti
                         if (option == JOptionPane.YES_OPTION) {
                             modelRow = table.convertRowIndexToModel(row);
                             TransactionRecord transaction = tableModel.getTransactionAt(modelRow);
-                            TransactionRecord.transactions.remove(transaction);
+                            TransactionRecord.removeTransaction(transaction);
                             transaction.clearReferences();
                             tableModel.transactionRemoved(transaction);
                             Main.dataModified = true;
@@ -0,0 +1,639 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * The batch processor runs a single command without starting the GUI.  It is used
+ * when the application is started with command line arguments:
+ * <pre>
+ *   MyMoney [--database file] process-schedules
+ *   MyMoney [--database file] archive --before yyyy
+ *   MyMoney [--database file] report capital-gains --year yyyy
+ *   MyMoney [--database file] export csv [--output file]
+ *   MyMoney [--database file] verify
+ *   MyMoney [--database file] serve [--port port]
+ *   MyMoney self-test
+ * </pre>
+ * The default database is MyMoney.database in the application data directory.
+ * An archive file (*.archive) is opened read-only.  The process-schedules and archive
+ * commands take the application lock and fail if MyMoney is already running.  The
+ * serve command runs the query service until the process is terminated.  The other
+ * commands do not modify the database and do not take the lock.  Output is written
+ * to stdout and errors are written to stderr.  The self-test command runs the
+ * known-answer checks for the yield, return and statement matching calculations and
+ * does not open the database.
+ * <p>
+ * The exit status is 0 if the command was successful, 1 if the command failed
+ * (or verify or self-test found a problem) and 2 if the command line is not valid.
+ */
+public final class BatchProcessor {
+
+    /** Command completed successfully */
+    public static final int EXIT_SUCCESS = 0;
+
+    /** Command failed */
+    public static final int EXIT_FAILURE = 1;
+
+    /** Command line is not valid */
+    public static final int EXIT_USAGE = 2;
+
+    /** Command usage */
+    private static final String usageText =
+            "Usage: MyMoney [--database file] <command>\n"+
+            "Commands:\n"+
+            "  process-schedules                 Process the scheduled transactions that are due\n"+
+            "  archive --before yyyy             Archive the transactions before a year\n"+
+            "  report capital-gains --year yyyy  Report the capital gains for a tax year\n"+
+            "  export csv [--output file]        Export the transactions in CSV format\n"+
+            "  verify                            Verify the database structure\n"+
+            "  serve [--port port]               Run the read-only query service\n"+
+            "  self-test                         Run the known-answer calculation checks";
+
+    /** Database */
+    private final Database database;
+
+    /** Output stream */
+    private final PrintStream out;
+
+    /**
+     * Create the batch processor
+     *
+     * @param       database        Database
+     * @param       out             Output stream
+     */
+    private BatchProcessor(Database database, PrintStream out) {
+        this.database = database;
+        this.out = out;
+    }
+
+    /**
+     * Run a batch command
+     *
+     * @param       args            Command line arguments
+     * @return                      Exit status
+     */
+    public static int run(String[] args) {
+        int exitStatus;
+        String dbPath = Main.dataPath+Main.fileSeparator+"MyMoney.database";
+        int index = 0;
+        if (args.length >= 2 && args[0].equals("--database")) {
+            dbPath = args[1];
+            index = 2;
+        }
+
+        if (index >= args.length) {
+            System.err.println(usageText);
+            return EXIT_USAGE;
+        }
+
+        String command = args[index++];
+        String[] options = new String[args.length-index];
+        System.arraycopy(args, index, options, 0, options.length);
+        Database database = new Database(new File(dbPath), dbPath.endsWith(".archive"));
+        DatabaseContext.setApplicationContext(database.getContext());
+        BatchProcessor processor = new BatchProcessor(database, System.out);
+        try {
+            switch (command) {
+                case "process-schedules":
+                    exitStatus = processor.processSchedules(options);
+                    break;
+
+                case "archive":
+                    exitStatus = processor.archive(options);
+                    break;
+
+                case "report":
+                    exitStatus = processor.report(options);
+                    break;
+
+                case "export":
+                    exitStatus = processor.export(options);
+                    break;
+
+                case "verify":
+                    exitStatus = processor.verify(options);
+                    break;
+
+                case "serve":
+                    exitStatus = processor.serve(options);
+                    break;
+
+                case "self-test":
+                    exitStatus = processor.selfTest(options);
+                    break;
+
+                default:
+                    System.err.println("Unrecognized command: "+command);
+                    System.err.println(usageText);
+                    exitStatus = EXIT_USAGE;
+            }
+        } catch (DBException | IOException exc) {
+            System.err.println("Unable to process "+database.getName()+": "+exc.getMessage());
+            exitStatus = EXIT_FAILURE;
+        }
+
+        return exitStatus;
+    }
+
+    /**
+     * Process the scheduled transactions that are due and save the database
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int processSchedules(String[] options) throws DBException, IOException {
+        if (options.length != 0)
+            return usage("process-schedules does not accept any options");
+
+        File dirFile = new File(Main.dataPath);
+        if (!dirFile.exists())
+            dirFile.mkdir();
+
+        try (RandomAccessFile lockFile = new RandomAccessFile(Main.dataPath+Main.fileSeparator+".lock", "rw")) {
+            FileLock fileLock = lockFile.getChannel().tryLock();
+            if (fileLock == null) {
+                System.err.println("MyMoney is already running");
+                return EXIT_FAILURE;
+            }
+
+            try {
+                database.load();
+                int count = TransactionRecord.getTransactions().size();
+                if (Main.processScheduledTransactions() || Main.dataModified) {
+                    database.save();
+                    Main.dataModified = false;
+                }
+
+                out.printf("%d scheduled transactions processed%n",
+                           TransactionRecord.getTransactions().size()-count);
+            } finally {
+                fileLock.release();
+            }
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Archive the transactions before a year and save the database
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int archive(String[] options) throws DBException, IOException {
+        if (options.length != 2 || !options[0].equals("--before"))
+            return usage("The archive command is 'archive --before yyyy'");
+
+        int year;
+        try {
+            year = Integer.parseInt(options[1]);
+        } catch (NumberFormatException exc) {
+            return usage("The archive year is not valid: "+options[1]);
+        }
+
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(Main.getCurrentDate());
+        if (year > cal.get(Calendar.YEAR))
+            return usage("The archive year must not be after the current year");
+
+        File dirFile = new File(Main.dataPath);
+        if (!dirFile.exists())
+            dirFile.mkdir();
+
+        try (RandomAccessFile lockFile = new RandomAccessFile(Main.dataPath+Main.fileSeparator+".lock", "rw")) {
+            FileLock fileLock = lockFile.getChannel().tryLock();
+            if (fileLock == null) {
+                System.err.println("MyMoney is already running");
+                return EXIT_FAILURE;
+            }
+
+            try {
+                database.load();
+                for (File file : database.archive(year))
+                    out.printf("Archive file %s written%n", file.getPath());
+
+                out.printf("%d transactions remain in the database%n",
+                           TransactionRecord.getTransactions().size());
+            } finally {
+                fileLock.release();
+            }
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Generate a report
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int report(String[] options) throws DBException, IOException {
+        if (options.length != 3 || !options[0].equals("capital-gains") || !options[1].equals("--year"))
+            return usage("The report command is 'report capital-gains --year yyyy'");
+
+        int year;
+        try {
+            year = Integer.parseInt(options[2]);
+        } catch (NumberFormatException exc) {
+            return usage("The report year is not valid: "+options[2]);
+        }
+
+        database.load();
+
+        //
+        // Get the capital gains for taxable accounts (income from tax-deferred accounts
+        // is taxed as ordinary income)
+        //
+        GregorianCalendar cal = new GregorianCalendar(year, 0, 1, 0, 0, 0);
+        Date startDate = cal.getTime();
+        cal.set(year, 11, 31, 23, 59, 59);
+        Date endDate = cal.getTime();
+        CapitalGainsEngine engine = new CapitalGainsEngine(endDate, true);
+        for (String name : engine.getMissingBuys())
+            System.err.println("Missing BUY transaction for security "+name);
+
+        //
+        // Write the report.  A gain is long-term if the security was held for
+        // more than one year.
+        //
+        out.printf("Capital Gains for %d%n%n", year);
+        out.printf("%-30s %-10s %-10s %14s %14s %14s %14s%n", "Security", "Purchased", "Sold",
+                   "Shares", "Cost Basis", "Sell Amount", "Gain");
+        double shortTerm = 0.0;
+        double longTerm = 0.0;
+        for (CapitalGainRecord g : engine.getCapitalGains(startDate, endDate)) {
+            double gain = g.getSellAmount()-g.getCostBasis();
+            out.printf("%-30.30s %-10s %-10s %,14.4f %,14.2f %,14.2f %,14.2f%n",
+                       g.getSecurity().getName(), Main.getDateString(g.getPurchaseDate()),
+                       Main.getDateString(g.getSellDate()), g.getShares(), g.getCostBasis(),
+                       g.getSellAmount(), gain);
+            cal.setTime(g.getPurchaseDate());
+            cal.add(Calendar.YEAR, 1);
+            if (g.getSellDate().compareTo(cal.getTime()) > 0)
+                longTerm += gain;
+            else
+                shortTerm += gain;
+        }
+
+        out.printf("%nShort-term gain: %,14.2f%n", shortTerm);
+        out.printf("Long-term gain:  %,14.2f%n", longTerm);
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Export the transactions.  A transaction with splits is exported as one line
+     * for each split.
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int export(String[] options) throws DBException, IOException {
+        if (options.length == 0 || !options[0].equals("csv") ||
+                        (options.length != 1 && (options.length != 3 || !options[1].equals("--output"))))
+            return usage("The export command is 'export csv [--output file]'");
+
+        database.load();
+        PrintStream csv = out;
+        if (options.length == 3)
+            csv = new PrintStream(new BufferedOutputStream(new FileOutputStream(options[2])), false, "UTF-8");
+
+        try {
+            csv.println("Date,Account,Action,Name,Category,Security,Shares,Amount,Memo");
+            for (TransactionRecord t : TransactionRecord.getAllTransactions()) {
+                String date = Main.getDateString(t.getDate());
+                String account = t.getAccount().getName();
+                String action = TransactionRecord.getActionString(t.getAction());
+                String security = (t.getSecurity() != null ? t.getSecurity().getName() : "");
+                String shares = (t.getShares() != 0.0 ? String.format("%.4f", t.getShares()) : "");
+                List<TransactionSplit> splits = t.getSplits();
+                if (splits == null) {
+                    writeLine(csv, date, account, action, t.getName(),
+                              getCategoryName(t.getCategory(), t.getTransferAccount()),
+                              security, shares, String.format("%.2f", t.getAmount()), t.getMemo());
+                } else {
+                    for (TransactionSplit split : splits)
+                        writeLine(csv, date, account, action, t.getName(),
+                                  getCategoryName(split.getCategory(), split.getAccount()),
+                                  security, shares, String.format("%.2f", split.getAmount()),
+                                  split.getDescription());
+                }
+            }
+
+            csv.flush();
+            if (csv.checkError())
+                throw new IOException("Unable to write the CSV file");
+        } finally {
+            if (csv != out)
+                csv.close();
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Get the category name for an export line
+     *
+     * @param       category        Category or null
+     * @param       transferAccount Transfer account or null
+     * @return                      Category name, transfer account name in brackets or an empty string
+     */
+    private static String getCategoryName(CategoryRecord category, AccountRecord transferAccount) {
+        if (transferAccount != null)
+            return "["+transferAccount.getName()+"]";
+
+        return (category != null ? category.getName() : "");
+    }
+
+    /**
+     * Write a CSV line.  A field is quoted if it contains a comma, a quote or a
+     * line break.
+     *
+     * @param       csv             Output stream
+     * @param       fields          Fields
+     */
+    private static void writeLine(PrintStream csv, String... fields) {
+        StringBuilder line = new StringBuilder(128);
+        for (int i=0; i<fields.length; i++) {
+            if (i != 0)
+                line.append(',');
+
+            String field = (fields[i] != null ? fields[i] : "");
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 ||
+                                field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                line.append('"');
+                line.append(field.replace("\"", "\"\""));
+                line.append('"');
+            } else {
+                line.append(field);
+            }
+        }
+
+        csv.println(line);
+    }
+
+    /**
+     * Verify the database structure.  The transaction and scheduled transaction
+     * lists must be sorted by date, each referenced account, category and security
+     * must be defined, and the splits for a non-investment transaction must add up
+     * to the transaction amount.
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int verify(String[] options) throws DBException, IOException {
+        if (options.length != 0)
+            return usage("verify does not accept any options");
+
+        database.load();
+        int problems = 0;
+        try {
+            database.loadPartitions(0);
+        } catch (IOException exc) {
+            problems += problem("Unable to load the transaction partitions: "+exc.getMessage());
+        }
+
+        if (Main.dataModified) {
+            out.println("Invalid records were discarded when the database was loaded");
+            problems++;
+        }
+
+        //
+        // Verify the account, category and security definitions
+        //
+        for (AccountRecord a : AccountRecord.getAccounts()) {
+            if (AccountRecord.getAccount(a.getID()) != a)
+                problems += problem("Account "+a.getName()+" is not in the account map");
+            if (a.getLinkedAccount() != null && !AccountRecord.getAccounts().contains(a.getLinkedAccount()))
+                problems += problem("Account "+a.getName()+" is linked to an undefined account");
+        }
+
+        for (CategoryRecord c : CategoryRecord.getCategories()) {
+            if (CategoryRecord.getCategory(c.getID()) != c)
+                problems += problem("Category "+c.getName()+" is not in the category map");
+        }
+
+        for (SecurityRecord s : SecurityRecord.getSecurities()) {
+            if (SecurityRecord.getSecurity(s.getID()) != s)
+                problems += problem("Security "+s.getName()+" is not in the security map");
+        }
+
+        //
+        // Verify the transactions
+        //
+        Date lastDate = null;
+        for (TransactionRecord t : TransactionRecord.getAllTransactions()) {
+            String text = "Transaction "+Main.getDateString(t.getDate())+" '"+t.getName()+"'";
+            if (lastDate != null && t.getDate().compareTo(lastDate) < 0)
+                problems += problem(text+" is out of date sequence");
+
+            lastDate = t.getDate();
+            problems += verifyReferences(text, t.getAccount(), t.getTransferAccount(), t.getCategory());
+            if (t.getSecurity() != null && SecurityRecord.getSecurity(t.getSecurity().getID()) != t.getSecurity())
+                problems += problem(text+" references an undefined security");
+            if (t.getNewSecurity() != null && SecurityRecord.getSecurity(t.getNewSecurity().getID()) != t.getNewSecurity())
+                problems += problem(text+" references an undefined security");
+
+            List<TransactionSplit> splits = t.getSplits();
+            if (splits != null) {
+                long total = 0;
+                for (TransactionSplit split : splits) {
+                    problems += verifyReferences(text, null, split.getAccount(), split.getCategory());
+                    total += Math.round(split.getAmount()*100.0);
+                }
+
+                if (t.getAccount() != null && t.getAccount().getType() != AccountRecord.INVESTMENT &&
+                                            total != Math.round(t.getAmount()*100.0))
+                    problems += problem(text+" splits do not add up to the transaction amount");
+            }
+        }
+
+        //
+        // Verify the scheduled transactions
+        //
+        lastDate = null;
+        for (ScheduleRecord r : ScheduleRecord.getTransactions()) {
+            if (lastDate != null && r.getDate().compareTo(lastDate) < 0)
+                problems += problem("Scheduled transaction "+Main.getDateString(r.getDate())+
+                                   " is out of date sequence");
+
+            lastDate = r.getDate();
+        }
+
+        //
+        // Verify the record indexes
+        //
+        for (File file : database.getDataFiles())
+            problems += verifyIndex(file);
+
+        out.printf("%d accounts, %d categories, %d securities, %d transactions, %d scheduled transactions%n",
+                   AccountRecord.getAccounts().size(), CategoryRecord.getCategories().size(),
+                   SecurityRecord.getSecurities().size(), TransactionRecord.getTransactions().size(),
+                   ScheduleRecord.getTransactions().size());
+        out.printf("%d problems found%n", problems);
+        return (problems == 0 ? EXIT_SUCCESS : EXIT_FAILURE);
+    }
+
+    /**
+     * Run the known-answer checks for the calculations
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     */
+    private int selfTest(String[] options) {
+        if (options.length != 0)
+            return usage("self-test does not accept any options");
+
+        return (SelfTest.run(out) == 0 ? EXIT_SUCCESS : EXIT_FAILURE);
+    }
+
+    /**
+     * Run the query service until the process is terminated
+     *
+     * @param       options         Command options
+     * @return                      Exit status
+     * @exception   DBException     Unable to load the database
+     * @exception   IOException     An I/O error occurred
+     */
+    private int serve(String[] options) throws DBException, IOException {
+        int port = QueryService.DEFAULT_PORT;
+        if (options.length != 0) {
+            if (options.length != 2 || !options[0].equals("--port"))
+                return usage("The serve command is 'serve [--port port]'");
+
+            try {
+                port = Integer.parseInt(options[1]);
+            } catch (NumberFormatException exc) {
+                return usage("The service port is not valid: "+options[1]);
+            }
+        }
+
+        //
+        // Load all of the transaction partitions before starting the request threads
+        // since the partitions for a batch command are loaded on the calling thread
+        //
+        database.load();
+        TransactionPartitions.loadAll();
+        QueryService.start(port);
+        out.printf("Query service for %s listening on port %d%n", database.getName(), port);
+        try {
+            QueryService.awaitStop();
+        } catch (InterruptedException exc) {
+            QueryService.stop();
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Verify the accounts and category referenced by a transaction or split
+     *
+     * @param       text            Transaction description
+     * @param       account         Account or null
+     * @param       transferAccount Transfer account or null
+     * @param       category        Category or null
+     * @return                      Number of problems found
+     */
+    private int verifyReferences(String text, AccountRecord account, AccountRecord transferAccount,
+                                 CategoryRecord category) {
+        int problems = 0;
+        if (account != null && AccountRecord.getAccount(account.getID()) != account)
+            problems += problem(text+" references an undefined account");
+        if (transferAccount != null && AccountRecord.getAccount(transferAccount.getID()) != transferAccount)
+            problems += problem(text+" references an undefined transfer account");
+        if (category != null && CategoryRecord.getCategory(category.getID()) != category)
+            problems += problem(text+" references an undefined category");
+
+        return problems;
+    }
+
+    /**
+     * Verify the record index for a data file.  The record at each indexed offset
+     * must have the indexed record type.  A data file without a current index is
+     * not a problem since the index is written the next time the file is saved.
+     *
+     * @param       file            Data file
+     * @return                      Number of problems found
+     * @exception   IOException     An I/O error occurred
+     */
+    private int verifyIndex(File file) throws IOException {
+        RecordIndex index;
+        try {
+            index = RecordIndex.load(file);
+        } catch (DBException exc) {
+            return problem("Record index for "+file.getName()+" is not valid: "+exc.getMessage());
+        }
+
+        if (index == null)
+            return 0;
+
+        int problems = 0;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            for (RecordIndex.Entry entry : index.getEntries()) {
+                String text = "Record at offset "+entry.getOffset()+" in "+file.getName();
+                try {
+                    byte[] data = RecordIndex.readRecord(in, entry.getOffset());
+                    if (RecordIndex.getType(data) != entry.getType())
+                        problems += problem(text+" does not match the record index");
+                } catch (EOFException | StreamCorruptedException exc) {
+                    problems += problem(text+" is not valid: "+exc.getMessage());
+                }
+            }
+        }
+
+        return problems;
+    }
+
+    /**
+     * Report a verification problem
+     *
+     * @param       text            Problem description
+     * @return                      1
+     */
+    private int problem(String text) {
+        out.println(text);
+        return 1;
+    }
+
+    /**
+     * Report a command line error
+     *
+     * @param       text            Error description
+     * @return                      Exit status
+     */
+    private static int usage(String text) {
+        System.err.println(text);
+        System.err.println(usageText);
+        return EXIT_USAGE;
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The bond amortization service computes the premium amortization and discount
+ * accretion schedules for bond purchases.  A schedule is computed once for each
+ * purchase lot and is cached using the security, the purchase date, the number of
+ * shares and the purchase cost as the key.  The security maturity date, coupon rate
+ * and payment type are also part of the key, so changing the security definition
+ * causes a new schedule to be computed.  The cache is discarded when a new database
+ * is loaded.
+ * <p>
+ * The face value for a purchase lot is the number of shares multiplied by the face
+ * value per share.  The yield to maturity for the lot is computed from the purchase
+ * cost and the accrued interest is the interest earned by the seller for the current
+ * coupon period.
+ * <p>
+ * When part of a holding is sold, the shares are removed from the oldest purchase
+ * lots first and the adjustments for a lot are scaled by the fraction of the lot
+ * that is still held on the payment date.
+ */
+public final class BondAmortization {
+
+    /** Cached schedules */
+    private static final Map<Key, Schedule> schedules = new HashMap<>();
+
+    /**
+     * This class is not instantiated
+     */
+    private BondAmortization() {
+    }
+
+    /**
+     * Discard the cached schedules
+     */
+    public static synchronized void invalidate() {
+        schedules.clear();
+    }
+
+    /**
+     * Get the amortization schedule for a purchase lot
+     *
+     * @param       security        Security
+     * @param       purchaseDate    Purchase date
+     * @param       shares          Number of shares purchased
+     * @param       cost            Purchase cost without accrued interest
+     * @return                      Schedule or null if the security is not amortized
+     */
+    public static synchronized Schedule getSchedule(SecurityRecord security, Date purchaseDate,
+                                                    double shares, double cost) {
+        Date maturityDate = security.getMaturityDate();
+        int payments = BondPortfolio.getPaymentsPerYear(security);
+        if (!BondPortfolio.isFixedIncome(security) || maturityDate == null || payments == 0 ||
+                                shares <= 0.0 || maturityDate.compareTo(purchaseDate) <= 0)
+            return null;
+
+        Key key = new Key(security, purchaseDate, shares, cost);
+        Schedule schedule = schedules.get(key);
+        if (schedule == null) {
+            double faceValue = shares*BondPortfolio.getShareFaceValue(security);
+            BondYield.CashFlows cashFlows = BondYield.getCashFlows(purchaseDate, maturityDate, faceValue,
+                                                                   security.getCouponRate(), payments);
+            double yield = cashFlows.getYield(cost);
+            if (Double.isNaN(yield))
+                return null;
+
+            //
+            // The schedule uses the nominal yield compounded for each payment period
+            //
+            double nominalYield = (Math.pow(1.0+yield, 1.0/(double)payments)-1.0)*(double)payments;
+            schedule = computeSchedule(faceValue, cost, security.getCouponRate()*100.0,
+                                       purchaseDate, maturityDate, cashFlows.getAccruedInterest(),
+                                       nominalYield*100.0, 12/payments);
+            schedules.put(key, schedule);
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Get the yearly amortization and accretion totals for the bond holdings in
+     * an investment account
+     *
+     * @param       account         Investment account
+     * @param       startDate       Start date
+     * @param       endDate         End date
+     * @return                      Yearly totals in cents indexed by security name and then by year
+     */
+    public static Map<String, Map<Integer, Long>> getYearlyTotals(AccountRecord account,
+                                                                  Date startDate, Date endDate) {
+        Map<String, Map<Integer, Long>> totals = new TreeMap<>();
+        long startTime = startDate.getTime();
+        long endTime = endDate.getTime();
+        GregorianCalendar cal = new GregorianCalendar();
+        for (Lot lot : getLots(account, endDate)) {
+            Schedule schedule = getSchedule(lot.security, lot.date, lot.shares, lot.cost);
+            if (schedule == null)
+                continue;
+
+            Map<Integer, Long> yearTotals = totals.get(lot.security.getName());
+            for (int i=0; i<schedule.size(); i++) {
+                long time = schedule.dates[i];
+                if (time < startTime || time > endTime)
+                    continue;
+
+                double ratio = lot.getRatio(time);
+                if (ratio == 0.0)
+                    continue;
+
+                long amount = Math.round(schedule.adjustments[i]*ratio*100.0);
+                if (amount == 0)
+                    continue;
+
+                if (yearTotals == null) {
+                    yearTotals = new TreeMap<>();
+                    totals.put(lot.security.getName(), yearTotals);
+                }
+
+                cal.setTimeInMillis(time);
+                int year = cal.get(Calendar.YEAR);
+                Long total = yearTotals.get(year);
+                yearTotals.put(year, (total != null ? total : 0L)+amount);
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Build the purchase lots for the bond holdings in an investment account
+     *
+     * @param       account         Investment account
+     * @param       endDate         Last transaction date
+     * @return                      Purchase lots
+     */
+    private static List<Lot> getLots(AccountRecord account, Date endDate) {
+        List<Lot> lots = new ArrayList<>();
+        Map<Integer, List<Lot>> securityLots = new HashMap<>();
+        TransactionQuery query = new TransactionQuery().setAccount(account)
+                                                       .setDateRange(new Date(0), endDate)
+                                                       .setActions(TransactionRecord.BUY,
+                                                                   TransactionRecord.SELL);
+        for (TransactionRecord t : query) {
+            SecurityRecord security = t.getSecurity();
+            if (t.getAccount() != account || security == null || !BondPortfolio.isFixedIncome(security))
+                continue;
+
+            List<Lot> openLots = securityLots.get(security.getID());
+            if (t.getAction() == TransactionRecord.BUY) {
+                Lot lot = new Lot(security, t.getDate(), t.getShares(), t.getAmount());
+                lots.add(lot);
+                if (openLots == null) {
+                    openLots = new ArrayList<>();
+                    securityLots.put(security.getID(), openLots);
+                }
+
+                openLots.add(lot);
+            } else if (openLots != null) {
+                double shares = t.getShares();
+                long time = t.getDate().getTime();
+                while (shares > 0.0 && !openLots.isEmpty()) {
+                    Lot lot = openLots.get(0);
+                    double sold = Math.min(shares, lot.remaining);
+                    lot.sell(time, sold);
+                    shares -= sold;
+                    if (lot.remaining < 0.00005)
+                        openLots.remove(0);
+                }
+            }
+        }
+
+        return lots;
+    }
+
+    /**
+     * Compute an amortization schedule.  There is one schedule entry for each
+     * interest payment following the purchase date.  If the yearly interest is not
+     * evenly divisible by the number of payments, the difference is included in the
+     * final payment for the year.
+     *
+     * @param       faceValue           The bond face value
+     * @param       purchaseCost        The purchase cost
+     * @param       couponYield         The coupon yield (%)
+     * @param       purchaseDate        The purchase date
+     * @param       maturityDate        The maturity date
+     * @param       accruedInterest     The accrued interest
+     * @param       yieldToMaturity     The yield to maturity (%)
+     * @param       paymentInterval     The number of months in a payment interval
+     * @return                          Amortization schedule
+     */
+    public static Schedule computeSchedule(double faceValue, double purchaseCost, double couponYield,
+                                           Date purchaseDate, Date maturityDate, double accruedInterest,
+                                           double yieldToMaturity, int paymentInterval) {
+
+        //
+        // Get the purchase date
+        //
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTime(purchaseDate);
+        int purchaseYear = calendar.get(Calendar.YEAR);
+        int purchaseMonth = calendar.get(Calendar.MONTH);
+        int purchaseDay = calendar.get(Calendar.DATE);
+
+        //
+        // Get the maturity date
+        //
+        calendar.setTime(maturityDate);
+        int maturityYear = calendar.get(Calendar.YEAR);
+        int maturityMonth = calendar.get(Calendar.MONTH);
+        int maturityDay = calendar.get(Calendar.DATE);
+
+        //
+        // Calculate the interest payment for each interval
+        //
+        int intervals = 12/paymentInterval;
+        double interestPayment = (double)Math.round(faceValue*couponYield)/100.0;
+        double intervalPayment = (double)Math.round((interestPayment/intervals)*100.0)/100.0;
+        double intervalYield = yieldToMaturity/intervals;
+
+        //
+        // Get the first interest payment date in the year
+        //
+        int firstMonth = maturityMonth;
+        while (true) {
+            int testMonth = firstMonth - paymentInterval;
+            if (testMonth < 0)
+                break;
+
+            firstMonth = testMonth;
+        }
+
+        //
+        // Calculate the first interest payment date following the purchase date
+        //
+        int paymentMonth = firstMonth;
+        int paymentYear = purchaseYear;
+        double totalPayment = interestPayment;
+        int paymentCount = 1;
+
+        while (paymentMonth < purchaseMonth) {
+            paymentCount++;
+            paymentMonth += paymentInterval;
+            totalPayment -= intervalPayment;
+        }
+
+        if (paymentMonth == purchaseMonth && maturityDay <= purchaseDay) {
+            paymentCount++;
+            paymentMonth += paymentInterval;
+            totalPayment -= intervalPayment;
+        }
+
+        if (paymentMonth >= 12) {
+            paymentCount = 1;
+            totalPayment = interestPayment;
+            paymentYear++;
+            paymentMonth = firstMonth;
+        }
+
+        //
+        // Build the schedule entries
+        //
+        Schedule schedule = new Schedule(Math.max(maturityYear-purchaseYear+1, 1)*intervals);
+        double currentBasis = purchaseCost;
+        boolean done = false;
+        while (!done) {
+            double interest;
+            double adjustment;
+            double amortizedPayment;
+
+            //
+            // Stop after processing the final interest payment
+            //
+            if (paymentYear >= maturityYear && paymentMonth >= maturityMonth)
+                done = true;
+
+            //
+            // Compute the interest payment for this interval.  If the
+            // yearly payment is not evenly divisible, we will make up
+            // the difference in the final interval each year.
+            //
+            calendar.setTime(maturityDate);
+            calendar.set(Calendar.YEAR, paymentYear);
+            calendar.set(Calendar.MONTH, paymentMonth);
+            long date = calendar.getTimeInMillis();
+
+            if (paymentCount == intervals) {
+                interest = totalPayment;
+                paymentCount = 1;
+                totalPayment = interestPayment;
+                paymentYear++;
+                paymentMonth = firstMonth;
+            } else {
+                interest = intervalPayment;
+                paymentCount++;
+                totalPayment -= intervalPayment;
+                paymentMonth += paymentInterval;
+            }
+
+            //
+            // Calculate the amortized payment based on the yield-to-maturity.
+            // The interest adjustment is the difference between the amortized
+            // yield and the coupon yield for the current cost basis.  For
+            // the first interest payment, we will use the accrued interest to
+            // prorate the adjustment amount.
+            //
+            amortizedPayment = (double)Math.round(currentBasis*intervalYield)/100.0;
+            adjustment = amortizedPayment-interest;
+
+            if (schedule.size() == 0 && accruedInterest != 0.0 && interest != 0.0) {
+                double ratio = 1.00-(accruedInterest/interest);
+                adjustment *= ratio;
+            }
+
+            //
+            // Adjust the current basis based on the amortization amount.
+            // We will stop amortizing if we reach the face value of the bond
+            // or this is the final interest payment.
+            //
+            currentBasis += adjustment;
+            if ((adjustment > 0.0 && currentBasis > faceValue) ||
+                        (adjustment < 0.0 && currentBasis < faceValue)) {
+
+                adjustment -= currentBasis-faceValue;
+                currentBasis = faceValue;
+            } else if (done) {
+                adjustment += faceValue-currentBasis;
+                currentBasis = faceValue;
+            }
+
+            schedule.add(date, interest, adjustment, currentBasis);
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Amortization schedule stored as parallel arrays
+     */
+    public static final class Schedule {
+
+        /** Number of entries */
+        private int count;
+
+        /** Payment dates */
+        private long[] dates;
+
+        /** Interest payments */
+        private double[] interest;
+
+        /** Interest adjustments */
+        private double[] adjustments;
+
+        /** Updated cost basis */
+        private double[] costBasis;
+
+        /**
+         * Create an empty schedule
+         *
+         * @param       capacity        Initial capacity
+         */
+        private Schedule(int capacity) {
+            capacity = Math.max(capacity, 4);
+            dates = new long[capacity];
+            interest = new double[capacity];
+            adjustments = new double[capacity];
+            costBasis = new double[capacity];
+        }
+
+        /**
+         * Add a schedule entry
+         *
+         * @param       date            Payment date
+         * @param       payment         Interest payment
+         * @param       adjustment      Interest adjustment
+         * @param       basis           Updated cost basis
+         */
+        private void add(long date, double payment, double adjustment, double basis) {
+            if (count == dates.length) {
+                int capacity = count*2;
+                dates = Arrays.copyOf(dates, capacity);
+                interest = Arrays.copyOf(interest, capacity);
+                adjustments = Arrays.copyOf(adjustments, capacity);
+                costBasis = Arrays.copyOf(costBasis, capacity);
+            }
+
+            dates[count] = date;
+            interest[count] = payment;
+            adjustments[count] = adjustment;
+            costBasis[count] = basis;
+            count++;
+        }
+
+        /**
+         * Get the number of schedule entries
+         *
+         * @return                      Number of entries
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Get the payment date for an entry
+         *
+         * @param       index           Entry index
+         * @return                      Payment date
+         */
+        public Date getDate(int index) {
+            return new Date(dates[index]);
+        }
+
+        /**
+         * Get the interest payment for an entry
+         *
+         * @param       index           Entry index
+         * @return                      Interest payment
+         */
+        public double getInterest(int index) {
+            return interest[index];
+        }
+
+        /**
+         * Get the interest adjustment for an entry.  The adjustment is positive
+         * for accretion and negative for amortization.
+         *
+         * @param       index           Entry index
+         * @return                      Interest adjustment
+         */
+        public double getAdjustment(int index) {
+            return adjustments[index];
+        }
+
+        /**
+         * Get the updated cost basis for an entry
+         *
+         * @param       index           Entry index
+         * @return                      Cost basis
+         */
+        public double getCostBasis(int index) {
+            return costBasis[index];
+        }
+    }
+
+    /**
+     * Purchase lot
+     */
+    private static final class Lot {
+
+        /** Security */
+        private final SecurityRecord security;
+
+        /** Purchase date */
+        private final Date date;
+
+        /** Number of shares purchased */
+        private final double shares;
+
+        /** Purchase cost */
+        private final double cost;
+
+        /** Number of shares still held */
+        private double remaining;
+
+        /** Sale times */
+        private long[] saleTimes = new long[0];
+
+        /** Fraction of the lot held after each sale */
+        private double[] saleRatios = new double[0];
+
+        /**
+         * Create a purchase lot
+         *
+         * @param       security        Security
+         * @param       date            Purchase date
+         * @param       shares          Number of shares
+         * @param       cost            Purchase cost
+         */
+        private Lot(SecurityRecord security, Date date, double shares, double cost) {
+            this.security = security;
+            this.date = date;
+            this.shares = shares;
+            this.cost = cost;
+            this.remaining = shares;
+        }
+
+        /**
+         * Sell shares from the lot
+         *
+         * @param       time            Sale time
+         * @param       sold            Number of shares sold
+         */
+        private void sell(long time, double sold) {
+            remaining -= sold;
+            int count = saleTimes.length;
+            saleTimes = Arrays.copyOf(saleTimes, count+1);
+            saleRatios = Arrays.copyOf(saleRatios, count+1);
+            saleTimes[count] = time;
+            saleRatios[count] = (remaining > 0.00005 ? remaining/shares : 0.0);
+        }
+
+        /**
+         * Get the fraction of the lot held at a given time.  Shares sold on the
+         * payment date do not receive the payment.
+         *
+         * @param       time            Payment time
+         * @return                      Fraction of the lot
+         */
+        private double getRatio(long time) {
+            double ratio = 1.0;
+            for (int i=0; i<saleTimes.length && saleTimes[i]<=time; i++)
+                ratio = saleRatios[i];
+
+            return ratio;
+        }
+    }
+
+    /**
+     * Schedule cache key
+     */
+    private static final class Key {
+
+        /** Security identifier */
+        private final int securityID;
+
+        /** Purchase time */
+        private final long purchaseTime;
+
+        /** Number of shares */
+        private final double shares;
+
+        /** Purchase cost */
+        private final double cost;
+
+        /** Maturity time */
+        private final long maturityTime;
+
+        /** Coupon rate */
+        private final double couponRate;
+
+        /** Payment type */
+        private final int paymentType;
+
+        /**
+         * Create a cache key
+         *
+         * @param       security        Security
+         * @param       purchaseDate    Purchase date
+         * @param       shares          Number of shares
+         * @param       cost            Purchase cost
+         */
+        private Key(SecurityRecord security, Date purchaseDate, double shares, double cost) {
+            this.securityID = security.getID();
+            this.purchaseTime = purchaseDate.getTime();
+            this.shares = shares;
+            this.cost = cost;
+            this.maturityTime = security.getMaturityDate().getTime();
+            this.couponRate = security.getCouponRate();
+            this.paymentType = security.getPaymentType();
+        }
+
+        /**
+         * Check if two keys are equal
+         *
+         * @param       obj             Object to compare
+         * @return                      TRUE if the keys are equal
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key o = (Key)obj;
+            return (securityID == o.securityID && purchaseTime == o.purchaseTime &&
+                    shares == o.shares && cost == o.cost && maturityTime == o.maturityTime &&
+                    couponRate == o.couponRate && paymentType == o.paymentType);
+        }
+
+        /**
+         * Get the hash code
+         *
+         * @return                      Hash code
+         */
+        @Override
+        public int hashCode() {
+            long bits = purchaseTime*31+Double.doubleToLongBits(shares);
+            bits = bits*31+Double.doubleToLongBits(cost);
+            return securityID^(int)(bits^(bits>>>32));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bond portfolio computes the yield to maturity, duration and convexity for
+ * each fixed-income holding (corporate bonds, municipal bonds, treasury notes and
+ * CDs) in all investment accounts.  A holding is included if the security has a
+ * maturity date later than the current date.
+ * <p>
+ * The face value for a bond or note share is 100 since bond prices are quoted as a
+ * percentage of the face value.  The face value for a CD share is 1 since the share
+ * price for a CD is normally 1.  The current security price is used as the market
+ * price and the average cost is used if the security does not have a price.
+ * <p>
+ * The results are cached until a security price or security definition changes or
+ * a fixed-income transaction is added or removed.  The cache is discarded when a new
+ * database is loaded.
+ */
+public final class BondPortfolio {
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            BondPortfolio.transactionChanged(event.getTransaction());
+        }
+    };
+
+    /**
+     * This class is not instantiated
+     */
+    private BondPortfolio() {
+    }
+
+    /**
+     * Get the analysis for each fixed-income holding
+     *
+     * @return                      List of holdings sorted by security name
+     */
+    public static synchronized List<BondAnalysis> getResults() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.bondResults == null)
+            context.bondResults = Collections.unmodifiableList(computeResults(Main.getCurrentDate()));
+
+        return context.bondResults;
+    }
+
+    /**
+     * Discard the cached results
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext.getCurrent().bondResults = null;
+    }
+
+    /**
+     * A security price or security definition has changed
+     *
+     * @param       security        Security
+     */
+    public static synchronized void priceChanged(SecurityRecord security) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.bondResults != null && isFixedIncome(security))
+            context.bondResults = null;
+    }
+
+    /**
+     * A transaction has been added to or removed from the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static synchronized void transactionChanged(TransactionRecord t) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        SecurityRecord security = t.getSecurity();
+        if (context.bondResults != null && security != null && isFixedIncome(security))
+            context.bondResults = null;
+    }
+
+    /**
+     * Check if a security is a fixed-income security
+     *
+     * @param       security        Security
+     * @return                      TRUE if this is a fixed-income security
+     */
+    public static boolean isFixedIncome(SecurityRecord security) {
+        switch (security.getType()) {
+            case SecurityRecord.CORPORATE_BOND:
+            case SecurityRecord.MUNICIPAL_BOND:
+            case SecurityRecord.TREASURY_NOTE:
+            case SecurityRecord.CD:
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the face value for one share of a fixed-income security
+     *
+     * @param       security        Security
+     * @return                      Face value per share
+     */
+    public static double getShareFaceValue(SecurityRecord security) {
+        return (security.getType() == SecurityRecord.CD ? 1.0 : 100.0);
+    }
+
+    /**
+     * Get the number of coupon payments per year for a security
+     *
+     * @param       security        Security
+     * @return                      Number of payments or zero if interest is paid at maturity
+     */
+    public static int getPaymentsPerYear(SecurityRecord security) {
+        int payments;
+        switch (security.getPaymentType()) {
+            case SecurityRecord.MONTHLY_PAYMENTS:
+                payments = 12;
+                break;
+
+            case SecurityRecord.QUARTERLY_PAYMENTS:
+                payments = 4;
+                break;
+
+            case SecurityRecord.SEMI_ANNUAL_PAYMENTS:
+                payments = 2;
+                break;
+
+            case SecurityRecord.ANNUAL_PAYMENTS:
+                payments = 1;
+                break;
+
+            default:
+                payments = 0;
+        }
+
+        return payments;
+    }
+
+    /**
+     * Compute the analysis for each fixed-income holding
+     *
+     * @param       currentDate     Settlement date
+     * @return                      List of holdings
+     */
+    private static List<BondAnalysis> computeResults(Date currentDate) {
+
+        //
+        // Build the fixed-income holdings.  The holdings are keyed by the
+        // account and security identifiers.
+        //
+        Map<Long, SecurityHolding> holdings = new LinkedHashMap<>();
+        for (TransactionRecord t : TransactionRecord.getAllTransactions()) {
+            SecurityRecord security = t.getSecurity();
+            if (security == null || !isFixedIncome(security))
+                continue;
+
+            Date maturityDate = security.getMaturityDate();
+            if (maturityDate == null || maturityDate.compareTo(currentDate) <= 0)
+                continue;
+
+            AccountRecord account = t.getAccount();
+            Long key = ((long)account.getID()<<32)|(long)security.getID();
+            SecurityHolding holding = holdings.get(key);
+            if (holding == null) {
+                if (t.getAction() != TransactionRecord.BUY)
+                    continue;
+
+                holding = new SecurityHolding(account, security);
+                holdings.put(key, holding);
+            }
+
+            holding.processTransaction(t);
+        }
+
+        //
+        // Build the cash flows once for each security.  The cash flows are
+        // for a single share.
+        //
+        Map<Integer, BondYield.CashFlows> cashFlows = new LinkedHashMap<>();
+        List<BondAnalysis> analysisList = new ArrayList<>(holdings.size());
+        for (SecurityHolding h : holdings.values()) {
+            double shares = h.getTotalShares();
+            if (shares <= 0.0)
+                continue;
+
+            SecurityRecord security = h.getSecurity();
+            BondYield.CashFlows flows = cashFlows.get(security.getID());
+            if (flows == null) {
+                flows = BondYield.getCashFlows(currentDate, security.getMaturityDate(),
+                                               getShareFaceValue(security), security.getCouponRate(),
+                                               getPaymentsPerYear(security));
+                cashFlows.put(security.getID(), flows);
+            }
+
+            double price = security.getPrice();
+            if (price == 0.0)
+                price = h.getTotalCost()/shares;
+
+            double[] times = flows.getTimes();
+            double[] amounts = flows.getAmounts();
+            double yield = flows.getYield(price);
+            double duration = (Double.isNaN(yield) ? 0.0 : BondYield.getDuration(times, amounts, yield));
+            double convexity = (Double.isNaN(yield) ? 0.0 : BondYield.getConvexity(times, amounts, yield));
+            analysisList.add(new BondAnalysis(h.getAccount(), security, shares*getShareFaceValue(security),
+                                              (double)Math.round(shares*price*100.0)/100.0,
+                                              yield, duration, convexity));
+        }
+
+        //
+        // Sort the results by the security name and then by the account name
+        //
+        Collections.sort(analysisList);
+        return analysisList;
+    }
+
+    /**
+     * Analysis results for a fixed-income holding
+     */
+    public static final class BondAnalysis implements Comparable<BondAnalysis> {
+
+        /** Investment account */
+        private final AccountRecord account;
+
+        /** Security */
+        private final SecurityRecord security;
+
+        /** Face value */
+        private final double faceValue;
+
+        /** Market value */
+        private final double marketValue;
+
+        /** Yield to maturity */
+        private final double yield;
+
+        /** Macaulay duration */
+        private final double duration;
+
+        /** Convexity */
+        private final double convexity;
+
+        /**
+         * Create the analysis results for a holding
+         *
+         * @param       account         Investment account
+         * @param       security        Security
+         * @param       faceValue       Face value
+         * @param       marketValue     Market value
+         * @param       yield           Yield to maturity
+         * @param       duration        Macaulay duration
+         * @param       convexity       Convexity
+         */
+        private BondAnalysis(AccountRecord account, SecurityRecord security, double faceValue,
+                             double marketValue, double yield, double duration, double convexity) {
+            this.account = account;
+            this.security = security;
+            this.faceValue = faceValue;
+            this.marketValue = marketValue;
+            this.yield = yield;
+            this.duration = duration;
+            this.convexity = convexity;
+        }
+
+        /**
+         * Get the investment account
+         *
+         * @return                      Account
+         */
+        public AccountRecord getAccount() {
+            return account;
+        }
+
+        /**
+         * Get the security
+         *
+         * @return                      Security
+         */
+        public SecurityRecord getSecurity() {
+            return security;
+        }
+
+        /**
+         * Get the face value
+         *
+         * @return                      Face value
+         */
+        public double getFaceValue() {
+            return faceValue;
+        }
+
+        /**
+         * Get the market value
+         *
+         * @return                      Market value
+         */
+        public double getMarketValue() {
+            return marketValue;
+        }
+
+        /**
+         * Get the yield to maturity
+         *
+         * @return                      Yield (1.00 = 100%) or NaN if the yield could not be computed
+         */
+        public double getYield() {
+            return yield;
+        }
+
+        /**
+         * Get the Macaulay duration
+         *
+         * @return                      Duration in years
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * Get the modified duration
+         *
+         * @return                      Modified duration
+         */
+        public double getModifiedDuration() {
+            return (Double.isNaN(yield) ? 0.0 : duration/(1.0+yield));
+        }
+
+        /**
+         * Get the convexity
+         *
+         * @return                      Convexity
+         */
+        public double getConvexity() {
+            return convexity;
+        }
+
+        /**
+         * Compare two results
+         *
+         * @param       o               Results to compare
+         * @return                      Negative, zero or positive
+         */
+        @Override
+        public int compareTo(BondAnalysis o) {
+            int cmp = security.getName().compareTo(o.security.getName());
+            if (cmp == 0)
+                cmp = account.getName().compareTo(o.account.getName());
+
+            return cmp;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.List;
+
+import javax.swing.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Bond portfolio dialog.  The dialog displays the yield to maturity, duration and
+ * convexity for each fixed-income holding.
+ */
+public final class BondPortfolioDialog extends JDialog implements ActionListener {
+
+    /** Portfolio table column classes */
+    private static final Class<?>[] columnClasses = {
+        String.class, String.class, Double.class, Double.class, Double.class,
+        Double.class, Double.class};
+
+    /** Portfolio table column names */
+    private static final String[] columnNames = {
+        "Security", "Account", "Face Value", "Market Value", "Yield",
+        "Duration", "Convexity"};
+
+    /** Portfolio table column types */
+    private static final int[] columnTypes = {
+        SizedTable.SECURITY_COLUMN, SizedTable.NAME_COLUMN, SizedTable.AMOUNT_COLUMN,
+        SizedTable.AMOUNT_COLUMN, SizedTable.PERCENT_COLUMN, SizedTable.PRICE_COLUMN,
+        SizedTable.PRICE_COLUMN};
+
+    /**
+     * Create the dialog
+     *
+     * @param       parent          Parent window
+     */
+    public BondPortfolioDialog(Window parent) {
+        super(parent, "Bond Portfolio", Dialog.ModalityType.DOCUMENT_MODAL);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Create the portfolio table
+        //
+        JTable table = new SizedTable(new PortfolioTableModel(BondPortfolio.getResults()), columnTypes);
+        Dimension tableSize = table.getPreferredSize();
+        table.setPreferredScrollableViewportSize(new Dimension(tableSize.width, 15*table.getRowHeight()));
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+
+        //
+        // Create the buttons (Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(scrollPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * Show the bond portfolio dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(Window parent) {
+        try {
+            JDialog dialog = new BondPortfolioDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "done" - Done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Portfolio table model
+     */
+    private class PortfolioTableModel extends AbstractTableModel {
+
+        /** Portfolio holdings */
+        private final List<BondPortfolio.BondAnalysis> listData;
+
+        /**
+         * Create the table model
+         *
+         * @param       listData    Portfolio holdings
+         */
+        public PortfolioTableModel(List<BondPortfolio.BondAnalysis> listData) {
+            this.listData = listData;
+        }
+
+        /**
+         * Get the number of columns in the table
+         *
+         * @return                  The number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * Get the column class
+         *
+         * @param       column      Column number
+         * @return                  The column class
+         */
+        public Class<?> getColumnClass(int column) {
+            return columnClasses[column];
+        }
+
+        /**
+         * Get the column name
+         *
+         * @param       column      Column number
+         * @return                  Column name
+         */
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        /**
+         * Get the number of rows in the table
+         *
+         * @return                  The number of rows
+         */
+        public int getRowCount() {
+            return listData.size();
+        }
+
+        /**
+         * Get the value for a cell
+         *
+         * @param       row         Row number
+         * @param       column      Column number
+         * @return                  Returns the object associated with the cell
+         */
+        public Object getValueAt(int row, int column) {
+            if (row >= listData.size())
+                throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
+
+            BondPortfolio.BondAnalysis a = listData.get(row);
+            Object value;
+            switch (column) {
+                case 0:                                 // Security
+                    value = a.getSecurity().getName();
+                    break;
+
+                case 1:                                 // Account
+                    value = a.getAccount().getName();
+                    break;
+
+                case 2:                                 // Face value
+                    value = new Double(a.getFaceValue());
+                    break;
+
+                case 3:                                 // Market value
+                    value = new Double(a.getMarketValue());
+                    break;
+
+                case 4:                                 // Yield
+                    value = (Double.isNaN(a.getYield()) ? null : new Double(a.getYield()));
+                    break;
+
+                case 5:                                 // Duration
+                    value = new Double(a.getDuration());
+                    break;
+
+                case 6:                                 // Convexity
+                    value = new Double(a.getConvexity());
+                    break;
+
+                default:
+                    throw new IndexOutOfBoundsException("Table column "+column+" is not valid");
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Yield and price calculations for a fixed-income security.  The cash flows are
+ * stored as parallel arrays containing the time of each payment in years from the
+ * settlement date and the payment amount.  Yields are annual effective rates, so the
+ * present value of a payment of A at time T is A/(1+Y)**T.
+ * <p>
+ * The yield for a price is found using Newton-Raphson iteration starting with the
+ * conventional yield estimate.  If the iteration does not converge, the yield is
+ * bracketed and then found using Brent's method, which always converges once the
+ * root is bracketed.
+ */
+public final class BondYield {
+
+    /** Milliseconds per day */
+    private static final long DAY_MILLIS = 24L*60L*60L*1000L;
+
+    /** Days per year */
+    private static final double DAYS_PER_YEAR = 365.25;
+
+    /** Yield tolerance */
+    private static final double TOLERANCE = 1.0e-10;
+
+    /** Maximum number of Newton-Raphson iterations */
+    private static final int MAX_NEWTON_ITERATIONS = 50;
+
+    /** Maximum number of Brent iterations */
+    private static final int MAX_BRENT_ITERATIONS = 200;
+
+    /** Lowest yield considered by the solver */
+    private static final double MIN_YIELD = -0.99;
+
+    /** Highest yield considered by the solver */
+    private static final double MAX_YIELD = 100.0;
+
+    /**
+     * This class is not instantiated
+     */
+    private BondYield() {
+    }
+
+    /**
+     * Build the cash flows for a fixed-income security.  Coupon dates are counted
+     * back from the maturity date.  The accrued interest is the portion of the next
+     * coupon payment that has been earned by the seller as of the settlement date.
+     *
+     * @param       settlementDate      Settlement date
+     * @param       maturityDate        Maturity date
+     * @param       faceValue           Face value
+     * @param       couponRate          Annual coupon rate (1.00 = 100%)
+     * @param       paymentsPerYear     Number of coupon payments per year or zero for
+     *                                  a security that pays all interest at maturity
+     * @return                          Cash flows
+     */
+    public static CashFlows getCashFlows(Date settlementDate, Date maturityDate, double faceValue,
+                                         double couponRate, int paymentsPerYear) {
+        if (maturityDate.compareTo(settlementDate) <= 0)
+            throw new IllegalArgumentException("The maturity date must be later than the settlement date");
+
+        //
+        // A security without periodic payments pays the face value and the
+        // accumulated interest at maturity
+        //
+        if (paymentsPerYear == 0) {
+            double years = getYears(settlementDate, maturityDate);
+            return new CashFlows(new double[] {years},
+                                 new double[] {faceValue*(1.0+couponRate*years)}, 0.0);
+        }
+
+        //
+        // Locate the coupon dates by stepping back from the maturity date
+        //
+        int months = 12/paymentsPerYear;
+        double coupon = faceValue*couponRate/(double)paymentsPerYear;
+        double[] times = new double[16];
+        int count = 0;
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(maturityDate);
+        Date nextDate = maturityDate;
+        Date previousDate;
+        while (true) {
+            if (count == times.length)
+                times = Arrays.copyOf(times, count*2);
+
+            times[count++] = getYears(settlementDate, nextDate);
+            cal.add(Calendar.MONTH, -months);
+            previousDate = cal.getTime();
+            if (previousDate.compareTo(settlementDate) <= 0)
+                break;
+
+            nextDate = previousDate;
+        }
+
+        //
+        // Store the cash flows in date order
+        //
+        double[] flowTimes = new double[count];
+        double[] amounts = new double[count];
+        for (int i=0; i<count; i++) {
+            flowTimes[i] = times[count-1-i];
+            amounts[i] = coupon;
+        }
+
+        amounts[count-1] += faceValue;
+
+        //
+        // Compute the accrued interest for the current coupon period
+        //
+        double periodDays = (double)(nextDate.getTime()-previousDate.getTime())/(double)DAY_MILLIS;
+        double accruedDays = (double)(settlementDate.getTime()-previousDate.getTime())/(double)DAY_MILLIS;
+        double accruedInterest = (periodDays > 0.0 ? coupon*accruedDays/periodDays : 0.0);
+        return new CashFlows(flowTimes, amounts, accruedInterest);
+    }
+
+    /**
+     * Compute the price for a yield
+     *
+     * @param       times           Payment times in years
+     * @param       amounts         Payment amounts
+     * @param       yield           Annual yield (1.00 = 100%)
+     * @return                      Present value of the payments
+     */
+    public static double getPrice(double[] times, double[] amounts, double yield) {
+        double logRate = Math.log1p(yield);
+        double price = 0.0;
+        for (int i=0; i<times.length; i++)
+            price += amounts[i]*Math.exp(-times[i]*logRate);
+
+        return price;
+    }
+
+    /**
+     * Compute the yield for a price
+     *
+     * @param       times           Payment times in years
+     * @param       amounts         Payment amounts
+     * @param       price           Price including accrued interest
+     * @return                      Annual yield (1.00 = 100%) or NaN if there is no solution
+     */
+    public static double getYield(double[] times, double[] amounts, double price) {
+        if (times.length == 0 || price <= 0.0)
+            return Double.NaN;
+
+        //
+        // Estimate the yield using the total payments and the average term
+        //
+        double total = 0.0;
+        double term = 0.0;
+        for (int i=0; i<times.length; i++) {
+            total += amounts[i];
+            term += times[i]*amounts[i];
+        }
+
+        term = Math.max(term/total, 1.0/12.0);
+        double yield = Math.max((total/price-1.0)/term, MIN_YIELD/2.0);
+
+        //
+        // Refine the estimate using Newton-Raphson iteration.  The price and the
+        // derivative are computed in the same pass over the cash flows.
+        //
+        for (int iteration=0; iteration<MAX_NEWTON_ITERATIONS; iteration++) {
+            double logRate = Math.log1p(yield);
+            double value = -price;
+            double derivative = 0.0;
+            for (int i=0; i<times.length; i++) {
+                double pv = amounts[i]*Math.exp(-times[i]*logRate);
+                value += pv;
+                derivative -= times[i]*pv;
+            }
+
+            derivative /= (1.0+yield);
+            if (derivative == 0.0 || Double.isNaN(value))
+                break;
+
+            double step = value/derivative;
+            double nextYield = yield-step;
+            if (nextYield <= MIN_YIELD || nextYield >= MAX_YIELD || Double.isNaN(nextYield))
+                break;
+
+            yield = nextYield;
+            if (Math.abs(step) < TOLERANCE)
+                return yield;
+        }
+
+        //
+        // Newton-Raphson did not converge, so use Brent's method
+        //
+        return getYieldBrent(times, amounts, price);
+    }
+
+    /**
+     * Compute the Macaulay duration
+     *
+     * @param       times           Payment times in years
+     * @param       amounts         Payment amounts
+     * @param       yield           Annual yield (1.00 = 100%)
+     * @return                      Duration in years
+     */
+    public static double getDuration(double[] times, double[] amounts, double yield) {
+        double logRate = Math.log1p(yield);
+        double price = 0.0;
+        double weighted = 0.0;
+        for (int i=0; i<times.length; i++) {
+            double pv = amounts[i]*Math.exp(-times[i]*logRate);
+            price += pv;
+            weighted += times[i]*pv;
+        }
+
+        return (price != 0.0 ? weighted/price : 0.0);
+    }
+
+    /**
+     * Compute the convexity
+     *
+     * @param       times           Payment times in years
+     * @param       amounts         Payment amounts
+     * @param       yield           Annual yield (1.00 = 100%)
+     * @return                      Convexity
+     */
+    public static double getConvexity(double[] times, double[] amounts, double yield) {
+        double logRate = Math.log1p(yield);
+        double price = 0.0;
+        double weighted = 0.0;
+        for (int i=0; i<times.length; i++) {
+            double pv = amounts[i]*Math.exp(-times[i]*logRate);
+            price += pv;
+            weighted += times[i]*(times[i]+1.0)*pv;
+        }
+
+        return (price != 0.0 ? weighted/(price*(1.0+yield)*(1.0+yield)) : 0.0);
+    }
+
+    /**
+     * Get the number of years between two dates
+     *
+     * @param       startDate       Start date
+     * @param       endDate         End date
+     * @return                      Number of years
+     */
+    public static double getYears(Date startDate, Date endDate) {
+        return (double)(endDate.getTime()-startDate.getTime())/(double)DAY_MILLIS/DAYS_PER_YEAR;
+    }
+
+    /**
+     * Compute the yield using Brent's method
+     *
+     * @param       times           Payment times in years
+     * @param       amounts         Payment amounts
+     * @param       price           Price including accrued interest
+     * @return                      Annual yield or NaN if the yield cannot be bracketed
+     */
+    static double getYieldBrent(double[] times, double[] amounts, double price) {
+
+        //
+        // Bracket the yield.  The price decreases as the yield increases, so
+        // we will raise the upper bound until the price is below the target.
+        //
+        double a = MIN_YIELD;
+        double fa = getPrice(times, amounts, a)-price;
+        double b = 0.10;
+        double fb = getPrice(times, amounts, b)-price;
+        while (fb > 0.0 && b < MAX_YIELD) {
+            b = Math.min(b*2.0, MAX_YIELD);
+            fb = getPrice(times, amounts, b)-price;
+        }
+
+        if (fa*fb > 0.0)
+            return Double.NaN;
+
+        //
+        // Find the root using inverse quadratic interpolation with bisection
+        // as the fallback
+        //
+        double c = a;
+        double fc = fa;
+        double d = b-a;
+        double e = d;
+        for (int iteration=0; iteration<MAX_BRENT_ITERATIONS; iteration++) {
+            if (fb*fc > 0.0) {
+                c = a;
+                fc = fa;
+                d = b-a;
+                e = d;
+            }
+
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+
+            double tolerance = 2.0*Math.ulp(b)+0.5*TOLERANCE;
+            double m = 0.5*(c-b);
+            if (Math.abs(m) <= tolerance || fb == 0.0)
+                return b;
+
+            if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+                double p, q;
+                double s = fb/fa;
+                if (a == c) {
+                    p = 2.0*m*s;
+                    q = 1.0-s;
+                } else {
+                    double r = fb/fc;
+                    q = fa/fc;
+                    p = s*(2.0*m*q*(q-r)-(b-a)*(r-1.0));
+                    q = (q-1.0)*(r-1.0)*(s-1.0);
+                }
+
+                if (p > 0.0)
+                    q = -q;
+                else
+                    p = -p;
+
+                if (2.0*p < Math.min(3.0*m*q-Math.abs(tolerance*q), Math.abs(e*q))) {
+                    e = d;
+                    d = p/q;
+                } else {
+                    d = m;
+                    e = d;
+                }
+            } else {
+                d = m;
+                e = d;
+            }
+
+            a = b;
+            fa = fb;
+            b += (Math.abs(d) > tolerance ? d : (m > 0.0 ? tolerance : -tolerance));
+            fb = getPrice(times, amounts, b)-price;
+        }
+
+        return b;
+    }
+
+    /**
+     * Cash flows for a fixed-income security
+     */
+    public static final class CashFlows {
+
+        /** Payment times in years from the settlement date */
+        private final double[] times;
+
+        /** Payment amounts */
+        private final double[] amounts;
+
+        /** Accrued interest as of the settlement date */
+        private final double accruedInterest;
+
+        /**
+         * Create the cash flows
+         *
+         * @param       times           Payment times in years
+         * @param       amounts         Payment amounts
+         * @param       accruedInterest Accrued interest
+         */
+        private CashFlows(double[] times, double[] amounts, double accruedInterest) {
+            this.times = times;
+            this.amounts = amounts;
+            this.accruedInterest = accruedInterest;
+        }
+
+        /**
+         * Get the payment times
+         *
+         * @return                      Payment times in years from the settlement date
+         */
+        public double[] getTimes() {
+            return times;
+        }
+
+        /**
+         * Get the payment amounts
+         *
+         * @return                      Payment amounts
+         */
+        public double[] getAmounts() {
+            return amounts;
+        }
+
+        /**
+         * Get the accrued interest
+         *
+         * @return                      Accrued interest as of the settlement date
+         */
+        public double getAccruedInterest() {
+            return accruedInterest;
+        }
+
+        /**
+         * Compute the yield for a price that does not include the accrued interest
+         *
+         * @param       price           Price without accrued interest
+         * @return                      Annual yield (1.00 = 100%) or NaN if there is no solution
+         */
+        public double getYield(double price) {
+            return BondYield.getYield(times, amounts, price+accruedInterest);
+        }
+    }
+}
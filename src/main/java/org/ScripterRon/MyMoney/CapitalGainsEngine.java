@@ -0,0 +1,369 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The capital gains engine replays the investment transactions and builds the
+ * security holdings and the associated capital gains.
+ * <p>
+ * Each (account, security) pair is independent of every other pair, so the
+ * investment transactions are partitioned by holding and each partition is
+ * replayed on the common ForkJoin pool.  An EXCHANGE or SPIN_OFF transaction
+ * is placed in the partitions for both the base security and the new security.
+ * The capital gains for a single holding are generated in transaction order and
+ * are thus already sorted by the sell date, so the final capital gains list is
+ * produced by a k-way merge of the holding lists.
+ * <p>
+ * The security holdings are sorted by security name and then by the order in
+ * which the holding was first referenced.  This is the same order produced by
+ * SecurityHolding.updateSecurityHolding().
+ */
+public final class CapitalGainsEngine {
+
+    /** Number of holdings replayed by a single task */
+    private static final int TASK_THRESHOLD = 4;
+
+    /** Holding partitions */
+    private final List<Partition> partitions;
+
+    /** Security holdings */
+    private final List<SecurityHolding> holdings;
+
+    /**
+     * Build the security holdings using all investment transactions up to and
+     * including the end date
+     *
+     * @param       endDate             End date
+     * @param       excludeTaxDeferred  TRUE to exclude tax-deferred accounts
+     */
+    public CapitalGainsEngine(Date endDate, boolean excludeTaxDeferred) {
+        this(TransactionRecord.getAllTransactions(), endDate, excludeTaxDeferred);
+    }
+
+    /**
+     * Build the security holdings using all investment transactions up to and
+     * including the end date
+     *
+     * @param       transactions        Transaction list sorted by date
+     * @param       endDate             End date
+     * @param       excludeTaxDeferred  TRUE to exclude tax-deferred accounts
+     */
+    public CapitalGainsEngine(List<TransactionRecord> transactions, Date endDate,
+                                        boolean excludeTaxDeferred) {
+        Map<Long, Partition> partitionMap = new HashMap<>();
+        partitions = new ArrayList<>();
+
+        //
+        // Partition the investment transactions by holding
+        //
+        for (TransactionRecord t : transactions) {
+            if (t.getDate().compareTo(endDate) > 0)
+                break;
+
+            SecurityRecord s = t.getSecurity();
+            AccountRecord a = t.getAccount();
+            if (s == null || (excludeTaxDeferred && a.isTaxDeferred()))
+                continue;
+
+            addTransaction(partitionMap, a, s, t);
+            int action = t.getAction();
+            if (action == TransactionRecord.EXCHANGE || action == TransactionRecord.SPIN_OFF)
+                addTransaction(partitionMap, a, t.getNewSecurity(), t);
+        }
+
+        //
+        // Replay the holdings.  The partitions are processed in parallel.
+        //
+        if (!partitions.isEmpty())
+            ForkJoinPool.commonPool().invoke(new ReplayTask(partitions, 0, partitions.size()));
+
+        //
+        // Sort the holdings by security name (the sort is stable, so holdings for the
+        // same security remain in the order they were first referenced)
+        //
+        Collections.sort(partitions, new Comparator<Partition>() {
+            @Override
+            public int compare(Partition p1, Partition p2) {
+                return p1.security.getName().compareTo(p2.security.getName());
+            }
+        });
+
+        holdings = new ArrayList<>(partitions.size());
+        for (Partition p : partitions) {
+            if (p.holding != null)
+                holdings.add(p.holding);
+        }
+    }
+
+    /**
+     * Add a transaction to a holding partition
+     *
+     * @param       partitionMap    Partition map
+     * @param       account         Holding account
+     * @param       security        Holding security
+     * @param       t               Transaction
+     */
+    private void addTransaction(Map<Long, Partition> partitionMap, AccountRecord account,
+                                        SecurityRecord security, TransactionRecord t) {
+        Long key = ((long)account.getID()<<32) | (security.getID()&0xffffffffL);
+        Partition p = partitionMap.get(key);
+        if (p == null) {
+            p = new Partition(account, security);
+            partitionMap.put(key, p);
+            partitions.add(p);
+        }
+
+        p.transactions.add(t);
+    }
+
+    /**
+     * Get the security holdings sorted by security name
+     *
+     * @return                      Security holdings
+     */
+    public List<SecurityHolding> getHoldings() {
+        return holdings;
+    }
+
+    /**
+     * Get the names of securities that were sold before they were bought.  The
+     * transactions for these securities are ignored until a BUY transaction is
+     * found.
+     *
+     * @return                      List of security names
+     */
+    public List<String> getMissingBuys() {
+        List<String> names = new ArrayList<>();
+        for (Partition p : partitions) {
+            if (p.missingBuy && !names.contains(p.security.getName()))
+                names.add(p.security.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * Get the capital gains with a sell date within the specified date range.  The
+     * list is sorted by the sell date.
+     *
+     * @param       startDate       Start date
+     * @param       endDate         End date
+     * @return                      Capital gains list
+     */
+    public List<CapitalGainRecord> getCapitalGains(Date startDate, Date endDate) {
+        List<CapitalGainRecord> capitalGains = new ArrayList<>(50);
+
+        //
+        // Position a cursor at the first capital gain within the date range
+        // for each holding
+        //
+        PriorityQueue<GainCursor> queue = new PriorityQueue<>(Math.max(holdings.size(), 1));
+        for (int index=0; index<holdings.size(); index++) {
+            List<CapitalGainRecord> gains = holdings.get(index).getCapitalGains();
+            int low = 0;
+            int high = gains.size();
+            while (low < high) {
+                int mid = (low+high)>>>1;
+                if (gains.get(mid).getSellDate().compareTo(startDate) < 0)
+                    low = mid+1;
+                else
+                    high = mid;
+            }
+
+            if (low < gains.size() && gains.get(low).getSellDate().compareTo(endDate) <= 0)
+                queue.add(new GainCursor(gains, low, index));
+        }
+
+        //
+        // Merge the holding lists.  Capital gains with the same sell date are
+        // ordered by holding.
+        //
+        while (!queue.isEmpty()) {
+            GainCursor cursor = queue.poll();
+            capitalGains.add(cursor.gain);
+            if (cursor.advance() && cursor.gain.getSellDate().compareTo(endDate) <= 0)
+                queue.add(cursor);
+        }
+
+        return capitalGains;
+    }
+
+    /**
+     * Holding partition
+     */
+    private static final class Partition {
+
+        /** Holding account */
+        private final AccountRecord account;
+
+        /** Holding security */
+        private final SecurityRecord security;
+
+        /** Transactions for the holding */
+        private final List<TransactionRecord> transactions = new ArrayList<>();
+
+        /** Security holding or null if no BUY transaction was found */
+        private SecurityHolding holding;
+
+        /** A transaction was found before the first BUY transaction */
+        private boolean missingBuy;
+
+        /**
+         * Create a holding partition
+         *
+         * @param       account         Holding account
+         * @param       security        Holding security
+         */
+        private Partition(AccountRecord account, SecurityRecord security) {
+            this.account = account;
+            this.security = security;
+        }
+
+        /**
+         * Replay the transactions for this holding.  A new holding is created by
+         * a BUY transaction or when the security is received by an EXCHANGE or
+         * SPIN_OFF transaction.
+         */
+        private void replay() {
+            for (TransactionRecord t : transactions) {
+                if (holding == null) {
+                    if (t.getSecurity() == security && t.getAction() != TransactionRecord.BUY) {
+                        missingBuy = true;
+                        continue;
+                    }
+
+                    holding = new SecurityHolding(account, security);
+                }
+
+                holding.processTransaction(t);
+            }
+        }
+    }
+
+    /**
+     * Replay a range of holding partitions
+     */
+    private static final class ReplayTask extends RecursiveAction {
+
+        /** Holding partitions */
+        private final List<Partition> partitions;
+
+        /** Start index (inclusive) */
+        private final int start;
+
+        /** End index (exclusive) */
+        private final int end;
+
+        /**
+         * Create the replay task
+         *
+         * @param       partitions      Holding partitions
+         * @param       start           Start index
+         * @param       end             End index
+         */
+        private ReplayTask(List<Partition> partitions, int start, int end) {
+            this.partitions = partitions;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Replay the partitions, splitting the range if it is too large
+         */
+        @Override
+        protected void compute() {
+            if (end-start <= TASK_THRESHOLD) {
+                for (int i=start; i<end; i++)
+                    partitions.get(i).replay();
+            } else {
+                int mid = (start+end)>>>1;
+                invokeAll(new ReplayTask(partitions, start, mid),
+                          new ReplayTask(partitions, mid, end));
+            }
+        }
+    }
+
+    /**
+     * Cursor for a holding capital gains list
+     */
+    private static final class GainCursor implements Comparable<GainCursor> {
+
+        /** Capital gains list */
+        private final List<CapitalGainRecord> gains;
+
+        /** Holding index */
+        private final int holdingIndex;
+
+        /** Current list index */
+        private int index;
+
+        /** Current capital gain */
+        private CapitalGainRecord gain;
+
+        /**
+         * Create the cursor
+         *
+         * @param       gains           Capital gains list
+         * @param       index           Starting list index
+         * @param       holdingIndex    Holding index
+         */
+        private GainCursor(List<CapitalGainRecord> gains, int index, int holdingIndex) {
+            this.gains = gains;
+            this.index = index;
+            this.holdingIndex = holdingIndex;
+            this.gain = gains.get(index);
+        }
+
+        /**
+         * Advance to the next capital gain
+         *
+         * @return                      TRUE if there is another capital gain
+         */
+        private boolean advance() {
+            if (++index >= gains.size())
+                return false;
+
+            gain = gains.get(index);
+            return true;
+        }
+
+        /**
+         * Compare two cursors using the sell date and then the holding index
+         *
+         * @param       o               Cursor to compare
+         * @return                      Negative, zero or positive
+         */
+        @Override
+        public int compareTo(GainCursor o) {
+            int cmp = gain.getSellDate().compareTo(o.gain.getSellDate());
+            if (cmp == 0)
+                cmp = Integer.compare(holdingIndex, o.holdingIndex);
+
+            return cmp;
+        }
+    }
+}
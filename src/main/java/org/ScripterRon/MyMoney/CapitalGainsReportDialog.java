@@ -16,7 +16,6 @@
 package org.ScripterRon.MyMoney;
 import org.ScripterRon.Report.*;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -343,9 +342,6 @@ public final class CapitalGainsReportDialog extends JDialog implements ActionLis
         
         /** Capital gains list */
         private List<CapitalGainRecord> capitalGains;
-        
-        /** Security holdings list */
-        private List<SecurityHolding> securityHoldings;
 
         /**
          * Create the report model
@@ -356,54 +352,19 @@ public final class CapitalGainsReportDialog extends JDialog implements ActionLis
         TransactionModel(Date startDate, Date endDate) {
 
             //
-            // Create the report lists
+            // Build the security holdings for investment transactions in taxable
+            // accounts (income from tax-deferred accounts is taxed as ordinary income)
             //
-            capitalGains = new ArrayList<>(50);
-            securityHoldings = new ArrayList<>(SecurityRecord.securities.size());
+            CapitalGainsEngine engine = new CapitalGainsEngine(endDate, true);
+            for (String name : engine.getMissingBuys())
+                JOptionPane.showMessageDialog(Main.mainWindow,
+                                "Missing BUY transaction for security "+name,
+                                "Warning", JOptionPane.WARNING_MESSAGE);
 
             //
-            // Process the investment transactions and build the security holdings
-            //
-            for (TransactionRecord t : TransactionRecord.transactions) {
-                //
-                // Stop when we pass the end date
-                //
-                if (t.getDate().compareTo(endDate) > 0)
-                    break;
-                
-                //
-                // Update the security holdings for an investment transaction
-                // in a taxable account (income from tax-deferred accounts is
-                // taxed as ordinary income)
-                //
-                if (t.getSecurity() != null && !t.getAccount().isTaxDeferred())
-                    SecurityHolding.updateSecurityHolding(securityHoldings, t);
-            }
-            
-            //
-            // Build the capital gains list
+            // Build the capital gains list sorted by the sell date
             //
-            for (SecurityHolding h : securityHoldings) {
-                List<CapitalGainRecord> gainsList = h.getCapitalGains();
-                for (CapitalGainRecord c : gainsList) {
-                    Date sellDate = c.getSellDate();
-                    if (sellDate.compareTo(startDate) < 0 || sellDate.compareTo(endDate) > 0)
-                        continue;
-                    
-                    boolean addGain = true;
-                    for (int index=0; index<capitalGains.size(); index++) {
-                        CapitalGainRecord n = capitalGains.get(index);
-                        if (sellDate.compareTo(n.getSellDate()) < 0) {
-                            capitalGains.add(index, c);
-                            addGain = false;
-                            break;
-                        }
-                    }
-                    
-                    if (addGain)
-                        capitalGains.add(c);
-                }
-            }
+            capitalGains = engine.getCapitalGains(startDate, endDate);
         }
 
         /**
@@ -0,0 +1,356 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The cash flow forecast projects the account balances by simulating the scheduled
+ * transactions forward from the start date.  The ledger and the scheduled transactions
+ * are not modified.  Loan payments are allocated between interest and principal in the
+ * same way as when the scheduled transactions are processed, using the projected loan
+ * balance on the payment date.
+ * <p>
+ * The projected balances are stored as one array for each account with one entry for
+ * each day in the forecast period.  Investment accounts are not included since their
+ * value depends on the security prices.
+ */
+public final class CashFlowForecast {
+
+    /** Milliseconds per day */
+    private static final long DAY_MILLIS = 24L*60L*60L*1000L;
+
+    /** Forecast start date */
+    private final Date startDate;
+
+    /** Number of days in the forecast */
+    private final int dayCount;
+
+    /** Forecast accounts */
+    private final List<AccountRecord> accounts = new ArrayList<>();
+
+    /** Account index by account identifier */
+    private final Map<Integer, Integer> accountIndex = new HashMap<>();
+
+    /** Projected daily balances for each account */
+    private final double[][] balances;
+
+    /** Current balance for each account while the forecast is running */
+    private final double[] currentBalances;
+
+    /**
+     * Create a cash flow forecast
+     *
+     * @param       startDate       Forecast start date
+     * @param       years           Number of years to forecast
+     */
+    public CashFlowForecast(Date startDate, int years) {
+        this.startDate = startDate;
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(startDate);
+        cal.add(Calendar.YEAR, years);
+        Date endDate = cal.getTime();
+        dayCount = getDay(endDate)+1;
+
+        //
+        // Build the account list
+        //
+        for (AccountRecord a : AccountRecord.getAccounts()) {
+            if (a.getType() != AccountRecord.INVESTMENT) {
+                accountIndex.put(a.getID(), accounts.size());
+                accounts.add(a);
+            }
+        }
+
+        balances = new double[accounts.size()][dayCount];
+        currentBalances = new double[accounts.size()];
+
+        //
+        // Get the account balances as of the start date starting with the
+        // balances from the latest year-end checkpoint
+        //
+        List<TransactionRecord> transactions = TransactionRecord.getTransactions();
+        CheckpointRecord checkpoint = CheckpointRecord.getCheckpoint(startDate);
+        if (checkpoint != null) {
+            transactions = CheckpointRecord.getTransactionsAfter(checkpoint);
+            for (int i=0; i<accounts.size(); i++)
+                currentBalances[i] = checkpoint.getBalance(accounts.get(i));
+        }
+
+        for (TransactionRecord t : transactions) {
+            if (t.getDate().compareTo(startDate) > 0)
+                break;
+
+            applyTransaction(t.getAccount(), t.getTransferAccount(), t.getAmount(), t.getSplits(), null);
+        }
+
+        //
+        // Simulate the scheduled transactions
+        //
+        runForecast(endDate);
+    }
+
+    /**
+     * Get the forecast start date
+     *
+     * @return                      Start date
+     */
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Get the number of days in the forecast
+     *
+     * @return                      Number of days
+     */
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Get the date for a forecast day
+     *
+     * @param       day             Forecast day
+     * @return                      Date
+     */
+    public Date getDate(int day) {
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(startDate);
+        cal.add(Calendar.DAY_OF_YEAR, day);
+        return cal.getTime();
+    }
+
+    /**
+     * Get the accounts included in the forecast
+     *
+     * @return                      Account list
+     */
+    public List<AccountRecord> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Get the projected daily balances for an account
+     *
+     * @param       account         Account
+     * @return                      Daily balances or null if the account is not in the forecast
+     */
+    public double[] getBalances(AccountRecord account) {
+        Integer index = accountIndex.get(account.getID());
+        return (index != null ? balances[index] : null);
+    }
+
+    /**
+     * Get the projected daily balances for all of the accounts in the forecast
+     *
+     * @return                      Daily balances
+     */
+    public double[] getTotalBalances() {
+        double[] totals = new double[dayCount];
+        for (double[] accountBalances : balances) {
+            for (int day=0; day<dayCount; day++)
+                totals[day] += accountBalances[day];
+        }
+
+        return totals;
+    }
+
+    /**
+     * Simulate the scheduled transactions through the end date
+     *
+     * @param       endDate         Forecast end date
+     */
+    private void runForecast(Date endDate) {
+
+        //
+        // Create the simulated schedules.  A scheduled transaction with a date
+        // before the start date will be processed on the start date.
+        //
+        PriorityQueue<Schedule> queue = new PriorityQueue<>();
+        int sequence = 0;
+        for (ScheduleRecord r : ScheduleRecord.getTransactions()) {
+            if (r.getDate().compareTo(endDate) <= 0)
+                queue.add(new Schedule(r, sequence++));
+        }
+
+        //
+        // Process the schedules in date order, recording the account balances
+        // for each day before applying the transactions for the next date
+        //
+        int currentDay = 0;
+        while (!queue.isEmpty()) {
+            Schedule schedule = queue.poll();
+            int day = Math.max(getDay(schedule.date), 0);
+            recordBalances(currentDay, day);
+            currentDay = day;
+
+            boolean rescheduleTransaction = true;
+            ScheduleRecord r = schedule.record;
+            double amount = r.getAmount();
+            double[] splitAmounts = null;
+            List<TransactionSplit> splits = r.getSplits();
+            if (splits != null) {
+                splitAmounts = new double[splits.size()];
+                for (int i=0; i<splitAmounts.length; i++)
+                    splitAmounts[i] = splits.get(i).getAmount();
+
+                AccountRecord loanAccount = ScheduleProcessor.getLoanAccount(r);
+                Integer loanIndex = (loanAccount != null ? accountIndex.get(loanAccount.getID()) : null);
+                if (loanIndex != null) {
+                    double balance = currentBalances[loanIndex];
+                    double[] payment = ScheduleProcessor.allocateLoanPayment(loanAccount, balance, amount);
+                    double interest = payment[0];
+                    double principal = payment[1];
+                    if (Math.abs(balance-principal) < 0.005)
+                        rescheduleTransaction = false;
+
+                    for (int i=0; i<splitAmounts.length; i++)
+                        splitAmounts[i] = (splits.get(i).getAccount() == loanAccount ? principal : interest);
+
+                    amount = principal+interest;
+                }
+            }
+
+            applyTransaction(r.getAccount(), r.getTransferAccount(), amount, splits, splitAmounts);
+
+            //
+            // Reschedule a recurring transaction
+            //
+            if (r.getType() != ScheduleRecord.SINGLE && rescheduleTransaction) {
+                schedule.date = ScheduleProcessor.getNextDate(r.getType(), schedule.date);
+                if (schedule.date.compareTo(endDate) <= 0) {
+                    schedule.sequence = sequence++;
+                    queue.add(schedule);
+                }
+            }
+        }
+
+        recordBalances(currentDay, dayCount);
+    }
+
+    /**
+     * Update the current account balances for a transaction
+     *
+     * @param       account         Transaction account
+     * @param       transferAccount Transfer account or null
+     * @param       amount          Transaction amount
+     * @param       splits          Transaction splits or null
+     * @param       splitAmounts    Split amounts or null to use the amounts in the splits
+     */
+    private void applyTransaction(AccountRecord account, AccountRecord transferAccount, double amount,
+                                  List<TransactionSplit> splits, double[] splitAmounts) {
+        addAmount(account, amount);
+        if (transferAccount != null)
+            addAmount(transferAccount, -amount);
+
+        if (splits != null) {
+            for (int i=0; i<splits.size(); i++) {
+                TransactionSplit split = splits.get(i);
+                if (split.getAccount() != null)
+                    addAmount(split.getAccount(), -(splitAmounts != null ? splitAmounts[i] : split.getAmount()));
+            }
+        }
+    }
+
+    /**
+     * Add an amount to the current account balance
+     *
+     * @param       account         Account
+     * @param       amount          Amount
+     */
+    private void addAmount(AccountRecord account, double amount) {
+        Integer index = accountIndex.get(account.getID());
+        if (index != null)
+            currentBalances[index] += amount;
+    }
+
+    /**
+     * Record the current account balances for a range of days
+     *
+     * @param       fromDay         First day (inclusive)
+     * @param       toDay           Last day (exclusive)
+     */
+    private void recordBalances(int fromDay, int toDay) {
+        toDay = Math.min(toDay, dayCount);
+        for (int i=0; i<currentBalances.length; i++) {
+            double[] accountBalances = balances[i];
+            double balance = currentBalances[i];
+            for (int day=fromDay; day<toDay; day++)
+                accountBalances[day] = balance;
+        }
+    }
+
+    /**
+     * Get the forecast day for a date
+     *
+     * @param       date            Date
+     * @return                      Forecast day (negative if before the start date)
+     */
+    private int getDay(Date date) {
+        return (int)Math.round((double)(date.getTime()-startDate.getTime())/(double)DAY_MILLIS);
+    }
+
+    /**
+     * Simulated schedule ordered by the next scheduled date and then by the
+     * sequence number
+     */
+    private static final class Schedule implements Comparable<Schedule> {
+
+        /** Scheduled transaction */
+        private final ScheduleRecord record;
+
+        /** Next scheduled date */
+        private Date date;
+
+        /** Sequence number */
+        private int sequence;
+
+        /**
+         * Create a simulated schedule
+         *
+         * @param       record          Scheduled transaction
+         * @param       sequence        Sequence number
+         */
+        private Schedule(ScheduleRecord record, int sequence) {
+            this.record = record;
+            this.date = record.getDate();
+            this.sequence = sequence;
+        }
+
+        /**
+         * Compare two schedules
+         *
+         * @param       o               Schedule to compare
+         * @return                      Negative, zero or positive
+         */
+        @Override
+        public int compareTo(Schedule o) {
+            int cmp = date.compareTo(o.date);
+            if (cmp == 0)
+                cmp = Integer.compare(sequence, o.sequence);
+
+            return cmp;
+        }
+    }
+}
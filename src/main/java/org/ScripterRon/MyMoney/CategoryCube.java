@@ -0,0 +1,331 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The category cube contains the income and expense totals for each category
+ * by month.  The totals are maintained in cents to avoid rounding errors.
+ * <p>
+ * A transaction contributes to the category assigned to the transaction or, for
+ * a split transaction, to the category assigned to each split.  Account transfers
+ * do not have a category and are not included.  The amount for an investment
+ * transaction is negated (except for a REINVEST transaction) so that income is
+ * positive and expenses are negative, which is the same convention used by the
+ * transaction report.
+ * <p>
+ * The cube is built in a single pass over the transaction list the first time it
+ * is referenced and is then updated as transactions are added and removed.  The
+ * cube is discarded when a new database is loaded.
+ * <p>
+ * A month is identified by its month number, which is year*12+month where month
+ * is 0 for January.
+ */
+public final class CategoryCube {
+
+    /** Category totals indexed by the category identifier */
+    private final Map<Integer, long[]> totals = new HashMap<>();
+
+    /** Category amounts added for each split transaction (category identifier, amount) */
+    private final Map<TransactionRecord, long[]> splitContributions = new IdentityHashMap<>();
+
+    /** Month number for the first array element */
+    private int baseMonth;
+
+    /** Number of months in each totals array */
+    private int monthCount;
+
+    /** Calendar used to compute month numbers */
+    private final GregorianCalendar cal = new GregorianCalendar();
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            TransactionRecord t = event.getTransaction();
+            switch (event.getType()) {
+                case LedgerEvent.INSERT:
+                    transactionAdded(t);
+                    break;
+
+                case LedgerEvent.DELETE:
+                    transactionRemoved(t);
+                    break;
+
+                default:
+                    transactionRemoved(event.getBeforeTransaction());
+                    transactionAdded(t);
+            }
+        }
+    };
+
+    /**
+     * Create the category cube from the current transaction list
+     */
+    private CategoryCube() {
+        List<TransactionRecord> transactions = TransactionRecord.getTransactions();
+        if (!transactions.isEmpty()) {
+            Date first = transactions.get(0).getDate();
+            Date last = transactions.get(transactions.size()-1).getDate();
+            baseMonth = getMonth(first);
+            monthCount = getMonth(last)-baseMonth+1;
+        }
+
+        for (TransactionRecord t : transactions)
+            update(t, 1);
+    }
+
+    /**
+     * Get the category cube, building it if necessary
+     *
+     * @return                      The category cube
+     */
+    public static synchronized CategoryCube getCube() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.categoryCube == null)
+            context.categoryCube = new CategoryCube();
+
+        return context.categoryCube;
+    }
+
+    /**
+     * Discard the current category cube.  The cube will be rebuilt the next
+     * time it is referenced.
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext.getCurrent().categoryCube = null;
+    }
+
+    /**
+     * A transaction has been added to the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionAdded(TransactionRecord t) {
+        CategoryCube currentCube;
+        synchronized(CategoryCube.class) {
+            currentCube = DatabaseContext.getCurrent().categoryCube;
+        }
+
+        if (currentCube != null)
+            currentCube.update(t, 1);
+    }
+
+    /**
+     * A transaction has been removed from the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionRemoved(TransactionRecord t) {
+        CategoryCube currentCube;
+        synchronized(CategoryCube.class) {
+            currentCube = DatabaseContext.getCurrent().categoryCube;
+        }
+
+        if (currentCube != null)
+            currentCube.update(t, -1);
+    }
+
+    /**
+     * Get the month number for a date
+     *
+     * @param       date            Date
+     * @return                      Month number
+     */
+    public int getMonth(Date date) {
+        synchronized(cal) {
+            cal.setTime(date);
+            return cal.get(Calendar.YEAR)*12+cal.get(Calendar.MONTH);
+        }
+    }
+
+    /**
+     * Get the first month number in the cube
+     *
+     * @return                      First month number
+     */
+    public synchronized int getFirstMonth() {
+        return baseMonth;
+    }
+
+    /**
+     * Get the last month number in the cube
+     *
+     * @return                      Last month number
+     */
+    public synchronized int getLastMonth() {
+        return baseMonth+monthCount-1;
+    }
+
+    /**
+     * Get the total for a category for a single month
+     *
+     * @param       category        Category
+     * @param       month           Month number
+     * @return                      Total in cents
+     */
+    public synchronized long getTotal(CategoryRecord category, int month) {
+        return getTotal(category, month, month);
+    }
+
+    /**
+     * Get the total for a category for a range of months
+     *
+     * @param       category        Category
+     * @param       startMonth      First month number (inclusive)
+     * @param       endMonth        Last month number (inclusive)
+     * @return                      Total in cents
+     */
+    public synchronized long getTotal(CategoryRecord category, int startMonth, int endMonth) {
+        long[] months = totals.get(category.getID());
+        if (months == null)
+            return 0;
+
+        long total = 0;
+        int start = Math.max(startMonth-baseMonth, 0);
+        int end = Math.min(endMonth-baseMonth, monthCount-1);
+        for (int i=start; i<=end; i++)
+            total += months[i];
+
+        return total;
+    }
+
+    /**
+     * Get the monthly totals for a category for a range of months
+     *
+     * @param       category        Category
+     * @param       startMonth      First month number (inclusive)
+     * @param       endMonth        Last month number (inclusive)
+     * @return                      Monthly totals in cents
+     */
+    public synchronized long[] getTotals(CategoryRecord category, int startMonth, int endMonth) {
+        long[] result = new long[Math.max(endMonth-startMonth+1, 0)];
+        long[] months = totals.get(category.getID());
+        if (months != null) {
+            for (int month=Math.max(startMonth, baseMonth);
+                                month<=Math.min(endMonth, baseMonth+monthCount-1); month++)
+                result[month-startMonth] = months[month-baseMonth];
+        }
+
+        return result;
+    }
+
+    /**
+     * Add or remove the category amounts for a transaction
+     *
+     * The split amounts that were added to the cube are saved and then used when
+     * the transaction is removed, so the cube stays consistent even if a split
+     * list shared with an edit dialog is changed before the removal.
+     *
+     * @param       t               Transaction
+     * @param       sign            1 to add the amounts, -1 to remove the amounts
+     */
+    private synchronized void update(TransactionRecord t, int sign) {
+        List<TransactionSplit> splits = t.getSplits();
+        boolean negate = (t.getAccount().getType() == AccountRecord.INVESTMENT);
+        if (sign < 0) {
+            long[] contribution = splitContributions.remove(t);
+            if (contribution != null) {
+                int month = getMonth(t.getDate());
+                for (int i=0; i<contribution.length; i+=2)
+                    add((int)contribution[i], month, -contribution[i+1]);
+
+                return;
+            }
+        }
+
+        if (splits != null) {
+            int month = getMonth(t.getDate());
+            long[] contribution = new long[splits.size()*2];
+            int count = 0;
+            for (TransactionSplit split : splits) {
+                CategoryRecord c = split.getCategory();
+                if (c != null) {
+                    long amount = Math.round(split.getAmount()*100.0);
+                    if (negate)
+                        amount = -amount;
+
+                    add(c.getID(), month, amount*sign);
+                    contribution[count++] = c.getID();
+                    contribution[count++] = amount;
+                }
+            }
+
+            if (sign > 0 && count != 0)
+                splitContributions.put(t, Arrays.copyOf(contribution, count));
+        } else {
+            CategoryRecord c = t.getCategory();
+            if (c != null) {
+                long amount = Math.round(t.getAmount()*100.0);
+                if (negate && t.getAction() != TransactionRecord.REINVEST)
+                    amount = -amount;
+
+                add(c.getID(), getMonth(t.getDate()), amount*sign);
+            }
+        }
+    }
+
+    /**
+     * Add an amount to a category total
+     *
+     * @param       categoryID      Category identifier
+     * @param       month           Month number
+     * @param       amount          Amount in cents
+     */
+    private void add(int categoryID, int month, long amount) {
+        if (amount == 0)
+            return;
+
+        //
+        // Extend the month range if necessary
+        //
+        if (monthCount == 0) {
+            baseMonth = month;
+            monthCount = 1;
+        } else if (month < baseMonth || month >= baseMonth+monthCount) {
+            int newBase = Math.min(baseMonth, month);
+            int newCount = Math.max(baseMonth+monthCount, month+1)-newBase;
+            int offset = baseMonth-newBase;
+            for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+                long[] newMonths = new long[newCount];
+                System.arraycopy(entry.getValue(), 0, newMonths, offset, monthCount);
+                entry.setValue(newMonths);
+            }
+
+            baseMonth = newBase;
+            monthCount = newCount;
+        }
+
+        //
+        // Update the category total
+        //
+        long[] months = totals.get(categoryID);
+        if (months == null) {
+            months = new long[monthCount];
+            totals.put(categoryID, months);
+        }
+
+        months[month-baseMonth] += amount;
+    }
+}
@@ -45,7 +45,7 @@ public final class CategoryDialog extends JDialog implements ActionListener {
         //
         // Create the list model
         //
-        listModel = new DBElementListModel(CategoryRecord.categories);
+        listModel = new DBElementListModel(CategoryRecord.getCategories());
 
         //
         // Create the category list
@@ -163,7 +163,8 @@ public final class CategoryDialog extends JDialog implements ActionListener {
                                             "Category is referenced by one or more transactions",
                                             "Error", JOptionPane.ERROR_MESSAGE);
                         } else {
-                            CategoryRecord.categories.remove(category);
+                            CategoryRecord.getCategories().remove(category);
+                            LedgerSnapshot.ledgerModified();
                             listModel.removeDBElement(category);
                             Main.dataModified = true;
                         }
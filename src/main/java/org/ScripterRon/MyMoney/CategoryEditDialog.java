@@ -222,7 +222,7 @@ public final class CategoryEditDialog extends JDialog implements ActionListener
             return false;
         }
         
-        for (CategoryRecord c : CategoryRecord.categories) {
+        for (CategoryRecord c : CategoryRecord.getCategories()) {
             if (name.equals(c.getName()) && c != category) {
                 JOptionPane.showMessageDialog(this, "Category name '"+name+"' is already in use",
                                               "Error", JOptionPane.ERROR_MESSAGE);
@@ -236,26 +236,35 @@ public final class CategoryEditDialog extends JDialog implements ActionListener
         if (category == null) {
             category = new CategoryRecord(name, type);
             category.setHide(categoryHidden.isSelected());
-            if (CategoryRecord.categories.contains(category)) {
+            if (CategoryRecord.getCategories().contains(category)) {
                 JOptionPane.showMessageDialog(this, "Category '"+name+"' already exists",
                                               "Error", JOptionPane.ERROR_MESSAGE);
                 return false;
             }
 
-            CategoryRecord.categories.add(category);
+            CategoryRecord.getCategories().add(category);
             listModel.addDBElement(category);
         } else {
             if (!category.getName().equals(name)) {
-                CategoryRecord.categories.remove(category);
+                CategoryRecord.getCategories().remove(category);
                 category.setName(name);
-                CategoryRecord.categories.add(category);
+                CategoryRecord.getCategories().add(category);
             }
             
-            category.setType(type);
+            //
+            // The tax totals are indexed by the category type
+            //
+            if (category.getType() != type) {
+                category.setType(type);
+                TaxSummary.invalidate();
+            }
+
             category.setHide(categoryHidden.isSelected());
             listModel.updateDBElement();
         }
 
+        LedgerSnapshot.ledgerModified();
+
         Main.dataModified = true;
         return true;
     }
@@ -46,8 +46,8 @@ import java.util.*;
  * <li>WAGES
  * </ul>
  * <p>
- * All category records are contained in the <code>categories</code> sorted
- * set.  The entries in the set are sorted by the category name. Two category
+ * All category records are contained in the <code>getCategories()</code> sorted
+ * set for the current database context.  The entries in the set are sorted by the category name. Two category
  * records are equal if they have the same category name.
  * <p>
  * The category record is encoded as follows:
@@ -140,15 +140,6 @@ public final class CategoryRecord extends DBElement {
         "Taxable Interest", "Federal Tax-exempt Interest", "State Tax-exempt Interest",
         "Tax-exempt Interest", "Interest Expense", "Medical"};
 
-    /** The set of defined categories */
-    public static SortedSet<CategoryRecord> categories;
-    
-    /** The category map */
-    private static Map<Integer, CategoryRecord> map;
-
-    /** The next CategoryRecord identifier */
-    private static int nextRecordID = 1;
-
     /** The encoded CategoryRecord ASN.1 tag identifier */
     private static final byte tagID = (byte)(Asn1Stream.ASN1_APPLICATION+3);
 
@@ -171,17 +162,15 @@ public final class CategoryRecord extends DBElement {
         //
         // Create the new category
         //
-        recordID = nextRecordID++;
+        DatabaseContext context = DatabaseContext.getCurrent();
+        recordID = context.nextCategoryID++;
         elementName = name;
         setType(type);
         
         //
         // Add the category to the map
         //
-        if (map == null)
-            map = new HashMap<>();
-        
-        map.put(new Integer(recordID), this);
+        context.categoryMap.put(new Integer(recordID), this);
     }
 
     /**
@@ -232,16 +221,14 @@ public final class CategoryRecord extends DBElement {
             //
             //  Update the next record identifier
             //
-            if (recordID >= nextRecordID)
-                nextRecordID = recordID+1;
+            DatabaseContext context = DatabaseContext.getCurrent();
+            if (recordID >= context.nextCategoryID)
+                context.nextCategoryID = recordID+1;
         
             //
             // Add the category to the map
             //
-            if (map == null)
-                map = new HashMap<>();
-        
-            map.put(new Integer(recordID), this);
+            context.categoryMap.put(new Integer(recordID), this);
         } catch (Asn1Exception exc) {
             throw new DBException("ASN.1 decode error", exc);
         }
@@ -293,6 +280,15 @@ public final class CategoryRecord extends DBElement {
         return stream.getData();
     }
     
+    /**
+     * Get the set of defined categories for the current database context
+     *
+     * @return                      Set of categories sorted by name
+     */
+    public static SortedSet<CategoryRecord> getCategories() {
+        return DatabaseContext.getCurrent().categories;
+    }
+
     /**
      * Get the category associated with the supplied record identifier.
      *
@@ -300,11 +296,7 @@ public final class CategoryRecord extends DBElement {
      * @return                      The category or NULL
      */
     public static CategoryRecord getCategory(int recordID) {
-        CategoryRecord category = null;
-        if (map != null)
-            category = map.get(new Integer(recordID));
-        
-        return category;
+        return DatabaseContext.getCurrent().categoryMap.get(new Integer(recordID));
     }
 
     /**
@@ -335,6 +327,19 @@ public final class CategoryRecord extends DBElement {
     public static int[] getTypes() {
         return categoryTypes;
     }
+
+    /**
+     * Get the size of an array indexed by the category type
+     *
+     * @return                      The largest category type plus one
+     */
+    public static int getTypeCount() {
+        int maxType = 0;
+        for (int type : categoryTypes)
+            maxType = Math.max(maxType, type);
+
+        return maxType+1;
+    }
     
     /**
      * Get the category type strings
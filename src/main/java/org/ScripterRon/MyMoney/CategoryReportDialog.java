@@ -0,0 +1,572 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Report.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.print.*;
+
+/**
+ * Category report dialog.  The report contains the income and expense totals
+ * for each category by month or by year and is generated from the category cube.
+ */
+public final class CategoryReportDialog extends JDialog implements ActionListener {
+
+    /** Report column names */
+    private static final String[] columnNames = {"Category", "Period", "Amount"};
+
+    /** Report element sizes */
+    private static final int[] elementSizes = {200, 80, 80};
+
+    /** Report element positions */
+    private static final int[] elementPositions = {2, 211, 300};
+
+    /** Report element alignments */
+    private static final int[] elementAlignments = {
+        ReportElement.LEFT_ALIGNMENT, ReportElement.LEFT_ALIGNMENT,
+        ReportElement.RIGHT_ALIGNMENT};
+
+    /** Month names */
+    private static final String[] monthNames = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    /** Start date field */
+    private JFormattedTextField startField;
+
+    /** End date field */
+    private JFormattedTextField endField;
+
+    /** Category model */
+    private TransferComboBoxModel categoryModel;
+
+    /** Category field */
+    private JComboBox categoryField;
+
+    /** Summarize by month radio button */
+    private JRadioButton monthField;
+
+    /** Summarize by year radio button */
+    private JRadioButton yearField;
+
+    /**
+     * Create the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public CategoryReportDialog(JFrame parent) {
+        super(parent, "Category Report", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Set the start date to the beginning of the year
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(Main.getCurrentDate());
+        cal.set(Calendar.DAY_OF_YEAR, 1);
+        startField = new JFormattedTextField(new EditDate());
+        startField.setColumns(8);
+        startField.setInputVerifier(new EditInputVerifier(false));
+        startField.addActionListener(new FormattedTextFieldListener(this));
+        startField.setValue(cal.getTime());
+
+        //
+        // Set the end date to the current date
+        //
+        endField = new JFormattedTextField(new EditDate());
+        endField.setColumns(8);
+        endField.setInputVerifier(new EditInputVerifier(false));
+        endField.addActionListener(new FormattedTextFieldListener(this));
+        endField.setValue(Main.getCurrentDate());
+
+        //
+        // Get the category selection (optional)
+        //
+        categoryModel = new TransferComboBoxModel(null);
+        categoryField = new JComboBox(categoryModel);
+        categoryField.setSelectedIndex(0);
+
+        //
+        // Create the edit pane
+        //
+        //    Start Date:        <text-field>
+        //    End Date:          <text-field>
+        //    Category:          <combo-box>
+        //
+        JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
+
+        editPane.add(new JLabel("Start Date:", JLabel.RIGHT));
+        editPane.add(startField);
+
+        editPane.add(new JLabel("End Date:", JLabel.RIGHT));
+        editPane.add(endField);
+
+        editPane.add(new JLabel("Category:", JLabel.RIGHT));
+        editPane.add(categoryField);
+
+        //
+        // Create the summary radio buttons
+        //
+        monthField = new JRadioButton("Month");
+        monthField.setSelected(true);
+
+        yearField = new JRadioButton("Year");
+
+        ButtonGroup buttonGroup = new ButtonGroup();
+        buttonGroup.add(monthField);
+        buttonGroup.add(yearField);
+
+        JPanel groupPane = new JPanel();
+        groupPane.setLayout(new BoxLayout(groupPane, BoxLayout.X_AXIS));
+        groupPane.add(new JLabel("Summarize by: ", JLabel.LEADING));
+        groupPane.add(Box.createHorizontalStrut(10));
+        groupPane.add(monthField);
+        groupPane.add(Box.createHorizontalStrut(10));
+        groupPane.add(yearField);
+
+        //
+        // Create the buttons (Create Report, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Create Report");
+        button.setActionCommand("create report");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(editPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(groupPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * CategoryReportDialog action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "create report" - Create the report
+        // "done" - Done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "create report":
+                    Date startDate, endDate;
+                    CategoryRecord category;
+                    if (!startField.isEditValid() || !endField.isEditValid()) {
+                        JOptionPane.showMessageDialog(this, "You must specify start and end dates",
+                                                      "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        startDate = (Date)startField.getValue();
+                        endDate = (Date)endField.getValue();
+                        if (endDate.compareTo(startDate) < 0) {
+                            JOptionPane.showMessageDialog(this, "The end date is before the start date",
+                                                          "Error", JOptionPane.ERROR_MESSAGE);
+                        } else {
+                            int index = categoryField.getSelectedIndex();
+                            if (index > 0)
+                                category = (CategoryRecord)categoryModel.getDBElementAt(index);
+                            else
+                                category = null;
+
+                            generateReport(startDate, endDate, category, yearField.isSelected());
+                        }
+                    }
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (ReportException exc) {
+            Main.logException("Exception while generating report", exc);
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Generate the report
+     *
+     * @param       startDate       The start date for the report
+     * @param       endDate         The end date for the report
+     * @param       category        The category or null
+     * @param       byYear          TRUE to summarize by year
+     * @exception   ReportException Error while generating the report
+     */
+    private void generateReport(Date startDate, Date endDate, CategoryRecord category,
+                                boolean byYear) throws ReportException {
+
+        //
+        // Create the report data model
+        //
+        ReportModel reportModel = new CategoryModel(startDate, endDate, category, byYear);
+
+        //
+        // Create the report
+        //
+        Report report = new Report("Category Report", reportModel);
+        ReportState reportState = report.getState();
+        ReportGroup defaultGroup = reportState.getGroup(reportState.getGroupCount()-1);
+
+        //
+        // Highlight the column headers
+        //
+        defaultGroup.getHeader().setBackgroundColor(new Color(235, 235, 235));
+        defaultGroup.getHeader().setBorderColor(Color.BLACK);
+
+        //
+        // Set the page format using 8.5x11 paper in landscape mode with 1/2" side
+        // margins and 1/4" top margins.
+        //
+        // All measurements are in points (a point is 1/72 of an inch).  Report element
+        // coordinates are relative to the imageable area.  The printWidth and printHeight
+        // variables refer to the rotated page, thus printWidth is along the paper y-axis
+        // and printHeight is along the paper x-axis.
+        //
+        int paperWidth = 612;
+        int paperHeight = 792;
+        int topMargin = 36;
+        int leftMargin = 18;
+        int printWidth = paperHeight - 2*topMargin;
+        int printHeight = paperWidth - 2*leftMargin;
+
+        Paper paper = new Paper();
+        paper.setSize(paperWidth, paperHeight);
+        paper.setImageableArea(leftMargin, topMargin, printHeight, printWidth);
+
+        PageFormat pageFormat = new PageFormat();
+        pageFormat.setPaper(paper);
+        pageFormat.setOrientation(PageFormat.LANDSCAPE);
+        reportState.setPageFormat(pageFormat);
+
+        //
+        // Create the report fonts
+        //
+        Font plainFont = new Font("SansSerif", Font.PLAIN, 10);
+        Font boldFont = new Font("SansSerif", Font.BOLD, 10);
+        reportState.setDefaultFont(plainFont);
+        ReportLabel label;
+        ReportField field;
+
+        //
+        // Create the page header containing the report title
+        //
+        label = new ReportLabel(String.format("Category Report for %s to %s",
+                                              Main.getDateString(startDate),
+                                              Main.getDateString(endDate)));
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(0, 0, printWidth, 25));
+        label.setHorizontalAlignment(ReportElement.CENTER_ALIGNMENT);
+        label.setVerticalAlignment(ReportElement.TOP_ALIGNMENT);
+        reportState.getPageHeader().addElement(label);
+
+        //
+        // Create the page footer containing the page number
+        //
+        reportState.addExpression(new PageFunction("Page Number"));
+
+        label = new ReportLabel("Page");
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(printWidth/2-30, 0, 25, 25));
+        label.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        label.setVerticalAlignment(ReportElement.BOTTOM_ALIGNMENT);
+        reportState.getPageFooter().addElement(label);
+
+        field = new ReportField("Page Number");
+        field.setFont(boldFont);
+        field.setBounds(new Rectangle(printWidth/2, 0, 25, 25));
+        field.setHorizontalAlignment(ReportElement.LEFT_ALIGNMENT);
+        field.setVerticalAlignment(ReportElement.BOTTOM_ALIGNMENT);
+        reportState.getPageFooter().addElement(field);
+
+        //
+        // Create the report footer containing the income/expense total
+        //
+        AmountSumFunction totalFunction = new AmountSumFunction("Report Total");
+        totalFunction.setField(columnNames[2]);
+        reportState.addExpression(totalFunction);
+
+        label = new ReportLabel("Income/Expense Total");
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(elementPositions[2]-145, 0, 140, 12));
+        label.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        reportState.getReportFooter().addElement(label);
+
+        field = new ReportField("Report Total");
+        field.setFont(boldFont);
+        field.setBounds(new Rectangle(elementPositions[2], 0, elementSizes[2], 12));
+        field.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        field.setRenderer(new ReportAmountRenderer());
+        reportState.getReportFooter().addElement(field);
+
+        //
+        // Create the category group footer containing the category subtotal
+        //
+        ReportGroup categoryGroup = new ReportGroup("Category Group", columnNames[0]);
+        reportState.addGroup(categoryGroup);
+
+        AmountSumFunction subtotalFunction = new AmountSumFunction("Category Total");
+        subtotalFunction.setGroupName("Category Group");
+        subtotalFunction.setField(columnNames[2]);
+        reportState.addExpression(subtotalFunction);
+
+        label = new ReportLabel("Category Subtotal");
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(elementPositions[2]-145, 0, 140, 12));
+        label.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        categoryGroup.getFooter().addElement(label);
+
+        field = new ReportField("Category Total");
+        field.setFont(boldFont);
+        field.setBounds(new Rectangle(elementPositions[2], 0, elementSizes[2], 12));
+        field.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        field.setRenderer(new ReportAmountRenderer());
+        categoryGroup.getFooter().addElement(field);
+
+        label = new ReportLabel(" ");
+        label.setBounds(new Rectangle(0, 12, 7, 12));
+        categoryGroup.getFooter().addElement(label);
+
+        //
+        // Create the text elements for the report
+        //
+        for (int i=0; i<columnNames.length; i++) {
+
+            //
+            // Set the column header label
+            //
+            label = new ReportLabel(columnNames[i]);
+            label.setBounds(new Rectangle(elementPositions[i], 0, elementSizes[i], 14));
+            label.setFont(boldFont);
+            label.setHorizontalAlignment(elementAlignments[i]);
+            defaultGroup.getHeader().addElement(label);
+
+            //
+            // Set the column field
+            //
+            field = new ReportField(columnNames[i]);
+            field.setBounds(new Rectangle(elementPositions[i], 0, elementSizes[i], 12));
+            field.setHorizontalAlignment(elementAlignments[i]);
+            if (i == 2)
+                field.setRenderer(new ReportAmountRenderer());
+
+            reportState.getRowBand().addElement(field);
+        }
+
+        //
+        // Display the print preview dialog
+        //
+        report.showPreview(this);
+    }
+
+    /**
+     * Show the category report dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new CategoryReportDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Category report model
+     */
+    private class CategoryModel implements ReportModel {
+
+        /** Category names */
+        private List<String> categoryNames;
+
+        /** Period names */
+        private List<String> periodNames;
+
+        /** Period totals in cents */
+        private List<Long> periodTotals;
+
+        /**
+         * Create the report model.  The report periods are calendar months, so
+         * the start and end dates select the months that will be included in
+         * the report.
+         *
+         * @param       startDate   Start date
+         * @param       endDate     End date
+         * @param       category    The category or null
+         * @param       byYear      TRUE to summarize by year
+         */
+        CategoryModel(Date startDate, Date endDate, CategoryRecord category, boolean byYear) {
+            TransactionPartitions.load(startDate);
+            CategoryCube cube = CategoryCube.getCube();
+            int startMonth = cube.getMonth(startDate);
+            int endMonth = cube.getMonth(endDate);
+            categoryNames = new ArrayList<>();
+            periodNames = new ArrayList<>();
+            periodTotals = new ArrayList<>();
+
+            //
+            // Build the report rows for each category.  Periods without any
+            // activity will not be included.
+            //
+            for (CategoryRecord c : CategoryRecord.getCategories()) {
+                if (category != null && c != category)
+                    continue;
+
+                long[] totals = cube.getTotals(c, startMonth, endMonth);
+                if (byYear) {
+                    int month = startMonth;
+                    while (month <= endMonth) {
+                        int year = month/12;
+                        long total = 0;
+                        while (month <= endMonth && month/12 == year)
+                            total += totals[month++-startMonth];
+
+                        if (total != 0)
+                            addRow(c.getName(), String.format("%04d", year), total);
+                    }
+                } else {
+                    for (int month=startMonth; month<=endMonth; month++) {
+                        long total = totals[month-startMonth];
+                        if (total != 0)
+                            addRow(c.getName(),
+                                   String.format("%s %04d", monthNames[month%12], month/12),
+                                   total);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add a report row
+         *
+         * @param       categoryName    Category name
+         * @param       periodName      Period name
+         * @param       total           Period total in cents
+         */
+        private void addRow(String categoryName, String periodName, long total) {
+            categoryNames.add(categoryName);
+            periodNames.add(periodName);
+            periodTotals.add(total);
+        }
+
+        /**
+         * Get the number of columns
+         *
+         * @return                  The number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * Get the number of rows
+         *
+         * @return                  The number of rows
+         */
+        public int getRowCount() {
+            return categoryNames.size();
+        }
+
+        /**
+         * Get the column name
+         *
+         * @param       column      Column index
+         * @return                  Column name
+         */
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        /**
+         * Get the object class for a column
+         *
+         * @param       column      Column index
+         * @return                  Object class
+         */
+        public Class<?> getColumnClass(int column) {
+            return String.class;
+        }
+
+        /**
+         * Get the value for a cell
+         *
+         * @param       row         Row index
+         * @param       column      Column index
+         * @return                  Cell value
+         */
+        public Object getValueAt(int row, int column) {
+            if (row >= categoryNames.size())
+                throw new IndexOutOfBoundsException("Report row "+row+" is not valid");
+
+            Object value;
+            switch (column) {
+                case 0:                         // Category
+                    value = categoryNames.get(row);
+                    break;
+
+                case 1:                         // Period
+                    value = periodNames.get(row);
+                    break;
+
+                case 2:                         // Amount
+                    value = String.format("%,.2f", (double)periodTotals.get(row)/100.0);
+                    break;
+
+                default:
+                    throw new IndexOutOfBoundsException("Report column "+column+" is not valid");
+            }
+
+            return value;
+        }
+    }
+}
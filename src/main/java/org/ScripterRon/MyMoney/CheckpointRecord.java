@@ -0,0 +1,635 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Asn1.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Database year-end checkpoint record
+ * <p>
+ * A checkpoint contains the account balances and the security holdings at the end
+ * of a closed year (a year before the current year).  Database.save() writes a
+ * checkpoint for each closed year after the scheduled transactions.  A computation
+ * of the current balances or holdings starts with the latest valid checkpoint and
+ * then processes the transactions following the checkpoint, so the work is
+ * proportional to the activity since the end of the last closed year.
+ * <p>
+ * Each checkpoint contains the number of transactions it covers and a CRC-32 hash
+ * of the partition records from the first partition through the checkpoint year.
+ * Since a partition record contains the hash of the encoded partition transactions,
+ * the checkpoints can be validated without reading the transactions.  The checkpoints
+ * are validated against the partition records the first time a checkpoint is
+ * requested.  A checkpoint is discarded when a transaction for the checkpoint year
+ * or an earlier year is added, removed or modified.
+ * <p>
+ * The checkpoint for the year preceding the first loaded partition is always valid,
+ * so a computation can start with that checkpoint when the older partitions are
+ * not loaded (see TransactionPartitions).
+ * <p>
+ * The account balance is the balance displayed by the overview panel, so the balance
+ * for an investment account does not include the value of the securities held in
+ * the account.  The capital gains for a security holding are not saved.
+ * <p>
+ * The checkpoint record is encoded as follows:
+ * <pre>
+ *   CheckpointRecord ::= [APPLICATION 8] SEQUENCE {
+ *     year                        INTEGER,
+ *     count                       INTEGER,
+ *     hash                        INTEGER,
+ *     balances                    SEQUENCE OF AccountBalance,
+ *     holdings                    SEQUENCE OF Holding }
+ *
+ *   AccountBalance ::= SEQUENCE {
+ *     account                     INTEGER,
+ *     balance                     DOUBLE }
+ *
+ *   Holding ::= SEQUENCE {
+ *     account                     INTEGER,
+ *     security                    INTEGER,
+ *     shares                      DOUBLE,
+ *     cost                        DOUBLE,
+ *     yield                       DOUBLE,
+ *     lots                        SEQUENCE OF Lot }
+ *
+ *   Lot ::= SEQUENCE {
+ *     date                        GENERALTIME,
+ *     shares                      DOUBLE,
+ *     cost                        DOUBLE }
+ * </pre>
+ */
+public final class CheckpointRecord {
+
+    /** The encoded CheckpointRecord ASN.1 tag identifier */
+    private static final byte tagID=(byte)(Asn1Stream.ASN1_APPLICATION+8);
+
+    /** Checkpoint year */
+    private int year;
+
+    /** Number of transactions covered by the checkpoint */
+    private int count;
+
+    /** CRC-32 hash of the covered partitions */
+    private int hash;
+
+    /** Account balances */
+    private Map<AccountRecord, Double> balances;
+
+    /** Security holdings sorted by security name */
+    private List<SecurityHolding> holdings;
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            transactionModified(event.getTransaction());
+        }
+    };
+
+    /**
+     * Create a year-end marker.  The marker has no balances or holdings and is
+     * used to validate and build checkpoints.
+     *
+     * @param       year            Checkpoint year
+     * @param       count           Number of covered transactions
+     * @param       hash            Hash of the covered partitions
+     */
+    private CheckpointRecord(int year, int count, int hash) {
+        this.year = year;
+        this.count = count;
+        this.hash = hash;
+        balances = new IdentityHashMap<>();
+        holdings = new ArrayList<>();
+    }
+
+    /**
+     * Create a checkpoint.  The security holdings are copied since a security
+     * holding is updated as transactions are processed.
+     *
+     * @param       yearEnd         Year-end marker
+     * @param       balances        Account balances
+     * @param       holdings        Security holdings
+     */
+    private CheckpointRecord(CheckpointRecord yearEnd, Map<AccountRecord, Double> balances,
+                                            List<SecurityHolding> holdings) {
+        this(yearEnd.year, yearEnd.count, yearEnd.hash);
+        this.balances.putAll(balances);
+        for (SecurityHolding h : holdings)
+            this.holdings.add(new SecurityHolding(h));
+    }
+
+    /**
+     * Create a checkpoint from an encoded byte stream
+     *
+     * @param       data            Encoded byte stream for the record
+     * @exception   DBException     Unable to decode object stream
+     */
+    public CheckpointRecord(byte[] data) throws DBException {
+        if (data == null)
+            throw new NullPointerException("No encoded data supplied");
+
+        balances = new IdentityHashMap<>();
+        holdings = new ArrayList<>();
+        DecodeStream stream = new DecodeStream(data);
+
+        try {
+
+            //
+            //  Validate the application identifier tag
+            //
+            if (stream.getTag() != tagID)
+                throw new DBException("Not an encoded CheckpointRecord object");
+
+            //
+            //  Get the CheckpointRecord sequence
+            //
+            DecodeStream seq = stream.getSequence(true);
+
+            //
+            //  Decode the year, transaction count and transaction hash
+            //
+            year = seq.decodeInteger(false);
+            count = seq.decodeInteger(false);
+            hash = seq.decodeInteger(false);
+
+            //
+            //  Decode the account balances
+            //
+            DecodeStream balanceSeq = seq.getSequence(false);
+            while (balanceSeq.getLength() != 0) {
+                DecodeStream entrySeq = balanceSeq.getSequence(false);
+                int accountID = entrySeq.decodeInteger(false);
+                double balance = entrySeq.decodeDouble(false);
+                AccountRecord account = AccountRecord.getAccount(accountID);
+                if (account == null)
+                    throw new DBException("Account "+accountID+" is not defined");
+
+                balances.put(account, balance);
+            }
+
+            //
+            //  Decode the security holdings
+            //
+            DecodeStream holdingSeq = seq.getSequence(false);
+            while (holdingSeq.getLength() != 0) {
+                DecodeStream entrySeq = holdingSeq.getSequence(false);
+                int accountID = entrySeq.decodeInteger(false);
+                int securityID = entrySeq.decodeInteger(false);
+                double shares = entrySeq.decodeDouble(false);
+                double cost = entrySeq.decodeDouble(false);
+                double yield = entrySeq.decodeDouble(false);
+                AccountRecord account = AccountRecord.getAccount(accountID);
+                if (account == null)
+                    throw new DBException("Account "+accountID+" is not defined");
+
+                SecurityRecord security = SecurityRecord.getSecurity(securityID);
+                if (security == null)
+                    throw new DBException("Security "+securityID+" is not defined");
+
+                SecurityHolding h = new SecurityHolding(account, security, shares, cost, yield);
+                DecodeStream lotSeq = entrySeq.getSequence(false);
+                while (lotSeq.getLength() != 0) {
+                    DecodeStream lot = lotSeq.getSequence(false);
+                    h.restoreLot(lot.decodeTime(false), lot.decodeDouble(false), lot.decodeDouble(false));
+                }
+
+                holdings.add(h);
+            }
+
+            //
+            //  Check for unconsummed data
+            //
+            if (seq.getLength() != 0)
+                throw new DBException("Unconsummed data in CheckpointRecord sequence");
+        } catch (Asn1Exception exc) {
+            throw new DBException("ASN.1 decode error", exc);
+        }
+    }
+
+    /**
+     * Test if the supplied byte stream represents an encoded CheckpointRecord object
+     *
+     * @param       data            The encoded byte stream
+     * @return                      TRUE if CheckpointRecord object
+     */
+    public static boolean isEncodedStream(byte[] data) {
+        if (data == null)
+            throw new NullPointerException("Null byte stream reference");
+
+        if (data.length == 0)
+            return false;
+
+        return (data[0]==(byte)(tagID|Asn1Stream.ASN1_CONSTRUCTED) ? true : false);
+    }
+
+    /**
+     * Encode the CheckpointRecord object
+     *
+     * @return                      The encoded byte stream for the object
+     */
+    public byte[] encode() {
+        int seqLength = 0;
+        EncodeStream stream = new EncodeStream(1024);
+
+        //
+        //  Encode the security holdings (fields are encoded in reverse order because
+        //  the stream is constructed from the end to the beginning)
+        //
+        int holdingsLength = 0;
+        for (int i=holdings.size()-1; i>=0; i--) {
+            SecurityHolding h = holdings.get(i);
+            double[] totals = h.getTotals();
+            int lotsLength = 0;
+            for (int j=h.getLotCount()-1; j>=0; j--) {
+                int lotLength = stream.encodeDouble(h.getLotCost(j));
+                lotLength += stream.encodeDouble(h.getLotShares(j));
+                lotLength += stream.encodeTime(h.getLotDate(j));
+                lotsLength += stream.makeSequence(lotLength);
+            }
+
+            int length = stream.makeSequence(lotsLength);
+            length += stream.encodeDouble(h.getAnnualYield());
+            length += stream.encodeDouble(totals[1]);
+            length += stream.encodeDouble(totals[0]);
+            length += stream.encodeInteger(h.getSecurity().getID());
+            length += stream.encodeInteger(h.getAccount().getID());
+            holdingsLength += stream.makeSequence(length);
+        }
+
+        seqLength += stream.makeSequence(holdingsLength);
+
+        //
+        //  Encode the account balances
+        //
+        int balancesLength = 0;
+        for (Map.Entry<AccountRecord, Double> entry : balances.entrySet()) {
+            int length = stream.encodeDouble(entry.getValue());
+            length += stream.encodeInteger(entry.getKey().getID());
+            balancesLength += stream.makeSequence(length);
+        }
+
+        seqLength += stream.makeSequence(balancesLength);
+
+        //
+        //  Encode the transaction hash, transaction count and year
+        //
+        seqLength += stream.encodeInteger(hash);
+        seqLength += stream.encodeInteger(count);
+        seqLength += stream.encodeInteger(year);
+
+        //
+        //  Make the CheckpointRecord sequence
+        //
+        stream.makeSequence(seqLength, tagID);
+        return stream.getData();
+    }
+
+    /**
+     * Get the checkpoint year
+     *
+     * @return                      Checkpoint year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Get the number of transactions covered by the checkpoint.  This is the
+     * index of the first transaction following the checkpoint when all of the
+     * partitions are loaded.
+     *
+     * @return                      Number of transactions
+     */
+    public int getTransactionCount() {
+        return count;
+    }
+
+    /**
+     * Get the balance for an account at the end of the checkpoint year
+     *
+     * @param       account         Account
+     * @return                      Account balance
+     */
+    public double getBalance(AccountRecord account) {
+        Double balance = balances.get(account);
+        return (balance != null ? balance : 0.00);
+    }
+
+    /**
+     * Get the account balances at the end of the checkpoint year.  Accounts
+     * without any transactions are not included.
+     *
+     * @return                      Account balances
+     */
+    public Map<AccountRecord, Double> getBalances() {
+        return new IdentityHashMap<>(balances);
+    }
+
+    /**
+     * Get the security holdings at the end of the checkpoint year.  A new copy
+     * of each security holding is returned since the holdings are updated as the
+     * following transactions are processed.  The holdings are sorted by the
+     * security name as required by SecurityHolding.updateSecurityHolding().
+     *
+     * @return                      Security holdings
+     */
+    public List<SecurityHolding> getHoldings() {
+        List<SecurityHolding> result = new ArrayList<>(holdings.size()+10);
+        for (SecurityHolding h : holdings)
+            result.add(new SecurityHolding(h));
+
+        Collections.sort(result, new Comparator<SecurityHolding>() {
+            @Override
+            public int compare(SecurityHolding h1, SecurityHolding h2) {
+                return h1.getSecurity().getName().compareTo(h2.getSecurity().getName());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Get the latest valid checkpoint for the current database context that
+     * precedes the year containing the supplied date.  The checkpoint for the
+     * year preceding the first loaded partition is returned if the date is in
+     * a partition that is not loaded.
+     *
+     * @param       date            Date
+     * @return                      Checkpoint or null
+     */
+    public static CheckpointRecord getCheckpoint(Date date) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        return getCheckpoint(getCheckpoints(context), date, context.firstLoadedYear);
+    }
+
+    /**
+     * Get the latest checkpoint in a checkpoint list that precedes the year
+     * containing the supplied date or the first loaded year, whichever is later
+     *
+     * @param       checkpoints     Checkpoints sorted by year
+     * @param       date            Date
+     * @param       firstLoadedYear First loaded partition year or 0
+     * @return                      Checkpoint or null
+     */
+    static CheckpointRecord getCheckpoint(List<CheckpointRecord> checkpoints, Date date,
+                                            int firstLoadedYear) {
+        int dateYear = Math.max(getYear(date), firstLoadedYear);
+        CheckpointRecord checkpoint = null;
+        for (CheckpointRecord c : checkpoints) {
+            if (c.year >= dateYear)
+                break;
+
+            checkpoint = c;
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Get the transactions following a checkpoint in the current transaction list
+     *
+     * @param       checkpoint      Checkpoint returned by getCheckpoint()
+     * @return                      Transactions following the checkpoint
+     */
+    public static List<TransactionRecord> getTransactionsAfter(CheckpointRecord checkpoint) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        List<TransactionRecord> transactions = context.transactions;
+        return transactions.subList(checkpoint.count-context.unloadedCount, transactions.size());
+    }
+
+    /**
+     * Get the valid checkpoints for a database context.  The checkpoints loaded
+     * from the database are validated the first time this method is called.
+     *
+     * @param       context         Database context
+     * @return                      Checkpoints sorted by year
+     */
+    static List<CheckpointRecord> getCheckpoints(DatabaseContext context) {
+        if (context.yearEnds != null) {
+            Iterator<CheckpointRecord> i = context.checkpoints.iterator();
+            while (i.hasNext()) {
+                CheckpointRecord c = i.next();
+                boolean valid = false;
+                for (CheckpointRecord yearEnd : context.yearEnds) {
+                    if (c.year == yearEnd.year) {
+                        valid = (c.count == yearEnd.count && c.hash == yearEnd.hash);
+                        break;
+                    }
+                }
+
+                if (!valid)
+                    i.remove();
+            }
+
+            context.yearEnds = null;
+        }
+
+        return new ArrayList<>(context.checkpoints);
+    }
+
+    /**
+     * Build the checkpoints for the closed years in a database context.  Valid
+     * checkpoints are reused and the transactions following the last reused
+     * checkpoint are processed to build the remaining checkpoints.  The new
+     * checkpoints replace the checkpoints in the database context.
+     *
+     * @param       context         Database context
+     * @param       yearEnds        Year-end markers for the context partitions
+     * @return                      Checkpoints sorted by year
+     * @exception   IOException     Unable to load a partition
+     */
+    static List<CheckpointRecord> buildCheckpoints(DatabaseContext context,
+                                    List<CheckpointRecord> yearEnds) throws IOException {
+        List<CheckpointRecord> validCheckpoints = getCheckpoints(context);
+        List<CheckpointRecord> checkpoints = new ArrayList<>(yearEnds.size());
+        CheckpointRecord previous = null;
+
+        //
+        // Reuse existing checkpoints until we reach a year that has changed
+        //
+        for (CheckpointRecord yearEnd : yearEnds) {
+            CheckpointRecord checkpoint = null;
+            for (CheckpointRecord c : validCheckpoints) {
+                if (c.year == yearEnd.year && c.count == yearEnd.count && c.hash == yearEnd.hash) {
+                    checkpoint = c;
+                    break;
+                }
+            }
+
+            if (checkpoint == null)
+                break;
+
+            checkpoints.add(checkpoint);
+            previous = checkpoint;
+        }
+
+        //
+        // Process the transactions following the last reused checkpoint and
+        // create a checkpoint at the end of each remaining year
+        //
+        if (checkpoints.size() < yearEnds.size()) {
+            Map<AccountRecord, Double> yearBalances;
+            List<SecurityHolding> yearHoldings;
+            int index;
+            if (previous != null) {
+                yearBalances = previous.getBalances();
+                yearHoldings = previous.getHoldings();
+                index = previous.count;
+            } else {
+                yearBalances = new IdentityHashMap<>();
+                yearHoldings = new ArrayList<>();
+                index = 0;
+            }
+
+            //
+            // Load the partitions following the last reused checkpoint if they
+            // are not loaded (this doesn't happen unless the checkpoint for the
+            // first loaded year has been discarded)
+            //
+            if (index < context.unloadedCount)
+                context.database.loadPartitions(previous != null ? previous.year+1 : 0);
+
+            ListIterator<TransactionRecord> i = context.transactions.listIterator(index-context.unloadedCount);
+            for (int j=checkpoints.size(); j<yearEnds.size(); j++) {
+                CheckpointRecord yearEnd = yearEnds.get(j);
+                while (index < yearEnd.count) {
+                    applyTransaction(i.next(), yearBalances, yearHoldings);
+                    index++;
+                }
+
+                checkpoints.add(new CheckpointRecord(yearEnd, yearBalances, yearHoldings));
+            }
+        }
+
+        context.checkpoints.clear();
+        context.checkpoints.addAll(checkpoints);
+        context.yearEnds = null;
+        return checkpoints;
+    }
+
+    /**
+     * A transaction has been added, removed or modified.  The checkpoints for the
+     * transaction year and later years are discarded.
+     *
+     * @param       transaction     Transaction
+     */
+    private static void transactionModified(TransactionRecord transaction) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.checkpoints.isEmpty())
+            return;
+
+        int transactionYear = getYear(transaction.getDate());
+        Iterator<CheckpointRecord> i = context.checkpoints.iterator();
+        while (i.hasNext()) {
+            if (i.next().year >= transactionYear)
+                i.remove();
+        }
+    }
+
+    /**
+     * Update the account balances and security holdings for a transaction
+     *
+     * @param       t               Transaction
+     * @param       balances        Account balances
+     * @param       holdings        Security holdings sorted by security name
+     */
+    static void applyTransaction(TransactionRecord t, Map<AccountRecord, Double> balances,
+                                            List<SecurityHolding> holdings) {
+        double amount = t.getAmount();
+        AccountRecord a = t.getAccount();
+        if (a.getType() == AccountRecord.INVESTMENT)
+            SecurityHolding.updateSecurityHolding(holdings, t, false);
+        else
+            addBalance(balances, a, amount);
+
+        if (t.getTransferAccount() != null)
+            addBalance(balances, t.getTransferAccount(), -amount);
+
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                if (split.getAccount() != null)
+                    addBalance(balances, split.getAccount(), -split.getAmount());
+            }
+        }
+    }
+
+    /**
+     * Add an amount to an account balance
+     *
+     * @param       balances        Account balances
+     * @param       account         Account
+     * @param       amount          Amount
+     */
+    private static void addBalance(Map<AccountRecord, Double> balances, AccountRecord account,
+                                            double amount) {
+        Double balance = balances.get(account);
+        balances.put(account, (balance != null ? balance+amount : amount));
+    }
+
+    /**
+     * Get the year for a date
+     *
+     * @param       date            Date
+     * @return                      Year
+     */
+    static int getYear(Date date) {
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(date);
+        return cal.get(Calendar.YEAR);
+    }
+
+    /**
+     * Get the year-end markers for the closed years.  The hash for a year is
+     * computed from the partition records for the year and the preceding years.
+     *
+     * @param       partitions      Partition records sorted by year
+     * @return                      Year-end markers sorted by year
+     */
+    static List<CheckpointRecord> getYearEnds(Collection<PartitionRecord> partitions) {
+        List<CheckpointRecord> yearEnds = new ArrayList<>(partitions.size());
+        int currentYear = new GregorianCalendar().get(Calendar.YEAR);
+        CRC32 crc = new CRC32();
+        int count = 0;
+        for (PartitionRecord p : partitions) {
+            if (p.getYear() >= currentYear)
+                break;
+
+            count += p.getTransactionCount();
+            updateHash(crc, p.getYear());
+            updateHash(crc, p.getTransactionCount());
+            updateHash(crc, p.getHash());
+            yearEnds.add(new CheckpointRecord(p.getYear(), count, (int)crc.getValue()));
+        }
+
+        return yearEnds;
+    }
+
+    /**
+     * Add an integer to a hash
+     *
+     * @param       crc             Hash
+     * @param       value           Integer value
+     */
+    private static void updateHash(CRC32 crc, int value) {
+        crc.update(value>>>24);
+        crc.update(value>>>16);
+        crc.update(value>>>8);
+        crc.update(value);
+    }
+}
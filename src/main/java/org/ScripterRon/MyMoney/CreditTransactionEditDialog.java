@@ -17,7 +17,6 @@ package org.ScripterRon.MyMoney;
 
 import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -99,7 +98,14 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
         double amount;
         splits = null;
         if (transaction != null) {
+            //
+            // Edit a copy of the splits since the transaction is still in the
+            // transaction list until the changes are saved
+            //
             splits = transaction.getSplits();
+            if (splits != null)
+                splits = TransactionSplit.copySplits(splits);
+
             if (transaction.getAccount() == account) {
                 transferAccount = transaction.getTransferAccount();
                 category = transaction.getCategory();
@@ -170,9 +176,7 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
         else
             nameField = new JTextField(20);
         
-        JTable table = transactionPanel.getTransactionTable();
-        AccountTableModel model = (AccountTableModel)table.getModel();
-        NameDocumentListener.addInstance(nameField, model.getTransactionNames());
+        NameDocumentListener.addInstance(nameField);
 
         //
         // Get the category or transfer account
@@ -401,6 +405,7 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
         AccountRecord a, t;
         int index, reconciled;
         int transactionPosition = -1, modelPosition = -1;
+        TransactionRecord oldTransaction = null;
         double amount;
         String name;
 
@@ -432,16 +437,8 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
             name = transaction.getName();
             amount = transaction.getAmount();
             reconciled = transaction.getReconciled();
-            ListIterator<TransactionRecord> i = TransactionRecord.transactions.listIterator();
-            transactionPosition = 0;
-            while (i.hasNext()) {
-                if (i.next() == transaction) {
-                    i.remove();
-                    break;
-                }
-
-                transactionPosition++;
-            }
+            oldTransaction = transaction;
+            transactionPosition = TransactionRecord.removeTransaction(transaction);
 
             transaction.clearReferences();
             modelPosition = tableModel.transactionRemoved(transaction);
@@ -480,11 +477,9 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
         }
         
         //
-        // Get the transaction name and update the name list
+        // Get the transaction name
         //
         name = nameField.getText();
-        if (name.length() > 0)
-            tableModel.getTransactionNames().add(name);
 
         //
         // Build the new transaction
@@ -548,9 +543,9 @@ public final class CreditTransactionEditDialog extends JDialog implements Action
         // Add the new transaction and scroll the table to display the transaction
         //
         if (transactionPosition >= 0)
-            TransactionRecord.transactions.add(transactionPosition, transaction);
+            TransactionRecord.insertTransaction(transactionPosition, transaction, oldTransaction);
          else
-            TransactionRecord.insertTransaction(transaction);
+            TransactionRecord.insertTransaction(transaction, oldTransaction);
 
         int modelRow = tableModel.transactionAdded(modelPosition, transaction);
         transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
@@ -209,7 +209,7 @@ public final class CreditTransactionPanel extends TransactionPanel implements Ac
                         if (option == JOptionPane.YES_OPTION) {
                             modelRow = table.convertRowIndexToModel(row);
                             TransactionRecord transaction = tableModel.getTransactionAt(modelRow);
-                            TransactionRecord.transactions.remove(transaction);
+                            TransactionRecord.removeTransaction(transaction);
                             transaction.clearReferences();
                             tableModel.transactionRemoved(transaction);
                             Main.dataModified = true;
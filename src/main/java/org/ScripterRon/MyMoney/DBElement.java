@@ -182,4 +182,11 @@ public abstract class DBElement implements Comparable<DBElement> {
     public void setType(int type) {
         elementType = type;
     }
+
+    /**
+     * Encode the database element
+     *
+     * @return                      The encoded byte stream for the element
+     */
+    public abstract byte[] encode();
 }
@@ -21,12 +21,46 @@ import java.util.*;
 
 /**
  * The MyMoney database consists of ASN1-encoded records describing the accounts, categories,
- * securities and transactions.
+ * securities and transactions.  The database file contains the accounts, categories,
+ * securities and scheduled transactions followed by a partition record for each year
+ * with transactions and the year-end checkpoints which contain the account balances
+ * and security holdings at the end of each closed year.
+ * <p>
+ * The transactions for each year are stored in a partition file named using the
+ * database name and the year (MyMoney-2012.partition for the MyMoney.database file).
+ * The partitions for the current year and the previous year are loaded with the
+ * database and the older partitions are loaded when they are needed (see
+ * TransactionPartitions).  Only the partitions with modified transactions are written
+ * when the database is saved.  A database file written by an earlier version contains
+ * the transactions and the partition files are created when the database is saved.
+ * <p>
+ * The transactions for closed years can be moved to archive files to reduce the size
+ * of the database.  There is one archive file for each archived year and the archive
+ * file is named using the database name and the year (MyMoney-2012.archive for the
+ * MyMoney.database file).  An archive file is a read-only database containing the
+ * definitions and the transactions for the year.
+ * <p>
+ * The archived transactions are replaced by carry-forward transactions dated at the
+ * end of the last archived year.  An opening balance transaction is created for each
+ * account with a non-zero balance and a BUY transaction is created for each open
+ * security lot using the lot acquisition date, shares and cost.  An archive file starts
+ * with the carry-forward transactions for the end of the previous year, so each archive
+ * file can be opened by itself for historical reports.
+ * <p>
+ * A record index (see RecordIndex) is written beside each database, partition and
+ * archive file.  It contains the offset, type, identifier and date of each record,
+ * so a tool can read a single record without reading the file from the beginning.
  */
 public final class Database {
     
     /** The database file */
     private File file;
+
+    /** The database is a read-only archive */
+    private final boolean readOnly;
+
+    /** The database context */
+    private final DatabaseContext context = new DatabaseContext();
     
     /**
      * Create a new database
@@ -35,6 +69,8 @@ public final class Database {
      */
     public Database(String path) {
         file = new File(path);
+        readOnly = false;
+        context.database = this;
     }
 
     /**
@@ -43,7 +79,19 @@ public final class Database {
      * @param       file            The database file
      */
     public Database(File file) {
+        this(file, false);
+    }
+
+    /**
+     * Create a new database
+     *
+     * @param       file            The database file
+     * @param       readOnly        TRUE if the database is a read-only archive
+     */
+    public Database(File file, boolean readOnly) {
         this.file = file;
+        this.readOnly = readOnly;
+        context.database = this;
     }
     
     /**
@@ -56,50 +104,151 @@ public final class Database {
     }
 
     /**
-     * Load the database
+     * Check if the database is a read-only archive
+     *
+     * @return                      TRUE if the database cannot be saved
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Get the archive file for a year
+     *
+     * @param       year            Archive year
+     * @return                      Archive file
+     */
+    public File getArchiveFile(int year) {
+        return getYearFile(year, ".archive");
+    }
+
+    /**
+     * Get the partition file for a year
+     *
+     * @param       year            Partition year
+     * @return                      Partition file
+     */
+    public File getPartitionFile(int year) {
+        return getYearFile(year, ".partition");
+    }
+
+    /**
+     * Get the data files for the database.  These are the database file and the
+     * partition files.
+     *
+     * @return                      Data files
+     */
+    public List<File> getDataFiles() {
+        List<File> files = new ArrayList<>(context.partitions.size()+1);
+        files.add(file);
+        for (Integer year : context.partitions.keySet())
+            files.add(getPartitionFile(year));
+
+        return files;
+    }
+
+    /**
+     * Get the file for a year.  The file is in the database directory and the
+     * name is formed from the database name and the year.
+     *
+     * @param       year            Year
+     * @param       extension       File extension
+     * @return                      File
+     */
+    private File getYearFile(int year, String extension) {
+        String name = file.getName();
+        int sep = name.lastIndexOf('.');
+        if (sep > 0)
+            name = name.substring(0, sep);
+
+        return new File(file.getAbsoluteFile().getParentFile(), name+"-"+year+extension);
+    }
+
+    /**
+     * Get the database context
+     *
+     * @return                      The database context
+     */
+    public DatabaseContext getContext() {
+        return context;
+    }
+
+    /**
+     * Load the database.  The database context is bound to the current thread
+     * while the records are loaded.
      *
      * @exception   DBException     Unable to load application data
      * @exception   IOException     An I/O error occurred
      */
     public void load() throws DBException, IOException {
+        DatabaseContext previous = DatabaseContext.setCurrent(context);
+        try {
+            loadRecords();
+        } finally {
+            DatabaseContext.setCurrent(previous);
+        }
+    }
+
+    /**
+     * Load the database records into the current database context
+     *
+     * @exception   DBException     Unable to load application data
+     * @exception   IOException     An I/O error occurred
+     */
+    private void loadRecords() throws DBException, IOException {
         RecordInputStream in = null;
             
         //
         // Reset the database structures
         //
-        AccountRecord.accounts.clear();
-        CategoryRecord.categories.clear();
-        SecurityRecord.securities.clear();
-        TransactionRecord.transactions.clear();
-        ScheduleRecord.transactions.clear();
+        context.clear();
+        invalidateCaches();
+        LedgerEventBus.clear();
 
         //
         // Read the database records
         //
         try {
             byte[] stream;
+            Map<Integer, PartitionRecord.PartitionHash> partitionHashes = new TreeMap<>();
+            GregorianCalendar cal = new GregorianCalendar();
             if (file.exists()) {
                 in = new RecordInputStream(file);
                 while ((stream=in.readRecord()) != null) {
                     try {
                         if (AccountRecord.isEncodedStream(stream)) {
                             AccountRecord a = new AccountRecord(stream);
-                            while (!AccountRecord.accounts.add(a))
+                            while (!context.accounts.add(a))
                                 a.setName(a.getName()+" NEW");
                         } else if (CategoryRecord.isEncodedStream(stream)) {
                             CategoryRecord c = new CategoryRecord(stream);
-                            while (!CategoryRecord.categories.add(c))
+                            while (!context.categories.add(c))
                                 c.setName(c.getName()+" NEW");
                         } else if (SecurityRecord.isEncodedStream(stream)) {
                             SecurityRecord s = new SecurityRecord(stream);
-                            while (!SecurityRecord.securities.add(s))
+                            while (!context.securities.add(s))
                                 s.setName(s.getName()+" NEW");
                         } else if (TransactionRecord.isEncodedStream(stream)) {
                             TransactionRecord t = new TransactionRecord(stream);
-                            TransactionRecord.transactions.add(t);
+                            context.transactions.add(t);
+                            cal.setTime(t.getDate());
+                            int year = cal.get(Calendar.YEAR);
+                            PartitionRecord.PartitionHash hash = partitionHashes.get(year);
+                            if (hash == null) {
+                                hash = new PartitionRecord.PartitionHash(year);
+                                partitionHashes.put(year, hash);
+                            }
+
+                            hash.update(t, stream);
                         } else if (ScheduleRecord.isEncodedStream(stream)) {
                             ScheduleRecord r = new ScheduleRecord(stream);
-                            ScheduleRecord.transactions.add(r);
+                            context.schedules.add(r);
+                        } else if (PartitionRecord.isEncodedStream(stream)) {
+                            PartitionRecord p = new PartitionRecord(stream);
+                            context.partitions.put(p.getYear(), p);
+                        } else if (CheckpointRecord.isEncodedStream(stream)) {
+                            CheckpointRecord c = new CheckpointRecord(stream);
+                            context.checkpoints.add(c);
                         } else {
                             throw new DBException("Unrecognized encoded record type");
                         }
@@ -112,21 +261,288 @@ public final class Database {
                 in.close();
                 in = null;
             }
+
+            if (!partitionHashes.isEmpty()) {
+
+                //
+                // The transactions are in the database file (an archive file or a
+                // database written by an earlier version).  The partitions will be
+                // written when the database is saved.
+                //
+                context.partitions.clear();
+                for (PartitionRecord.PartitionHash hash : partitionHashes.values()) {
+                    context.partitions.put(hash.getYear(), hash.getPartition());
+                    context.modifiedYears.add(hash.getYear());
+                }
+
+                context.yearEnds = CheckpointRecord.getYearEnds(context.partitions.values());
+            } else {
+
+                //
+                // Load the partitions for the current year and the previous year.  The
+                // partitions that are not loaded hold references to the definitions
+                // used by their transactions.
+                //
+                context.yearEnds = CheckpointRecord.getYearEnds(context.partitions.values());
+                for (PartitionRecord p : context.partitions.values()) {
+                    p.addReferences();
+                    context.unloadedCount += p.getTransactionCount();
+                }
+
+                context.firstLoadedYear = Integer.MAX_VALUE;
+                readPartitions(cal.get(Calendar.YEAR)-1);
+            }
+
+            //
+            // Build the text index in the background (a batch command does not
+            // search the transactions)
+            //
+            if (!Main.headless)
+                TextIndex.build();
         } finally {
             if (in != null) {
-                AccountRecord.accounts.clear();
-                CategoryRecord.categories.clear();
-                SecurityRecord.securities.clear();
-                TransactionRecord.transactions.clear();
-                ScheduleRecord.transactions.clear();
+                context.clear();
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Load the partitions for the supplied year and the following years if they are
+     * not already loaded.  The partitions following the latest valid checkpoint
+     * before the year are loaded, so the checkpoint for the year preceding the first
+     * loaded partition is always valid.  The database context is bound to the
+     * current thread while the partitions are loaded.
+     *
+     * @param       year            Partition year (0 to load all partitions)
+     * @return                      TRUE if partitions were loaded
+     * @exception   IOException     An I/O error occurred
+     */
+    boolean loadPartitions(int year) throws IOException {
+        DatabaseContext previous = DatabaseContext.setCurrent(context);
+        try {
+            if (!readPartitions(year))
+                return false;
+
+            invalidateCaches();
+            if (!Main.headless)
+                TextIndex.build();
+        } finally {
+            DatabaseContext.setCurrent(previous);
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the partitions for the supplied year and the following years into the
+     * current database context.  The partition transactions are inserted at the
+     * beginning of the transaction list.  A partition that does not match its
+     * partition record replaces the partition record and the checkpoints for the
+     * partition year and later years are discarded.
+     * <p>
+     * A partition file that is missing or cannot be read is an error and the
+     * database context is not changed.  The partitions remain unloaded, so saving
+     * the database does not replace the partition records and the transactions in
+     * the partition file are not lost.
+     *
+     * @param       year            Partition year (0 to read all partitions)
+     * @return                      TRUE if partitions were read
+     * @exception   IOException     A partition file is missing or cannot be read
+     */
+    private boolean readPartitions(int year) throws IOException {
+        int firstLoadedYear = context.firstLoadedYear;
+        if (firstLoadedYear == 0 || year >= firstLoadedYear)
+            return false;
+
+        //
+        // Start with the year following the latest valid checkpoint before the year
+        //
+        int startYear = 0;
+        for (CheckpointRecord c : CheckpointRecord.getCheckpoints(context)) {
+            if (c.getYear() >= year)
+                break;
+
+            startYear = c.getYear()+1;
+        }
+
+        //
+        // Read the partition files.  The database context is not updated until all
+        // of the partition files have been read.
+        //
+        List<PartitionRecord> partitions =
+                new ArrayList<>(context.partitions.subMap(startYear, firstLoadedYear).values());
+        List<PartitionRecord.PartitionHash> hashes = new ArrayList<>(partitions.size());
+        List<TransactionRecord> transactions = new ArrayList<>();
+        for (PartitionRecord p : partitions) {
+            File partitionFile = getPartitionFile(p.getYear());
+            if (!partitionFile.exists())
+                throw new FileNotFoundException("Partition "+partitionFile.getName()+" does not exist");
+
+            PartitionRecord.PartitionHash hash = new PartitionRecord.PartitionHash(p.getYear());
+            RecordInputStream in = new RecordInputStream(partitionFile);
+            try {
+                byte[] stream;
+                while ((stream=in.readRecord()) != null) {
+                    try {
+                        TransactionRecord t = new TransactionRecord(stream);
+                        transactions.add(t);
+                        hash.update(t, stream);
+                    } catch (DBException exc) {
+                        throw new IOException("Partition "+partitionFile.getName()+
+                                              " contains an invalid transaction", exc);
+                    }
+                }
+            } finally {
                 in.close();
             }
+
+            hashes.add(hash);
         }
+
+        //
+        // Update the database context
+        //
+        for (int i=0; i<partitions.size(); i++) {
+            PartitionRecord p = partitions.get(i);
+
+            //
+            // The transactions now hold the definition references
+            //
+            p.removeReferences();
+            context.unloadedCount -= p.getTransactionCount();
+
+            //
+            // Replace the partition record if the partition file has been changed
+            //
+            PartitionRecord partition = hashes.get(i).getPartition();
+            if (!partition.matches(p)) {
+                Main.logException("Partition "+getPartitionFile(p.getYear()).getName()+
+                                  " does not match the database",
+                        new DBException("Partition contains "+partition.getTransactionCount()+
+                                        " transactions, expected "+p.getTransactionCount()));
+                Iterator<CheckpointRecord> it = context.checkpoints.iterator();
+                while (it.hasNext()) {
+                    if (it.next().getYear() >= p.getYear())
+                        it.remove();
+                }
+
+                Main.dataModified = true;
+            }
+
+            context.partitions.put(p.getYear(), partition);
+        }
+
+        context.transactions.addAll(0, transactions);
+        context.firstLoadedYear = (context.partitions.headMap(startYear).isEmpty() ? 0 : startYear);
+        return true;
     }
 
     /**
-     * Save the current application database.  Accounts, categories, securities, transactions
-     * and scheduled transactions will be saved.
+     * Evict the partitions before the previous year to free memory.  The loaded
+     * partitions up to the latest valid checkpoint before the previous year are
+     * evicted if none of them have been modified.  The database context is bound
+     * to the current thread while the partitions are evicted.
+     *
+     * @return                      TRUE if partitions were evicted
+     */
+    boolean evictPartitions() {
+        DatabaseContext previous = DatabaseContext.setCurrent(context);
+        try {
+            return evictRecords();
+        } finally {
+            DatabaseContext.setCurrent(previous);
+        }
+    }
+
+    /**
+     * Evict the partitions before the previous year from the current database context
+     *
+     * @return                      TRUE if partitions were evicted
+     */
+    private boolean evictRecords() {
+        if (readOnly)
+            return false;
+
+        //
+        // Locate the latest valid checkpoint before the previous year that follows
+        // the first loaded year and precedes the first modified year
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        int previousYear = cal.get(Calendar.YEAR)-1;
+        int modifiedYear = Integer.MAX_VALUE;
+        for (Integer year : context.modifiedYears)
+            modifiedYear = Math.min(modifiedYear, year);
+
+        CheckpointRecord checkpoint = null;
+        for (CheckpointRecord c : CheckpointRecord.getCheckpoints(context)) {
+            if (c.getYear() >= previousYear || c.getYear() >= modifiedYear)
+                break;
+
+            if (c.getYear() >= context.firstLoadedYear)
+                checkpoint = c;
+        }
+
+        if (checkpoint == null)
+            return false;
+
+        //
+        // Make sure the transaction list agrees with the checkpoint
+        //
+        int count = checkpoint.getTransactionCount()-context.unloadedCount;
+        if (count <= 0 || count > context.transactions.size())
+            return false;
+
+        cal.setTime(context.transactions.get(count-1).getDate());
+        if (cal.get(Calendar.YEAR) > checkpoint.getYear())
+            return false;
+
+        if (count < context.transactions.size()) {
+            cal.setTime(context.transactions.get(count).getDate());
+            if (cal.get(Calendar.YEAR) <= checkpoint.getYear())
+                return false;
+        }
+
+        //
+        // The evicted partitions hold the definition references until they are
+        // loaded again
+        //
+        for (PartitionRecord p : context.partitions.headMap(checkpoint.getYear()+1).values())
+            p.addReferences();
+
+        ListIterator<TransactionRecord> i = context.transactions.listIterator();
+        for (int n=0; n<count; n++) {
+            i.next().clearReferences();
+            i.remove();
+        }
+
+        context.unloadedCount += count;
+        context.firstLoadedYear = checkpoint.getYear()+1;
+        invalidateCaches();
+        if (!Main.headless)
+            TextIndex.build();
+
+        return true;
+    }
+
+    /**
+     * Invalidate the caches derived from the transaction list
+     */
+    private void invalidateCaches() {
+        TransactionIndex.invalidate();
+        CategoryCube.invalidate();
+        TaxSummary.invalidate();
+        TextIndex.invalidate();
+        NameIndex.invalidate();
+        BondPortfolio.invalidate();
+        BondAmortization.invalidate();
+        LedgerSnapshot.ledgerModified();
+    }
+
+    /**
+     * Save the database.  The partitions with modified transactions are written
+     * followed by the database file containing the accounts, categories, securities,
+     * scheduled transactions, partition records and year-end checkpoints.
      *
      * @exception   IOException     An I/O error occurred
      */
@@ -135,6 +551,15 @@ public final class Database {
         boolean cleanup = false;
         File saveFile = new File(file.getPath()+".save");
 
+        if (readOnly)
+            throw new IOException(file.getName()+" is a read-only archive");
+
+        //
+        // Write the partitions for the modified years
+        //
+        List<File> deletedFiles = writePartitions();
+
+        RecordIndex index = new RecordIndex();
         try {
 
             //
@@ -144,44 +569,38 @@ public final class Database {
             cleanup = true;
 
             //
-            // Write out linked accounts first since we need to have
-            // them defined before we can define the linking accounts
-            // when the database is loaded again
-            //
-            for (AccountRecord a : AccountRecord.accounts)
-                if (a.getLinkCount() != 0)
-                    out.writeRecord(a.encode());
-
-            //
-            // Write out non-linked accounts next
-            //
-            for (AccountRecord a : AccountRecord.accounts)
-                if (a.getLinkCount() == 0)
-                    out.writeRecord(a.encode());
-
-            //
-            // Write out the categories
+            // Write out the accounts, categories and securities
             //
-            for (CategoryRecord c : CategoryRecord.categories)
-                out.writeRecord(c.encode());
+            writeDefinitions(out, index);
 
             //
-            // Write out the securities
+            // Write out the scheduled transactions
             //
-            for (SecurityRecord s : SecurityRecord.securities)
-                out.writeRecord(s.encode());
+            for (ScheduleRecord r : context.schedules) {
+                byte[] data = r.encode();
+                out.writeRecord(data);
+                index.addRecord(data, r.getAccount().getID(), r.getDate());
+            }
 
             //
-            // Write out the transactions
+            // Write out the partition records
             //
-            for (TransactionRecord t : TransactionRecord.transactions)
-                out.writeRecord(t.encode());
+            for (PartitionRecord p : context.partitions.values()) {
+                byte[] data = p.encode();
+                out.writeRecord(data);
+                index.addRecord(data, p.getYear(), null);
+            }
 
             //
-            // Write out the scheduled transactions
+            // Write out the year-end checkpoints.  Checkpoints that are still valid
+            // are reused and the remaining checkpoints are built from the transactions.
             //
-            for (ScheduleRecord r : ScheduleRecord.transactions)
-                out.writeRecord(r.encode());
+            List<CheckpointRecord> yearEnds = CheckpointRecord.getYearEnds(context.partitions.values());
+            for (CheckpointRecord c : CheckpointRecord.buildCheckpoints(context, yearEnds)) {
+                byte[] data = c.encode();
+                out.writeRecord(data);
+                index.addRecord(data, c.getYear(), null);
+            }
 
             //
             // Close and rename the save file
@@ -189,6 +608,7 @@ public final class Database {
             out.close();
             out = null;
             
+            RecordIndex.delete(file);
             if (file.exists())
                 if (!file.delete())
                     throw new IOException("Unable to delete "+file.getName());
@@ -205,11 +625,381 @@ public final class Database {
                     saveFile.delete();
             }
         }
+
+        index.write(file);
+
+        //
+        // Delete the partition files for years that no longer have transactions
+        //
+        for (File partitionFile : deletedFiles) {
+            RecordIndex.delete(partitionFile);
+            if (partitionFile.exists() && !partitionFile.delete())
+                throw new IOException("Unable to delete "+partitionFile.getName());
+        }
+
+        context.modifiedYears.clear();
+    }
+
+    /**
+     * Write the partitions for the modified years and update the partition records
+     *
+     * @return                      Partition files to be deleted
+     * @exception   IOException     An I/O error occurred
+     */
+    private List<File> writePartitions() throws IOException {
+        List<File> deletedFiles = new ArrayList<>();
+        if (context.modifiedYears.isEmpty())
+            return deletedFiles;
+
+        //
+        // Get the transactions for the modified years
+        //
+        Map<Integer, List<TransactionRecord>> yearTransactions = new TreeMap<>();
+        GregorianCalendar cal = new GregorianCalendar();
+        for (TransactionRecord t : context.transactions) {
+            cal.setTime(t.getDate());
+            int year = cal.get(Calendar.YEAR);
+            if (context.modifiedYears.contains(year)) {
+                List<TransactionRecord> transactions = yearTransactions.get(year);
+                if (transactions == null) {
+                    transactions = new ArrayList<>();
+                    yearTransactions.put(year, transactions);
+                }
+
+                transactions.add(t);
+            }
+        }
+
+        //
+        // Write each partition to a temporary save file and then rename it.  A partition
+        // that is not loaded is never modified since a transaction is inserted after the
+        // partition is loaded, but we will make sure we don't delete it.
+        //
+        for (Integer year : context.modifiedYears) {
+            if (context.firstLoadedYear != 0 && year < context.firstLoadedYear)
+                continue;
+
+            File partitionFile = getPartitionFile(year);
+            List<TransactionRecord> transactions = yearTransactions.get(year);
+            if (transactions == null) {
+                context.partitions.remove(year);
+                deletedFiles.add(partitionFile);
+                continue;
+            }
+
+            File saveFile = new File(partitionFile.getPath()+".save");
+            RecordOutputStream out = new RecordOutputStream(saveFile);
+            PartitionRecord.PartitionHash hash = new PartitionRecord.PartitionHash(year);
+            RecordIndex index = new RecordIndex();
+            boolean cleanup = true;
+            try {
+                for (TransactionRecord t : transactions) {
+                    byte[] data = t.encode();
+                    out.writeRecord(data);
+                    hash.update(t, data);
+                    index.addTransaction(t, data);
+                }
+
+                out.close();
+                out = null;
+                RecordIndex.delete(partitionFile);
+                if (partitionFile.exists())
+                    if (!partitionFile.delete())
+                        throw new IOException("Unable to delete "+partitionFile.getName());
+
+                cleanup = false;
+                if (!saveFile.renameTo(partitionFile))
+                    throw new IOException("Unable to rename "+saveFile.getName());
+            } finally {
+                if (cleanup) {
+                    if (out != null)
+                        out.close();
+
+                    if (saveFile.exists())
+                        saveFile.delete();
+                }
+            }
+
+            index.write(partitionFile);
+            context.partitions.put(year, hash.getPartition());
+        }
+
+        return deletedFiles;
     }
     
     /**
-     * Save archived transactions.  Accounts, categories and securities will also be
-     * saved.  Scheduled transactions will not be saved.
+     * Write the accounts, categories and securities
+     *
+     * @param       out             Record output stream
+     * @param       index           Record index
+     * @exception   IOException     An I/O error occurred
+     */
+    private void writeDefinitions(RecordOutputStream out, RecordIndex index) throws IOException {
+
+        //
+        // Write out linked accounts first since we need to have
+        // them defined before we can define the linking accounts
+        // when the database is loaded again
+        //
+        for (AccountRecord a : context.accounts)
+            if (a.getLinkCount() != 0)
+                writeElement(out, index, a);
+
+        //
+        // Write out non-linked accounts next
+        //
+        for (AccountRecord a : context.accounts)
+            if (a.getLinkCount() == 0)
+                writeElement(out, index, a);
+
+        //
+        // Write out the categories
+        //
+        for (CategoryRecord c : context.categories)
+            writeElement(out, index, c);
+
+        //
+        // Write out the securities
+        //
+        for (SecurityRecord s : context.securities)
+            writeElement(out, index, s);
+    }
+
+    /**
+     * Write an account, category or security
+     *
+     * @param       out             Record output stream
+     * @param       index           Record index
+     * @param       element         Database element
+     * @exception   IOException     An I/O error occurred
+     */
+    private static void writeElement(RecordOutputStream out, RecordIndex index, DBElement element)
+                                            throws IOException {
+        byte[] data = element.encode();
+        out.writeRecord(data);
+        index.addRecord(data, element.getID(), null);
+    }
+
+    /**
+     * Archive the transactions for the years before the supplied year.  The
+     * transactions are written to an archive file for each year and are replaced
+     * in the database by carry-forward transactions.  The database is then saved.
+     * The database context is bound to the current thread while the transactions
+     * are archived.
+     * <p>
+     * An existing archive file is not replaced.  The transactions for the year are
+     * used to compute the carry-forward transactions but they are not written again.
+     *
+     * @param       year            First year to keep in the database
+     * @return                      List of archive files written
+     * @exception   IOException     An I/O error occurred
+     */
+    public List<File> archive(int year) throws IOException {
+        if (readOnly)
+            throw new IOException(file.getName()+" is a read-only archive");
+
+        DatabaseContext previous = DatabaseContext.setCurrent(context);
+        try {
+            loadPartitions(0);
+            return archiveRecords(year);
+        } finally {
+            DatabaseContext.setCurrent(previous);
+        }
+    }
+
+    /**
+     * Archive the transactions for the years before the supplied year
+     *
+     * @param       year            First year to keep in the database
+     * @return                      List of archive files written
+     * @exception   IOException     An I/O error occurred
+     */
+    private List<File> archiveRecords(int year) throws IOException {
+        List<File> archiveFiles = new ArrayList<>();
+        Map<AccountRecord, Double> balances = new IdentityHashMap<>();
+        List<SecurityHolding> holdings = new ArrayList<>();
+        GregorianCalendar cal = new GregorianCalendar();
+        RecordOutputStream out = null;
+        RecordIndex index = null;
+        File archiveFile = null;
+        File saveFile = null;
+        int archiveYear = 0;
+        int count = 0;
+
+        try {
+
+            //
+            // Stream the archived transactions to the archive files.  The account
+            // balances and security holdings are updated as each transaction is
+            // written.
+            //
+            for (TransactionRecord t : context.transactions) {
+                cal.setTime(t.getDate());
+                int transactionYear = cal.get(Calendar.YEAR);
+                if (transactionYear >= year)
+                    break;
+
+                //
+                // Start a new archive file when the year changes.  The archive
+                // file starts with the definitions and the carry-forward
+                // transactions for the end of the previous year.
+                //
+                if (transactionYear != archiveYear) {
+                    if (out != null) {
+                        out.close();
+                        out = null;
+                        if (!saveFile.renameTo(archiveFile))
+                            throw new IOException("Unable to rename "+saveFile.getName());
+
+                        index.write(archiveFile);
+                        archiveFiles.add(archiveFile);
+                    }
+
+                    archiveYear = transactionYear;
+                    archiveFile = getArchiveFile(archiveYear);
+                    if (!archiveFile.exists()) {
+                        saveFile = new File(archiveFile.getPath()+".save");
+                        out = new RecordOutputStream(saveFile);
+                        index = new RecordIndex();
+                        writeDefinitions(out, index);
+                        cal.set(archiveYear-1, 11, 31);
+                        for (TransactionRecord c : getCarryForward(balances, holdings, cal.getTime())) {
+                            byte[] data = c.encode();
+                            out.writeRecord(data);
+                            index.addTransaction(c, data);
+                            c.clearReferences();
+                        }
+                    }
+                }
+
+                if (out != null) {
+                    byte[] data = t.encode();
+                    out.writeRecord(data);
+                    index.addTransaction(t, data);
+                }
+
+                CheckpointRecord.applyTransaction(t, balances, holdings);
+                count++;
+            }
+
+            if (out != null) {
+                out.close();
+                out = null;
+                if (!saveFile.renameTo(archiveFile))
+                    throw new IOException("Unable to rename "+saveFile.getName());
+
+                index.write(archiveFile);
+                archiveFiles.add(archiveFile);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+                if (saveFile.exists())
+                    saveFile.delete();
+            }
+        }
+
+        if (count == 0)
+            return archiveFiles;
+
+        //
+        // Replace the archived transactions with the carry-forward transactions
+        // for the end of the last archived year and save the database
+        //
+        cal.set(year-1, 11, 31);
+        List<TransactionRecord> carryForward = getCarryForward(balances, holdings, cal.getTime());
+        ListIterator<TransactionRecord> i = context.transactions.listIterator();
+        for (int n=0; n<count; n++) {
+            i.next().clearReferences();
+            i.remove();
+        }
+
+        //
+        // Rewrite the partitions for the archived years and the carry-forward year
+        //
+        context.transactions.addAll(0, carryForward);
+        context.modifiedYears.addAll(context.partitions.headMap(year).keySet());
+        for (TransactionRecord t : carryForward) {
+            cal.setTime(t.getDate());
+            context.modifiedYears.add(cal.get(Calendar.YEAR));
+        }
+
+        context.checkpoints.clear();
+        invalidateCaches();
+        LedgerEventBus.clear();
+        if (!Main.headless)
+            TextIndex.build();
+
+        save();
+        return archiveFiles;
+    }
+
+    /**
+     * Create the carry-forward transactions for the account balances and
+     * security holdings.  The transactions are sorted by date.
+     *
+     * @param       balances        Account balances
+     * @param       holdings        Security holdings
+     * @param       date            Opening balance date
+     * @return                      Carry-forward transactions
+     */
+    private List<TransactionRecord> getCarryForward(Map<AccountRecord, Double> balances,
+                                            List<SecurityHolding> holdings, Date date) {
+        List<TransactionRecord> carryForward = new ArrayList<>();
+
+        //
+        // Create a BUY transaction for each open security lot.  There is no
+        // transfer account since the purchase was recorded in an earlier year.
+        //
+        for (SecurityHolding h : holdings) {
+            SecurityRecord s = h.getSecurity();
+            for (int i=0; i<h.getLotCount(); i++) {
+                TransactionRecord t = new TransactionRecord(h.getLotDate(i), h.getAccount());
+                t.setAction(TransactionRecord.BUY);
+                t.setSecurity(s);
+                t.setShares(h.getLotShares(i));
+                t.setAmount(h.getLotCost(i));
+                t.setMemo("Carried forward "+t.getShares()+" shares of "+s.getName());
+                t.setReconciled(TransactionRecord.SOURCE_RECONCILED);
+                carryForward.add(t);
+            }
+        }
+
+        //
+        // Create an opening balance transaction for each account with a balance.  An
+        // investment account does not have a balance since it cannot be a transfer
+        // account.
+        //
+        for (AccountRecord a : context.accounts) {
+            Double balance = balances.get(a);
+            if (balance == null || Math.abs(balance) < 0.005 || a.getType() == AccountRecord.INVESTMENT)
+                continue;
+
+            TransactionRecord t = new TransactionRecord(date, a);
+            t.setName("Opening Balance");
+            t.setAmount((double)Math.round(balance*100.0)/100.0);
+            t.setReconciled(TransactionRecord.SOURCE_RECONCILED);
+            carryForward.add(t);
+        }
+
+        //
+        // Sort the transactions by date (the sort is stable, so the security lots
+        // remain in acquisition order)
+        //
+        Collections.sort(carryForward, new Comparator<TransactionRecord>() {
+            @Override
+            public int compare(TransactionRecord t1, TransactionRecord t2) {
+                return t1.getDate().compareTo(t2.getDate());
+            }
+        });
+
+        return carryForward;
+    }
+
+    /**
+     * Save archived transactions.  Accounts, categories and securities from the
+     * current database context will also be saved.  Scheduled transactions will
+     * not be saved.
      *
      * @param       transactions    The archived transactions
      * @exception   IOException     An I/O error occurred
@@ -232,27 +1022,27 @@ public final class Database {
             // them defined before we can define the linking accounts
             // when the database is loaded again
             //
-            for (AccountRecord a : AccountRecord.accounts)
+            for (AccountRecord a : AccountRecord.getAccounts())
                 if (a.getLinkCount() != 0)
                     out.writeRecord(a.encode());
 
             //
             // Write out non-linked accounts next
             //
-            for (AccountRecord a : AccountRecord.accounts)
+            for (AccountRecord a : AccountRecord.getAccounts())
                 if (a.getLinkCount() == 0)
                     out.writeRecord(a.encode());
 
             //
             // Write out the categories
             //
-            for (CategoryRecord c : CategoryRecord.categories)
+            for (CategoryRecord c : CategoryRecord.getCategories())
                 out.writeRecord(c.encode());
 
             //
             // Write out the securities
             //
-            for (SecurityRecord s : SecurityRecord.securities)
+            for (SecurityRecord s : SecurityRecord.getSecurities())
                 out.writeRecord(s.encode());
 
             //
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A database context holds the model state for a single database: the account,
+ * category, security, transaction and scheduled transaction lists, the record
+ * identifier maps and the caches derived from the transaction list.  Each Database
+ * owns a context, so several databases can be loaded and processed at the same time.
+ * The transaction list contains the transactions for the loaded partitions, which
+ * are always the most recent partitions (see TransactionPartitions).
+ * <p>
+ * The record classes locate their state through the current context.  A thread uses
+ * the application context (the database displayed by the main window) unless it has
+ * bound another context using setCurrent().  A batch thread processing a database
+ * binds the database context before working with the records and restores the
+ * previous context when it is done:
+ * <pre>
+ *     DatabaseContext previous = DatabaseContext.setCurrent(database.getContext());
+ *     try {
+ *         ...
+ *     } finally {
+ *         DatabaseContext.setCurrent(previous);
+ *     }
+ * </pre>
+ * A context is not thread-safe and must be modified by a single thread at a time.
+ * Only the application context publishes ledger events to the main window.
+ */
+public final class DatabaseContext {
+
+    /** The application context */
+    private static volatile DatabaseContext applicationContext = new DatabaseContext();
+
+    /** Context bound to the current thread */
+    private static final ThreadLocal<DatabaseContext> boundContext = new ThreadLocal<>();
+
+    /** The set of defined accounts */
+    final SortedSet<AccountRecord> accounts = new TreeSet<>();
+
+    /** The account map */
+    final Map<Integer, AccountRecord> accountMap = new HashMap<>();
+
+    /** The next AccountRecord identifier */
+    int nextAccountID = 1;
+
+    /** The set of defined categories */
+    final SortedSet<CategoryRecord> categories = new TreeSet<>();
+
+    /** The category map */
+    final Map<Integer, CategoryRecord> categoryMap = new HashMap<>();
+
+    /** The next CategoryRecord identifier */
+    int nextCategoryID = 1;
+
+    /** The set of defined securities */
+    final SortedSet<SecurityRecord> securities = new TreeSet<>();
+
+    /** The security map */
+    final Map<Integer, SecurityRecord> securityMap = new HashMap<>();
+
+    /** The next SecurityRecord identifier */
+    int nextSecurityID = 1;
+
+    /** Transactions for the loaded partitions */
+    final List<TransactionRecord> transactions = new LinkedList<>();
+
+    /** Scheduled transactions */
+    final List<ScheduleRecord> schedules = new LinkedList<>();
+
+    /** Transaction index (TransactionIndex) */
+    TransactionIndex transactionIndex;
+
+    /** Category cube (CategoryCube) */
+    CategoryCube categoryCube;
+
+    /** Text index (TextIndex) */
+    TextIndex textIndex;
+
+    /** Name index (NameIndex) */
+    NameIndex nameIndex;
+
+    /** Bond portfolio results (BondPortfolio) */
+    List<BondPortfolio.BondAnalysis> bondResults;
+
+    /** Category totals by year (TaxSummary) */
+    final Map<Integer, long[]> categoryTotals = new HashMap<>();
+
+    /** Capital gains by year (TaxSummary) */
+    final Map<Integer, long[]> gainTotals = new HashMap<>();
+
+    /** Year-end checkpoints sorted by year (CheckpointRecord) */
+    final List<CheckpointRecord> checkpoints = new ArrayList<>();
+
+    /** Year-end markers for the loaded transactions or null if the checkpoints have been validated (CheckpointRecord) */
+    List<CheckpointRecord> yearEnds;
+
+    /** Database that owns the context or null (TransactionPartitions) */
+    Database database;
+
+    /** Transaction partitions indexed by year (TransactionPartitions) */
+    final SortedMap<Integer, PartitionRecord> partitions = new TreeMap<>();
+
+    /** Partition years with added, removed or modified transactions (TransactionPartitions) */
+    final Set<Integer> modifiedYears = new HashSet<>();
+
+    /** First loaded partition year or 0 if all partitions are loaded (TransactionPartitions) */
+    int firstLoadedYear;
+
+    /** Number of transactions in the partitions that are not loaded (TransactionPartitions) */
+    int unloadedCount;
+
+    /** Current ledger version (LedgerSnapshot) */
+    long ledgerVersion;
+
+    /** Snapshot for the current ledger version (LedgerSnapshot) */
+    LedgerSnapshot ledgerSnapshot;
+
+    /**
+     * Create an empty database context
+     */
+    public DatabaseContext() {
+    }
+
+    /**
+     * Get the context for the current thread
+     *
+     * @return                      The bound context or the application context
+     */
+    public static DatabaseContext getCurrent() {
+        DatabaseContext context = boundContext.get();
+        return (context != null ? context : applicationContext);
+    }
+
+    /**
+     * Bind a context to the current thread
+     *
+     * @param       context         Context or null to use the application context
+     * @return                      The previously bound context or null
+     */
+    public static DatabaseContext setCurrent(DatabaseContext context) {
+        DatabaseContext previous = boundContext.get();
+        if (context != null)
+            boundContext.set(context);
+        else
+            boundContext.remove();
+
+        return previous;
+    }
+
+    /**
+     * Get the application context
+     *
+     * @return                      The application context
+     */
+    public static DatabaseContext getApplicationContext() {
+        return applicationContext;
+    }
+
+    /**
+     * Set the application context.  This is the context used by threads that
+     * have not bound a context, including the event dispatch thread.
+     *
+     * @param       context         The application context
+     */
+    public static void setApplicationContext(DatabaseContext context) {
+        applicationContext = context;
+    }
+
+    /**
+     * Check if this is the application context
+     *
+     * @return                      TRUE if this is the application context
+     */
+    public boolean isApplicationContext() {
+        return (this == applicationContext);
+    }
+
+    /**
+     * Remove all records from the context
+     */
+    void clear() {
+        accounts.clear();
+        categories.clear();
+        securities.clear();
+        transactions.clear();
+        schedules.clear();
+        checkpoints.clear();
+        yearEnds = null;
+        partitions.clear();
+        modifiedYears.clear();
+        firstLoadedYear = 0;
+        unloadedCount = 0;
+    }
+}
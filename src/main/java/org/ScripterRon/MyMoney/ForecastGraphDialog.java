@@ -0,0 +1,223 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Chart.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Display the cash flow forecast graph.  The graph shows the projected balance for
+ * a single account or for all accounts based on the scheduled transactions.
+ */
+public final class ForecastGraphDialog extends JDialog implements ActionListener {
+
+    /** Number of years field */
+    private JFormattedTextField yearsField;
+
+    /** Account field */
+    private JComboBox accountField;
+
+    /** Accounts displayed in the account field (null for all accounts) */
+    private List<AccountRecord> accountList;
+
+    /**
+     * Construct the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public ForecastGraphDialog(JFrame parent) {
+        super(parent, "Cash Flow Forecast", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Forecast one year by default
+        //
+        yearsField = new JFormattedTextField(new EditNumber(0, false));
+        yearsField.setColumns(4);
+        yearsField.setInputVerifier(new EditInputVerifier(false));
+        yearsField.addActionListener(new FormattedTextFieldListener(this));
+        yearsField.setValue(new Integer(1));
+
+        //
+        // Build the account list.  Investment accounts and hidden accounts are
+        // not included.
+        //
+        accountList = new ArrayList<>(AccountRecord.getAccounts().size()+1);
+        accountList.add(null);
+        for (AccountRecord a : AccountRecord.getAccounts()) {
+            if (!a.isHidden() && a.getType() != AccountRecord.INVESTMENT)
+                accountList.add(a);
+        }
+
+        String[] accountNames = new String[accountList.size()];
+        accountNames[0] = "All Accounts";
+        for (int i=1; i<accountNames.length; i++)
+            accountNames[i] = accountList.get(i).getName();
+
+        accountField = new JComboBox(accountNames);
+
+        //
+        // Create the edit pane
+        //
+        //    Years:             <text-field>
+        //    Account:           <combo-box>
+        //
+        JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
+
+        editPane.add(new JLabel("Years:", JLabel.RIGHT));
+        editPane.add(yearsField);
+
+        editPane.add(new JLabel("Account:", JLabel.RIGHT));
+        editPane.add(accountField);
+
+        //
+        // Create the buttons (Create Graph, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Create Graph");
+        button.setActionCommand("create graph");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(editPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * Action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "create graph" - Create the graph
+        // "done" - All done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "create graph":
+                    int years = (yearsField.isEditValid() ? ((Number)yearsField.getValue()).intValue() : 0);
+                    if (years < 1 || years > 50) {
+                        JOptionPane.showMessageDialog(this, "You must specify between 1 and 50 years",
+                                                      "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        createGraph(years, accountList.get(accountField.getSelectedIndex()));
+                    }
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Show the dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new ForecastGraphDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Create the graph
+     *
+     * @param       years           Number of years to forecast
+     * @param       account         Account or null for all accounts
+     */
+    private void createGraph(int years, AccountRecord account) {
+
+        //
+        // Run the forecast starting with the current date
+        //
+        CashFlowForecast forecast = new CashFlowForecast(Main.getCurrentDate(), years);
+        double[] balances = (account != null ? forecast.getBalances(account) : forecast.getTotalBalances());
+
+        //
+        // Build the data points.  We will have one data point for each day in
+        // the forecast period.
+        //
+        int dayCount = forecast.getDayCount();
+        List<TimeChartElement> dataPoints = new ArrayList<>(dayCount);
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(forecast.getStartDate());
+        for (int day=0; day<dayCount; day++) {
+            dataPoints.add(new TimeChartElement(cal.getTime(), balances[day]/1000.0));
+            cal.add(Calendar.DAY_OF_YEAR, 1);
+        }
+
+        //
+        // Display the forecast graph
+        //
+        TimeChart chart = new TimeChart(dataPoints, "Date", "Balance ($K)");
+        chart.setOpaque(true);
+        chart.setBackground(Color.CYAN);
+        chart.setPreferredSize(new Dimension(640, 640));
+        chart.setMinimumGridIncrement(10.0);
+
+        String dialogTitle = String.format("Forecast for %s from %s to %s",
+                                           (account != null ? account.getName() : "All Accounts"),
+                                           Main.getDateString(forecast.getStartDate()),
+                                           Main.getDateString(forecast.getDate(dayCount-1)));
+        JDialog dialog = new JDialog(this, dialogTitle, true);
+        dialog.setContentPane(chart);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+}
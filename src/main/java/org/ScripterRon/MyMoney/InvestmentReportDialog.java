@@ -68,7 +68,7 @@ public final class InvestmentReportDialog extends JDialog implements ActionListe
         //
         // Get the investment account
         //
-        accountModel = new DBElementComboBoxModel(AccountRecord.accounts, AccountRecord.INVESTMENT);
+        accountModel = new DBElementComboBoxModel(AccountRecord.getAccounts(), AccountRecord.INVESTMENT);
         accountField = new JComboBox(accountModel);
         if (accountModel.getSize() > 0)
             accountField.setSelectedIndex(0);
@@ -81,7 +81,7 @@ public final class InvestmentReportDialog extends JDialog implements ActionListe
         // only that security will be processed.  The selection will then be cleared
         // when the dialog is redisplayed.
         //
-        securityModel = new DBElementComboBoxModel(SecurityRecord.securities);
+        securityModel = new DBElementComboBoxModel(SecurityRecord.getSecurities());
         securityField = new JComboBox(securityModel);
 
         //
@@ -43,18 +43,25 @@ public class InvestmentReportModel implements ReportModel {
     public InvestmentReportModel(String[] columnNames, AccountRecord account, SecurityRecord security) {
         this.columnNames = columnNames;
 
+        //
+        // Load all of the transaction partitions since the holdings depend on the
+        // lot history
+        //
+        TransactionPartitions.loadAll();
+        List<TransactionRecord> transactions = TransactionRecord.getTransactions();
+
         //
         // Create the report lists
         //
-        listData = new ArrayList<>(TransactionRecord.transactions.size());
-        holdings = new ArrayList<>(SecurityRecord.securities.size());
+        listData = new ArrayList<>(transactions.size());
+        holdings = new ArrayList<>(SecurityRecord.getSecurities().size());
 
         //
         // Build the report data using transactions for the specified investment account
         // and optionally for the specified security.  Hidden securities will not be
         // included.
         //
-        for (TransactionRecord t : TransactionRecord.transactions) {
+        for (TransactionRecord t : transactions) {
 
             //
             // Skip the transaction if it is not for the requested account
@@ -0,0 +1,326 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.swing.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Investment returns dialog.  The dialog displays the money-weighted return (XIRR)
+ * and the time-weighted return for each security holding and each investment account
+ * for the selected period.  The account total follows the holdings for the account.
+ */
+public final class InvestmentReturnsDialog extends JDialog implements ActionListener {
+
+    /** Returns table column classes */
+    private static final Class<?>[] columnClasses = {
+        String.class, String.class, Double.class, Double.class, Double.class, Double.class};
+
+    /** Returns table column names */
+    private static final String[] columnNames = {
+        "Account", "Security", "Start Value", "End Value", "XIRR", "TWR"};
+
+    /** Returns table column types */
+    private static final int[] columnTypes = {
+        SizedTable.NAME_COLUMN, SizedTable.SECURITY_COLUMN, SizedTable.AMOUNT_COLUMN,
+        SizedTable.AMOUNT_COLUMN, SizedTable.PERCENT_COLUMN, SizedTable.PERCENT_COLUMN};
+
+    /** Start date field */
+    private JFormattedTextField startField;
+
+    /** End date field */
+    private JFormattedTextField endField;
+
+    /** Returns table model */
+    private ReturnsTableModel tableModel;
+
+    /**
+     * Create the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public InvestmentReturnsDialog(JFrame parent) {
+        super(parent, "Investment Returns", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Set the start date to the beginning of the year
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(Main.getCurrentDate());
+        cal.set(Calendar.DAY_OF_YEAR, 1);
+        startField = new JFormattedTextField(new EditDate());
+        startField.setColumns(8);
+        startField.setInputVerifier(new EditInputVerifier(false));
+        startField.addActionListener(new FormattedTextFieldListener(this));
+        startField.setValue(cal.getTime());
+
+        //
+        // Set the end date to the current date
+        //
+        endField = new JFormattedTextField(new EditDate());
+        endField.setColumns(8);
+        endField.setInputVerifier(new EditInputVerifier(false));
+        endField.addActionListener(new FormattedTextFieldListener(this));
+        endField.setValue(Main.getCurrentDate());
+
+        //
+        // Create the edit pane
+        //
+        //    Start Date:        <text-field>
+        //    End Date:          <text-field>
+        //
+        JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
+
+        editPane.add(new JLabel("Start Date:", JLabel.RIGHT));
+        editPane.add(startField);
+
+        editPane.add(new JLabel("End Date:", JLabel.RIGHT));
+        editPane.add(endField);
+
+        //
+        // Create the returns table
+        //
+        tableModel = new ReturnsTableModel();
+        JTable table = new SizedTable(tableModel, columnTypes);
+        Dimension tableSize = table.getPreferredSize();
+        table.setPreferredScrollableViewportSize(new Dimension(tableSize.width, 15*table.getRowHeight()));
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+
+        //
+        // Create the buttons (Calculate, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Calculate");
+        button.setActionCommand("calculate");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(editPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(scrollPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * Show the investment returns dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new InvestmentReturnsDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "calculate" - Calculate the returns
+        // "done" - Done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "calculate":
+                    if (!startField.isEditValid() || !endField.isEditValid()) {
+                        JOptionPane.showMessageDialog(this, "You must specify start and end dates",
+                                                      "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        Date startDate = (Date)startField.getValue();
+                        Date endDate = (Date)endField.getValue();
+                        if (endDate.compareTo(startDate) <= 0) {
+                            JOptionPane.showMessageDialog(this, "The end date must be after the start date",
+                                                          "Error", JOptionPane.ERROR_MESSAGE);
+                        } else {
+                            tableModel.setReturns(new ReturnsEngine(startDate, endDate));
+                        }
+                    }
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Returns table model
+     */
+    private class ReturnsTableModel extends AbstractTableModel {
+
+        /** Table rows */
+        private final List<ReturnsEngine.PeriodReturn> listData = new ArrayList<>();
+
+        /**
+         * Create the table model
+         */
+        public ReturnsTableModel() {
+        }
+
+        /**
+         * Set the returns for the table.  The holdings for each account are
+         * followed by the account total.
+         *
+         * @param       engine      Returns engine
+         */
+        public void setReturns(ReturnsEngine engine) {
+            listData.clear();
+            List<ReturnsEngine.PeriodReturn> securityReturns = engine.getSecurityReturns();
+            for (AccountRecord account : AccountRecord.getAccounts()) {
+                ReturnsEngine.PeriodReturn accountReturn = engine.getAccountReturn(account);
+                if (accountReturn == null)
+                    continue;
+
+                for (ReturnsEngine.PeriodReturn r : securityReturns)
+                    if (r.getAccount() == account)
+                        listData.add(r);
+
+                listData.add(accountReturn);
+            }
+
+            fireTableDataChanged();
+        }
+
+        /**
+         * Get the number of columns in the table
+         *
+         * @return                  The number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * Get the column class
+         *
+         * @param       column      Column number
+         * @return                  The column class
+         */
+        public Class<?> getColumnClass(int column) {
+            return columnClasses[column];
+        }
+
+        /**
+         * Get the column name
+         *
+         * @param       column      Column number
+         * @return                  Column name
+         */
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        /**
+         * Get the number of rows in the table
+         *
+         * @return                  The number of rows
+         */
+        public int getRowCount() {
+            return listData.size();
+        }
+
+        /**
+         * Get the value for a cell
+         *
+         * @param       row         Row number
+         * @param       column      Column number
+         * @return                  Returns the object associated with the cell
+         */
+        public Object getValueAt(int row, int column) {
+            if (row >= listData.size())
+                throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
+
+            ReturnsEngine.PeriodReturn r = listData.get(row);
+            Object value;
+            switch (column) {
+                case 0:                                 // Account
+                    value = r.getAccount().getName();
+                    break;
+
+                case 1:                                 // Security
+                    value = (r.getSecurity() != null ? r.getSecurity().getName() : "Total");
+                    break;
+
+                case 2:                                 // Start value
+                    value = new Double((double)Math.round(r.getStartValue()*100.0)/100.0);
+                    break;
+
+                case 3:                                 // End value
+                    value = new Double((double)Math.round(r.getEndValue()*100.0)/100.0);
+                    break;
+
+                case 4:                                 // XIRR
+                    value = (Double.isNaN(r.getXirr()) ? null : new Double(r.getXirr()));
+                    break;
+
+                case 5:                                 // TWR
+                    value = (Double.isNaN(r.getTimeWeightedReturn()) ? null :
+                                                new Double(r.getTimeWeightedReturn()));
+                    break;
+
+                default:
+                    throw new IndexOutOfBoundsException("Table column "+column+" is not valid");
+            }
+
+            return value;
+        }
+    }
+}
@@ -64,8 +64,13 @@ public final class InvestmentTableModel extends AbstractTableModel {
         this.columnNames = columnNames;
         this.columnClasses = columnClasses;
         
-        int listSize = TransactionRecord.transactions.size();
-        listData = new ArrayList<TransactionRecord>(listSize+10);
+        //
+        // Load all of the transaction partitions since the share balances depend
+        // on the lot history
+        //
+        TransactionPartitions.loadAll();
+        List<TransactionRecord> transactions = TransactionRecord.getTransactions();
+        listData = new ArrayList<TransactionRecord>(transactions.size()+10);
 
         //
         // Add transactions for the investment account
@@ -73,7 +78,7 @@ public final class InvestmentTableModel extends AbstractTableModel {
         // An investment account cannot be a transfer account, so
         // we just need to check the source account for the transaction
         //
-        for (TransactionRecord t : TransactionRecord.transactions) {
+        for (TransactionRecord t : transactions) {
             if (t.getAccount() == account)
                 listData.add(t);
         }
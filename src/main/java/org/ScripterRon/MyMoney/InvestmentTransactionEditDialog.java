@@ -17,7 +17,6 @@ package org.ScripterRon.MyMoney;
 
 import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.SortedSet;
 
 import javax.swing.*;
@@ -155,7 +154,7 @@ public final class InvestmentTransactionEditDialog extends JDialog implements Ac
         //
         // Get the security
         //
-        securityModel = new DBElementComboBoxModel(SecurityRecord.securities, security);
+        securityModel = new DBElementComboBoxModel(SecurityRecord.getSecurities(), security);
         securityField = new JComboBox(securityModel);
         if (security != null)
             securityModel.setSelectedItem(security.getName());
@@ -165,7 +164,7 @@ public final class InvestmentTransactionEditDialog extends JDialog implements Ac
         //
         // Get the new security
         //
-        newSecurityModel = new DBElementComboBoxModel(SecurityRecord.securities, newSecurity);
+        newSecurityModel = new DBElementComboBoxModel(SecurityRecord.getSecurities(), newSecurity);
         newSecurityField = new JComboBox(newSecurityModel);
         if (newSecurity != null)
             newSecurityModel.setSelectedItem(newSecurity.getName());
@@ -424,6 +423,7 @@ public final class InvestmentTransactionEditDialog extends JDialog implements Ac
         int index;
         int reconciled;
         int transactionPosition = -1, modelPosition = -1;
+        TransactionRecord oldTransaction = null;
 
         //
         // Get the transaction date
@@ -635,16 +635,8 @@ public final class InvestmentTransactionEditDialog extends JDialog implements Ac
             a = transaction.getAccount();
             t = transaction.getTransferAccount();
             reconciled = transaction.getReconciled();
-            ListIterator<TransactionRecord> i = TransactionRecord.transactions.listIterator();
-            transactionPosition = 0;
-            while (i.hasNext()) {
-                if (i.next() == transaction) {
-                    i.remove();
-                    break;
-                }
-
-                transactionPosition++;
-            }
+            oldTransaction = transaction;
+            transactionPosition = TransactionRecord.removeTransaction(transaction);
 
             transaction.clearReferences();
             modelPosition = tableModel.transactionRemoved(transaction);
@@ -738,9 +730,9 @@ public final class InvestmentTransactionEditDialog extends JDialog implements Ac
         // Add the new transaction and scroll the table to display the transaction
         //
         if (transactionPosition >= 0)
-            TransactionRecord.transactions.add(transactionPosition, transaction);
+            TransactionRecord.insertTransaction(transactionPosition, transaction, oldTransaction);
         else
-            TransactionRecord.insertTransaction(transaction);
+            TransactionRecord.insertTransaction(transaction, oldTransaction);
 
         int modelRow = tableModel.transactionAdded(modelPosition, transaction);
         transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
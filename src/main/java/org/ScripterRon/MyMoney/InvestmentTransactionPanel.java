@@ -84,6 +84,25 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
     /** Pie chart data */
     private List<PieChartElement> chartData;
 
+    /** Ledger version used to build the position table */
+    private long positionsVersion;
+
+    /** Ledger listener registered while the panel is displayed */
+    private final LedgerListener ledgerListener = new LedgerListener() {
+        @Override
+        public void ledgerChanged(List<LedgerEvent> events) {
+            if (activeTabbedPane != 1)
+                return;
+
+            for (LedgerEvent event : events) {
+                if (event.getBeforeAccount() == account || event.getAfterAccount() == account) {
+                    updatePositions();
+                    break;
+                }
+            }
+        }
+    };
+
     /**
      * Create the investment account transaction panel
      * <p>
@@ -182,6 +201,7 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
         //
         // Create the position table
         //
+        positionsVersion = LedgerSnapshot.getCurrentVersion();
         positionModel = new PositionModel();
         positionTable = new SizedTable(positionModel, positionTypes);
         positionTable.setRowSorter(new TableRowSorter<TableModel>(positionModel));
@@ -265,6 +285,37 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
         add(tabbedPane, BorderLayout.CENTER);
     }
 
+    /**
+     * Register the ledger listener when the panel is added to a container.  The
+     * position table is rebuilt if the ledger has changed while the panel was not
+     * displayed.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        LedgerEventBus.addListener(ledgerListener);
+        if (activeTabbedPane == 1 && positionsVersion != LedgerSnapshot.getCurrentVersion())
+            updatePositions();
+    }
+
+    /**
+     * Remove the ledger listener when the panel is removed from its container
+     */
+    @Override
+    public void removeNotify() {
+        LedgerEventBus.removeListener(ledgerListener);
+        super.removeNotify();
+    }
+
+    /**
+     * Rebuild the position table and the asset allocation chart
+     */
+    private void updatePositions() {
+        positionsVersion = LedgerSnapshot.getCurrentVersion();
+        positionModel.updatePositions();
+        updateChartData();
+    }
+
     /**
      * Update the asset allocation chart data
      */
@@ -361,7 +412,7 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
             
             switch (ae.getActionCommand()) {
                 case "new":
-                    if (SecurityRecord.securities.size() == 0) {
+                    if (SecurityRecord.getSecurities().size() == 0) {
                        JOptionPane.showMessageDialog(this, "There are no securities defined",
                                                       "Error", JOptionPane.ERROR_MESSAGE);
                     } else {
@@ -393,7 +444,7 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
                         if (option == JOptionPane.YES_OPTION) {
                             modelRow = table.convertRowIndexToModel(row);
                             TransactionRecord transaction = tableModel.getTransactionAt(modelRow);
-                            TransactionRecord.transactions.remove(transaction);
+                            TransactionRecord.removeTransaction(transaction);
                             transaction.clearReferences();
                             tableModel.transactionRemoved(transaction);
                             Main.dataModified = true;
@@ -413,6 +464,30 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
         }
     }
 
+    /**
+     * A transaction for the account has been added while the panel is not displayed.
+     * The position table is rebuilt when the panel is displayed again.
+     *
+     * @param       transaction     The new transaction
+     */
+    @Override
+    public void transactionAdded(TransactionRecord transaction) {
+        if (transaction.getAccount() == account)
+            tableModel.transactionAdded(-1, transaction);
+    }
+
+    /**
+     * A transaction has been removed while the panel is not displayed.  The
+     * position table is rebuilt when the panel is displayed again.
+     *
+     * @param       transaction     The removed transaction
+     */
+    @Override
+    public void transactionRemoved(TransactionRecord transaction) {
+        if (transaction.getAccount() == account)
+            tableModel.transactionRemoved(transaction);
+    }
+
     /**
      * State changed (ChangeListener interface)
      *
@@ -428,10 +503,8 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
             try {
                 JTabbedPane tabbedPane = (JTabbedPane)source;
                 int index = tabbedPane.getSelectedIndex();
-                if (index == 1 && index != activeTabbedPane) {
-                    positionModel.updatePositions();
-                    updateChartData();
-                }
+                if (index == 1 && index != activeTabbedPane)
+                    updatePositions();
 
                 activeTabbedPane = index;
             } catch (Exception exc) {
@@ -452,7 +525,7 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
          * Create the investment account position table model
          */
         public PositionModel() {
-            listData = new ArrayList<>(SecurityRecord.securities.size());
+            listData = new ArrayList<>(SecurityRecord.getSecurities().size());
             buildPositions();
         }
 
@@ -648,7 +721,7 @@ public final class InvestmentTransactionPanel extends TransactionPanel implement
             //
             // Run through the transactions and accumulate the positions
             //
-            for (TransactionRecord t : TransactionRecord.transactions) {
+            for (TransactionRecord t : TransactionRecord.getAllTransactions()) {
                 if (t.getAccount() == account)
                     SecurityHolding.updateSecurityHolding(listData, t);
             }
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+/**
+ * A ledger cache is a structure derived from the transaction list that must be
+ * consistent as soon as the list changes.  The ledger event bus passes each event
+ * to the registered caches on the thread making the change and before the event is
+ * added to the batch for the ledger listeners.  The caches are updated for every
+ * database context, so a cache must apply the event to the current context.
+ */
+public interface LedgerCache {
+
+    /**
+     * A transaction has been added, removed or modified.  The position is available
+     * for INSERT and DELETE events.  The before transaction is the same as the
+     * transaction for an UPDATE event.
+     *
+     * @param       event           Ledger event
+     */
+    public void transactionChanged(LedgerEvent event);
+}
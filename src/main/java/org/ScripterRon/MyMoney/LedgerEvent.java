@@ -0,0 +1,299 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+/**
+ * A ledger event describes a change to a transaction.  The event contains the
+ * transaction account, category and security before and after the change.  The
+ * "before" values are null for an INSERT event and the "after" values are null
+ * for a DELETE event.
+ * <p>
+ * A transaction is edited by removing the old record and inserting a new record.
+ * The INSERT event for the new record names the record it replaces, and the ledger
+ * event bus combines the DELETE and INSERT events into a single UPDATE event whose
+ * "before" transaction is the old record and whose transaction is the new record.
+ * An UPDATE event published for a transaction modified in place has the same
+ * record for both.
+ */
+public final class LedgerEvent {
+
+    /** Transaction added to the ledger */
+    public static final int INSERT = 1;
+
+    /** Transaction modified in place */
+    public static final int UPDATE = 2;
+
+    /** Transaction removed from the ledger */
+    public static final int DELETE = 3;
+
+    /** Event type */
+    private final int type;
+
+    /** Transaction (the new record for an UPDATE) */
+    private final TransactionRecord transaction;
+
+    /** Transaction before the change (the replaced record for an INSERT or null) */
+    private final TransactionRecord beforeTransaction;
+
+    /** Position in the transaction list or -1 if not known */
+    private final int position;
+
+    /** Account before the change */
+    private final AccountRecord beforeAccount;
+
+    /** Account after the change */
+    private final AccountRecord afterAccount;
+
+    /** Category before the change */
+    private final CategoryRecord beforeCategory;
+
+    /** Category after the change */
+    private final CategoryRecord afterCategory;
+
+    /** Security before the change */
+    private final SecurityRecord beforeSecurity;
+
+    /** Security after the change */
+    private final SecurityRecord afterSecurity;
+
+    /**
+     * Create a ledger event
+     *
+     * @param       type            Event type (INSERT, UPDATE or DELETE)
+     * @param       transaction     Transaction
+     * @param       beforeAccount   Account before the change
+     * @param       afterAccount    Account after the change
+     * @param       beforeCategory  Category before the change
+     * @param       afterCategory   Category after the change
+     * @param       beforeSecurity  Security before the change
+     * @param       afterSecurity   Security after the change
+     */
+    public LedgerEvent(int type, TransactionRecord transaction,
+                       AccountRecord beforeAccount, AccountRecord afterAccount,
+                       CategoryRecord beforeCategory, CategoryRecord afterCategory,
+                       SecurityRecord beforeSecurity, SecurityRecord afterSecurity) {
+        this(type, transaction, (type != INSERT ? transaction : null), -1,
+             beforeAccount, afterAccount, beforeCategory, afterCategory,
+             beforeSecurity, afterSecurity);
+    }
+
+    /**
+     * Create a ledger event
+     *
+     * @param       type                Event type (INSERT, UPDATE or DELETE)
+     * @param       transaction         Transaction
+     * @param       beforeTransaction   Transaction before the change or null
+     * @param       position            Position in the transaction list or -1
+     * @param       beforeAccount       Account before the change
+     * @param       afterAccount        Account after the change
+     * @param       beforeCategory      Category before the change
+     * @param       afterCategory       Category after the change
+     * @param       beforeSecurity      Security before the change
+     * @param       afterSecurity       Security after the change
+     */
+    private LedgerEvent(int type, TransactionRecord transaction,
+                        TransactionRecord beforeTransaction, int position,
+                        AccountRecord beforeAccount, AccountRecord afterAccount,
+                        CategoryRecord beforeCategory, CategoryRecord afterCategory,
+                        SecurityRecord beforeSecurity, SecurityRecord afterSecurity) {
+        if (type != INSERT && type != UPDATE && type != DELETE)
+            throw new IllegalArgumentException("Ledger event type "+type+" is not valid");
+
+        if (transaction == null)
+            throw new NullPointerException("No transaction provided");
+
+        this.type = type;
+        this.transaction = transaction;
+        this.beforeTransaction = beforeTransaction;
+        this.position = position;
+        this.beforeAccount = beforeAccount;
+        this.afterAccount = afterAccount;
+        this.beforeCategory = beforeCategory;
+        this.afterCategory = afterCategory;
+        this.beforeSecurity = beforeSecurity;
+        this.afterSecurity = afterSecurity;
+    }
+
+    /**
+     * Create an INSERT event using the current transaction values
+     *
+     * @param       t               Transaction
+     * @param       replaced        Transaction replaced by the new transaction or null
+     * @param       position        Position in the transaction list
+     * @return                      Ledger event
+     */
+    public static LedgerEvent inserted(TransactionRecord t, TransactionRecord replaced, int position) {
+        return new LedgerEvent(INSERT, t, replaced, position, null, t.getAccount(),
+                               null, t.getCategory(), null, t.getSecurity());
+    }
+
+    /**
+     * Create an UPDATE event for a transaction that has been modified in place.
+     * The account, category and security were not changed.
+     *
+     * @param       t               Transaction
+     * @return                      Ledger event
+     */
+    public static LedgerEvent updated(TransactionRecord t) {
+        return new LedgerEvent(UPDATE, t, t, -1, t.getAccount(), t.getAccount(),
+                               t.getCategory(), t.getCategory(), t.getSecurity(), t.getSecurity());
+    }
+
+    /**
+     * Create a DELETE event using the current transaction values
+     *
+     * @param       t               Transaction
+     * @param       position        Position in the transaction list before the removal
+     * @return                      Ledger event
+     */
+    public static LedgerEvent deleted(TransactionRecord t, int position) {
+        return new LedgerEvent(DELETE, t, t, position, t.getAccount(), null,
+                               t.getCategory(), null, t.getSecurity(), null);
+    }
+
+    /**
+     * Get the event type
+     *
+     * @return                      INSERT, UPDATE or DELETE
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Get the transaction
+     *
+     * @return                      Transaction
+     */
+    public TransactionRecord getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Get the transaction before the change.  This is the old record for an UPDATE
+     * event that replaced a transaction, the transaction itself for an UPDATE event
+     * that modified the transaction in place or a DELETE event, and the replaced
+     * record or null for an INSERT event.
+     *
+     * @return                      Transaction or null
+     */
+    public TransactionRecord getBeforeTransaction() {
+        return beforeTransaction;
+    }
+
+    /**
+     * Get the position of the transaction in the transaction list.  This is the
+     * position after the insertion for an INSERT event and the position before the
+     * removal for a DELETE event.  The position is -1 for an UPDATE event and for
+     * an event that has been combined with another event.
+     *
+     * @return                      List position or -1
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the account before the change
+     *
+     * @return                      Account or null for an INSERT event
+     */
+    public AccountRecord getBeforeAccount() {
+        return beforeAccount;
+    }
+
+    /**
+     * Get the account after the change
+     *
+     * @return                      Account or null for a DELETE event
+     */
+    public AccountRecord getAfterAccount() {
+        return afterAccount;
+    }
+
+    /**
+     * Get the category before the change
+     *
+     * @return                      Category or null
+     */
+    public CategoryRecord getBeforeCategory() {
+        return beforeCategory;
+    }
+
+    /**
+     * Get the category after the change
+     *
+     * @return                      Category or null
+     */
+    public CategoryRecord getAfterCategory() {
+        return afterCategory;
+    }
+
+    /**
+     * Get the security before the change
+     *
+     * @return                      Security or null
+     */
+    public SecurityRecord getBeforeSecurity() {
+        return beforeSecurity;
+    }
+
+    /**
+     * Get the security after the change
+     *
+     * @return                      Security or null
+     */
+    public SecurityRecord getAfterSecurity() {
+        return afterSecurity;
+    }
+
+    /**
+     * Combine this event with a later event for the same transaction.  A DELETE
+     * followed by an INSERT of the replacement record becomes an UPDATE from the
+     * old record to the new record.
+     *
+     * @param       later           Later event
+     * @return                      Combined event or null if the events cancel
+     */
+    LedgerEvent merge(LedgerEvent later) {
+        int mergedType;
+        if (type == INSERT) {
+            if (later.type == DELETE)
+                return null;
+
+            mergedType = INSERT;
+        } else if (type == DELETE) {
+            mergedType = (later.type == INSERT ? UPDATE : DELETE);
+        } else {
+            mergedType = (later.type == INSERT ? UPDATE : later.type);
+        }
+
+        if (mergedType == INSERT)
+            return new LedgerEvent(INSERT, later.transaction, null, -1,
+                                   null, later.afterAccount, null, later.afterCategory,
+                                   null, later.afterSecurity);
+
+        if (mergedType == DELETE)
+            return new LedgerEvent(DELETE, beforeTransaction, beforeTransaction, -1,
+                                   beforeAccount, null, beforeCategory, null,
+                                   beforeSecurity, null);
+
+        return new LedgerEvent(UPDATE, later.transaction, beforeTransaction, -1,
+                               beforeAccount, later.afterAccount,
+                               beforeCategory, later.afterCategory,
+                               beforeSecurity, later.afterSecurity);
+    }
+}
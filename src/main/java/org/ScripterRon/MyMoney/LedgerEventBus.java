@@ -0,0 +1,204 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The ledger event bus delivers transaction changes to the registered caches and
+ * listeners.  The events are published by TransactionRecord when a transaction is
+ * added to or removed from the transaction list and when transactions are modified
+ * in place.
+ * <p>
+ * The derived caches (the transaction index, the category cube, the text and name
+ * indexes, the tax summary, the bond portfolio, the transaction partitions, the
+ * checkpoints and the ledger snapshot) are updated as each event is published since
+ * they must be consistent as soon as the transaction list changes.  The caches are
+ * updated for every database context.
+ * <p>
+ * The events are collected into a batch which is delivered on the event dispatch
+ * thread after the current event has been processed.  Events for the same transaction
+ * are combined, so a listener sees at most one event for each transaction in a batch.
+ * An INSERT followed by a DELETE for the same transaction cancels, and the DELETE of
+ * an edited transaction followed by the INSERT of its replacement becomes an UPDATE.
+ * The flush() method can be called to deliver the pending batch immediately.  Only
+ * events for the application database are delivered to the listeners.
+ */
+public final class LedgerEventBus {
+
+    /** Registered caches in the order they are updated */
+    private static final List<LedgerCache> caches = new CopyOnWriteArrayList<>(new LedgerCache[] {
+        TransactionIndex.ledgerCache, CategoryCube.ledgerCache, TextIndex.ledgerCache,
+        NameIndex.ledgerCache, TaxSummary.ledgerCache, BondPortfolio.ledgerCache,
+        TransactionPartitions.ledgerCache, CheckpointRecord.ledgerCache, LedgerSnapshot.ledgerCache});
+
+    /** Registered listeners */
+    private static final List<LedgerListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Pending events in the order of the first change for each transaction */
+    private static List<LedgerEvent> pendingEvents = new ArrayList<>();
+
+    /** Index of the pending event for each transaction */
+    private static Map<TransactionRecord, Integer> pendingIndex = new IdentityHashMap<>();
+
+    /** Batch delivery has been scheduled */
+    private static boolean deliveryScheduled;
+
+    /**
+     * This class is not instantiated
+     */
+    private LedgerEventBus() {
+    }
+
+    /**
+     * Add a ledger cache.  The cache is updated after the existing caches.
+     *
+     * @param       cache           Ledger cache
+     */
+    public static void addCache(LedgerCache cache) {
+        caches.add(cache);
+    }
+
+    /**
+     * Remove a ledger cache
+     *
+     * @param       cache           Ledger cache
+     */
+    public static void removeCache(LedgerCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * Add a ledger listener
+     *
+     * @param       listener        Ledger listener
+     */
+    public static void addListener(LedgerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a ledger listener
+     *
+     * @param       listener        Ledger listener
+     */
+    public static void removeListener(LedgerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publish a ledger event.  The caches are updated and then the event is added
+     * to the pending batch.  Events for a database other than the application
+     * database are not added to the batch since the listeners display the
+     * application database.
+     *
+     * @param       event           Ledger event
+     */
+    public static void publish(LedgerEvent event) {
+        for (LedgerCache cache : caches)
+            cache.transactionChanged(event);
+
+        boolean scheduleDelivery = false;
+        synchronized(LedgerEventBus.class) {
+            if (listeners.isEmpty() || !DatabaseContext.getCurrent().isApplicationContext())
+                return;
+
+            //
+            // The INSERT for a replacement record is combined with the pending
+            // event for the record it replaces
+            //
+            TransactionRecord t = event.getTransaction();
+            Integer index = pendingIndex.get(t);
+            TransactionRecord replaced = event.getBeforeTransaction();
+            if (index == null && replaced != null && replaced != t) {
+                index = pendingIndex.remove(replaced);
+                if (index != null)
+                    pendingIndex.put(t, index);
+            }
+
+            if (index == null) {
+                pendingIndex.put(t, pendingEvents.size());
+                pendingEvents.add(event);
+            } else {
+                LedgerEvent pendingEvent = pendingEvents.get(index);
+                pendingEvents.set(index, (pendingEvent != null ? pendingEvent.merge(event) : event));
+            }
+
+            if (!deliveryScheduled) {
+                deliveryScheduled = true;
+                scheduleDelivery = true;
+            }
+        }
+
+        if (scheduleDelivery) {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * Deliver the pending batch to the listeners
+     */
+    public static void flush() {
+        List<LedgerEvent> batch;
+        synchronized(LedgerEventBus.class) {
+            deliveryScheduled = false;
+            if (pendingEvents.isEmpty())
+                return;
+
+            batch = new ArrayList<>(pendingEvents.size());
+            for (LedgerEvent event : pendingEvents) {
+                if (event != null)
+                    batch.add(event);
+            }
+
+            pendingEvents = new ArrayList<>();
+            pendingIndex = new IdentityHashMap<>();
+        }
+
+        if (batch.isEmpty())
+            return;
+
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.ledgerChanged(batch);
+            } catch (Exception exc) {
+                Main.logException("Exception while processing ledger change", exc);
+            }
+        }
+    }
+
+    /**
+     * Discard the pending events.  This is done when a new application database
+     * is loaded.
+     */
+    public static synchronized void clear() {
+        if (!DatabaseContext.getCurrent().isApplicationContext())
+            return;
+
+        pendingEvents = new ArrayList<>();
+        pendingIndex = new IdentityHashMap<>();
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.List;
+
+/**
+ * A ledger listener receives notifications when transactions are added to, removed
+ * from or modified in the transaction list.  The notifications are delivered in
+ * batches on the event dispatch thread.
+ */
+public interface LedgerListener {
+
+    /**
+     * The ledger has changed.  The batch contains at most one event for a given
+     * transaction and the events are in the order of the first change for each
+     * transaction.
+     *
+     * @param       events          List of ledger events
+     */
+    public void ledgerChanged(List<LedgerEvent> events);
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ledger snapshot is a point-in-time copy of the database record lists.  Background
+ * computations (the query service and the net worth graph) can read a snapshot on a
+ * worker thread while the user continues to edit the database on the event dispatch
+ * thread.
+ * <p>
+ * Each change to the database increments the ledger version and discards the current
+ * snapshot.  The next request copies the record lists, which is O(n) in the number of
+ * loaded transactions, and requests made before the next change return the same
+ * snapshot.  The copy is made on the event dispatch thread since that is the only
+ * thread that modifies the application database, so a worker thread waits for the
+ * event dispatch thread the first time it asks for a snapshot after a change.  A
+ * snapshot of a database that is not displayed by the main window is made on the
+ * thread that is processing the database.  There is no event dispatch thread when
+ * running a batch command, so the snapshot is made on the calling thread.
+ * <p>
+ * The snapshot contains the record lists, the security price histories and the
+ * year-end checkpoints.  The transaction list contains the transactions for the
+ * partitions that were loaded when the snapshot was created.  The lists are copies,
+ * but the records themselves are shared with the database:
+ * <ul>
+ * <li>A transaction in the transaction list is not modified except for its
+ * reconciliation state.  The edit dialogs build a new transaction (and edit a copy
+ * of the splits) when a transaction is changed, so the amounts, names, dates and
+ * splits seen through a snapshot do not change.  Snapshot consumers must not depend
+ * on the reconciliation state since it is changed in place.
+ * <li>Account, category and security records are modified in place when they are
+ * edited, so a snapshot consumer sees the current name of a record.  The account
+ * balances are not part of the snapshot and are computed from the transactions.
+ * </ul>
+ */
+public final class LedgerSnapshot {
+
+    /** Database context */
+    private final DatabaseContext context;
+
+    /** Snapshot version */
+    private final long version;
+
+    /** Transactions sorted by date */
+    private final List<TransactionRecord> transactions;
+
+    /** Accounts sorted by name */
+    private final List<AccountRecord> accounts;
+
+    /** Categories sorted by name */
+    private final List<CategoryRecord> categories;
+
+    /** Securities sorted by name */
+    private final List<SecurityRecord> securities;
+
+    /** Scheduled transactions sorted by date */
+    private final List<ScheduleRecord> schedules;
+
+    /** Security price histories indexed by security identifier */
+    private final Map<Integer, List<PriceHistory>> priceHistories;
+
+    /** Year-end checkpoints sorted by year */
+    private final List<CheckpointRecord> checkpoints;
+
+    /** First loaded partition year or 0 if all partitions are loaded */
+    private final int firstLoadedYear;
+
+    /** Number of transactions in the partitions that are not loaded */
+    private final int unloadedCount;
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            ledgerModified();
+        }
+    };
+
+    /**
+     * Create a snapshot of the current database
+     *
+     * @param       context         Database context
+     * @param       version         Ledger version
+     */
+    private LedgerSnapshot(DatabaseContext context, long version) {
+        this.context = context;
+        this.version = version;
+        transactions = copyList(context.transactions);
+        accounts = copyList(context.accounts);
+        categories = copyList(context.categories);
+        securities = copyList(context.securities);
+        schedules = copyList(context.schedules);
+        priceHistories = new HashMap<>(securities.size());
+        for (SecurityRecord s : securities)
+            priceHistories.put(s.getID(), copyList(s.getPriceHistory()));
+        checkpoints = copyList(CheckpointRecord.getCheckpoints(context));
+        firstLoadedYear = context.firstLoadedYear;
+        unloadedCount = context.unloadedCount;
+    }
+
+    /**
+     * Get a snapshot of the current database.  The snapshot is created on the event
+     * dispatch thread if the database has changed since the last snapshot.
+     *
+     * @return                      Ledger snapshot
+     */
+    public static LedgerSnapshot getSnapshot() {
+        final DatabaseContext context = DatabaseContext.getCurrent();
+        synchronized(LedgerSnapshot.class) {
+            if (context.ledgerSnapshot != null)
+                return context.ledgerSnapshot;
+        }
+
+        if (Main.headless || !context.isApplicationContext() || EventQueue.isDispatchThread())
+            return createSnapshot(context);
+
+        final LedgerSnapshot[] result = new LedgerSnapshot[1];
+        try {
+            EventQueue.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = createSnapshot(context);
+                }
+            });
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating ledger snapshot", exc);
+        } catch (InvocationTargetException exc) {
+            throw new IllegalStateException("Unable to create ledger snapshot", exc.getCause());
+        }
+
+        return result[0];
+    }
+
+    /**
+     * The database has been modified.  The current snapshot is discarded and the
+     * next request will create a new snapshot.
+     */
+    public static synchronized void ledgerModified() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        context.ledgerVersion++;
+        context.ledgerSnapshot = null;
+    }
+
+    /**
+     * Get the current ledger version
+     *
+     * @return                      Ledger version
+     */
+    public static synchronized long getCurrentVersion() {
+        return DatabaseContext.getCurrent().ledgerVersion;
+    }
+
+    /**
+     * Create a snapshot for the current version
+     *
+     * @param       context         Database context
+     * @return                      Ledger snapshot
+     */
+    private static LedgerSnapshot createSnapshot(DatabaseContext context) {
+        long version;
+        synchronized(LedgerSnapshot.class) {
+            if (context.ledgerSnapshot != null)
+                return context.ledgerSnapshot;
+
+            version = context.ledgerVersion;
+        }
+
+        LedgerSnapshot snapshot = new LedgerSnapshot(context, version);
+        synchronized(LedgerSnapshot.class) {
+            if (context.ledgerVersion == version)
+                context.ledgerSnapshot = snapshot;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Copy a collection to an unmodifiable list
+     *
+     * @param       collection      Collection to copy
+     * @return                      Unmodifiable list
+     */
+    private static <T> List<T> copyList(Collection<T> collection) {
+        return Collections.unmodifiableList(new ArrayList<>(collection));
+    }
+
+    /**
+     * Get the snapshot version
+     *
+     * @return                      Ledger version when the snapshot was created
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Check if the database has changed since the snapshot was created
+     *
+     * @return                      TRUE if the snapshot is no longer current
+     */
+    public boolean isStale() {
+        synchronized(LedgerSnapshot.class) {
+            return (context.ledgerVersion != version);
+        }
+    }
+
+    /**
+     * Get the transactions sorted by date
+     *
+     * @return                      Unmodifiable transaction list
+     */
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Get the accounts sorted by name
+     *
+     * @return                      Unmodifiable account list
+     */
+    public List<AccountRecord> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Get the categories sorted by name
+     *
+     * @return                      Unmodifiable category list
+     */
+    public List<CategoryRecord> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Get the securities sorted by name
+     *
+     * @return                      Unmodifiable security list
+     */
+    public List<SecurityRecord> getSecurities() {
+        return securities;
+    }
+
+    /**
+     * Get the scheduled transactions sorted by date
+     *
+     * @return                      Unmodifiable scheduled transaction list
+     */
+    public List<ScheduleRecord> getSchedules() {
+        return schedules;
+    }
+
+    /**
+     * Get the price history for a security
+     *
+     * @param       security        Security
+     * @return                      Unmodifiable price history sorted by date
+     */
+    public List<PriceHistory> getPriceHistory(SecurityRecord security) {
+        List<PriceHistory> history = priceHistories.get(security.getID());
+        return (history != null ? history : Collections.<PriceHistory>emptyList());
+    }
+
+    /**
+     * Get the security price on a date.  The most recent price on or before the
+     * date is returned.
+     *
+     * @param       security        Security
+     * @param       date            Date
+     * @return                      Price or zero if there is no price on or before the date
+     */
+    public double getPrice(SecurityRecord security, Date date) {
+        List<PriceHistory> history = getPriceHistory(security);
+        int low = 0;
+        int high = history.size();
+        while (low < high) {
+            int mid = (low+high)>>>1;
+            if (history.get(mid).getDate().compareTo(date) <= 0)
+                low = mid+1;
+            else
+                high = mid;
+        }
+
+        return (low > 0 ? history.get(low-1).getPrice() : 0.0);
+    }
+
+    /**
+     * Get the latest year-end checkpoint that precedes the year containing the
+     * supplied date.  The checkpoint for the year preceding the first loaded
+     * partition is returned if the date is in a partition that is not loaded.
+     *
+     * @param       date            Date
+     * @return                      Checkpoint or null
+     */
+    public CheckpointRecord getCheckpoint(Date date) {
+        return CheckpointRecord.getCheckpoint(checkpoints, date, firstLoadedYear);
+    }
+
+    /**
+     * Get the transactions following a checkpoint in the snapshot transaction list
+     *
+     * @param       checkpoint      Checkpoint returned by getCheckpoint()
+     * @return                      Transactions following the checkpoint
+     */
+    public List<TransactionRecord> getTransactionsAfter(CheckpointRecord checkpoint) {
+        return transactions.subList(checkpoint.getTransactionCount()-unloadedCount, transactions.size());
+    }
+}
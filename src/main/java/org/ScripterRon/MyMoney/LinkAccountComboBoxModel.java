@@ -49,10 +49,10 @@ public final class LinkAccountComboBoxModel extends AbstractListModel implements
      * @param       account         The current account or null
      */
     public LinkAccountComboBoxModel(AccountRecord account) {
-        linkAccounts = new ArrayList<AccountRecord>(AccountRecord.accounts.size()+1);
+        linkAccounts = new ArrayList<AccountRecord>(AccountRecord.getAccounts().size()+1);
         linkAccounts.add(null);
         int index = 1;
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a != account && a.getType() == AccountRecord.BANK) {
                 linkAccounts.add(a);
                 if (account != null && account.getLinkedAccount() == a)
@@ -18,7 +18,6 @@ package org.ScripterRon.MyMoney;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.ListIterator;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -86,7 +85,14 @@ public final class LoanTransactionEditDialog extends JDialog implements ActionLi
         double amount;
         splits = null;
         if (transaction != null) {
+            //
+            // Edit a copy of the splits since the transaction is still in the
+            // transaction list until the changes are saved
+            //
             splits = transaction.getSplits();
+            if (splits != null)
+                splits = TransactionSplit.copySplits(splits);
+
             if (transaction.getAccount() == account) {
                 transferAccount = transaction.getTransferAccount();
                 amount = transaction.getAmount();
@@ -316,6 +322,7 @@ public final class LoanTransactionEditDialog extends JDialog implements ActionLi
     private boolean processFields() {
         AccountRecord a, t;
         int transactionPosition = -1, modelPosition = -1;
+        TransactionRecord oldTransaction = null;
         int index, reconciled;
         double amount;
         String name;
@@ -348,16 +355,8 @@ public final class LoanTransactionEditDialog extends JDialog implements ActionLi
             name = transaction.getName();
             amount = transaction.getAmount();
             reconciled = transaction.getReconciled();
-            ListIterator<TransactionRecord> i = TransactionRecord.transactions.listIterator();
-            transactionPosition = 0;
-            while (i.hasNext()) {
-                if (i.next() == transaction) {
-                    i.remove();
-                    break;
-                }
-
-                transactionPosition++;
-            }
+            oldTransaction = transaction;
+            transactionPosition = TransactionRecord.removeTransaction(transaction);
 
             transaction.clearReferences();
             modelPosition = tableModel.transactionRemoved(transaction);
@@ -406,9 +405,9 @@ public final class LoanTransactionEditDialog extends JDialog implements ActionLi
         // Add the new transaction and scroll the table to display the transaction
         //
         if (transactionPosition >= 0)
-            TransactionRecord.transactions.add(transactionPosition, transaction);
+            TransactionRecord.insertTransaction(transactionPosition, transaction, oldTransaction);
         else
-            TransactionRecord.insertTransaction(transaction);
+            TransactionRecord.insertTransaction(transaction, oldTransaction);
 
         int modelRow = tableModel.transactionAdded(modelPosition, transaction);
         transactionPanel.showSelectedRow(table.convertRowIndexToView(modelRow));
@@ -18,11 +18,7 @@ package org.ScripterRon.MyMoney;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Properties;
-import java.util.TreeSet;
 
 import java.io.*;
 import java.nio.channels.FileLock;
@@ -77,6 +73,9 @@ public final class Main {
     /** Application lock */
     public static FileLock fileLock;
 
+    /** Running a batch command without the GUI */
+    public static boolean headless;
+
     /** Deferred exception text */
     private static String deferredText;
 
@@ -99,11 +98,15 @@ public final class Main {
             dataPath = System.getProperty("user.home")+fileSeparator+"Documents"+fileSeparator+"My Money";
             propFile = new File(dataPath+fileSeparator+"MyMoney.properties");
             properties = new Properties();
-            AccountRecord.accounts = new TreeSet<>();
-            CategoryRecord.categories = new TreeSet<>();
-            SecurityRecord.securities = new TreeSet<>();
-            TransactionRecord.transactions = new LinkedList<>();
-            ScheduleRecord.transactions = new LinkedList<>();
+            //
+            // Run a batch command without initializing AWT if command line
+            // arguments were specified
+            //
+            if (args.length != 0) {
+                headless = true;
+                System.setProperty("java.awt.headless", "true");
+                System.exit(BatchProcessor.run(args));
+            }
             //
             // Get the application build properties
             //
@@ -153,6 +156,7 @@ public final class Main {
             // Load the current transaction database
             //
             database = new Database(dataPath+fileSeparator+"MyMoney.database");
+            DatabaseContext.setApplicationContext(database.getContext());
             database.load();
             //
             // Process scheduled transactions
@@ -199,6 +203,18 @@ public final class Main {
             //
             Main.mainWindow.pack();
             Main.mainWindow.setVisible(true);
+
+            //
+            // Evict the older transaction partitions when the heap is running low
+            //
+            TransactionPartitions.startMemoryMonitor();
+
+            //
+            // Start the query service if a service port has been specified
+            //
+            String port = Main.properties.getProperty("query.port");
+            if (port != null)
+                QueryService.start(Integer.parseInt(port));
         } catch (Exception exc) {
             Main.logException("Exception while initializing application window", exc);
         }
@@ -239,171 +255,10 @@ public final class Main {
      * @return                      TRUE if any transactions were processed
      */
     public static boolean processScheduledTransactions() {
-        if (ScheduleRecord.transactions.isEmpty())
+        if (ScheduleRecord.getTransactions().isEmpty())
             return false;
 
-        boolean transactionsProcessed = false;
-        GregorianCalendar cal = new GregorianCalendar();
-        Date currentDate = Main.getCurrentDate();
-        ListIterator<ScheduleRecord> li = ScheduleRecord.transactions.listIterator();
-
-        //
-        // Process scheduled transactions until we reach the current date
-        //
-        while (li.hasNext()) {
-            boolean rescheduleTransaction = true;
-            ScheduleRecord r = li.next();
-            Date scheduledDate = r.getDate();
-            if (scheduledDate.compareTo(currentDate) > 0)
-                break;
-
-            //
-            // Remove the scheduled transaction from the list
-            //
-            li.remove();
-
-            //
-            // Build the new transaction
-            //
-            TransactionRecord t = new TransactionRecord(scheduledDate, r.getAccount());
-            t.setName(r.getDescription());
-            t.setAmount(r.getAmount());
-            t.setCategory(r.getCategory());
-            t.setTransferAccount(r.getTransferAccount());
-            t.setMemo("Scheduled transaction");
-
-            //
-            // Copy any splits and update a loan payment based on the current
-            // loan balance
-            //
-            List<TransactionSplit> splits = r.getSplits();
-            if (splits != null) {
-                splits = TransactionSplit.copySplits(splits);
-                t.setSplits(splits);
-
-                boolean loanPayment = false;
-                AccountRecord loanAccount = null;
-                double amount = r.getAmount();
-
-                //
-                // Check the splits for a payment to a loan account.  We always have
-                // two splits for a scheduled loan payment: one for the interest
-                // payment and the other for the principal payment.
-                //
-                if (splits.size() == 2 && amount < 0.0) {
-                    for (TransactionSplit split : splits) {
-                        loanAccount = split.getAccount();
-                        if (loanAccount != null && loanAccount.getType() == AccountRecord.LOAN) {
-                            loanPayment = true;
-                            break;
-                        }
-                    }
-                }
-
-                if (loanPayment) {
-                    double rate = loanAccount.getLoanRate()/12.0;
-                    double balance = 0.0;
-
-                    //
-                    // Get the current loan balance
-                    //
-                    for (TransactionRecord x : TransactionRecord.transactions) {
-                        if (x.getAccount() == loanAccount) {
-                            balance += x.getAmount();
-                        } else if (x.getTransferAccount() == loanAccount) {
-                            balance -= x.getAmount();
-                        } else {
-                            List<TransactionSplit> xSplits = x.getSplits();
-                            if (xSplits != null) {
-                                for (TransactionSplit xSplit : xSplits) {
-                                    if (xSplit.getAccount() == loanAccount) {
-                                        balance -= xSplit.getAmount();
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-
-                    //
-                    // The transaction amount will be allocated between the two
-                    // splits based on the loan rate.  The total payment will then
-                    // be set to the sum of the interest and principal payments.
-                    //
-                    double interest = (double)Math.round(balance*rate*100.0)/100.0;
-                    double principal = (double)Math.round((amount-interest)*100.0)/100.0;
-                    if (principal < balance)
-                        principal = balance;
-
-                    balance -= principal;
-                    if (Math.abs(balance) < 0.005)
-                        rescheduleTransaction = false;
-
-                    for (TransactionSplit split : splits) {
-                        if (split.getAccount() == loanAccount)
-                            split.setAmount(principal);
-                        else
-                            split.setAmount(interest);
-                    }
-
-                    t.setAmount(principal+interest);
-                }
-            }
-
-            //
-            // Add the new transaction to the transaction list
-            //
-            TransactionRecord.insertTransaction(t);
-            Main.dataModified = true;
-            transactionsProcessed = true;
-
-            //
-            // Reschedule a recurring transaction
-            //
-            int scheduleType = r.getType();
-            if (scheduleType != ScheduleRecord.SINGLE && rescheduleTransaction) {
-
-                //
-                // Reset the scheduled date for a recurring transaction
-                //
-                cal.setTime(scheduledDate);
-                switch (scheduleType) {
-                    case ScheduleRecord.WEEKLY:
-                        cal.add(Calendar.DAY_OF_YEAR, 7);
-                        break;
-
-                    case ScheduleRecord.BIWEEKLY:
-                        int day = cal.get(Calendar.DAY_OF_MONTH);
-                        if (day == 1) {
-                            cal.set(Calendar.DAY_OF_MONTH, 15);
-                        } else {
-                            cal.set(Calendar.DAY_OF_MONTH, 1);
-                            cal.add(Calendar.MONTH, 1);
-                        }
-                        break;
-
-                    case ScheduleRecord.MONTHLY:
-                        cal.add(Calendar.MONTH, 1);
-                        break;
-
-                    default:
-                        throw new IllegalArgumentException("Schedule type "+scheduleType+" is not recognized");
-                }
-
-                //
-                // Add the transaction to the scheduled transaction list
-                //
-                r.setDate(cal.getTime());
-                ScheduleRecord.insertTransaction(r);
-
-                //
-                // Get a new list iterator since the list has changed
-                //
-                li = ScheduleRecord.transactions.listIterator();
-            }
-        }
-
-        return transactionsProcessed;
+        return ScheduleProcessor.processScheduledTransactions(Main.getCurrentDate());
     }
 
     /**
@@ -428,7 +283,10 @@ public final class Main {
      * @param       exc         The Java exception object
      */
     public static void logException(String text, Throwable exc) {
-        if (SwingUtilities.isEventDispatchThread()) {
+        if (headless) {
+            System.err.println(text);
+            exc.printStackTrace();
+        } else if (SwingUtilities.isEventDispatchThread()) {
             StringBuilder string = new StringBuilder(512);
 
             //
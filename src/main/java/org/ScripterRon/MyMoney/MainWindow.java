@@ -16,6 +16,13 @@
 package org.ScripterRon.MyMoney;
 
 import java.io.*;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.swing.*;
 import java.awt.*;
@@ -24,7 +31,7 @@ import java.awt.event.*;
 /**
  * Main application window
  */
-public final class MainWindow extends JFrame implements ActionListener {
+public final class MainWindow extends JFrame implements ActionListener, LedgerListener {
 
     /** Main window is minimized */
     private boolean windowMinimized = false;
@@ -38,6 +45,22 @@ public final class MainWindow extends JFrame implements ActionListener {
     /** Currently active account panel */
     private AccountRecord activeAccount;
 
+    /** Maximum number of cached transaction panels */
+    private static final int PANEL_CACHE_SIZE = 8;
+
+    /**
+     * Transaction panels indexed by account identifier.  The map is in access order
+     * so the least-recently viewed panel is discarded when the cache is full.  The
+     * panels are held by soft references so they can be reclaimed if memory is low.
+     */
+    private final Map<Integer, SoftReference<TransactionPanel>> panelCache =
+            new LinkedHashMap<Integer, SoftReference<TransactionPanel>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, SoftReference<TransactionPanel>> eldest) {
+                    return size() > PANEL_CACHE_SIZE;
+                }
+            };
+
     /**
      * Create the application window
      */
@@ -90,7 +113,8 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // Add the "File" menu to the menu bar
         //
-        // The "File" menu contains the "Open", "Save" and "Exit" items.
+        // The "File" menu contains the "Open", "Open Archive", "Save", "Archive",
+        // "Find" and "Exit" items.
         //
         JMenu menu;
         JMenuItem menuItem;
@@ -103,11 +127,26 @@ public final class MainWindow extends JFrame implements ActionListener {
         menuItem.addActionListener(this);
         menu.add(menuItem);
 
+        menuItem = new JMenuItem("Open Archive");
+        menuItem.setActionCommand("open archive");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuItem = new JMenuItem("Save");
         menuItem.setActionCommand("save");
         menuItem.addActionListener(this);
         menu.add(menuItem);
 
+        menuItem = new JMenuItem("Archive");
+        menuItem.setActionCommand("archive");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
+        menuItem = new JMenuItem("Find");
+        menuItem.setActionCommand("find transactions");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuItem = new JMenuItem("Exit");
         menuItem.setActionCommand("exit");
         menuItem.addActionListener(this);
@@ -186,22 +225,34 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // Add the "Graphs" menu to the menu bar
         //
-        // The "Graphs" menu contains the "Net Worth" item
+        // The "Graphs" menu contains the "Cash Flow Forecast", "Net Worth" and
+        // "Retirement Projection" items
         //
         menu = new JMenu("Graphs");
         menu.setMnemonic(KeyEvent.VK_G);
 
+        menuItem = new JMenuItem("Cash Flow Forecast");
+        menuItem.setActionCommand("forecast graph");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuItem = new JMenuItem("Net Worth");
         menuItem.setActionCommand("net worth graph");
         menuItem.addActionListener(this);
         menu.add(menuItem);
 
+        menuItem = new JMenuItem("Retirement Projection");
+        menuItem.setActionCommand("retirement graph");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuBar.add(menu);
         //
         // Add the "Reports" menu to the menu bar
         //
         // The "Reports" menu contains the "Amortization", "Capital Gains",
-        // "Investments" and "Transactions" items
+        // "Categories", "Investments", "Investment Returns", "Tax Summary" and
+        // "Transactions" items
         //
         menu = new JMenu("Reports");
         menu.setMnemonic(KeyEvent.VK_R);
@@ -216,11 +267,26 @@ public final class MainWindow extends JFrame implements ActionListener {
         menuItem.addActionListener(this);
         menu.add(menuItem);
 
+        menuItem = new JMenuItem("Categories");
+        menuItem.setActionCommand("category report");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuItem = new JMenuItem("Investments");
         menuItem.setActionCommand("investment report");
         menuItem.addActionListener(this);
         menu.add(menuItem);
 
+        menuItem = new JMenuItem("Investment Returns");
+        menuItem.setActionCommand("investment returns report");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
+        menuItem = new JMenuItem("Tax Summary");
+        menuItem.setActionCommand("tax summary report");
+        menuItem.addActionListener(this);
+        menu.add(menuItem);
+
         menuItem = new JMenuItem("Transactions");
         menuItem.setActionCommand("transaction report");
         menuItem.addActionListener(this);
@@ -272,6 +338,10 @@ public final class MainWindow extends JFrame implements ActionListener {
         // Receive WindowListener events
         //
         addWindowListener(new ApplicationWindowListener(this));
+        //
+        // Receive ledger change events
+        //
+        LedgerEventBus.addListener(this);
     }
 
     /**
@@ -308,20 +378,28 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // "about" - Display information about this application
         // "amortization report" - Generate the bond accretion/amortization report
+        // "archive" - Archive the transactions for closed years
         // "calculate amortization" - Calculate bond accretion/amortization
         // "calculate compound interest" - Calculate compound interest
         // "capital gains report" - Generate the capital gains report
+        // "category report" - Generate the category report
         // "edit accounts" - Edit accounts
         // "edit categories" - Edit categories
         // "edit securities" - Edit securities
         // "edit schedules" - Edit scheduled transactions
         // "exit" - End the program
+        // "find transactions" - Search the transaction names and memos
+        // "forecast graph" - Display the cash flow forecast graph
         // "help" - Display program help
         // "investment report" - Generate the investment report
+        // "investment returns report" - Display the investment returns
         // "net worth graph" - Display the net worth graph
         // "open" - Open a new database file
+        // "open archive" - Open an archive file for historical reports
         // "overview" - Display the account overview
+        // "retirement graph" - Display the retirement projection graph
         // "save" - Save the modified database
+        // "tax summary report" - Generate the tax summary report
         // "transaction report" - Generate the transaction report
         // "update prices" - Update security prices
         // "#nn" - Display an account (nn is the account identifier)
@@ -339,12 +417,21 @@ public final class MainWindow extends JFrame implements ActionListener {
                 activeAccount = null;
                 setContentPane(new OverviewPanel());
                 contentPaneChanged = true;
+            } else if (action.equals("open archive")) {
+                openArchive();
+                activeAccount = null;
+                setContentPane(new OverviewPanel());
+                contentPaneChanged = true;
+            } else if (action.equals("archive")) {
+                contentPaneChanged = archiveDatabase();
             } else if (action.equals("overview")) {
                 activeAccount = null;
                 setContentPane(new OverviewPanel());
                 contentPaneChanged = true;
             } else if (action.charAt(0) == '#') {
                 contentPaneChanged = viewAccount(Integer.valueOf(action.substring(1)));
+            } else if (action.equals("find transactions")) {
+                TransactionSearchDialog.showDialog(this);
             } else if (action.equals("calculate amortization")) {
                 AmortizationDialog.showDialog(this);
             } else if (action.equals("calculate compound interest")) {
@@ -363,14 +450,24 @@ public final class MainWindow extends JFrame implements ActionListener {
                 contentPaneChanged = editSchedules();
                 if (!contentPaneChanged)
                     validateContentPane = true;
+            } else if (action.equals("forecast graph")) {
+                ForecastGraphDialog.showDialog(this);
             } else if (action.equals("net worth graph")) {
                 NetWorthGraphDialog.showDialog(this);
+            } else if (action.equals("retirement graph")) {
+                RetirementGraphDialog.showDialog(this);
             } else if (action.endsWith("amortization report")) {
                 AmortizationReportDialog.showDialog(this);
             } else if (action.equals("capital gains report")) {
                 CapitalGainsReportDialog.showDialog(this);
+            } else if (action.equals("category report")) {
+                CategoryReportDialog.showDialog(this);
             } else if (action.equals("investment report")) {
                 InvestmentReportDialog.showDialog(this);
+            } else if (action.equals("investment returns report")) {
+                InvestmentReturnsDialog.showDialog(this);
+            } else if (action.equals("tax summary report")) {
+                TaxSummaryReportDialog.showDialog(this);
             } else if (action.equals("transaction report")) {
                 TransactionReportDialog.showDialog(this);
             } else if (action.equals("update prices")) {
@@ -453,10 +550,10 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // Add the account views (hidden accounts will not be included)
         //
-        if (AccountRecord.accounts.size() != 0) {
+        if (AccountRecord.getAccounts().size() != 0) {
             viewMenu.addSeparator();
 
-            for (AccountRecord a : AccountRecord.accounts) {
+            for (AccountRecord a : AccountRecord.getAccounts()) {
                 if (!a.isHidden()) {
                     menuItem = new JMenuItem(a.getName());
                     menuItem.setActionCommand("#"+a.getID());
@@ -475,45 +572,158 @@ public final class MainWindow extends JFrame implements ActionListener {
      */
     private boolean viewAccount(int accountID) {
         boolean contentPaneChanged = false;
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a.getID() == accountID) {
-                switch (a.getType()) {
-                    case AccountRecord.BANK:
-                        activeAccount = a;
-                        setContentPane(new BankTransactionPanel(a));
-                        contentPaneChanged = true;
-                        break;
 
-                    case AccountRecord.CREDIT:
-                        activeAccount = a;
-                        setContentPane(new CreditTransactionPanel(a));
-                        contentPaneChanged = true;
-                        break;
+                //
+                // Use the cached panel if we have one
+                //
+                TransactionPanel panel = null;
+                SoftReference<TransactionPanel> ref = panelCache.get(accountID);
+                if (ref != null) {
+                    panel = ref.get();
+                    if (panel == null)
+                        panelCache.remove(accountID);
+                }
+
+                if (panel == null) {
+                    switch (a.getType()) {
+                        case AccountRecord.BANK:
+                            panel = new BankTransactionPanel(a);
+                            break;
+
+                        case AccountRecord.CREDIT:
+                            panel = new CreditTransactionPanel(a);
+                            break;
+
+                        case AccountRecord.INVESTMENT:
+                            panel = new InvestmentTransactionPanel(a);
+                            break;
+
+                        case AccountRecord.ASSET:
+                            panel = new AssetTransactionPanel(a);
+                            break;
 
-                    case AccountRecord.INVESTMENT:
-                        activeAccount = a;
-                        setContentPane(new InvestmentTransactionPanel(a));
-                        contentPaneChanged = true;
+                        case AccountRecord.LOAN:
+                            panel = new LoanTransactionPanel(a);
+                            break;
+                    }
+
+                    if (panel != null)
+                        panelCache.put(accountID, new SoftReference<>(panel));
+                }
+
+                if (panel != null) {
+                    activeAccount = a;
+                    setContentPane(panel);
+                    contentPaneChanged = true;
+                }
+
+                break;
+            }
+        }
+
+        return contentPaneChanged;
+    }
+
+    /**
+     * The ledger has changed (LedgerListener interface)
+     *
+     * The cached transaction panels are updated for added, removed, replaced and
+     * modified transactions.  A replaced transaction is removed from a panel and the
+     * new transaction is added, while the running balances are recomputed for the
+     * transactions modified in place.  The displayed panel is not updated since it is
+     * updated by the dialog that made the change.  An investment panel rebuilds its
+     * positions when it is displayed again.
+     *
+     * @param       events          List of ledger events
+     */
+    public void ledgerChanged(List<LedgerEvent> events) {
+        if (panelCache.isEmpty())
+            return;
+
+        Container contentPane = getContentPane();
+        List<TransactionRecord> modified = new ArrayList<>();
+        for (SoftReference<TransactionPanel> ref : panelCache.values()) {
+            TransactionPanel panel = ref.get();
+            if (panel == null || panel == contentPane)
+                continue;
+
+            for (LedgerEvent event : events) {
+                TransactionRecord t = event.getTransaction();
+                TransactionRecord before = event.getBeforeTransaction();
+                switch (event.getType()) {
+                    case LedgerEvent.INSERT:
+                        if (isAccountTransaction(t, panel.getTransactionAccount()))
+                            panel.transactionAdded(t);
                         break;
 
-                    case AccountRecord.ASSET:
-                        activeAccount = a;
-                        setContentPane(new AssetTransactionPanel(a));
-                        contentPaneChanged = true;
+                    case LedgerEvent.UPDATE:
+                        if (before != t) {
+                            panel.transactionRemoved(before);
+                            if (isAccountTransaction(t, panel.getTransactionAccount()))
+                                panel.transactionAdded(t);
+                        } else {
+                            modified.add(t);
+                        }
                         break;
 
-                    case AccountRecord.LOAN:
-                        activeAccount = a;
-                        setContentPane(new LoanTransactionPanel(a));
-                        contentPaneChanged = true;
+                    case LedgerEvent.DELETE:
+                        panel.transactionRemoved(t);
                         break;
                 }
+            }
 
-                break;
+            if (!modified.isEmpty()) {
+                panel.transactionsModified(modified);
+                modified.clear();
             }
         }
+    }
 
-        return contentPaneChanged;
+    /**
+     * The loaded transaction partitions have changed
+     *
+     * The cached transaction panels are discarded since their table models contain
+     * the transactions for the previously loaded partitions.  The displayed panel is
+     * rebuilt and positioned to show the same transaction if it is still loaded.
+     */
+    public void partitionsChanged() {
+        panelCache.clear();
+        Container contentPane = getContentPane();
+        if (!(contentPane instanceof TransactionPanel))
+            return;
+
+        TransactionPanel oldPanel = (TransactionPanel)contentPane;
+        TransactionRecord transaction = oldPanel.getFirstVisibleTransaction();
+        if (viewAccount(oldPanel.getTransactionAccount().getID())) {
+            validate();
+            TransactionPanel panel = (TransactionPanel)getContentPane();
+            if (transaction == null || !panel.showTransaction(transaction))
+                panel.positionTable(TransactionPanel.BOTTOM);
+        }
+    }
+
+    /**
+     * Check if a transaction references an account
+     *
+     * @param       t               Transaction
+     * @param       account         Account
+     * @return                      TRUE if the transaction references the account
+     */
+    private static boolean isAccountTransaction(TransactionRecord t, AccountRecord account) {
+        if (t.getAccount() == account || t.getTransferAccount() == account)
+            return true;
+
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                if (split.getAccount() == account)
+                    return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -530,9 +740,11 @@ public final class MainWindow extends JFrame implements ActionListener {
         AccountDialog.showDialog(this);
 
         //
-        // Rebuild the View menu
+        // Rebuild the View menu and discard the cached transaction panels since
+        // account definitions may have changed
         //
         buildViewMenu();
+        panelCache.clear();
 
         //
         // Make sure the current account is still valid
@@ -543,7 +755,7 @@ public final class MainWindow extends JFrame implements ActionListener {
             contentPaneChanged = true;
         } else {
             boolean accountValid = false;
-            for (AccountRecord a : AccountRecord.accounts) {
+            for (AccountRecord a : AccountRecord.getAccounts()) {
                 if (activeAccount == a) {
                     accountValid = true;
                     break;
@@ -581,7 +793,9 @@ public final class MainWindow extends JFrame implements ActionListener {
         boolean transactionsProcessed = Main.processScheduledTransactions();
         Container contentPane = getContentPane();
         if (transactionsProcessed && contentPane instanceof TransactionPanel) {
-            setContentPane(((TransactionPanel)contentPane).refreshTransactions());
+            TransactionPanel panel = ((TransactionPanel)contentPane).refreshTransactions();
+            panelCache.put(panel.getTransactionAccount().getID(), new SoftReference<>(panel));
+            setContentPane(panel);
             contentPaneChanged = true;
         }
 
@@ -598,14 +812,7 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // Save the current database if it has been modified
         //
-        if (Main.dataModified) {
-            int option = JOptionPane.showConfirmDialog(this, "Do you want to save the database modifications?",
-                                                       "Confirm Save", JOptionPane.YES_NO_OPTION);
-            if (option == JOptionPane.YES_OPTION)
-                Main.database.save();
-
-            Main.dataModified = false;
-        }
+        saveModifications();
         //
         // Open the new database
         //
@@ -613,7 +820,9 @@ public final class MainWindow extends JFrame implements ActionListener {
         chooser.setDialogTitle("Select Database File");
         chooser.setFileFilter(new DatabaseFileFilter());
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            panelCache.clear();
             Main.database = new Database(chooser.getSelectedFile());
+            DatabaseContext.setApplicationContext(Main.database.getContext());
             Main.database.load();
             Main.processScheduledTransactions();
             setTitle("MyMoney - "+Main.database.getName());
@@ -621,12 +830,131 @@ public final class MainWindow extends JFrame implements ActionListener {
         }
     }
 
+    /**
+     * Open an archive file.  The archive is opened read-only and scheduled
+     * transactions are not processed.
+     *
+     * @exception       DBException     Unable to load the archive
+     * @exception       IOException     Unable to read the archive
+     */
+    private void openArchive() throws DBException, IOException {
+        //
+        // Save the current database if it has been modified
+        //
+        saveModifications();
+        //
+        // Open the archive
+        //
+        JFileChooser chooser = new JFileChooser(Main.dataPath);
+        chooser.setDialogTitle("Select Archive File");
+        chooser.setFileFilter(new ArchiveFileFilter());
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            panelCache.clear();
+            Main.database = new Database(chooser.getSelectedFile(), true);
+            DatabaseContext.setApplicationContext(Main.database.getContext());
+            Main.database.load();
+            setTitle("MyMoney - "+Main.database.getName()+" (read-only)");
+            buildViewMenu();
+        }
+    }
+
+    /**
+     * Ask the user to save the current database if it has been modified.
+     * Modifications to an archive are discarded.
+     *
+     * @exception       IOException     Unable to save application data
+     */
+    private void saveModifications() throws IOException {
+        if (Main.dataModified) {
+            if (!Main.database.isReadOnly()) {
+                int option = JOptionPane.showConfirmDialog(this, "Do you want to save the database modifications?",
+                                                           "Confirm Save", JOptionPane.YES_NO_OPTION);
+                if (option == JOptionPane.YES_OPTION)
+                    Main.database.save();
+            }
+
+            Main.dataModified = false;
+        }
+    }
+
+    /**
+     * Archive the transactions for closed years.  The transactions before the
+     * selected year are moved to archive files and the database is saved.
+     *
+     * @return                          TRUE if the content pane was changed
+     * @exception       IOException     Unable to write the archive files
+     */
+    private boolean archiveDatabase() throws IOException {
+        if (Main.database.isReadOnly()) {
+            JOptionPane.showMessageDialog(this, "An archive file cannot be archived",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
+        //
+        // Get the first year to keep in the database
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(Main.getCurrentDate());
+        int currentYear = cal.get(Calendar.YEAR);
+        String value = JOptionPane.showInputDialog(this, "Archive the transactions before year",
+                                                   String.valueOf(currentYear-1));
+        if (value == null)
+            return false;
+
+        int year;
+        try {
+            year = Integer.parseInt(value.trim());
+        } catch (NumberFormatException exc) {
+            year = 0;
+        }
+
+        if (year <= 0 || year > currentYear) {
+            JOptionPane.showMessageDialog(this, "You must specify a year that is not after "+currentYear,
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
+        int option = JOptionPane.showConfirmDialog(this,
+                                "The transactions before "+year+" will be moved to archive files\n"+
+                                "and the database will be saved.  Do you want to continue?",
+                                "Confirm Archive", JOptionPane.YES_NO_OPTION);
+        if (option != JOptionPane.YES_OPTION)
+            return false;
+
+        //
+        // Archive the transactions and display the overview since the
+        // cached transaction panels are no longer valid
+        //
+        List<File> archiveFiles = Main.database.archive(year);
+        Main.dataModified = false;
+        setTitle(null);
+        panelCache.clear();
+        activeAccount = null;
+        setContentPane(new OverviewPanel());
+        if (archiveFiles.isEmpty())
+            JOptionPane.showMessageDialog(this, "No archive files were written",
+                                          "Archive", JOptionPane.INFORMATION_MESSAGE);
+        else
+            JOptionPane.showMessageDialog(this, "Archive files written to "+archiveFiles.get(0).getParent()+
+                                                ": "+archiveFiles.size(),
+                                          "Archive", JOptionPane.INFORMATION_MESSAGE);
+
+        return true;
+    }
+
     /**
      * Save the database
      *
      * @exception       IOException     Unable to save application data
      */
     private void saveDatabase() throws IOException {
+        if (Main.database.isReadOnly()) {
+            JOptionPane.showMessageDialog(this, "An archive file cannot be saved",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         if (Main.dataModified) {
             Main.database.save();
             Main.dataModified = false;
@@ -653,7 +981,7 @@ public final class MainWindow extends JFrame implements ActionListener {
         //
         // Save the application data
         //
-        if (Main.dataModified) {
+        if (Main.dataModified && !Main.database.isReadOnly()) {
             int option = JOptionPane.showConfirmDialog(this,
                                 "Do you want to save the database modifications?",
                                 "Confirm Save",
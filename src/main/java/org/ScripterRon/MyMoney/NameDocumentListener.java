@@ -15,16 +15,13 @@
  */
 package org.ScripterRon.MyMoney;
 
-import java.util.Iterator;
-import java.util.SortedSet;
-
 import javax.swing.*;
 import javax.swing.event.*;
 
 /**
  * The NameDocumentListener class provides type-ahead for the transaction name.
  * As the user enters characters in the name field, the text will be updated
- * with the first matching selection from the supplied name list.  The type-ahead
+ * with the highest-ranked matching name from the name index.  The type-ahead
  * characters will be updated as the user continues to enter data into the name field.
  */
 public final class NameDocumentListener implements DocumentListener, Runnable {
@@ -32,9 +29,6 @@ public final class NameDocumentListener implements DocumentListener, Runnable {
     /** The text field */
     private JTextField nameField;
 
-    /** The set of names */
-    private SortedSet<String> nameList;
-
     /** The current text */
     private String currentText = "";
 
@@ -45,11 +39,9 @@ public final class NameDocumentListener implements DocumentListener, Runnable {
      * Create a new document listener for the name text field
      *
      * @param       field           The text field to be monitored
-     * @param       names           The suggested names
      */
-    public NameDocumentListener(JTextField field, SortedSet<String> names) {
+    public NameDocumentListener(JTextField field) {
         nameField = field;
-        nameList = names;
     }
 
     /**
@@ -57,10 +49,9 @@ public final class NameDocumentListener implements DocumentListener, Runnable {
      * document listeners for the supplied text field.
      *
      * @param       field           The text field to be monitored
-     * @param       names           The suggested names
      */
-    public static void addInstance(JTextField field, SortedSet<String> names) {
-        NameDocumentListener listener = new NameDocumentListener(field, names);
+    public static void addInstance(JTextField field) {
+        NameDocumentListener listener = new NameDocumentListener(field);
         field.getDocument().addDocumentListener(listener);
     }
 
@@ -119,26 +110,19 @@ public final class NameDocumentListener implements DocumentListener, Runnable {
         // positioned at the start of the additional characters (which will
         // be selected and highlighted).
         //
-        // No suggestion will be made if the entered text matches a name in
-        // the suggestion list or if there is no name starting with the
-        // entered characters.
+        // No suggestion will be made if no text has been entered, if the entered
+        // text matches a name in the name index or if there is no name starting
+        // with the entered characters.
         //
         if (!text.equals(currentText)) {
-            Iterator<String> nameIterator = nameList.iterator();
-            while (nameIterator.hasNext()) {
-                String name = nameIterator.next();
-                if (name.equals(text))
-                    break;
-
-                if (name.startsWith(text)) {
+            NameIndex nameIndex = NameIndex.getIndex();
+            if (text.length() != 0 && !nameIndex.contains(text)) {
+                String name = nameIndex.getCompletion(text);
+                if (name != null) {
                     nameField.setText(name);
                     nameField.setCaretPosition(name.length());
                     nameField.moveCaretPosition(text.length());
-                    break;
                 }
-
-                if (name.compareTo(text) > 0)
-                    break;
             }
 
             currentText = text;
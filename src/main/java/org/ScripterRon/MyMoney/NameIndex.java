@@ -0,0 +1,422 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The name index contains the transaction names for all accounts and is used to
+ * suggest a name as the user enters a transaction name.  The descriptions for split
+ * transfers are included since they are displayed as the transaction name in the
+ * register for the split account.  Investment transactions are not included since
+ * the transaction name is the security name.
+ * <p>
+ * The names are stored in a trie with one node for each name character.  Each node
+ * keeps a reference to the highest-ranked name in its subtree, so the suggested name
+ * for a prefix is found by following the prefix characters from the root.  A name is
+ * ranked by the number of transactions using the name and then by the date of the
+ * most recent transaction.  Since the rank for a name increases when a transaction
+ * is added, a node needs to be updated only when the rank for the updated name
+ * exceeds the rank for the current best name.  The rank for a name decreases when a
+ * transaction is removed, so the best names along the path for the name are then
+ * recomputed from the child nodes.  A name is removed from the trie when it is no
+ * longer used by any transactions.  The date of the most recent transaction is not
+ * changed when a transaction is removed.
+ * <p>
+ * The split descriptions are saved when a transaction is added, so the same names
+ * are removed even if a split list shared with an edit dialog is changed before
+ * the removal.
+ * <p>
+ * The index is built in a single pass over the transaction list the first time it
+ * is referenced and is then updated as transactions are added and removed.  The
+ * index is discarded when a new database is loaded.
+ */
+public final class NameIndex {
+
+    /** Root node */
+    private final Node root = new Node();
+
+    /** Split descriptions saved for each split transaction */
+    private final Map<TransactionRecord, String[]> splitNames = new IdentityHashMap<>();
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            TransactionRecord t = event.getTransaction();
+            switch (event.getType()) {
+                case LedgerEvent.INSERT:
+                    transactionAdded(t);
+                    break;
+
+                case LedgerEvent.DELETE:
+                    transactionRemoved(t);
+                    break;
+
+                default:
+                    transactionRemoved(event.getBeforeTransaction());
+                    transactionAdded(t);
+            }
+        }
+    };
+
+    /**
+     * Create the name index from the current transaction list
+     */
+    private NameIndex() {
+        for (TransactionRecord t : TransactionRecord.getTransactions())
+            addTransaction(t);
+    }
+
+    /**
+     * Get the name index, building it if necessary
+     *
+     * @return                      The name index
+     */
+    public static synchronized NameIndex getIndex() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.nameIndex == null)
+            context.nameIndex = new NameIndex();
+
+        return context.nameIndex;
+    }
+
+    /**
+     * Discard the current name index.  The index will be rebuilt the next
+     * time it is referenced.
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext.getCurrent().nameIndex = null;
+    }
+
+    /**
+     * A transaction has been added to the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionAdded(TransactionRecord t) {
+        NameIndex currentIndex;
+        synchronized(NameIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().nameIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.addTransaction(t);
+    }
+
+    /**
+     * A transaction has been removed from the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionRemoved(TransactionRecord t) {
+        NameIndex currentIndex;
+        synchronized(NameIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().nameIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.removeTransaction(t);
+    }
+
+    /**
+     * Check if a name is in the index
+     *
+     * @param       name            Transaction name
+     * @return                      TRUE if the name is in the index
+     */
+    public synchronized boolean contains(String name) {
+        Node node = findNode(name);
+        return (node != null && node.entry != null);
+    }
+
+    /**
+     * Get the highest-ranked name starting with the supplied prefix
+     *
+     * @param       prefix          Name prefix
+     * @return                      Suggested name or null if there is no match
+     */
+    public synchronized String getCompletion(String prefix) {
+        Node node = findNode(prefix);
+        return (node != null && node.best != null ? node.best.name : null);
+    }
+
+    /**
+     * Add the names for a transaction
+     *
+     * @param       t               Transaction
+     */
+    private synchronized void addTransaction(TransactionRecord t) {
+        if (t.getSecurity() != null)
+            return;
+
+        long time = t.getDate().getTime();
+        addName(t.getName(), time);
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            List<String> names = new ArrayList<>(splits.size());
+            for (TransactionSplit split : splits) {
+                if (split.getAccount() != null && split.getDescription() != null) {
+                    addName(split.getDescription(), time);
+                    names.add(split.getDescription());
+                }
+            }
+
+            if (!names.isEmpty())
+                splitNames.put(t, names.toArray(new String[names.size()]));
+        }
+    }
+
+    /**
+     * Remove the names for a transaction.  The saved split descriptions are used
+     * since the splits may have been modified after the transaction was added.
+     *
+     * @param       t               Transaction
+     */
+    private synchronized void removeTransaction(TransactionRecord t) {
+        if (t.getSecurity() != null)
+            return;
+
+        removeName(t.getName());
+        String[] names = splitNames.remove(t);
+        if (names != null) {
+            for (String name : names)
+                removeName(name);
+        }
+    }
+
+    /**
+     * Add a name use
+     *
+     * @param       name            Transaction name
+     * @param       time            Transaction time
+     */
+    private void addName(String name, long time) {
+        if (name.length() == 0)
+            return;
+
+        //
+        // Locate the node for the name, creating nodes as needed
+        //
+        Node[] path = new Node[name.length()+1];
+        Node node = root;
+        path[0] = node;
+        for (int i=0; i<name.length(); i++) {
+            node = node.getChild(name.charAt(i), true);
+            path[i+1] = node;
+        }
+
+        //
+        // Update the name usage
+        //
+        Entry entry = node.entry;
+        if (entry == null) {
+            entry = new Entry(name);
+            node.entry = entry;
+        }
+
+        entry.count++;
+        if (time > entry.lastUsed)
+            entry.lastUsed = time;
+
+        //
+        // Update the best name for each node along the path
+        //
+        for (Node pathNode : path) {
+            if (pathNode.best == null || (pathNode.best != entry && entry.compareTo(pathNode.best) > 0))
+                pathNode.best = entry;
+        }
+    }
+
+    /**
+     * Remove a name use
+     *
+     * @param       name            Transaction name
+     */
+    private void removeName(String name) {
+        if (name.length() == 0)
+            return;
+
+        //
+        // Locate the node for the name
+        //
+        Node[] path = new Node[name.length()+1];
+        Node node = root;
+        path[0] = node;
+        for (int i=0; i<name.length() && node!=null; i++) {
+            node = node.getChild(name.charAt(i), false);
+            path[i+1] = node;
+        }
+
+        if (node == null || node.entry == null)
+            return;
+
+        //
+        // Update the name usage and remove the name if it is no longer used
+        //
+        Entry entry = node.entry;
+        entry.count--;
+        if (entry.count <= 0)
+            node.entry = null;
+
+        //
+        // Recompute the best name for each node along the path, starting with the
+        // name node.  A node without a name or child nodes is removed from its parent.
+        //
+        for (int i=name.length(); i>=0; i--) {
+            Node pathNode = path[i];
+            if (i > 0 && pathNode.entry == null && pathNode.keys.length == 0) {
+                path[i-1].removeChild(name.charAt(i-1));
+                continue;
+            }
+
+            Entry best = pathNode.entry;
+            for (Node child : pathNode.children) {
+                if (child.best != null && (best == null || child.best.compareTo(best) > 0))
+                    best = child.best;
+            }
+
+            pathNode.best = best;
+        }
+    }
+
+    /**
+     * Locate the node for a name prefix
+     *
+     * @param       prefix          Name prefix
+     * @return                      Node or null if there is no match
+     */
+    private Node findNode(String prefix) {
+        Node node = root;
+        for (int i=0; i<prefix.length() && node!=null; i++)
+            node = node.getChild(prefix.charAt(i), false);
+
+        return node;
+    }
+
+    /**
+     * Name usage entry
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        /** Transaction name */
+        private final String name;
+
+        /** Number of transactions using the name */
+        private int count;
+
+        /** Date of the most recent transaction */
+        private long lastUsed;
+
+        /**
+         * Create a name entry
+         *
+         * @param       name            Transaction name
+         */
+        private Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Compare the ranks for two entries
+         *
+         * @param       o               Entry to compare
+         * @return                      Negative if this entry has a lower rank, zero if the
+         *                              ranks are the same, positive if this entry has a higher rank
+         */
+        @Override
+        public int compareTo(Entry o) {
+            int cmp = Integer.compare(count, o.count);
+            if (cmp == 0)
+                cmp = Long.compare(lastUsed, o.lastUsed);
+
+            return cmp;
+        }
+    }
+
+    /**
+     * Trie node.  The child nodes are stored in parallel arrays sorted by
+     * the child character.
+     */
+    private static final class Node {
+
+        /** Child characters */
+        private char[] keys = new char[0];
+
+        /** Child nodes */
+        private Node[] children = new Node[0];
+
+        /** Name ending at this node or null */
+        private Entry entry;
+
+        /** Highest-ranked name in this subtree */
+        private Entry best;
+
+        /**
+         * Get the child node for a character
+         *
+         * @param       c               Character
+         * @param       create          TRUE to create the child if it does not exist
+         * @return                      Child node or null
+         */
+        private Node getChild(char c, boolean create) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0)
+                return children[pos];
+
+            if (!create)
+                return null;
+
+            pos = -pos-1;
+            char[] newKeys = new char[keys.length+1];
+            Node[] newChildren = new Node[keys.length+1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(keys, pos, newKeys, pos+1, keys.length-pos);
+            System.arraycopy(children, pos, newChildren, pos+1, keys.length-pos);
+            Node child = new Node();
+            newKeys[pos] = c;
+            newChildren[pos] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        /**
+         * Remove the child node for a character
+         *
+         * @param       c               Character
+         */
+        private void removeChild(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos < 0)
+                return;
+
+            char[] newKeys = new char[keys.length-1];
+            Node[] newChildren = new Node[keys.length-1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(keys, pos+1, newKeys, pos, keys.length-pos-1);
+            System.arraycopy(children, pos+1, newChildren, pos, keys.length-pos-1);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.SortedSet;
 
 import javax.swing.*;
 
@@ -39,6 +38,9 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
     /** End date field */
     private JFormattedTextField endField;
 
+    /** Create graph button */
+    private JButton graphButton;
+
     /**
      * Construct the dialog
      *
@@ -89,15 +91,15 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
         JPanel buttonPane = new JPanel();
         buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
 
-        JButton button = new JButton("Create Graph");
-        button.setActionCommand("create graph");
-        button.addActionListener(this);
-        buttonPane.add(button);
-        getRootPane().setDefaultButton(button);
+        graphButton = new JButton("Create Graph");
+        graphButton.setActionCommand("create graph");
+        graphButton.addActionListener(this);
+        buttonPane.add(graphButton);
+        getRootPane().setDefaultButton(graphButton);
         
         buttonPane.add(Box.createHorizontalStrut(10));
 
-        button = new JButton("Done");
+        JButton button = new JButton("Done");
         button.setActionCommand("done");
         button.addActionListener(this);
         buttonPane.add(button);
@@ -174,12 +176,68 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
     }
 
     /**
-     * Create the graph
+     * Create the graph.  The net worth is computed on a worker thread using a
+     * snapshot of the database and the graph is displayed when the computation
+     * is complete.  The transaction partitions starting with the start date are
+     * loaded before the snapshot is created.
      *
      * @param       startDate       The start date
      * @param       endDate         The end date
      */
-    private void createGraph(Date startDate, Date endDate) {
+    private void createGraph(final Date startDate, final Date endDate) {
+        TransactionPartitions.load(startDate);
+        final LedgerSnapshot snapshot = LedgerSnapshot.getSnapshot();
+        graphButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        SwingWorker<List<TimeChartElement>, Void> worker = new SwingWorker<List<TimeChartElement>, Void>() {
+            private final List<String> warnings = new ArrayList<>();
+
+            @Override
+            protected List<TimeChartElement> doInBackground() {
+                List<TimeChartElement> dataPoints = getNetWorth(snapshot, startDate, endDate, warnings);
+                for (TimeChartElement e : dataPoints)
+                    e.setValue(e.getValue()/1000.0);
+
+                return dataPoints;
+            }
+
+            @Override
+            protected void done() {
+                graphButton.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    List<TimeChartElement> dataPoints = get();
+                    if (!warnings.isEmpty()) {
+                        StringBuilder message = new StringBuilder();
+                        for (String warning : warnings)
+                            message.append(warning).append('\n');
+
+                        JOptionPane.showMessageDialog(NetWorthGraphDialog.this, message.toString().trim(),
+                                                      "Warning", JOptionPane.WARNING_MESSAGE);
+                    }
+
+                    displayGraph(dataPoints, startDate, endDate);
+                } catch (Exception exc) {
+                    Main.logException("Exception while creating net worth graph", exc);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Compute the net worth at the start of each month in a date range and on the
+     * end date.  This method does not display a dialog since it is not called on the
+     * event dispatch thread, so problems are returned in the warnings list.
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       startDate       The start date
+     * @param       endDate         The end date
+     * @param       warnings        Problems found while computing the net worth
+     * @return                      Net worth data points
+     */
+    static List<TimeChartElement> getNetWorth(LedgerSnapshot snapshot, Date startDate, Date endDate,
+                                              List<String> warnings) {
 
         //
         // We will have one data point for each month in the range.  As a rough
@@ -192,16 +250,30 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
         // Maintain a list of securities so we can price them using the history price
         // for each month
         //
-        List<SecurityHolding> holdings = new ArrayList<>(SecurityRecord.securities.size());
+        // We start with the balances and holdings from the latest year-end checkpoint
+        // preceding the start date and then process the transactions following the
+        // checkpoint
+        //
+        List<TransactionRecord> transactions = snapshot.getTransactions();
+        List<SecurityHolding> holdings;
+        double accountBalance = 0.0;
+        CheckpointRecord checkpoint = snapshot.getCheckpoint(startDate);
+        if (checkpoint != null) {
+            holdings = checkpoint.getHoldings();
+            transactions = snapshot.getTransactionsAfter(checkpoint);
+            for (double balance : checkpoint.getBalances().values())
+                accountBalance += balance;
+        } else {
+            holdings = new ArrayList<>(snapshot.getSecurities().size());
+        }
 
         //
         // Compute the net worth for each month between the start and end dates
         //
         GregorianCalendar cal = new GregorianCalendar();
         Date currentDate = (Date)startDate.clone();
-        double accountBalance = 0.0;
 
-        for (TransactionRecord t : TransactionRecord.transactions) {
+        for (TransactionRecord t : transactions) {
 
             //
             // Get transaction date
@@ -213,8 +285,8 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
             // and then advance to the next month
             //
             if (date.compareTo(currentDate) > 0) {
-                double netWorth = accountBalance + getPortfolioValue(currentDate, holdings);
-                dataPoints.add(new TimeChartElement(currentDate, netWorth/1000.0));
+                double netWorth = accountBalance + getPortfolioValue(snapshot, currentDate, holdings);
+                dataPoints.add(new TimeChartElement(currentDate, netWorth));
                 cal.setTime(currentDate);
                 cal.add(Calendar.MONTH, 1);
                 cal.set(Calendar.DAY_OF_MONTH, 1);
@@ -233,7 +305,12 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
             double amount = t.getAmount();
             AccountRecord a = t.getAccount();
             if (a.getType() == AccountRecord.INVESTMENT) {
-                SecurityHolding.updateSecurityHolding(holdings, t);
+                if (!SecurityHolding.updateSecurityHolding(holdings, t, false)) {
+                    String warning = "Missing BUY transaction for security "+t.getSecurity().getName();
+                    if (!warnings.contains(warning))
+                        warnings.add(warning);
+                }
+
                 if (t.getTransferAccount() != null)
                     accountBalance -= amount;
             } else if (t.getTransferAccount() == null) {
@@ -254,13 +331,21 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
         //
         listSize = dataPoints.size();
         if (listSize == 0 || !dataPoints.get(listSize-1).getDate().equals(endDate)) {
-            double netWorth = accountBalance + getPortfolioValue(endDate, holdings);
-            dataPoints.add(new TimeChartElement(endDate, netWorth/1000.0));
+            double netWorth = accountBalance + getPortfolioValue(snapshot, endDate, holdings);
+            dataPoints.add(new TimeChartElement(endDate, netWorth));
         }
 
-        //
-        // Display the net worth graph
-        //
+        return dataPoints;
+    }
+
+    /**
+     * Display the net worth graph
+     *
+     * @param       dataPoints      Data points
+     * @param       startDate       The start date
+     * @param       endDate         The end date
+     */
+    private void displayGraph(List<TimeChartElement> dataPoints, Date startDate, Date endDate) {
         TimeChart chart = new TimeChart(dataPoints, "Date", "Net Worth ($K)");
         chart.setOpaque(true);
         chart.setBackground(Color.CYAN);
@@ -280,24 +365,16 @@ public final class NetWorthGraphDialog extends JDialog implements ActionListener
     /**
      * Compute the current value of the security portfolio
      *
+     * @param       snapshot        Ledger snapshot
      * @param       date            The current date
      * @param       holdings        The current security holdings
      * @return                      The portfolio value
      */
-    private double getPortfolioValue(Date date, List<SecurityHolding> holdings) {
+    private static double getPortfolioValue(LedgerSnapshot snapshot, Date date, List<SecurityHolding> holdings) {
         double portfolioValue = 0.0;
         
         for (SecurityHolding h : holdings) {
-            SecurityRecord s = h.getSecurity();
-            SortedSet<PriceHistory> prices = s.getPriceHistory();
-            double price = 0.0;
-            for (PriceHistory ph : prices) {
-                if (ph.getDate().compareTo(date) > 0)
-                    break;
-                
-                price = ph.getPrice();
-            }
-
+            double price = snapshot.getPrice(h.getSecurity(), date);
             if (price == 0.0)
                 price = h.getTotalCost()/h.getTotalShares();
             
@@ -27,9 +27,22 @@ import java.awt.event.*;
 
 /**
  * Account overview panel
+ * <p>
+ * The account balances are rebuilt when the ledger changes while the panel is
+ * displayed.
  */
 public final class OverviewPanel extends JPanel {
 
+    /** Ledger listener registered while the panel is displayed */
+    private final LedgerListener ledgerListener = new LedgerListener() {
+        @Override
+        public void ledgerChanged(List<LedgerEvent> events) {
+            buildAccountPane();
+            revalidate();
+            repaint();
+        }
+    };
+
     /**
      * Create the account overview panel
      */
@@ -42,6 +55,31 @@ public final class OverviewPanel extends JPanel {
         setOpaque(true);
         setBackground(Color.white);
         setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        buildAccountPane();
+    }
+
+    /**
+     * Register the ledger listener when the panel is added to a container
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        LedgerEventBus.addListener(ledgerListener);
+    }
+
+    /**
+     * Remove the ledger listener when the panel is removed from its container
+     */
+    @Override
+    public void removeNotify() {
+        LedgerEventBus.removeListener(ledgerListener);
+        super.removeNotify();
+    }
+
+    /**
+     * Build the account pane using the current account balances
+     */
+    private void buildAccountPane() {
 
         //
         // Create the account pane
@@ -94,11 +132,24 @@ public final class OverviewPanel extends JPanel {
         // bank account will track the actual money spent or received for
         // investment transactions)
         //
-        List<SecurityHolding> holdings = new ArrayList<>(SecurityRecord.securities.size());
-        for (AccountRecord a : AccountRecord.accounts)
-            a.balance = 0.00;
+        // We start with the balances and holdings from the latest year-end
+        // checkpoint and then process the transactions following the checkpoint
+        //
+        List<TransactionRecord> transactions = TransactionRecord.getTransactions();
+        List<SecurityHolding> holdings;
+        CheckpointRecord checkpoint = CheckpointRecord.getCheckpoint(new Date());
+        if (checkpoint != null) {
+            holdings = checkpoint.getHoldings();
+            transactions = CheckpointRecord.getTransactionsAfter(checkpoint);
+            for (AccountRecord a : AccountRecord.getAccounts())
+                a.balance = checkpoint.getBalance(a);
+        } else {
+            holdings = new ArrayList<>(SecurityRecord.getSecurities().size());
+            for (AccountRecord a : AccountRecord.getAccounts())
+                a.balance = 0.00;
+        }
 
-        for (TransactionRecord t : TransactionRecord.transactions) {
+        for (TransactionRecord t : transactions) {
             double amount = t.getAmount();
             AccountRecord a = t.getAccount();
             if (a.getType() == AccountRecord.INVESTMENT) {
@@ -136,7 +187,7 @@ public final class OverviewPanel extends JPanel {
         // Add the account name and current balance to the appropriate
         // text strings.  Hidden accounts will not be displayed
         //
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a.isHidden())
                 continue;
 
@@ -209,6 +260,7 @@ public final class OverviewPanel extends JPanel {
         //
         // Add the account pane to the overview panel
         //
+        removeAll();
         add(accountPane);
     }
 }
@@ -0,0 +1,485 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Asn1.*;
+
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Database transaction partition record
+ * <p>
+ * The transactions for each year are stored in a separate partition file and the
+ * database file contains a partition record for each partition file.  The partition
+ * record contains the number of transactions in the partition, a CRC-32 hash of the
+ * encoded transactions and the identifiers of the accounts, categories and securities
+ * referenced by the transactions.
+ * <p>
+ * The transaction hash is used to validate the partition file when it is loaded and
+ * to validate the year-end checkpoints without reading the transactions.  The record
+ * identifiers are used to hold references to the definitions while the partition is
+ * not loaded, so an account, category or security cannot be deleted while it is
+ * referenced by a transaction that is not in memory.
+ * <p>
+ * The partition record also contains the identifiers of the accounts with unreconciled
+ * transactions in the partition, so the reconcile dialog loads just the partitions it
+ * needs.  The field is not present in a partition record written by an earlier version
+ * and then every partition is assumed to have unreconciled transactions.
+ * <p>
+ * The partition record is encoded as follows:
+ * <pre>
+ *   PartitionRecord ::= [APPLICATION 9] SEQUENCE {
+ *     year                        INTEGER,
+ *     count                       INTEGER,
+ *     hash                        INTEGER,
+ *     accounts                    SEQUENCE OF INTEGER,
+ *     categories                  SEQUENCE OF INTEGER,
+ *     securities                  SEQUENCE OF INTEGER,
+ *     unreconciled            [0] SEQUENCE OF INTEGER OPTIONAL }
+ * </pre>
+ */
+public final class PartitionRecord {
+
+    /** The encoded PartitionRecord ASN.1 tag identifier */
+    private static final byte tagID=(byte)(Asn1Stream.ASN1_APPLICATION+9);
+
+    /** Partition year */
+    private int year;
+
+    /** Number of transactions in the partition */
+    private int count;
+
+    /** CRC-32 hash of the encoded transactions */
+    private int hash;
+
+    /** Referenced account identifiers */
+    private int[] accountIDs;
+
+    /** Referenced category identifiers */
+    private int[] categoryIDs;
+
+    /** Referenced security identifiers */
+    private int[] securityIDs;
+
+    /** Identifiers of the accounts with unreconciled transactions or null if not known */
+    private int[] unreconciledIDs;
+
+    /** References are held for the partition */
+    private boolean referencesHeld;
+
+    /**
+     * Create a partition record
+     *
+     * @param       year            Partition year
+     * @param       count           Number of transactions
+     * @param       hash            Hash of the encoded transactions
+     * @param       accountIDs      Referenced account identifiers
+     * @param       categoryIDs     Referenced category identifiers
+     * @param       securityIDs     Referenced security identifiers
+     * @param       unreconciledIDs Accounts with unreconciled transactions
+     */
+    private PartitionRecord(int year, int count, int hash, int[] accountIDs,
+                            int[] categoryIDs, int[] securityIDs, int[] unreconciledIDs) {
+        this.year = year;
+        this.count = count;
+        this.hash = hash;
+        this.accountIDs = accountIDs;
+        this.categoryIDs = categoryIDs;
+        this.securityIDs = securityIDs;
+        this.unreconciledIDs = unreconciledIDs;
+    }
+
+    /**
+     * Create a partition record from an encoded byte stream
+     *
+     * @param       data            Encoded byte stream for the record
+     * @exception   DBException     Unable to decode object stream
+     */
+    public PartitionRecord(byte[] data) throws DBException {
+        if (data == null)
+            throw new NullPointerException("No encoded data supplied");
+
+        DecodeStream stream = new DecodeStream(data);
+
+        try {
+
+            //
+            //  Validate the application identifier tag
+            //
+            if (stream.getTag() != tagID)
+                throw new DBException("Not an encoded PartitionRecord object");
+
+            //
+            //  Get the PartitionRecord sequence
+            //
+            DecodeStream seq = stream.getSequence(true);
+
+            //
+            //  Decode the year, transaction count and transaction hash
+            //
+            year = seq.decodeInteger(false);
+            count = seq.decodeInteger(false);
+            hash = seq.decodeInteger(false);
+
+            //
+            //  Decode the referenced record identifiers
+            //
+            accountIDs = decodeIdentifiers(seq.getSequence(false));
+            categoryIDs = decodeIdentifiers(seq.getSequence(false));
+            securityIDs = decodeIdentifiers(seq.getSequence(false));
+
+            //
+            //  The accounts with unreconciled transactions are encoded as an optional
+            //  context-specific field with identifier 0
+            //
+            if (seq.getLength() != 0 && seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+0))
+                unreconciledIDs = decodeIdentifiers(seq.getSequence(true));
+
+            //
+            //  Check for unconsummed data
+            //
+            if (seq.getLength() != 0)
+                throw new DBException("Unconsummed data in PartitionRecord sequence");
+        } catch (Asn1Exception exc) {
+            throw new DBException("ASN.1 decode error", exc);
+        }
+    }
+
+    /**
+     * Test if the supplied byte stream represents an encoded PartitionRecord object
+     *
+     * @param       data            The encoded byte stream
+     * @return                      TRUE if PartitionRecord object
+     */
+    public static boolean isEncodedStream(byte[] data) {
+        if (data == null)
+            throw new NullPointerException("Null byte stream reference");
+
+        if (data.length == 0)
+            return false;
+
+        return (data[0]==(byte)(tagID|Asn1Stream.ASN1_CONSTRUCTED) ? true : false);
+    }
+
+    /**
+     * Encode the PartitionRecord object
+     *
+     * @return                      The encoded byte stream for the object
+     */
+    public byte[] encode() {
+        int seqLength = 0;
+        EncodeStream stream = new EncodeStream(256);
+
+        //
+        //  Encode the referenced record identifiers (fields are encoded in reverse
+        //  order because the stream is constructed from the end to the beginning).
+        //  The accounts with unreconciled transactions are encoded as an optional
+        //  context-specific field with identifier 0.
+        //
+        if (unreconciledIDs != null)
+            seqLength += encodeIdentifiers(stream, unreconciledIDs,
+                                           (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+0));
+
+        seqLength += encodeIdentifiers(stream, securityIDs);
+        seqLength += encodeIdentifiers(stream, categoryIDs);
+        seqLength += encodeIdentifiers(stream, accountIDs);
+
+        //
+        //  Encode the transaction hash, transaction count and year
+        //
+        seqLength += stream.encodeInteger(hash);
+        seqLength += stream.encodeInteger(count);
+        seqLength += stream.encodeInteger(year);
+
+        //
+        //  Make the PartitionRecord sequence
+        //
+        stream.makeSequence(seqLength, tagID);
+        return stream.getData();
+    }
+
+    /**
+     * Get the partition year
+     *
+     * @return                      Partition year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Get the number of transactions in the partition
+     *
+     * @return                      Number of transactions
+     */
+    public int getTransactionCount() {
+        return count;
+    }
+
+    /**
+     * Get the CRC-32 hash of the encoded transactions
+     *
+     * @return                      Transaction hash
+     */
+    public int getHash() {
+        return hash;
+    }
+
+    /**
+     * Check if the partition contains the same transactions as another partition
+     *
+     * @param       partition       Partition record
+     * @return                      TRUE if the transaction count and hash are the same
+     */
+    public boolean matches(PartitionRecord partition) {
+        return (year == partition.year && count == partition.count && hash == partition.hash);
+    }
+
+    /**
+     * Check if the partition may contain unreconciled transactions for an account
+     *
+     * @param       account         Account
+     * @return                      TRUE if there may be unreconciled transactions
+     */
+    public boolean hasUnreconciled(AccountRecord account) {
+        if (unreconciledIDs == null)
+            return true;
+
+        for (int id : unreconciledIDs) {
+            if (id == account.getID())
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Add references to the accounts, categories and securities used by the
+     * partition transactions.  This is done when the partition is not loaded.
+     */
+    void addReferences() {
+        if (referencesHeld)
+            return;
+
+        for (DBElement element : getElements())
+            element.addReference();
+
+        referencesHeld = true;
+    }
+
+    /**
+     * Remove the references added by addReferences().  This is done when the
+     * partition is loaded.
+     */
+    void removeReferences() {
+        if (!referencesHeld)
+            return;
+
+        for (DBElement element : getElements())
+            element.removeReference();
+
+        referencesHeld = false;
+    }
+
+    /**
+     * Get the referenced accounts, categories and securities in the current
+     * database context.  Identifiers that are no longer defined are ignored.
+     *
+     * @return                      Referenced database elements
+     */
+    private List<DBElement> getElements() {
+        List<DBElement> elements = new ArrayList<>(accountIDs.length+categoryIDs.length+securityIDs.length);
+        for (int id : accountIDs) {
+            AccountRecord a = AccountRecord.getAccount(id);
+            if (a != null)
+                elements.add(a);
+        }
+
+        for (int id : categoryIDs) {
+            CategoryRecord c = CategoryRecord.getCategory(id);
+            if (c != null)
+                elements.add(c);
+        }
+
+        for (int id : securityIDs) {
+            SecurityRecord s = SecurityRecord.getSecurity(id);
+            if (s != null)
+                elements.add(s);
+        }
+
+        return elements;
+    }
+
+    /**
+     * Decode a sequence of record identifiers
+     *
+     * @param       seq             Identifier sequence
+     * @return                      Record identifiers
+     * @exception   Asn1Exception   Unable to decode the sequence
+     */
+    private static int[] decodeIdentifiers(DecodeStream seq) throws Asn1Exception {
+        List<Integer> ids = new ArrayList<>();
+        while (seq.getLength() != 0)
+            ids.add(seq.decodeInteger(false));
+
+        int[] result = new int[ids.size()];
+        for (int i=0; i<result.length; i++)
+            result[i] = ids.get(i);
+
+        return result;
+    }
+
+    /**
+     * Encode a sequence of record identifiers
+     *
+     * @param       stream          Encode stream
+     * @param       ids             Record identifiers
+     * @return                      Encoded length
+     */
+    private static int encodeIdentifiers(EncodeStream stream, int[] ids) {
+        return encodeIdentifiers(stream, ids, Asn1Stream.ASN1_SEQUENCE);
+    }
+
+    /**
+     * Encode a sequence of record identifiers with a sequence tag
+     *
+     * @param       stream          Encode stream
+     * @param       ids             Record identifiers
+     * @param       tag             Sequence tag
+     * @return                      Encoded length
+     */
+    private static int encodeIdentifiers(EncodeStream stream, int[] ids, byte tag) {
+        int length = 0;
+        for (int i=ids.length-1; i>=0; i--)
+            length += stream.encodeInteger(ids[i]);
+
+        return stream.makeSequence(length, tag);
+    }
+
+    /**
+     * The partition hash computes the partition record for a year as the encoded
+     * transactions are written or read.  The transactions must be processed in
+     * date order.
+     */
+    static final class PartitionHash {
+
+        /** Partition year */
+        private final int year;
+
+        /** Running transaction hash */
+        private final CRC32 crc = new CRC32();
+
+        /** Referenced account identifiers */
+        private final SortedSet<Integer> accountIDs = new TreeSet<>();
+
+        /** Referenced category identifiers */
+        private final SortedSet<Integer> categoryIDs = new TreeSet<>();
+
+        /** Referenced security identifiers */
+        private final SortedSet<Integer> securityIDs = new TreeSet<>();
+
+        /** Accounts with unreconciled transactions */
+        private final SortedSet<Integer> unreconciledIDs = new TreeSet<>();
+
+        /** Number of transactions */
+        private int count;
+
+        /**
+         * Create the partition hash
+         *
+         * @param       year            Partition year
+         */
+        PartitionHash(int year) {
+            this.year = year;
+        }
+
+        /**
+         * Get the partition year
+         *
+         * @return                      Partition year
+         */
+        int getYear() {
+            return year;
+        }
+
+        /**
+         * Add a transaction to the hash
+         *
+         * @param       t               Transaction
+         * @param       data            Encoded transaction
+         */
+        void update(TransactionRecord t, byte[] data) {
+            crc.update(data, 0, data.length);
+            count++;
+            addElement(accountIDs, t.getAccount());
+            addElement(accountIDs, t.getTransferAccount());
+            addElement(categoryIDs, t.getCategory());
+            addElement(securityIDs, t.getSecurity());
+            addElement(securityIDs, t.getNewSecurity());
+            if ((t.getReconciled()&TransactionRecord.SOURCE_RECONCILED) == 0)
+                addElement(unreconciledIDs, t.getAccount());
+            if ((t.getReconciled()&TransactionRecord.TARGET_RECONCILED) == 0)
+                addElement(unreconciledIDs, t.getTransferAccount());
+
+            List<TransactionSplit> splits = t.getSplits();
+            if (splits != null) {
+                for (TransactionSplit split : splits) {
+                    addElement(accountIDs, split.getAccount());
+                    addElement(categoryIDs, split.getCategory());
+                    if ((split.getReconciled()&TransactionRecord.TARGET_RECONCILED) == 0)
+                        addElement(unreconciledIDs, split.getAccount());
+                }
+            }
+        }
+
+        /**
+         * Get the partition record for the transactions added to the hash
+         *
+         * @return                      Partition record
+         */
+        PartitionRecord getPartition() {
+            return new PartitionRecord(year, count, (int)crc.getValue(), toArray(accountIDs),
+                                       toArray(categoryIDs), toArray(securityIDs),
+                                       toArray(unreconciledIDs));
+        }
+
+        /**
+         * Add a database element identifier
+         *
+         * @param       ids             Identifier set
+         * @param       element         Database element or null
+         */
+        private static void addElement(Set<Integer> ids, DBElement element) {
+            if (element != null)
+                ids.add(element.getID());
+        }
+
+        /**
+         * Convert an identifier set to an array
+         *
+         * @param       ids             Identifier set
+         * @return                      Identifier array
+         */
+        private static int[] toArray(Set<Integer> ids) {
+            int[] result = new int[ids.size()];
+            int index = 0;
+            for (Integer id : ids)
+                result[index++] = id;
+
+            return result;
+        }
+    }
+}
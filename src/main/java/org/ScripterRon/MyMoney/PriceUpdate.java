@@ -167,7 +167,7 @@ public final class PriceUpdate extends JDialog implements ActionListener {
         public WorkerThread(ActionListener listener) {
             super();
             this.listener = listener;
-            symbols = new HashMap<>(SecurityRecord.securities.size()*2);
+            symbols = new HashMap<>(SecurityRecord.getSecurities().size()*2);
         }
 
         /**
@@ -189,7 +189,7 @@ public final class PriceUpdate extends JDialog implements ActionListener {
             StringBuilder urlString = new StringBuilder(256);
             urlString.append("http://download.finance.yahoo.com/d/quotes.csv?s=");
             boolean addPlus = false;
-            for (SecurityRecord s : SecurityRecord.securities) {
+            for (SecurityRecord s : SecurityRecord.getSecurities()) {
                 //
                 // Skip securities without a ticker symbol
                 //
@@ -0,0 +1,817 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Chart.TimeChartElement;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The query service is an optional HTTP service that provides read-only access to
+ * the application database in JSON format.  The service listens on the loopback
+ * address and supports the following GET requests:
+ * <pre>
+ *   /accounts                      Accounts and current balances
+ *   /holdings                      Security holdings and current values
+ *   /transactions?account=name&amp;start=yyyy-mm-dd&amp;end=yyyy-mm-dd&amp;text=text
+ *                                  Transactions (all parameters are optional)
+ *   /networth?start=yyyy-mm-dd&amp;end=yyyy-mm-dd
+ *                                  Net worth at the start of each month
+ * </pre>
+ * Requests are processed by a pool of daemon threads using a ledger snapshot, so
+ * they do not block the event dispatch thread while the results are computed.  The
+ * transaction partitions covered by a transaction or net worth request are loaded
+ * before the snapshot is created.
+ * Each response has an ETag derived from the snapshot version and a request with a
+ * matching If-None-Match header receives a 304 (Not Modified) response without
+ * computing the results.  The account balances and security holdings are computed
+ * once for each snapshot.  The results are written as they are generated using
+ * chunked transfer encoding.  A problem found while computing the results, such as
+ * a missing BUY transaction, is returned in a Warning header since the service must
+ * not display a dialog.
+ */
+public final class QueryService {
+
+    /** Default service port */
+    public static final int DEFAULT_PORT = 8321;
+
+    /** Number of request threads */
+    private static final int THREAD_COUNT = 4;
+
+    /** The running HTTP server or null */
+    private static HttpServer server;
+
+    /** Request executor */
+    private static ExecutorService executor;
+
+    /** Service stopped */
+    private static CountDownLatch stopped;
+
+    /** Balances and holdings for the most recent snapshot */
+    private static volatile Valuation currentValuation;
+
+    /**
+     * This class is not instantiated
+     */
+    private QueryService() {
+    }
+
+    /**
+     * Start the query service
+     *
+     * @param       port            Service port
+     * @exception   IOException     Unable to create the HTTP server
+     */
+    public static synchronized void start(int port) throws IOException {
+        if (server != null)
+            return;
+
+        HttpServer httpServer = HttpServer.create(
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/accounts", new QueryHandler() {
+            @Override
+            protected void writeResult(LedgerSnapshot snapshot, Map<String, String> params,
+                                       Writer writer, List<String> warnings) throws IOException {
+                writeAccounts(snapshot, writer, warnings);
+            }
+        });
+        httpServer.createContext("/holdings", new QueryHandler() {
+            @Override
+            protected void writeResult(LedgerSnapshot snapshot, Map<String, String> params,
+                                       Writer writer, List<String> warnings) throws IOException {
+                writeHoldings(snapshot, writer, warnings);
+            }
+        });
+        httpServer.createContext("/transactions", new QueryHandler() {
+            @Override
+            protected void loadTransactions(Map<String, String> params) {
+                loadPartitions(getDate(params, "start"));
+            }
+
+            @Override
+            protected void writeResult(LedgerSnapshot snapshot, Map<String, String> params,
+                                       Writer writer, List<String> warnings) throws IOException {
+                writeTransactions(snapshot, params, writer);
+            }
+        });
+        httpServer.createContext("/networth", new QueryHandler() {
+            @Override
+            protected void loadTransactions(Map<String, String> params) {
+                loadPartitions(getDate(params, "start"));
+            }
+
+            @Override
+            protected void writeResult(LedgerSnapshot snapshot, Map<String, String> params,
+                                       Writer writer, List<String> warnings) throws IOException {
+                writeNetWorth(snapshot, params, writer, warnings);
+            }
+        });
+
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Query Service "+(++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        server = httpServer;
+        stopped = new CountDownLatch(1);
+    }
+
+    /**
+     * Stop the query service
+     */
+    public static synchronized void stop() {
+        if (server == null)
+            return;
+
+        server.stop(0);
+        executor.shutdown();
+        stopped.countDown();
+        server = null;
+        executor = null;
+        currentValuation = null;
+    }
+
+    /**
+     * Check if the query service is running
+     *
+     * @return                      TRUE if the service is running
+     */
+    public static synchronized boolean isRunning() {
+        return (server != null);
+    }
+
+    /**
+     * Wait until the query service is stopped
+     *
+     * @exception   InterruptedException    The wait was interrupted
+     */
+    public static void awaitStop() throws InterruptedException {
+        CountDownLatch latch;
+        synchronized(QueryService.class) {
+            latch = stopped;
+        }
+
+        if (latch != null)
+            latch.await();
+    }
+
+    /**
+     * Write the accounts
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       writer          Response writer
+     * @param       warnings        Problems found while computing the balances
+     * @exception   IOException     An I/O error occurred
+     */
+    private static void writeAccounts(LedgerSnapshot snapshot, Writer writer, List<String> warnings)
+                                        throws IOException {
+        Valuation valuation = getValuation(snapshot);
+        warnings.addAll(valuation.warnings);
+        writer.write('[');
+        boolean first = true;
+        for (AccountRecord a : snapshot.getAccounts()) {
+            if (!first)
+                writer.write(',');
+
+            first = false;
+            Double balance = valuation.balances.get(a);
+            writer.write("{\"id\":"+a.getID());
+            writer.write(",\"name\":"+quote(a.getName()));
+            writer.write(",\"type\":"+quote(AccountRecord.getTypeString(a.getType())));
+            writer.write(",\"hidden\":"+a.isHidden());
+            writer.write(",\"balance\":"+formatAmount(balance != null ? balance : 0.0));
+            writer.write('}');
+        }
+
+        writer.write(']');
+    }
+
+    /**
+     * Write the security holdings
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       writer          Response writer
+     * @param       warnings        Problems found while computing the holdings
+     * @exception   IOException     An I/O error occurred
+     */
+    private static void writeHoldings(LedgerSnapshot snapshot, Writer writer, List<String> warnings)
+                                        throws IOException {
+        Valuation valuation = getValuation(snapshot);
+        warnings.addAll(valuation.warnings);
+        writer.write('[');
+        boolean first = true;
+        for (SecurityHolding h : valuation.holdings) {
+            if (h.getTotalShares() == 0.0)
+                continue;
+
+            if (!first)
+                writer.write(',');
+
+            first = false;
+            double price = getCurrentPrice(snapshot, h.getSecurity());
+            writer.write("{\"account\":"+quote(h.getAccount().getName()));
+            writer.write(",\"security\":"+quote(h.getSecurity().getName()));
+            writer.write(",\"symbol\":"+quote(h.getSecurity().getSymbol()));
+            writer.write(",\"shares\":"+String.format("%.4f", h.getTotalShares()));
+            writer.write(",\"cost\":"+formatAmount(h.getTotalCost()));
+            writer.write(",\"price\":"+String.format("%.4f", price));
+            writer.write(",\"value\":"+formatAmount(h.getTotalShares()*price));
+            writer.write('}');
+        }
+
+        writer.write(']');
+    }
+
+    /**
+     * Write the transactions selected by the request parameters
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       params          Request parameters
+     * @param       writer          Response writer
+     * @exception   IOException     An I/O error occurred
+     */
+    private static void writeTransactions(LedgerSnapshot snapshot, Map<String, String> params,
+                                          Writer writer) throws IOException {
+        TransactionQuery query = new TransactionQuery(snapshot.getTransactions());
+        query.setDateRange(getDate(params, "start"), getDate(params, "end"));
+        String accountName = params.get("account");
+        if (accountName != null) {
+            AccountRecord account = null;
+            for (AccountRecord a : snapshot.getAccounts()) {
+                if (a.getName().equals(accountName)) {
+                    account = a;
+                    break;
+                }
+            }
+
+            if (account == null)
+                throw new IllegalArgumentException("Account "+accountName+" is not defined");
+
+            query.setAccount(account);
+        }
+
+        String text = params.get("text");
+        if (text != null)
+            query.setText(text);
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        writer.write('[');
+        boolean first = true;
+        for (TransactionRecord t : query) {
+            if (!first)
+                writer.write(',');
+
+            first = false;
+            AccountRecord transferAccount = t.getTransferAccount();
+            CategoryRecord category = t.getCategory();
+            writer.write("{\"date\":"+quote(dateFormat.format(t.getDate())));
+            writer.write(",\"account\":"+quote(t.getAccount().getName()));
+            writer.write(",\"action\":"+quote(TransactionRecord.getActionString(t.getAction())));
+            writer.write(",\"name\":"+quote(t.getName()));
+            writer.write(",\"category\":"+(category != null ? quote(category.getName()) : "null"));
+            writer.write(",\"transfer\":"+(transferAccount != null ? quote(transferAccount.getName()) : "null"));
+            writer.write(",\"security\":"+(t.getSecurity() != null ? quote(t.getSecurity().getName()) : "null"));
+            writer.write(",\"shares\":"+String.format("%.4f", t.getShares()));
+            writer.write(",\"amount\":"+formatAmount(t.getAmount()));
+            writer.write(",\"memo\":"+quote(t.getMemo()));
+            writer.write('}');
+        }
+
+        writer.write(']');
+    }
+
+    /**
+     * Write the net worth series
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       params          Request parameters
+     * @param       writer          Response writer
+     * @param       warnings        Problems found while computing the net worth
+     * @exception   IOException     An I/O error occurred
+     */
+    private static void writeNetWorth(LedgerSnapshot snapshot, Map<String, String> params,
+                                      Writer writer, List<String> warnings) throws IOException {
+        Date endDate = getDate(params, "end");
+        if (endDate == null)
+            endDate = Main.getCurrentDate();
+
+        Date startDate = getDate(params, "start");
+        if (startDate == null) {
+            List<TransactionRecord> transactions = snapshot.getTransactions();
+            startDate = (transactions.isEmpty() ? endDate : transactions.get(0).getDate());
+        }
+
+        if (endDate.compareTo(startDate) < 0)
+            throw new IllegalArgumentException("The end date is before the start date");
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        writer.write('[');
+        boolean first = true;
+        for (TimeChartElement e : NetWorthGraphDialog.getNetWorth(snapshot, startDate, endDate, warnings)) {
+            if (!first)
+                writer.write(',');
+
+            first = false;
+            writer.write("{\"date\":"+quote(dateFormat.format(e.getDate())));
+            writer.write(",\"netWorth\":"+formatAmount(e.getValue()));
+            writer.write('}');
+        }
+
+        writer.write(']');
+    }
+
+    /**
+     * Get the balances and holdings for a snapshot.  The values are computed the
+     * first time they are requested for a snapshot.
+     *
+     * @param       snapshot        Ledger snapshot
+     * @return                      Valuation
+     */
+    private static Valuation getValuation(LedgerSnapshot snapshot) {
+        Valuation valuation = currentValuation;
+        if (valuation == null || valuation.snapshot != snapshot) {
+            valuation = new Valuation(snapshot);
+            currentValuation = valuation;
+        }
+
+        return valuation;
+    }
+
+    /**
+     * Get the current price for a security.  The average cost is used if the
+     * security does not have a price.
+     *
+     * @param       snapshot        Ledger snapshot
+     * @param       security        Security
+     * @return                      Current price
+     */
+    private static double getCurrentPrice(LedgerSnapshot snapshot, SecurityRecord security) {
+        List<PriceHistory> history = snapshot.getPriceHistory(security);
+        return (history.isEmpty() ? 0.0 : history.get(history.size()-1).getPrice());
+    }
+
+    /**
+     * Get a date request parameter
+     *
+     * @param       params          Request parameters
+     * @param       name            Parameter name
+     * @return                      Date (12:00:00) or null if the parameter is not present
+     */
+    private static Date getDate(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null)
+            return null;
+
+        try {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+            dateFormat.setLenient(false);
+            return new Date(dateFormat.parse(value).getTime()+12L*60L*60L*1000L);
+        } catch (ParseException exc) {
+            throw new IllegalArgumentException("The "+name+" date must be yyyy-mm-dd");
+        }
+    }
+
+    /**
+     * Load the transaction partitions starting with a date
+     *
+     * @param       startDate       Start date or null to load all partitions
+     */
+    private static void loadPartitions(Date startDate) {
+        if (startDate != null)
+            TransactionPartitions.load(startDate);
+        else
+            TransactionPartitions.loadAll();
+    }
+
+    /**
+     * Format an amount
+     *
+     * @param       amount          Amount
+     * @return                      Amount rounded to cents
+     */
+    private static String formatAmount(double amount) {
+        return String.format("%.2f", amount);
+    }
+
+    /**
+     * Quote a JSON string
+     *
+     * @param       value           String value or null
+     * @return                      Quoted string
+     */
+    private static String quote(String value) {
+        if (value == null)
+            return "null";
+
+        StringBuilder string = new StringBuilder(value.length()+2);
+        string.append('"');
+        for (int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    string.append("\\\"");
+                    break;
+
+                case '\\':
+                    string.append("\\\\");
+                    break;
+
+                case '\n':
+                    string.append("\\n");
+                    break;
+
+                case '\r':
+                    string.append("\\r");
+                    break;
+
+                case '\t':
+                    string.append("\\t");
+                    break;
+
+                default:
+                    if (c < 0x20)
+                        string.append(String.format("\\u%04x", (int)c));
+                    else
+                        string.append(c);
+            }
+        }
+
+        string.append('"');
+        return string.toString();
+    }
+
+    /**
+     * Account balances and security holdings for a snapshot.  The balance for an
+     * investment account is the current value of the securities in the account.
+     */
+    private static final class Valuation {
+
+        /** Ledger snapshot */
+        private final LedgerSnapshot snapshot;
+
+        /** Account balances */
+        private final Map<AccountRecord, Double> balances = new IdentityHashMap<>();
+
+        /** Security holdings */
+        private final List<SecurityHolding> holdings = new ArrayList<>();
+
+        /** Problems found while computing the holdings */
+        private final List<String> warnings = new ArrayList<>();
+
+        /**
+         * Compute the balances and holdings
+         *
+         * @param       snapshot        Ledger snapshot
+         */
+        private Valuation(LedgerSnapshot snapshot) {
+            this.snapshot = snapshot;
+            List<TransactionRecord> transactions = snapshot.getTransactions();
+            CheckpointRecord checkpoint = snapshot.getCheckpoint(new Date());
+            if (checkpoint != null) {
+                balances.putAll(checkpoint.getBalances());
+                holdings.addAll(checkpoint.getHoldings());
+                transactions = snapshot.getTransactionsAfter(checkpoint);
+            }
+
+            for (TransactionRecord t : transactions) {
+                double amount = t.getAmount();
+                AccountRecord a = t.getAccount();
+                if (a.getType() == AccountRecord.INVESTMENT) {
+                    if (!SecurityHolding.updateSecurityHolding(holdings, t, false)) {
+                        String warning = "Missing BUY transaction for security "+t.getSecurity().getName();
+                        if (!warnings.contains(warning))
+                            warnings.add(warning);
+                    }
+                } else {
+                    addBalance(a, amount);
+                }
+
+                if (t.getTransferAccount() != null)
+                    addBalance(t.getTransferAccount(), -amount);
+
+                List<TransactionSplit> splits = t.getSplits();
+                if (splits != null) {
+                    for (TransactionSplit split : splits) {
+                        if (split.getAccount() != null)
+                            addBalance(split.getAccount(), -split.getAmount());
+                    }
+                }
+            }
+
+            for (SecurityHolding h : holdings)
+                addBalance(h.getAccount(), h.getTotalShares()*getCurrentPrice(snapshot, h.getSecurity()));
+        }
+
+        /**
+         * Add an amount to an account balance
+         *
+         * @param       account         Account
+         * @param       amount          Amount
+         */
+        private void addBalance(AccountRecord account, double amount) {
+            Double balance = balances.get(account);
+            balances.put(account, (balance != null ? balance+amount : amount));
+        }
+    }
+
+    /**
+     * Process a query request.  The ETag is checked before the results are
+     * computed.
+     */
+    private static abstract class QueryHandler implements HttpHandler {
+
+        /**
+         * Handle the request (HttpHandler interface)
+         *
+         * @param       exchange        HTTP exchange
+         * @exception   IOException     An I/O error occurred
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    sendError(exchange, 405, "Only GET requests are supported");
+                    return;
+                }
+
+                if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                    sendError(exchange, 404, "Resource not found");
+                    return;
+                }
+
+                Map<String, String> params;
+                try {
+                    params = getParameters(exchange.getRequestURI().getRawQuery());
+                    loadTransactions(params);
+                } catch (IllegalArgumentException exc) {
+                    sendError(exchange, 400, exc.getMessage());
+                    return;
+                }
+
+                //
+                // Return 304 if the client has the current version
+                //
+                LedgerSnapshot snapshot = LedgerSnapshot.getSnapshot();
+                String etag = String.format("\"%x-%d\"",
+                                System.identityHashCode(DatabaseContext.getApplicationContext()),
+                                snapshot.getVersion());
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+
+                //
+                // Generate the result into a buffer until the first chunk is full so
+                // that a request error can still be reported
+                //
+                List<String> warnings = new ArrayList<>();
+                ChunkedResponse response = new ChunkedResponse(exchange, warnings);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(response, StandardCharsets.UTF_8));
+                try {
+                    writeResult(snapshot, params, writer, warnings);
+                } catch (IllegalArgumentException exc) {
+                    if (response.isCommitted())
+                        throw exc;
+
+                    sendError(exchange, 400, exc.getMessage());
+                    return;
+                }
+
+                writer.close();
+            } catch (Exception exc) {
+                Main.logException("Exception while processing query request", exc);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Load the transaction partitions needed by the request.  The partitions
+         * must be loaded before the ledger snapshot is created.
+         *
+         * @param       params          Request parameters
+         */
+        protected void loadTransactions(Map<String, String> params) {
+        }
+
+        /**
+         * Write the query result.  The problems found while computing the result are
+         * returned in Warning headers, so they must be added before the result is
+         * written.
+         *
+         * @param       snapshot        Ledger snapshot
+         * @param       params          Request parameters
+         * @param       writer          Response writer
+         * @param       warnings        Problems found while computing the result
+         * @exception   IOException     An I/O error occurred
+         */
+        protected abstract void writeResult(LedgerSnapshot snapshot, Map<String, String> params,
+                                            Writer writer, List<String> warnings) throws IOException;
+
+        /**
+         * Parse the request parameters
+         *
+         * @param       query           Raw query string or null
+         * @return                      Parameter map
+         * @exception   IllegalArgumentException    The query string is not valid
+         */
+        private static Map<String, String> getParameters(String query) {
+            Map<String, String> params = new HashMap<>();
+            if (query == null || query.isEmpty())
+                return params;
+
+            try {
+                for (String param : query.split("&")) {
+                    int sep = param.indexOf('=');
+                    if (sep < 0)
+                        params.put(URLDecoder.decode(param, "UTF-8"), "");
+                    else
+                        params.put(URLDecoder.decode(param.substring(0, sep), "UTF-8"),
+                                   URLDecoder.decode(param.substring(sep+1), "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException exc) {
+                throw new IllegalArgumentException("UTF-8 encoding is not supported", exc);
+            }
+
+            return params;
+        }
+
+        /**
+         * Send an error response
+         *
+         * @param       exchange        HTTP exchange
+         * @param       status          HTTP status
+         * @param       message         Error message
+         * @exception   IOException     An I/O error occurred
+         */
+        private static void sendError(HttpExchange exchange, int status, String message)
+                                        throws IOException {
+            byte[] body = ("{\"error\":"+quote(message)+"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().remove("ETag");
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Response stream that buffers the first chunk of the response.  The response
+     * headers are sent when the first chunk is full (chunked transfer encoding) or
+     * when the stream is closed (fixed length).
+     */
+    private static final class ChunkedResponse extends OutputStream {
+
+        /** Size of the first chunk */
+        private static final int CHUNK_SIZE = 16384;
+
+        /** HTTP exchange */
+        private final HttpExchange exchange;
+
+        /** Warning messages */
+        private final List<String> warnings;
+
+        /** First chunk */
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE);
+
+        /** Response body or null if the headers have not been sent */
+        private OutputStream body;
+
+        /** Stream closed */
+        private boolean closed;
+
+        /**
+         * Create the response stream
+         *
+         * @param       exchange        HTTP exchange
+         * @param       warnings        Warning messages
+         */
+        private ChunkedResponse(HttpExchange exchange, List<String> warnings) {
+            this.exchange = exchange;
+            this.warnings = warnings;
+        }
+
+        /**
+         * Check if the response headers have been sent
+         *
+         * @return                      TRUE if the response has been committed
+         */
+        private boolean isCommitted() {
+            return (body != null);
+        }
+
+        /**
+         * Write a byte
+         *
+         * @param       b               Byte to write
+         * @exception   IOException     An I/O error occurred
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        /**
+         * Write an array of bytes
+         *
+         * @param       b               Byte array
+         * @param       off             Start offset
+         * @param       len             Number of bytes to write
+         * @exception   IOException     An I/O error occurred
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (body != null) {
+                body.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+                if (buffer.size() >= CHUNK_SIZE) {
+                    sendHeaders(0);
+                    body = exchange.getResponseBody();
+                    buffer.writeTo(body);
+                }
+            }
+        }
+
+        /**
+         * Close the stream and complete the response.  Nothing is sent if the
+         * stream is closed because of an error before the headers have been sent.
+         *
+         * @exception   IOException     An I/O error occurred
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            if (body == null) {
+                byte[] bytes = buffer.toByteArray();
+                sendHeaders(bytes.length);
+                body = exchange.getResponseBody();
+                body.write(bytes);
+            }
+
+            body.close();
+        }
+
+        /**
+         * Send the response headers.  A Warning header is added for each warning
+         * message.
+         *
+         * @param       length          Response length (0 for chunked transfer encoding)
+         * @exception   IOException     An I/O error occurred
+         */
+        private void sendHeaders(long length) throws IOException {
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "application/json; charset=utf-8");
+            for (String warning : warnings)
+                headers.add("Warning", "199 - "+quote(warning));
+
+            exchange.sendResponseHeaders(200, length);
+        }
+    }
+}
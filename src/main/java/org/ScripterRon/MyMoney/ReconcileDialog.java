@@ -15,7 +15,8 @@
  */
 package org.ScripterRon.MyMoney;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
 
@@ -42,6 +43,9 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         SizedTable.DATE_COLUMN, SizedTable.CHECK_COLUMN, SizedTable.NAME_COLUMN, SizedTable.RECONCILED_COLUMN, 
         SizedTable.AMOUNT_COLUMN, SizedTable.AMOUNT_COLUMN};
     
+    /** Maximum number of days between the statement date and the transaction date */
+    private static final int MATCH_TOLERANCE = 5;
+
     /** Credit reconcile table column classes */
     private static final Class<?>[] reconcileClasses_Credit = {
         Date.class, String.class, String.class, Double.class, Double.class};
@@ -75,6 +79,9 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
     /** Reconcile table model */
     private ReconcileModel reconcileModel;
 
+    /** Unreconciled transactions for the account */
+    private ReconcileIndex reconcileIndex;
+
     /** Reconcile table */
     private JTable reconcileTable;
 
@@ -149,12 +156,26 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         summaryPane.add(differenceField);
 
         //
-        // Display the buttons (Done, Finish Later, Cancel)
+        // Display the buttons (Match Statement, Match Balance, Done, Finish Later, Cancel)
         //
         JPanel buttonPane = new JPanel();
         buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
 
-        JButton button = new JButton("Done");
+        JButton button = new JButton("Match Statement");
+        button.setActionCommand("match statement");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Match Balance");
+        button.setActionCommand("match balance");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
         button.setActionCommand("done");
         button.addActionListener(this);
         buttonPane.add(button);
@@ -187,6 +208,16 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         contentPane.add(Box.createVerticalStrut(15));
         contentPane.add(buttonPane);
         setContentPane(contentPane);
+
+        //
+        // Closing the window is the same as "finish later"
+        //
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent we) {
+                transactionsModified();
+            }
+        });
     }
 
     /**
@@ -201,133 +232,35 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         //
         // "done" - Finished reconciling transactions.  Transactions that are
         //          "reconcile pending" will be changed to "reconciled" and the
-        //          table model will be notified that unreconciled transactions
+        //          table model will be notified that the changed transactions
         //          were modified.
         // "finish later" - Suspend reconciling transactions.  The table model
-        //          will be notified that unreconciled transactions were modified.
+        //          will be notified that the changed transactions were modified.
         // "cancel" Cancel reconciling.  Transactions that are "reconcile pending"
         //          will be changed to "not reconciled" and the table model will
-        //          be notified that unreconciled transactions were modified.
+        //          be notified that the changed transactions were modified.
+        // "match statement" - Mark the transactions matching the lines in a
+        //          statement file as "reconcile pending"
+        // "match balance" - Mark the transactions needed to reach the statement
+        //          balance as "reconcile pending"
         //
         try {
             String action = ae.getActionCommand();
             boolean dialogComplete = false;
-            int reconciled;
-            if (action.equals("done")) {
-                for (TransactionRecord t : TransactionRecord.transactions) {
-                    if (t.getAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.SOURCE_PENDING) != 0) {
-                            reconciled &= (255-TransactionRecord.SOURCE_PENDING);
-                            reconciled |= TransactionRecord.SOURCE_RECONCILED;
-                            t.setReconciled(reconciled);
-                            Main.dataModified = true;
-                            tableModel.transactionModified(t);
-                        } else if ((reconciled&TransactionRecord.SOURCE_RECONCILED) == 0) {
-                            tableModel.transactionModified(t);
-                        }
-                    } else if (t.getTransferAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.TARGET_PENDING) != 0) {
-                            reconciled &= (255-TransactionRecord.TARGET_PENDING);
-                            reconciled |= TransactionRecord.TARGET_RECONCILED;
-                            t.setReconciled(reconciled);
-                            Main.dataModified = true;
-                            tableModel.transactionModified(t);
-                        } else if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0) {
-                            tableModel.transactionModified(t);
-                        }
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    reconciled = split.getReconciled();
-                                    if ((reconciled&TransactionRecord.TARGET_PENDING) != 0) {
-                                        reconciled &= (255-TransactionRecord.TARGET_PENDING);
-                                        reconciled |= TransactionRecord.TARGET_RECONCILED;
-                                        split.setReconciled(reconciled);
-                                        Main.dataModified = true;
-                                        tableModel.transactionModified(t);
-                                    } else if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0) {
-                                        tableModel.transactionModified(t);
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+            if (action.equals("match statement")) {
+                matchStatement();
+            } else if (action.equals("match balance")) {
+                matchBalance();
+            } else if (action.equals("done")) {
+                if (reconcileIndex.reconcilePending())
+                    Main.dataModified = true;
 
                 dialogComplete = true;
             } else if (action.equals("finish later")) {
-                for (TransactionRecord t : TransactionRecord.transactions) {
-                    if (t.getAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.SOURCE_RECONCILED) == 0)
-                            tableModel.transactionModified(t);
-                    } else if (t.getTransferAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0)
-                            tableModel.transactionModified(t);
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    reconciled = split.getReconciled();
-                                    if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0)
-                                        tableModel.transactionModified(t);
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-
                 dialogComplete = true;
             } else if (action.equals("cancel")) {
-                for (TransactionRecord t : TransactionRecord.transactions) {
-                    if (t.getAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.SOURCE_PENDING) != 0) {
-                            reconciled &= (255-TransactionRecord.SOURCE_PENDING);
-                            t.setReconciled(reconciled);
-                            Main.dataModified = true;
-                            tableModel.transactionModified(t);
-                        } else if ((reconciled&TransactionRecord.SOURCE_RECONCILED) == 0) {
-                            tableModel.transactionModified(t);
-                        }
-                    } else if (t.getTransferAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.TARGET_PENDING) != 0) {
-                            reconciled &= (255-TransactionRecord.TARGET_PENDING);
-                            t.setReconciled(reconciled);
-                            Main.dataModified = true;
-                            tableModel.transactionModified(t);
-                        } else if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0) {
-                            tableModel.transactionModified(t);
-                        }
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    reconciled = split.getReconciled();
-                                    if ((reconciled&TransactionRecord.TARGET_PENDING) != 0) {
-                                        reconciled &= (255-TransactionRecord.TARGET_PENDING);
-                                        split.setReconciled(reconciled);
-                                        Main.dataModified = true;
-                                        tableModel.transactionModified(t);
-                                    } else if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0) {
-                                        tableModel.transactionModified(t);
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+                if (reconcileIndex.clearPending())
+                    Main.dataModified = true;
 
                 dialogComplete = true;
             }
@@ -336,6 +269,7 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
             // Close the dialog if we are done
             //
             if (dialogComplete) {
+                transactionsModified();
                 setVisible(false);
                 dispose();
             }
@@ -344,6 +278,19 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         }
     }
 
+    /**
+     * Notify the table model and the ledger listeners that the reconciled flags
+     * were changed for the modified transactions
+     */
+    private void transactionsModified() {
+        List<TransactionRecord> modified = reconcileIndex.getModifiedTransactions();
+        if (modified.isEmpty())
+            return;
+
+        tableModel.transactionsModified(modified);
+        TransactionRecord.transactionsModified(modified);
+    }
+
     /**
      * Value changed (ListSelectionListener interface)
      *
@@ -362,57 +309,78 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
         //
         int index = lsm.getMinSelectionIndex();
         if (lsm.isSelectedIndex(index)) {
-            TransactionRecord t = reconcileModel.getTransactionAt(index);
-            int reconciled;
-            double amount;
-            if (t.getAccount() == account) {
-                amount = t.getAmount();
-                reconciled = t.getReconciled();
-                reconciled ^= TransactionRecord.SOURCE_PENDING;
-                if ((reconciled&TransactionRecord.SOURCE_PENDING) != 0)
-                    reconciledBalance += amount;
-                else
-                    reconciledBalance -= amount;
-                t.setReconciled(reconciled);
-                Main.dataModified = true;
-            } else if (t.getTransferAccount() == account) {
-                amount = t.getAmount();
-                reconciled = t.getReconciled();
-                reconciled ^= TransactionRecord.TARGET_PENDING;
-                if ((reconciled&TransactionRecord.TARGET_PENDING) != 0)
-                    reconciledBalance -= amount;
-                else
-                    reconciledBalance += amount;
-                t.setReconciled(reconciled);
-                Main.dataModified = true;
-            } else {
-                List<TransactionSplit> splits = t.getSplits();
-                if (splits != null) {
-                    for (TransactionSplit split : splits) {
-                        if (split.getAccount() == account) {
-                            reconciled = split.getReconciled();
-                            amount = split.getAmount();
-                            reconciled ^= TransactionRecord.TARGET_PENDING;
-                            if ((reconciled&TransactionRecord.TARGET_PENDING) != 0)
-                                reconciledBalance -= amount;
-                            else
-                                reconciledBalance += amount;
-                            split.setReconciled(reconciled);
-                            Main.dataModified = true;
-                            break;
-                        }
-                    }
-                }
-            }
+            reconcileIndex.flipPending(index);
+            Main.dataModified = true;
 
             lsm.clearSelection();
             reconcileModel.fireTableRowsUpdated(index, index);
-            reconciledField.setText(String.format("%.2f", reconciledBalance));
-            double difference = statementBalance-reconciledBalance;
-            if (Math.abs(difference) < 0.005)
-                difference = 0.00;
-            differenceField.setText(String.format("%.2f", difference));
+            updateBalance();
+        }
+    }
+
+    /**
+     * Match the lines in a statement file to the unreconciled transactions
+     */
+    private void matchStatement() {
+        JFileChooser chooser = new JFileChooser(Main.dataPath);
+        chooser.setDialogTitle("Select Statement File");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        List<StatementMatcher.StatementLine> lines;
+        try {
+            lines = StatementMatcher.readStatement(chooser.getSelectedFile());
+        } catch (IOException exc) {
+            JOptionPane.showMessageDialog(this, exc.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+
+        StatementMatcher matcher = new StatementMatcher(reconcileIndex);
+        BitSet matched = matcher.matchLines(lines, MATCH_TOLERANCE);
+        applyMatch(matched);
+        if (matcher.getUnmatchedCount() != 0)
+            JOptionPane.showMessageDialog(this,
+                            String.format("%d statement lines were not matched",
+                                          matcher.getUnmatchedCount()),
+                            "Warning", JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Select the transactions needed to reach the statement balance
+     */
+    private void matchBalance() {
+        StatementMatcher matcher = new StatementMatcher(reconcileIndex);
+        BitSet matched = matcher.matchBalance(statementBalance);
+        if (matched == null)
+            JOptionPane.showMessageDialog(this, "No combination of transactions matches the statement balance",
+                                          "Warning", JOptionPane.WARNING_MESSAGE);
+        else
+            applyMatch(matched);
+    }
+
+    /**
+     * Mark the matched transactions as "reconcile pending" and update the table
+     *
+     * @param       matched         Matched entries in the reconcile index
+     */
+    private void applyMatch(BitSet matched) {
+        if (reconcileIndex.setPending(matched) != 0) {
+            Main.dataModified = true;
+            reconcileModel.fireTableDataChanged();
+            updateBalance();
+        }
+    }
+
+    /**
+     * Update the reconciled balance and difference fields
+     */
+    private void updateBalance() {
+        reconciledBalance = reconcileIndex.getReconciledBalance();
+        reconciledField.setText(String.format("%.2f", reconciledBalance));
+        double difference = statementBalance-reconciledBalance;
+        if (Math.abs(difference) < 0.005)
+            difference = 0.00;
+        differenceField.setText(String.format("%.2f", difference));
     }
 
     /**
@@ -466,47 +434,12 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
      */
     private class ReconcileModel extends AbstractTableModel {
 
-        /** List data */
-        private List<TransactionRecord> listData;
-
         /**
          * Create the reconcile transaction model
          */
         public ReconcileModel() {
-            int listSize = TransactionRecord.transactions.size();
-            listData = new ArrayList<>(listSize);
-            reconciledBalance = 0.00;
-            int reconciled;
-
-            for (TransactionRecord t : TransactionRecord.transactions) {
-                if (t.getAccount() == account) {
-                    reconciled = t.getReconciled();
-                    if ((reconciled&(TransactionRecord.SOURCE_PENDING|TransactionRecord.SOURCE_RECONCILED)) != 0)
-                        reconciledBalance += t.getAmount();
-                    if ((reconciled&TransactionRecord.SOURCE_RECONCILED) == 0)
-                        listData.add(t);
-                } else if (t.getTransferAccount() == account) {
-                    reconciled = t.getReconciled();
-                    if ((reconciled&(TransactionRecord.TARGET_PENDING|TransactionRecord.TARGET_RECONCILED)) != 0)
-                        reconciledBalance -= t.getAmount();
-                    if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0)
-                        listData.add(t);
-                } else {
-                    List<TransactionSplit> splits = t.getSplits();
-                    if (splits != null) {
-                        for (TransactionSplit split : splits) {
-                            if (split.getAccount() == account) {
-                                reconciled = split.getReconciled();
-                                if ((reconciled&(TransactionRecord.TARGET_PENDING|TransactionRecord.TARGET_RECONCILED)) != 0)
-                                    reconciledBalance -= split.getAmount();
-                                if ((reconciled&TransactionRecord.TARGET_RECONCILED) == 0)
-                                    listData.add(t);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+            reconcileIndex = new ReconcileIndex(account);
+            reconciledBalance = reconcileIndex.getReconciledBalance();
         }
 
         /**
@@ -544,7 +477,7 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
          * @return                  The number of rows
          */
         public int getRowCount() {
-            return listData.size();
+            return reconcileIndex.size();
         }
 
         /**
@@ -555,12 +488,12 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
          * @return                  Returns the object associated with the cell
          */
         public Object getValueAt(int row, int column) {
-            if (row >= listData.size())
+            if (row >= reconcileIndex.size())
                 throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
 
-            TransactionRecord t = listData.get(row);
+            TransactionRecord t = reconcileIndex.getTransaction(row);
+            double amount = reconcileIndex.getAmount(row);
             Object value;
-            double amount;
             int columnType;
             if (column == 0)
                 columnType = 0;
@@ -576,7 +509,7 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
 
                 case 1:                             // Check (only for bank transactions)
                     int number = 0;
-                    if (t.getAccount() == account)
+                    if (reconcileIndex.isSource(row))
                         number = t.getCheckNumber();
                     if (number != 0)
                         value = new Integer(number);
@@ -593,82 +526,15 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
                     break;
 
                 case 3:                             // Reconciled
-                    value = null;
-                    int reconciled;
-                    if (t.getAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.SOURCE_PENDING) != 0)
-                            value = "c";
-                    } else if (t.getTransferAccount() == account) {
-                        reconciled = t.getReconciled();
-                        if ((reconciled&TransactionRecord.TARGET_PENDING) != 0)
-                            value = "c";
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    reconciled = split.getReconciled();
-                                    if ((reconciled&TransactionRecord.TARGET_PENDING) != 0)
-                                        value = "c";
-                                    break;
-                                }
-                            }
-                        }
-                    }
-
-                    if (value == null)
-                        value = " ";
+                    value = (reconcileIndex.isPending(row) ? "c" : " ");
                     break;
 
                 case 4:                             // Payment
-                    value = null;
-                    if (t.getAccount() == account) {
-                        amount = t.getAmount();
-                        if (amount < 0.0)
-                            value = new Double(-amount);
-                    } else if (t.getTransferAccount() == account) {
-                        amount = t.getAmount();
-                        if (amount > 0.0)
-                            value = new Double(amount);
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    amount = split.getAmount();
-                                    if (amount > 0.0)
-                                        value = new Double(amount);
-                                    break;
-                                }
-                            }
-                        }
-                    }
+                    value = (amount < 0.0 ? new Double(-amount) : null);
                     break;
 
                 case 5:                             // Deposit
-                    value = null;
-                    if (t.getAccount() == account) {
-                        amount = t.getAmount();
-                        if (amount >= 0.0)
-                            value = new Double(amount);
-                    } else if (t.getTransferAccount() == account) {
-                        amount = t.getAmount();
-                        if (amount <= 0.0)
-                            value = new Double(-amount);
-                    } else {
-                        List<TransactionSplit> splits = t.getSplits();
-                        if (splits != null) {
-                            for (TransactionSplit split : splits) {
-                                if (split.getAccount() == account) {
-                                    amount = split.getAmount();
-                                    if (amount <= 0.0)
-                                        value = new Double(-amount);
-                                    break;
-                                }
-                            }
-                        }
-                    }
+                    value = (amount >= 0.0 ? new Double(amount) : null);
                     break;
 
                 default:
@@ -677,18 +543,5 @@ public final class ReconcileDialog extends JDialog implements ActionListener, Li
 
             return value;
         }
-
-        /**
-         * Get the transaction for a table row
-         *
-         * @param       row         Row index
-         * @return                  The TransactionRecord reference
-         */
-        public TransactionRecord getTransactionAt(int row) {
-            if (row >= listData.size())
-                throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
-
-            return listData.get(row);
-        }
     }
 }
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The reconcile index contains the transactions for an account that have not been
+ * reconciled.  The index is built from the account transaction list maintained by
+ * the transaction index, so just the transactions for the account are examined.
+ * <p>
+ * An account can be the transaction account, the transfer account or a split account
+ * for a transaction.  The role is determined when the index is built and the amount
+ * for each entry is the amount as it pertains to the account.  The pending state
+ * for each entry is kept in a bit set and the reconciled flags in the transaction
+ * or split are updated as the pending state changes.  The entries that have been
+ * changed are kept in a separate bit set, so just the changed transactions are
+ * reported as modified.
+ * <p>
+ * Only the transaction partitions with unreconciled transactions for the account
+ * are loaded.  The transactions in the older partitions have all been reconciled,
+ * so the reconciled balance starts with the checkpoint balance for those partitions.
+ * The transaction partition is marked as modified when the flags are changed, so the
+ * change is saved even if the reconcile dialog is closed without notifying the ledger
+ * listeners.
+ */
+public final class ReconcileIndex {
+
+    /** Account is the transaction account */
+    private static final int SOURCE = 0;
+
+    /** Account is the transfer account */
+    private static final int TARGET = 1;
+
+    /** Account is a split account */
+    private static final int SPLIT = 2;
+
+    /** Unreconciled transactions */
+    private final List<TransactionRecord> transactions = new ArrayList<>();
+
+    /** Split for each entry with the SPLIT role */
+    private final List<TransactionSplit> splits = new ArrayList<>();
+
+    /** Role for each entry */
+    private int[] roles = new int[16];
+
+    /** Amount for each entry as it pertains to the account */
+    private double[] amounts = new double[16];
+
+    /** Entries pending reconciliation */
+    private final BitSet pending = new BitSet();
+
+    /** Entries with changed reconciled flags */
+    private final BitSet modified = new BitSet();
+
+    /** Reconciled balance including pending entries */
+    private double reconciledBalance;
+
+    /**
+     * Create the reconcile index for an account
+     *
+     * @param       account         Account being reconciled
+     */
+    public ReconcileIndex(AccountRecord account) {
+        TransactionPartitions.loadUnreconciled(account);
+        CheckpointRecord checkpoint = TransactionPartitions.getOpeningCheckpoint();
+        if (checkpoint != null)
+            reconciledBalance = checkpoint.getBalance(account);
+
+        for (TransactionRecord t : TransactionIndex.getIndex().getTransactions(account)) {
+            int role, reconciled;
+            double amount;
+            TransactionSplit accountSplit = null;
+            if (t.getAccount() == account) {
+                role = SOURCE;
+                reconciled = t.getReconciled();
+                amount = t.getAmount();
+            } else if (t.getTransferAccount() == account) {
+                role = TARGET;
+                reconciled = t.getReconciled();
+                amount = -t.getAmount();
+            } else {
+                role = SPLIT;
+                List<TransactionSplit> splits = t.getSplits();
+                if (splits != null) {
+                    for (TransactionSplit split : splits) {
+                        if (split.getAccount() == account) {
+                            accountSplit = split;
+                            break;
+                        }
+                    }
+                }
+
+                //
+                // The account transaction list does not agree with the transaction
+                // (this should not happen unless the transaction index is stale)
+                //
+                if (accountSplit == null) {
+                    Main.logException("Transaction is not an account transaction",
+                            new IllegalStateException("Account "+account.getName()+" is not used by the "+
+                                                      Main.getDateString(t.getDate())+" transaction"));
+                    continue;
+                }
+
+                reconciled = accountSplit.getReconciled();
+                amount = -accountSplit.getAmount();
+            }
+
+            int pendingFlag = (role == SOURCE ? TransactionRecord.SOURCE_PENDING :
+                                                TransactionRecord.TARGET_PENDING);
+            int reconciledFlag = (role == SOURCE ? TransactionRecord.SOURCE_RECONCILED :
+                                                   TransactionRecord.TARGET_RECONCILED);
+            if ((reconciled&(pendingFlag|reconciledFlag)) != 0)
+                reconciledBalance += amount;
+
+            if ((reconciled&reconciledFlag) == 0) {
+                int index = transactions.size();
+                if (index == roles.length) {
+                    roles = Arrays.copyOf(roles, index*2);
+                    amounts = Arrays.copyOf(amounts, index*2);
+                }
+
+                transactions.add(t);
+                splits.add(accountSplit);
+                roles[index] = role;
+                amounts[index] = amount;
+                if ((reconciled&pendingFlag) != 0)
+                    pending.set(index);
+            }
+        }
+    }
+
+    /**
+     * Get the number of unreconciled entries
+     *
+     * @return                      Number of entries
+     */
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Get the unreconciled transactions
+     *
+     * @return                      Transaction list
+     */
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Get the transactions with changed reconciled flags
+     *
+     * @return                      Transaction list
+     */
+    public List<TransactionRecord> getModifiedTransactions() {
+        List<TransactionRecord> modifiedTransactions = new ArrayList<>(modified.cardinality());
+        for (int index=modified.nextSetBit(0); index>=0; index=modified.nextSetBit(index+1)) {
+            TransactionRecord t = transactions.get(index);
+            if (modifiedTransactions.isEmpty() || modifiedTransactions.get(modifiedTransactions.size()-1) != t)
+                modifiedTransactions.add(t);
+        }
+
+        return modifiedTransactions;
+    }
+
+    /**
+     * Get the transaction for an entry
+     *
+     * @param       index           Entry index
+     * @return                      Transaction
+     */
+    public TransactionRecord getTransaction(int index) {
+        return transactions.get(index);
+    }
+
+    /**
+     * Check if the account is the transaction account for an entry
+     *
+     * @param       index           Entry index
+     * @return                      TRUE if the account is the transaction account
+     */
+    public boolean isSource(int index) {
+        return (roles[index] == SOURCE);
+    }
+
+    /**
+     * Get the amount for an entry as it pertains to the account
+     *
+     * @param       index           Entry index
+     * @return                      Amount
+     */
+    public double getAmount(int index) {
+        return amounts[index];
+    }
+
+    /**
+     * Check if an entry is pending reconciliation
+     *
+     * @param       index           Entry index
+     * @return                      TRUE if the entry is pending
+     */
+    public boolean isPending(int index) {
+        return pending.get(index);
+    }
+
+    /**
+     * Get the reconciled balance.  The balance includes the reconciled transactions
+     * and the transactions that are pending reconciliation.
+     *
+     * @return                      Reconciled balance
+     */
+    public double getReconciledBalance() {
+        return reconciledBalance;
+    }
+
+    /**
+     * Flip the pending state for an entry
+     *
+     * @param       index           Entry index
+     */
+    public void flipPending(int index) {
+        pending.flip(index);
+        if (pending.get(index))
+            reconciledBalance += amounts[index];
+        else
+            reconciledBalance -= amounts[index];
+
+        int flag = (roles[index] == SOURCE ? TransactionRecord.SOURCE_PENDING :
+                                             TransactionRecord.TARGET_PENDING);
+        setReconciled(index, getReconciled(index)^flag);
+    }
+
+    /**
+     * Set the pending state for a group of entries.  Entries that are already
+     * pending are not changed.
+     *
+     * @param       entries         Entries to be marked as pending
+     * @return                      Number of entries that were changed
+     */
+    public int setPending(BitSet entries) {
+        int count = 0;
+        for (int index=entries.nextSetBit(0); index>=0; index=entries.nextSetBit(index+1)) {
+            if (!pending.get(index)) {
+                flipPending(index);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Complete the reconciliation.  The pending entries are changed to reconciled.
+     *
+     * @return                      TRUE if a transaction was modified
+     */
+    public boolean reconcilePending() {
+        boolean modified = false;
+        for (int index=pending.nextSetBit(0); index>=0; index=pending.nextSetBit(index+1)) {
+            int pendingFlag, reconciledFlag;
+            if (roles[index] == SOURCE) {
+                pendingFlag = TransactionRecord.SOURCE_PENDING;
+                reconciledFlag = TransactionRecord.SOURCE_RECONCILED;
+            } else {
+                pendingFlag = TransactionRecord.TARGET_PENDING;
+                reconciledFlag = TransactionRecord.TARGET_RECONCILED;
+            }
+
+            setReconciled(index, (getReconciled(index)&(255-pendingFlag))|reconciledFlag);
+            modified = true;
+        }
+
+        pending.clear();
+        return modified;
+    }
+
+    /**
+     * Cancel the reconciliation.  The pending entries are changed to not reconciled.
+     *
+     * @return                      TRUE if a transaction was modified
+     */
+    public boolean clearPending() {
+        boolean modified = false;
+        for (int index=pending.nextSetBit(0); index>=0; index=pending.nextSetBit(index+1)) {
+            int flag = (roles[index] == SOURCE ? TransactionRecord.SOURCE_PENDING :
+                                                 TransactionRecord.TARGET_PENDING);
+            setReconciled(index, getReconciled(index)&(255-flag));
+            reconciledBalance -= amounts[index];
+            modified = true;
+        }
+
+        pending.clear();
+        return modified;
+    }
+
+    /**
+     * Get the reconciled flags for an entry
+     *
+     * @param       index           Entry index
+     * @return                      Reconciled flags
+     */
+    private int getReconciled(int index) {
+        if (roles[index] == SPLIT)
+            return splits.get(index).getReconciled();
+
+        return transactions.get(index).getReconciled();
+    }
+
+    /**
+     * Set the reconciled flags for an entry
+     *
+     * @param       index           Entry index
+     * @param       reconciled      Reconciled flags
+     */
+    private void setReconciled(int index, int reconciled) {
+        if (roles[index] == SPLIT)
+            splits.get(index).setReconciled(reconciled);
+        else
+            transactions.get(index).setReconciled(reconciled);
+
+        modified.set(index);
+        TransactionPartitions.transactionModified(transactions.get(index));
+    }
+}
@@ -0,0 +1,565 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Asn1.*;
+import org.ScripterRon.RecordIO.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The record index is a sidecar file written beside each database, partition and
+ * archive file.  It contains an entry for each record in the data file with the
+ * record offset, record type, record identifier and record date.  A tool can use
+ * the index to seek directly to the records it needs instead of reading the data
+ * file from the beginning.
+ * <p>
+ * The record offset is the file position of the record descriptor and the record
+ * type is the ASN.1 application tag number of the encoded record.  The record
+ * identifier is the element identifier for an account, category or security, the
+ * year for a partition or checkpoint record and the transaction account for a
+ * transaction or scheduled transaction.  The record date is the transaction date
+ * or the scheduled date and is omitted for the other records.  The entries are
+ * sorted by date and the entries without a date are first in file order.  The
+ * index also contains the offsets of the transactions for each account (including
+ * transfers and split accounts) in date order.
+ * <p>
+ * The index file is named by appending ".index" to the data file name.  The index
+ * is deleted before the data file is replaced and written after the new data file
+ * has been renamed, so an index never describes an earlier version of the data
+ * file.  The data file length is also stored in the index and the index is not
+ * used if the length does not match.
+ * <p>
+ * The index file contains a single record encoded as follows:
+ * <pre>
+ *   RecordIndex ::= [APPLICATION 10] SEQUENCE {
+ *     fileLength                  INTEGER,
+ *     entries                     SEQUENCE OF IndexEntry,
+ *     accounts                    SEQUENCE OF AccountOffsets }
+ *
+ *   IndexEntry ::= SEQUENCE {
+ *     offset                      INTEGER,
+ *     type                        INTEGER,
+ *     id                          INTEGER,
+ *     date                        GeneralizedTime OPTIONAL }
+ *
+ *   AccountOffsets ::= SEQUENCE {
+ *     account                     INTEGER,
+ *     offsets                     SEQUENCE OF INTEGER }
+ * </pre>
+ */
+public final class RecordIndex {
+
+    /** Security record type (the price history is part of the security record) */
+    public static final int SECURITY = 1;
+
+    /** Category record type */
+    public static final int CATEGORY = 3;
+
+    /** Account record type */
+    public static final int ACCOUNT = 4;
+
+    /** Transaction record type */
+    public static final int TRANSACTION = 5;
+
+    /** Scheduled transaction record type */
+    public static final int SCHEDULE = 7;
+
+    /** Checkpoint record type */
+    public static final int CHECKPOINT = 8;
+
+    /** Partition record type */
+    public static final int PARTITION = 9;
+
+    /** The encoded RecordIndex ASN.1 tag identifier */
+    private static final byte tagID=(byte)(Asn1Stream.ASN1_APPLICATION+10);
+
+    /** Index entries in file order while the index is being built and then in date order */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** Transaction offsets for each account */
+    private final SortedMap<Integer, List<Integer>> accountOffsets = new TreeMap<>();
+
+    /** Data file length */
+    private int fileLength;
+
+    /**
+     * Create an empty record index.  The records are added to the index as they
+     * are written to the data file.
+     */
+    public RecordIndex() {
+    }
+
+    /**
+     * Create a record index from an encoded byte stream
+     *
+     * @param       data            Encoded byte stream for the record
+     * @exception   DBException     Unable to decode object stream
+     */
+    private RecordIndex(byte[] data) throws DBException {
+        DecodeStream stream = new DecodeStream(data);
+
+        try {
+
+            //
+            //  Validate the application identifier tag
+            //
+            if (stream.getTag() != tagID)
+                throw new DBException("Not an encoded RecordIndex object");
+
+            //
+            //  Get the RecordIndex sequence
+            //
+            DecodeStream seq = stream.getSequence(true);
+
+            //
+            //  Decode the data file length
+            //
+            fileLength = seq.decodeInteger(false);
+
+            //
+            //  Decode the index entries
+            //
+            DecodeStream entrySeq = seq.getSequence(false);
+            while (entrySeq.getLength() != 0) {
+                DecodeStream fieldSeq = entrySeq.getSequence(false);
+                int offset = fieldSeq.decodeInteger(false);
+                int type = fieldSeq.decodeInteger(false);
+                int id = fieldSeq.decodeInteger(false);
+                Date date = (fieldSeq.getLength() != 0 ? fieldSeq.decodeTime(false) : null);
+                entries.add(new Entry(offset, type, id, date));
+            }
+
+            //
+            //  Decode the account offsets
+            //
+            DecodeStream accountSeq = seq.getSequence(false);
+            while (accountSeq.getLength() != 0) {
+                DecodeStream fieldSeq = accountSeq.getSequence(false);
+                int accountID = fieldSeq.decodeInteger(false);
+                DecodeStream offsetSeq = fieldSeq.getSequence(false);
+                List<Integer> offsets = new ArrayList<>();
+                while (offsetSeq.getLength() != 0)
+                    offsets.add(offsetSeq.decodeInteger(false));
+
+                accountOffsets.put(accountID, offsets);
+            }
+
+            //
+            //  Check for unconsummed data
+            //
+            if (seq.getLength() != 0)
+                throw new DBException("Unconsummed data in RecordIndex sequence");
+        } catch (Asn1Exception exc) {
+            throw new DBException("ASN.1 decode error", exc);
+        }
+    }
+
+    /**
+     * Add a record to the index.  The records must be added in the order they are
+     * written to the data file.
+     *
+     * @param       data            Encoded record
+     * @param       id              Record identifier
+     * @param       date            Record date or null
+     */
+    public void addRecord(byte[] data, int id, Date date) {
+        entries.add(new Entry(fileLength, getType(data), id, date));
+
+        //
+        // Each record is preceded by a 4-byte record descriptor
+        //
+        fileLength += 4+data.length;
+    }
+
+    /**
+     * Add a transaction to the index.  The transactions must be added in the
+     * order they are written to the data file.
+     *
+     * @param       t               Transaction
+     * @param       data            Encoded transaction
+     */
+    public void addTransaction(TransactionRecord t, byte[] data) {
+        int offset = fileLength;
+        addRecord(data, t.getAccount().getID(), t.getDate());
+        addAccountOffset(t.getAccount(), offset);
+        addAccountOffset(t.getTransferAccount(), offset);
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits)
+                addAccountOffset(split.getAccount(), offset);
+        }
+    }
+
+    /**
+     * Write the index for a data file.  The entries are sorted by date before
+     * they are written.
+     *
+     * @param       dataFile        Data file described by the index
+     * @exception   IOException     An I/O error occurred
+     */
+    public void write(File dataFile) throws IOException {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                if (e1.date == null)
+                    return (e2.date == null ? 0 : -1);
+                if (e2.date == null)
+                    return 1;
+
+                return e1.date.compareTo(e2.date);
+            }
+        });
+
+        File indexFile = getIndexFile(dataFile);
+        File saveFile = new File(indexFile.getPath()+".save");
+        RecordOutputStream out = new RecordOutputStream(saveFile);
+        boolean cleanup = true;
+        try {
+            out.writeRecord(encode());
+            out.close();
+            out = null;
+            if (indexFile.exists())
+                if (!indexFile.delete())
+                    throw new IOException("Unable to delete "+indexFile.getName());
+
+            cleanup = false;
+            if (!saveFile.renameTo(indexFile))
+                throw new IOException("Unable to rename "+saveFile.getName());
+        } finally {
+            if (cleanup) {
+                if (out != null)
+                    out.close();
+
+                if (saveFile.exists())
+                    saveFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Load the index for a data file
+     *
+     * @param       dataFile        Data file
+     * @return                      Record index or null if there is no current index
+     * @exception   DBException     The index file is not valid
+     * @exception   IOException     An I/O error occurred
+     */
+    public static RecordIndex load(File dataFile) throws DBException, IOException {
+        File indexFile = getIndexFile(dataFile);
+        if (!indexFile.exists() || !dataFile.exists())
+            return null;
+
+        byte[] data;
+        try (RecordInputStream in = new RecordInputStream(indexFile)) {
+            data = in.readRecord();
+        }
+
+        if (data == null)
+            throw new DBException(indexFile.getName()+" is empty");
+
+        RecordIndex index = new RecordIndex(data);
+        return (index.fileLength == dataFile.length() ? index : null);
+    }
+
+    /**
+     * Delete the index for a data file.  This is done before the data file is
+     * replaced or deleted.
+     *
+     * @param       dataFile        Data file
+     * @exception   IOException     Unable to delete the index file
+     */
+    public static void delete(File dataFile) throws IOException {
+        File indexFile = getIndexFile(dataFile);
+        if (indexFile.exists() && !indexFile.delete())
+            throw new IOException("Unable to delete "+indexFile.getName());
+    }
+
+    /**
+     * Get the index file for a data file
+     *
+     * @param       dataFile        Data file
+     * @return                      Index file
+     */
+    public static File getIndexFile(File dataFile) {
+        return new File(dataFile.getPath()+".index");
+    }
+
+    /**
+     * Read the record at a file offset
+     *
+     * @param       in              Data file
+     * @param       offset          Record offset
+     * @return                      Encoded record
+     * @exception   IOException     Unable to read the record
+     * @exception   StreamCorruptedException  Invalid record descriptor
+     */
+    public static byte[] readRecord(RandomAccessFile in, long offset) throws IOException {
+        if (offset < 0 || offset+4 > in.length())
+            throw new EOFException("Record offset "+offset+" is not valid");
+
+        in.seek(offset);
+        int length = in.readInt();
+        if (length < 1 || offset+4+length > in.length())
+            throw new StreamCorruptedException("Record length "+length+" is not valid");
+
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Get the record type for an encoded record
+     *
+     * @param       data            Encoded record
+     * @return                      Record type (ASN.1 application tag number)
+     */
+    public static int getType(byte[] data) {
+        return (data.length != 0 ? data[0]&~(Asn1Stream.ASN1_APPLICATION|Asn1Stream.ASN1_CONSTRUCTED)&0xff : 0);
+    }
+
+    /**
+     * Get the length of the data file described by the index
+     *
+     * @return                      Data file length
+     */
+    public int getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Get the index entries sorted by date
+     *
+     * @return                      Index entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Get the index entries for a date range.  The entries without a date
+     * are not included.
+     *
+     * @param       startDate       Start date (inclusive)
+     * @param       endDate         End date (inclusive)
+     * @return                      Index entries sorted by date
+     */
+    public List<Entry> getEntries(Date startDate, Date endDate) {
+        return Collections.unmodifiableList(entries.subList(findFirst(startDate, false),
+                                                            findFirst(endDate, true)));
+    }
+
+    /**
+     * Get the index entry for a record
+     *
+     * @param       type            Record type
+     * @param       id              Record identifier
+     * @return                      Index entry or null if the record is not found
+     */
+    public Entry getEntry(int type, int id) {
+        for (Entry entry : entries) {
+            if (entry.type == type && entry.id == id)
+                return entry;
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the offsets of the transactions for an account
+     *
+     * @param       accountID       Account identifier
+     * @return                      Transaction offsets in date order
+     */
+    public List<Integer> getAccountOffsets(int accountID) {
+        List<Integer> offsets = accountOffsets.get(accountID);
+        return (offsets != null ? Collections.unmodifiableList(offsets) : Collections.<Integer>emptyList());
+    }
+
+    /**
+     * Find the first dated entry on or after a date (or after the date if
+     * 'after' is TRUE) using a binary search
+     *
+     * @param       date            Date
+     * @param       after           TRUE to skip entries with the same date
+     * @return                      Entry index
+     */
+    private int findFirst(Date date, boolean after) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low+high)>>>1;
+            Date entryDate = entries.get(mid).date;
+            int cmp = (entryDate == null ? -1 : entryDate.compareTo(date));
+            if (cmp < 0 || (after && cmp == 0))
+                low = mid+1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Add a transaction offset for an account
+     *
+     * @param       account         Account or null
+     * @param       offset          Transaction offset
+     */
+    private void addAccountOffset(AccountRecord account, int offset) {
+        if (account == null)
+            return;
+
+        List<Integer> offsets = accountOffsets.get(account.getID());
+        if (offsets == null) {
+            offsets = new ArrayList<>();
+            accountOffsets.put(account.getID(), offsets);
+        }
+
+        //
+        // A split can refer to the transaction account or transfer account
+        //
+        if (offsets.isEmpty() || offsets.get(offsets.size()-1) != offset)
+            offsets.add(offset);
+    }
+
+    /**
+     * Encode the RecordIndex object
+     *
+     * @return                      The encoded byte stream for the object
+     */
+    private byte[] encode() {
+        EncodeStream stream = new EncodeStream(16*entries.size()+256);
+
+        //
+        //  Encode the account offsets (fields are encoded in reverse order because
+        //  the stream is constructed from the end to the beginning)
+        //
+        int length = 0;
+        List<Integer> accountIDs = new ArrayList<>(accountOffsets.keySet());
+        for (int i=accountIDs.size()-1; i>=0; i--) {
+            int accountID = accountIDs.get(i);
+            List<Integer> offsets = accountOffsets.get(accountID);
+            int offsetLength = 0;
+            for (int j=offsets.size()-1; j>=0; j--)
+                offsetLength += stream.encodeInteger(offsets.get(j));
+
+            int fieldLength = stream.makeSequence(offsetLength);
+            fieldLength += stream.encodeInteger(accountID);
+            length += stream.makeSequence(fieldLength);
+        }
+
+        int seqLength = stream.makeSequence(length);
+
+        //
+        //  Encode the index entries
+        //
+        length = 0;
+        for (int i=entries.size()-1; i>=0; i--) {
+            Entry entry = entries.get(i);
+            int fieldLength = 0;
+            if (entry.date != null)
+                fieldLength += stream.encodeTime(entry.date);
+
+            fieldLength += stream.encodeInteger(entry.id);
+            fieldLength += stream.encodeInteger(entry.type);
+            fieldLength += stream.encodeInteger(entry.offset);
+            length += stream.makeSequence(fieldLength);
+        }
+
+        seqLength += stream.makeSequence(length);
+
+        //
+        //  Encode the data file length
+        //
+        seqLength += stream.encodeInteger(fileLength);
+
+        //
+        //  Make the RecordIndex sequence
+        //
+        stream.makeSequence(seqLength, tagID);
+        return stream.getData();
+    }
+
+    /**
+     * An index entry describes a record in the data file
+     */
+    public static final class Entry {
+
+        /** Record offset */
+        private final int offset;
+
+        /** Record type */
+        private final int type;
+
+        /** Record identifier */
+        private final int id;
+
+        /** Record date or null */
+        private final Date date;
+
+        /**
+         * Create an index entry
+         *
+         * @param       offset          Record offset
+         * @param       type            Record type
+         * @param       id              Record identifier
+         * @param       date            Record date or null
+         */
+        private Entry(int offset, int type, int id, Date date) {
+            this.offset = offset;
+            this.type = type;
+            this.id = id;
+            this.date = date;
+        }
+
+        /**
+         * Get the record offset
+         *
+         * @return                      Record offset
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Get the record type
+         *
+         * @return                      Record type
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Get the record identifier
+         *
+         * @return                      Record identifier
+         */
+        public int getID() {
+            return id;
+        }
+
+        /**
+         * Get the record date
+         *
+         * @return                      Record date or null
+         */
+        public Date getDate() {
+            return date;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Chart.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Display the retirement projection graph.  The graph shows the 5th, 25th, 50th, 75th
+ * and 95th percentile portfolio values for each year based on a Monte Carlo simulation
+ * of the current security holdings.
+ */
+public final class RetirementGraphDialog extends JDialog implements ActionListener {
+
+    /** Default annual return for each security type (indexed the same as SecurityRecord.getTypes()) */
+    private static final double[] defaultReturns = {7.0, 3.0, 4.0, 3.0, 2.0, 7.0, 4.0};
+
+    /** Default annual volatility for each security type */
+    private static final double[] defaultVolatilities = {18.0, 5.0, 6.0, 4.0, 1.0, 16.0, 6.0};
+
+    /** Plot colors for the percentiles */
+    private static final Color[] percentileColors = {
+        Color.RED, Color.ORANGE, Color.BLACK, Color.ORANGE, Color.RED};
+
+    /** Number of years field */
+    private JFormattedTextField yearsField;
+
+    /** Number of paths field */
+    private JFormattedTextField pathsField;
+
+    /** Random number seed field */
+    private JFormattedTextField seedField;
+
+    /** Annual cash flow field */
+    private JFormattedTextField cashFlowField;
+
+    /** Current value for each security type */
+    private double[] classValues;
+
+    /** Return fields (null if the security type is not held) */
+    private JFormattedTextField[] returnFields;
+
+    /** Volatility fields (null if the security type is not held) */
+    private JFormattedTextField[] volatilityFields;
+
+    /**
+     * Construct the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public RetirementGraphDialog(JFrame parent) {
+        super(parent, "Retirement Projection", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Project 30 years using 100,000 paths by default.  The annual cash flow
+        // is the net result of the scheduled transactions for the next year.
+        //
+        yearsField = createField(0, false, new Integer(30));
+        pathsField = createField(0, false, new Integer(100000));
+        seedField = createField(0, false, new Integer(1));
+        cashFlowField = createField(2, true, new Double(RetirementProjection.getScheduledCashFlow(Main.getCurrentDate())));
+
+        //
+        // Create the edit pane
+        //
+        //    Years:                  <text-field>
+        //    Paths:                  <text-field>
+        //    Seed:                   <text-field>
+        //    Annual Cash Flow:       <text-field>
+        //    <type> Return (%):      <text-field>
+        //    <type> Volatility (%):  <text-field>
+        //
+        // The return and volatility fields are displayed for each security type
+        // that is currently held.
+        //
+        JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
+
+        editPane.add(new JLabel("Years:", JLabel.RIGHT));
+        editPane.add(yearsField);
+
+        editPane.add(new JLabel("Paths:", JLabel.RIGHT));
+        editPane.add(pathsField);
+
+        editPane.add(new JLabel("Seed:", JLabel.RIGHT));
+        editPane.add(seedField);
+
+        editPane.add(new JLabel("Annual Cash Flow:", JLabel.RIGHT));
+        editPane.add(cashFlowField);
+
+        int[] types = SecurityRecord.getTypes();
+        classValues = RetirementProjection.getHoldingValues(Main.getCurrentDate());
+        returnFields = new JFormattedTextField[types.length];
+        volatilityFields = new JFormattedTextField[types.length];
+        for (int i=0; i<types.length; i++) {
+            if (classValues[i] <= 0.0)
+                continue;
+
+            String typeString = SecurityRecord.getTypeString(types[i]);
+            returnFields[i] = createField(2, true, new Double(defaultReturns[i]));
+            volatilityFields[i] = createField(2, false, new Double(defaultVolatilities[i]));
+
+            editPane.add(new JLabel(typeString+" Return (%):", JLabel.RIGHT));
+            editPane.add(returnFields[i]);
+
+            editPane.add(new JLabel(typeString+" Volatility (%):", JLabel.RIGHT));
+            editPane.add(volatilityFields[i]);
+        }
+
+        //
+        // Create the buttons (Create Graph, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Create Graph");
+        button.setActionCommand("create graph");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(editPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * Create a numeric field
+     *
+     * @param       decimals        Number of decimal digits
+     * @param       allowNegative   TRUE if negative values are allowed
+     * @param       value           Initial value
+     * @return                      Text field
+     */
+    private JFormattedTextField createField(int decimals, boolean allowNegative, Number value) {
+        JFormattedTextField field = new JFormattedTextField(new EditNumber(decimals, allowNegative));
+        field.setColumns(10);
+        field.setInputVerifier(new EditInputVerifier(false));
+        field.addActionListener(new FormattedTextFieldListener(this));
+        field.setValue(value);
+        return field;
+    }
+
+    /**
+     * Action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "create graph" - Create the graph
+        // "done" - All done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "create graph":
+                    createGraph();
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Show the dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new RetirementGraphDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Create the graph
+     */
+    private void createGraph() {
+
+        //
+        // Validate the projection parameters
+        //
+        int years = (yearsField.isEditValid() ? ((Number)yearsField.getValue()).intValue() : 0);
+        int paths = (pathsField.isEditValid() ? ((Number)pathsField.getValue()).intValue() : 0);
+        if (years < 1 || years > 100) {
+            JOptionPane.showMessageDialog(this, "You must specify between 1 and 100 years",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (paths < 1000 || paths > 1000000) {
+            JOptionPane.showMessageDialog(this, "You must specify between 1,000 and 1,000,000 paths",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (!seedField.isEditValid() || !cashFlowField.isEditValid()) {
+            JOptionPane.showMessageDialog(this, "You must specify the seed and the annual cash flow",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        long seed = ((Number)seedField.getValue()).longValue();
+        double cashFlow = ((Number)cashFlowField.getValue()).doubleValue();
+        double[] returns = new double[classValues.length];
+        double[] volatilities = new double[classValues.length];
+        boolean haveHoldings = false;
+        for (int i=0; i<classValues.length; i++) {
+            if (returnFields[i] == null)
+                continue;
+
+            if (!returnFields[i].isEditValid() || !volatilityFields[i].isEditValid()) {
+                JOptionPane.showMessageDialog(this, "You must specify the return and volatility",
+                                              "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            returns[i] = ((Number)returnFields[i].getValue()).doubleValue()/100.0;
+            volatilities[i] = ((Number)volatilityFields[i].getValue()).doubleValue()/100.0;
+            haveHoldings = true;
+        }
+
+        if (!haveHoldings) {
+            JOptionPane.showMessageDialog(this, "There are no security holdings",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        //
+        // Run the projection
+        //
+        RetirementProjection projection = new RetirementProjection(classValues, returns, volatilities,
+                                                                   cashFlow, years, paths, seed);
+
+        //
+        // Build the data points for each percentile.  The median is the primary
+        // data series and the other percentiles are added as additional series.
+        //
+        int count = RetirementProjection.PERCENTILES.length;
+        List<List<LineChartElement>> seriesList = new ArrayList<>(count);
+        int median = 0;
+        for (int i=0; i<count; i++) {
+            double[] values = projection.getPercentileValues(i);
+            List<LineChartElement> dataPoints = new ArrayList<>(years+1);
+            for (int year=0; year<=years; year++)
+                dataPoints.add(new LineChartElement((double)year, values[year]/1000.0));
+
+            seriesList.add(dataPoints);
+            if (RetirementProjection.PERCENTILES[i] == 50)
+                median = i;
+        }
+
+        LineChart chart = new LineChart(seriesList.get(median), "Year", "Portfolio Value ($K)");
+        chart.setPlotColor(percentileColors[median]);
+        for (int i=0; i<count; i++) {
+            if (i != median)
+                chart.addDataSeries(seriesList.get(i), percentileColors[i]);
+        }
+
+        //
+        // Display the projection graph
+        //
+        chart.setTitle(String.format("Success Rate %.1f%%", projection.getSuccessRate()*100.0));
+        chart.setOpaque(true);
+        chart.setBackground(Color.WHITE);
+        chart.setPreferredSize(new Dimension(640, 640));
+
+        String dialogTitle = String.format("Retirement Projection (%,d paths, 5th to 95th percentile)", paths);
+        JDialog dialog = new JDialog(this, dialogTitle, true);
+        dialog.setContentPane(chart);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The retirement projection uses a Monte Carlo simulation to project the value of
+ * the current security holdings.  The holdings are grouped by security type and each
+ * security type has an expected annual return and volatility.  The annual return for
+ * a security type is drawn from a lognormal distribution.  The portfolio is rebalanced
+ * to the current allocation at the end of each year and the annual cash flow is then
+ * added to (or withdrawn from) the portfolio.  The portfolio value does not go
+ * below zero when withdrawals exhaust the portfolio.
+ * <p>
+ * The paths are divided into fixed-size blocks and each block has its own random
+ * number stream.  The streams are split from a single generator before the simulation
+ * starts, so the results depend only on the seed and not on the number of processors.
+ * The blocks are simulated in parallel on the common ForkJoin pool.  A path does not
+ * allocate any storage: the path values are stored directly in the result arrays.
+ */
+public final class RetirementProjection {
+
+    /** Percentiles reported by the projection */
+    public static final int[] PERCENTILES = {5, 25, 50, 75, 95};
+
+    /** Number of paths in a block */
+    private static final int BLOCK_SIZE = 1024;
+
+    /** Number of blocks simulated by a single task */
+    private static final int TASK_THRESHOLD = 4;
+
+    /** Asset class weights */
+    private final double[] weights;
+
+    /** Asset class log-return drift */
+    private final double[] drifts;
+
+    /** Asset class volatilities */
+    private final double[] volatilities;
+
+    /** Starting portfolio value */
+    private final double startValue;
+
+    /** Annual cash flow */
+    private final double annualCashFlow;
+
+    /** Number of years */
+    private final int years;
+
+    /** Number of paths */
+    private final int paths;
+
+    /** Path values indexed by year and path */
+    private final float[][] values;
+
+    /** Percentile values indexed by percentile and year */
+    private final double[][] percentileValues;
+
+    /**
+     * Run the projection
+     *
+     * @param       classValues     Current value for each asset class
+     * @param       returns         Expected annual return for each asset class (1.00 = 100%)
+     * @param       volatilities    Annual volatility for each asset class (1.00 = 100%)
+     * @param       annualCashFlow  Annual contribution (positive) or withdrawal (negative)
+     * @param       years           Number of years
+     * @param       paths           Number of simulation paths
+     * @param       seed            Random number seed
+     */
+    public RetirementProjection(double[] classValues, double[] returns, double[] volatilities,
+                                double annualCashFlow, int years, int paths, long seed) {
+        if (classValues.length != returns.length || classValues.length != volatilities.length)
+            throw new IllegalArgumentException("Asset class arrays must be the same length");
+
+        if (years < 1 || paths < 1)
+            throw new IllegalArgumentException("The number of years and paths must be positive");
+
+        this.annualCashFlow = annualCashFlow;
+        this.years = years;
+        this.paths = paths;
+
+        //
+        // Compute the asset allocation and the lognormal drift for each asset class.
+        // The drift is chosen so that the expected annual return is the supplied return.
+        //
+        double total = 0.0;
+        for (double value : classValues)
+            total += value;
+
+        startValue = total;
+        weights = new double[classValues.length];
+        drifts = new double[classValues.length];
+        this.volatilities = Arrays.copyOf(volatilities, volatilities.length);
+        for (int i=0; i<classValues.length; i++) {
+            weights[i] = (total > 0.0 ? classValues[i]/total : 1.0/(double)classValues.length);
+            drifts[i] = Math.log1p(returns[i]) - 0.5*volatilities[i]*volatilities[i];
+        }
+
+        //
+        // Split a random number stream for each block of paths
+        //
+        values = new float[years+1][paths];
+        int blockCount = (paths+BLOCK_SIZE-1)/BLOCK_SIZE;
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blockCount];
+        for (int i=0; i<blockCount; i++)
+            streams[i] = random.split();
+
+        //
+        // Simulate the paths
+        //
+        ForkJoinPool.commonPool().invoke(new SimulationTask(streams, 0, blockCount));
+
+        //
+        // Compute the percentiles for each year
+        //
+        percentileValues = new double[PERCENTILES.length][years+1];
+        for (int year=0; year<=years; year++) {
+            float[] yearValues = values[year];
+            Arrays.parallelSort(yearValues);
+            for (int i=0; i<PERCENTILES.length; i++) {
+                int index = (int)Math.min((long)PERCENTILES[i]*(long)paths/100L, (long)(paths-1));
+                percentileValues[i][year] = yearValues[index];
+            }
+        }
+    }
+
+    /**
+     * Get the starting portfolio value
+     *
+     * @return                      Starting value
+     */
+    public double getStartValue() {
+        return startValue;
+    }
+
+    /**
+     * Get the number of years in the projection
+     *
+     * @return                      Number of years
+     */
+    public int getYears() {
+        return years;
+    }
+
+    /**
+     * Get the portfolio values for a percentile
+     *
+     * @param       index           Index into the PERCENTILES array
+     * @return                      Portfolio value for each year (index 0 is the starting value)
+     */
+    public double[] getPercentileValues(int index) {
+        return percentileValues[index];
+    }
+
+    /**
+     * Get the fraction of paths that still have a positive value at the end
+     * of the projection
+     *
+     * @return                      Success rate (1.00 = 100%)
+     */
+    public double getSuccessRate() {
+        float[] yearValues = values[years];
+        int index = 0;
+        while (index < paths && yearValues[index] <= 0.0f)
+            index++;
+
+        return (double)(paths-index)/(double)paths;
+    }
+
+    /**
+     * Get the current value for each security type.  The security types are in the
+     * same order as SecurityRecord.getTypes().  The current security price is used
+     * and the average cost is used if the security does not have a price.
+     *
+     * @param       currentDate     Current date
+     * @return                      Value for each security type
+     */
+    public static double[] getHoldingValues(Date currentDate) {
+        int[] types = SecurityRecord.getTypes();
+        double[] classValues = new double[types.length];
+        CapitalGainsEngine engine = new CapitalGainsEngine(currentDate, false);
+        for (SecurityHolding h : engine.getHoldings()) {
+            double shares = h.getTotalShares();
+            if (shares <= 0.0)
+                continue;
+
+            SecurityRecord security = h.getSecurity();
+            double price = security.getPrice();
+            double value = (price != 0.0 ? shares*price : h.getTotalCost());
+            for (int i=0; i<types.length; i++) {
+                if (types[i] == security.getType()) {
+                    classValues[i] += value;
+                    break;
+                }
+            }
+        }
+
+        return classValues;
+    }
+
+    /**
+     * Get the net annual cash flow from the scheduled transactions.  This is the
+     * projected change in the total balance for the non-investment accounts over
+     * the next year.
+     *
+     * @param       currentDate     Current date
+     * @return                      Annual cash flow
+     */
+    public static double getScheduledCashFlow(Date currentDate) {
+        CashFlowForecast forecast = new CashFlowForecast(currentDate, 1);
+        double[] balances = forecast.getTotalBalances();
+        double cashFlow = balances[balances.length-1] - balances[0];
+        return (double)Math.round(cashFlow*100.0)/100.0;
+    }
+
+    /**
+     * Simulate the paths for a range of blocks
+     */
+    private final class SimulationTask extends RecursiveAction {
+
+        /** Random number streams */
+        private final SplittableRandom[] streams;
+
+        /** Start block (inclusive) */
+        private final int start;
+
+        /** End block (exclusive) */
+        private final int end;
+
+        /** Second normal deviate from the polar method */
+        private double spareDeviate;
+
+        /** TRUE if the second normal deviate is available */
+        private boolean haveSpare;
+
+        /**
+         * Create the simulation task
+         *
+         * @param       streams         Random number streams
+         * @param       start           Start block
+         * @param       end             End block
+         */
+        private SimulationTask(SplittableRandom[] streams, int start, int end) {
+            this.streams = streams;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Simulate the paths, splitting the range if it is too large
+         */
+        @Override
+        protected void compute() {
+            if (end-start <= TASK_THRESHOLD) {
+                for (int block=start; block<end; block++)
+                    simulateBlock(block);
+            } else {
+                int mid = (start+end)>>>1;
+                invokeAll(new SimulationTask(streams, start, mid),
+                          new SimulationTask(streams, mid, end));
+            }
+        }
+
+        /**
+         * Simulate the paths in a block
+         *
+         * @param       block           Block number
+         */
+        private void simulateBlock(int block) {
+            SplittableRandom random = streams[block];
+            int firstPath = block*BLOCK_SIZE;
+            int lastPath = Math.min(firstPath+BLOCK_SIZE, paths);
+            haveSpare = false;
+            for (int path=firstPath; path<lastPath; path++) {
+                double value = startValue;
+                values[0][path] = (float)value;
+                for (int year=1; year<=years; year++) {
+                    double growth = 0.0;
+                    for (int i=0; i<weights.length; i++) {
+                        if (weights[i] != 0.0)
+                            growth += weights[i]*Math.exp(drifts[i]+volatilities[i]*nextGaussian(random));
+                    }
+
+                    value = Math.max(value*growth+annualCashFlow, 0.0);
+                    values[year][path] = (float)value;
+                }
+            }
+        }
+
+        /**
+         * Get the next normal deviate using the Marsaglia polar method
+         *
+         * @param       random          Random number stream
+         * @return                      Normal deviate with mean 0 and standard deviation 1
+         */
+        private double nextGaussian(SplittableRandom random) {
+            if (haveSpare) {
+                haveSpare = false;
+                return spareDeviate;
+            }
+
+            double u, v, s;
+            do {
+                u = 2.0*random.nextDouble()-1.0;
+                v = 2.0*random.nextDouble()-1.0;
+                s = u*u+v*v;
+            } while (s >= 1.0 || s == 0.0);
+
+            double scale = Math.sqrt(-2.0*Math.log(s)/s);
+            spareDeviate = v*scale;
+            haveSpare = true;
+            return u*scale;
+        }
+    }
+}
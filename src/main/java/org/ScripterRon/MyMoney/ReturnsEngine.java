@@ -0,0 +1,849 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The returns engine computes the money-weighted return (XIRR) and the time-weighted
+ * return (TWR) for each security holding and for each investment account over a
+ * period.  Returns are computed from the point of view of the investor: a BUY or an
+ * EXPENSE is money put into the holding while a SELL, INCOME or RETURN_OF_CAPITAL is
+ * money taken out.  Reinvested income stays in the holding and is not a cash flow.
+ * An EXCHANGE or SPIN_OFF moves the market value of the shares from the base
+ * security to the new security.
+ * <p>
+ * The investment transactions are partitioned by holding in the same way as the
+ * capital gains engine and each partition is processed on the common ForkJoin pool.
+ * A partition reduces its transactions to primitive arrays containing the event times,
+ * the shares held after each event and the net cash flow for each event.  The share
+ * value at a date is the number of shares multiplied by the security price on that
+ * date, which is found using a binary search of the price history.
+ * <p>
+ * The period starts at the end of the start date, so transactions on the start date
+ * are included in the starting value.  The time-weighted return chains the returns
+ * for the sub-periods between cash flows.  Both returns are NaN if the holding has
+ * no value during the period.
+ */
+public final class ReturnsEngine {
+
+    /** Number of partitions processed by a single task */
+    private static final int TASK_THRESHOLD = 4;
+
+    /** Milliseconds per year */
+    private static final double YEAR_MILLIS = 365.25*24.0*60.0*60.0*1000.0;
+
+    /** Solver tolerance */
+    private static final double TOLERANCE = 1.0e-10;
+
+    /** Maximum number of solver iterations */
+    private static final int MAX_ITERATIONS = 100;
+
+    /** Period start time */
+    private final long startTime;
+
+    /** Period end time */
+    private final long endTime;
+
+    /** Holding partitions */
+    private final List<Partition> partitions = new ArrayList<>();
+
+    /** Security returns sorted by security name */
+    private final List<PeriodReturn> securityReturns = new ArrayList<>();
+
+    /** Account returns indexed by account identifier */
+    private final Map<Integer, PeriodReturn> accountReturns = new HashMap<>();
+
+    /**
+     * Compute the returns for all investment accounts
+     *
+     * @param       startDate       Period start date
+     * @param       endDate         Period end date
+     */
+    public ReturnsEngine(Date startDate, Date endDate) {
+        if (endDate.compareTo(startDate) <= 0)
+            throw new IllegalArgumentException("The end date must be later than the start date");
+
+        startTime = startDate.getTime();
+        endTime = endDate.getTime();
+
+        //
+        // Partition the investment transactions by holding
+        //
+        Map<Long, Partition> partitionMap = new HashMap<>();
+        Map<Integer, PriceIndex> priceMap = new HashMap<>();
+        for (TransactionRecord t : TransactionRecord.getAllTransactions()) {
+            if (t.getDate().getTime() > endTime)
+                break;
+
+            SecurityRecord s = t.getSecurity();
+            if (s == null)
+                continue;
+
+            addTransaction(partitionMap, priceMap, t.getAccount(), s, t);
+            int action = t.getAction();
+            if (action == TransactionRecord.EXCHANGE || action == TransactionRecord.SPIN_OFF)
+                addTransaction(partitionMap, priceMap, t.getAccount(), t.getNewSecurity(), t);
+        }
+
+        //
+        // Compute the holding returns.  The partitions are processed in parallel.
+        //
+        if (!partitions.isEmpty())
+            ForkJoinPool.commonPool().invoke(new ReturnTask(partitions, 0, partitions.size()));
+
+        //
+        // Compute the account returns
+        //
+        Map<Integer, List<Partition>> accountPartitions = new HashMap<>();
+        for (Partition p : partitions) {
+            if (p.result == null)
+                continue;
+
+            securityReturns.add(p.result);
+            List<Partition> list = accountPartitions.get(p.account.getID());
+            if (list == null) {
+                list = new ArrayList<>();
+                accountPartitions.put(p.account.getID(), list);
+            }
+
+            list.add(p);
+        }
+
+        for (List<Partition> list : accountPartitions.values()) {
+            PeriodReturn result = computeAccountReturn(list);
+            accountReturns.put(result.getAccount().getID(), result);
+        }
+
+        Collections.sort(securityReturns, new Comparator<PeriodReturn>() {
+            @Override
+            public int compare(PeriodReturn r1, PeriodReturn r2) {
+                int cmp = r1.getSecurity().getName().compareTo(r2.getSecurity().getName());
+                if (cmp == 0)
+                    cmp = r1.getAccount().getName().compareTo(r2.getAccount().getName());
+
+                return cmp;
+            }
+        });
+    }
+
+    /**
+     * Get the returns for each security holding sorted by security name
+     *
+     * @return                      Security returns
+     */
+    public List<PeriodReturn> getSecurityReturns() {
+        return securityReturns;
+    }
+
+    /**
+     * Get the return for an investment account
+     *
+     * @param       account         Investment account
+     * @return                      Account return or null if the account has no holdings
+     */
+    public PeriodReturn getAccountReturn(AccountRecord account) {
+        return accountReturns.get(account.getID());
+    }
+
+    /**
+     * Compute the internal rate of return for a set of cash flows.  The rate is
+     * found using Newton-Raphson iteration safeguarded by bisection: the root is
+     * kept bracketed and a bisection step is taken whenever the Newton step would
+     * leave the bracket.
+     *
+     * @param       times           Cash flow times in years
+     * @param       flows           Cash flows
+     * @param       count           Number of cash flows
+     * @return                      Annual rate (1.00 = 100%) or NaN if there is no solution
+     */
+    public static double getXirr(double[] times, double[] flows, int count) {
+        boolean positive = false;
+        boolean negative = false;
+        for (int i=0; i<count; i++) {
+            if (flows[i] > 0.0)
+                positive = true;
+            else if (flows[i] < 0.0)
+                negative = true;
+        }
+
+        if (!positive || !negative)
+            return Double.NaN;
+
+        //
+        // Bracket the root
+        //
+        double low = -0.9999;
+        double high = 1.0;
+        double fLow = getNetValue(times, flows, count, low);
+        double fHigh = getNetValue(times, flows, count, high);
+        while (fLow*fHigh > 0.0 && high < 1.0e6) {
+            high *= 4.0;
+            fHigh = getNetValue(times, flows, count, high);
+        }
+
+        if (Double.isNaN(fLow) || Double.isNaN(fHigh) || fLow*fHigh > 0.0)
+            return Double.NaN;
+
+        //
+        // Safeguarded Newton-Raphson iteration
+        //
+        double rate = Math.min(Math.max(0.1, low), high);
+        for (int iteration=0; iteration<MAX_ITERATIONS; iteration++) {
+            double logRate = Math.log1p(rate);
+            double value = 0.0;
+            double derivative = 0.0;
+            for (int i=0; i<count; i++) {
+                double pv = flows[i]*Math.exp(-times[i]*logRate);
+                value += pv;
+                derivative -= times[i]*pv;
+            }
+
+            derivative /= (1.0+rate);
+            if (value == 0.0)
+                return rate;
+
+            if ((value < 0.0) == (fLow < 0.0)) {
+                low = rate;
+                fLow = value;
+            } else {
+                high = rate;
+            }
+
+            double nextRate = (derivative != 0.0 ? rate-value/derivative : Double.NaN);
+            if (Double.isNaN(nextRate) || nextRate <= low || nextRate >= high)
+                nextRate = 0.5*(low+high);
+
+            if (Math.abs(nextRate-rate) < TOLERANCE)
+                return nextRate;
+
+            rate = nextRate;
+        }
+
+        return rate;
+    }
+
+    /**
+     * Compute the net present value of a set of cash flows
+     *
+     * @param       times           Cash flow times in years
+     * @param       flows           Cash flows
+     * @param       count           Number of cash flows
+     * @param       rate            Annual rate
+     * @return                      Net present value
+     */
+    private static double getNetValue(double[] times, double[] flows, int count, double rate) {
+        double logRate = Math.log1p(rate);
+        double value = 0.0;
+        for (int i=0; i<count; i++)
+            value += flows[i]*Math.exp(-times[i]*logRate);
+
+        return value;
+    }
+
+    /**
+     * Add a transaction to a holding partition
+     *
+     * @param       partitionMap    Partition map
+     * @param       priceMap        Price index map
+     * @param       account         Holding account
+     * @param       security        Holding security
+     * @param       t               Transaction
+     */
+    private void addTransaction(Map<Long, Partition> partitionMap, Map<Integer, PriceIndex> priceMap,
+                                AccountRecord account, SecurityRecord security, TransactionRecord t) {
+        Long key = ((long)account.getID()<<32) | (security.getID()&0xffffffffL);
+        Partition p = partitionMap.get(key);
+        if (p == null) {
+            PriceIndex prices = priceMap.get(security.getID());
+            if (prices == null) {
+                prices = new PriceIndex(security);
+                priceMap.put(security.getID(), prices);
+            }
+
+            p = new Partition(account, security, prices);
+            partitionMap.put(key, p);
+            partitions.add(p);
+        }
+
+        p.transactions.add(t);
+    }
+
+    /**
+     * Compute the return for an investment account by combining the holding
+     * partitions for the account
+     *
+     * @param       list            Holding partitions
+     * @return                      Account return
+     */
+    private PeriodReturn computeAccountReturn(List<Partition> list) {
+
+        //
+        // Get the event times for the account
+        //
+        long[] times = new long[0];
+        for (Partition p : list) {
+            int from = p.findAfter(startTime);
+            int to = p.findAfter(endTime);
+            int count = times.length;
+            times = Arrays.copyOf(times, count+to-from);
+            System.arraycopy(p.times, from, times, count, to-from);
+        }
+
+        Arrays.sort(times);
+
+        //
+        // Compute the starting and ending values and the money-weighted return
+        //
+        double startValue = 0.0;
+        double endValue = 0.0;
+        int flowCount = 0;
+        for (Partition p : list)
+            flowCount += p.flowCount;
+
+        double[] flowTimes = new double[flowCount];
+        double[] flows = new double[flowCount];
+        flowCount = 0;
+        for (Partition p : list) {
+            startValue += p.result.getStartValue();
+            endValue += p.result.getEndValue();
+            System.arraycopy(p.flowTimes, 0, flowTimes, flowCount, p.flowCount);
+            System.arraycopy(p.flows, 0, flows, flowCount, p.flowCount);
+            flowCount += p.flowCount;
+        }
+
+        double xirr = getXirr(flowTimes, flows, flowCount);
+
+        //
+        // Compute the time-weighted return by chaining the sub-period returns
+        //
+        double product = 1.0;
+        boolean valued = false;
+        double previousValue = startValue;
+        long previousTime = Long.MIN_VALUE;
+        for (long time : times) {
+            if (time == previousTime)
+                continue;
+
+            previousTime = time;
+            double value = 0.0;
+            double flow = 0.0;
+            for (Partition p : list) {
+                value += p.getValue(time);
+                flow += p.getFlow(time);
+            }
+
+            if (previousValue > 0.0) {
+                product *= (value+flow)/previousValue;
+                valued = true;
+            }
+
+            previousValue = value;
+        }
+
+        if (previousValue > 0.0) {
+            product *= endValue/previousValue;
+            valued = true;
+        }
+
+        return new PeriodReturn(list.get(0).account, null, startValue, endValue, xirr,
+                                (valued ? product-1.0 : Double.NaN));
+    }
+
+    /**
+     * Security price index.  The prices are stored in parallel arrays sorted by date.
+     */
+    private static final class PriceIndex {
+
+        /** Price times */
+        private final long[] times;
+
+        /** Prices */
+        private final double[] prices;
+
+        /**
+         * Create the price index for a security
+         *
+         * @param       security        Security
+         */
+        private PriceIndex(SecurityRecord security) {
+            SortedSet<PriceHistory> history = security.getPriceHistory();
+            times = new long[history.size()];
+            prices = new double[history.size()];
+            int index = 0;
+            for (PriceHistory ph : history) {
+                times[index] = ph.getDate().getTime();
+                prices[index] = ph.getPrice();
+                index++;
+            }
+        }
+
+        /**
+         * Get the price on a date.  The most recent price on or before the date is
+         * returned.  The earliest price is returned if there is no price before the
+         * date.
+         *
+         * @param       time            Date
+         * @return                      Price or zero if there is no price history
+         */
+        private double getPrice(long time) {
+            if (times.length == 0)
+                return 0.0;
+
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low+high)>>>1;
+                if (times[mid] <= time)
+                    low = mid+1;
+                else
+                    high = mid;
+            }
+
+            return prices[Math.max(low-1, 0)];
+        }
+    }
+
+    /**
+     * Holding partition
+     */
+    private final class Partition {
+
+        /** Holding account */
+        private final AccountRecord account;
+
+        /** Holding security */
+        private final SecurityRecord security;
+
+        /** Security prices */
+        private final PriceIndex prices;
+
+        /** Transactions for the holding */
+        private final List<TransactionRecord> transactions = new ArrayList<>();
+
+        /** Event times */
+        private long[] times;
+
+        /** Shares held after each event */
+        private double[] shares;
+
+        /** Net cash flow for each event */
+        private double[] eventFlows;
+
+        /** Price from the most recent BUY or SELL (used when there is no price history) */
+        private double[] tradePrices;
+
+        /** Number of events */
+        private int count;
+
+        /** Cash flow times for the period in years */
+        private double[] flowTimes;
+
+        /** Cash flows for the period */
+        private double[] flows;
+
+        /** Number of cash flows for the period */
+        private int flowCount;
+
+        /** Holding return or null if the holding has no value during the period */
+        private PeriodReturn result;
+
+        /**
+         * Create a holding partition
+         *
+         * @param       account         Holding account
+         * @param       security        Holding security
+         * @param       prices          Security prices
+         */
+        private Partition(AccountRecord account, SecurityRecord security, PriceIndex prices) {
+            this.account = account;
+            this.security = security;
+            this.prices = prices;
+        }
+
+        /**
+         * Build the event arrays and compute the return for the period
+         */
+        private void compute() {
+            buildEvents();
+
+            //
+            // Get the starting value and the events during the period
+            //
+            double startValue = getValue(startTime);
+            double endValue = getValue(endTime);
+            int from = findAfter(startTime);
+            int to = findAfter(endTime);
+            if (startValue == 0.0 && endValue == 0.0 && from == to)
+                return;
+
+            //
+            // Build the cash flows for the money-weighted return
+            //
+            flowTimes = new double[to-from+2];
+            flows = new double[to-from+2];
+            if (startValue != 0.0) {
+                flowTimes[flowCount] = 0.0;
+                flows[flowCount++] = -startValue;
+            }
+
+            for (int i=from; i<to; i++) {
+                if (eventFlows[i] != 0.0) {
+                    flowTimes[flowCount] = (double)(times[i]-startTime)/YEAR_MILLIS;
+                    flows[flowCount++] = eventFlows[i];
+                }
+            }
+
+            if (endValue != 0.0) {
+                flowTimes[flowCount] = (double)(endTime-startTime)/YEAR_MILLIS;
+                flows[flowCount++] = endValue;
+            }
+
+            double xirr = getXirr(flowTimes, flows, flowCount);
+
+            //
+            // Compute the time-weighted return by chaining the sub-period returns
+            //
+            double product = 1.0;
+            boolean valued = false;
+            double previousValue = startValue;
+            for (int i=from; i<to; i++) {
+                double value = getValueAt(i, times[i]);
+                if (previousValue > 0.0) {
+                    product *= (value+eventFlows[i])/previousValue;
+                    valued = true;
+                }
+
+                previousValue = value;
+            }
+
+            if (previousValue > 0.0) {
+                product *= endValue/previousValue;
+                valued = true;
+            }
+
+            result = new PeriodReturn(account, security, startValue, endValue, xirr,
+                                      (valued ? product-1.0 : Double.NaN));
+        }
+
+        /**
+         * Build the event arrays.  Transactions on the same date are combined into
+         * a single event.
+         */
+        private void buildEvents() {
+            int size = Math.max(transactions.size(), 1);
+            times = new long[size];
+            shares = new double[size];
+            eventFlows = new double[size];
+            tradePrices = new double[size];
+            double currentShares = 0.0;
+            double tradePrice = 0.0;
+            for (TransactionRecord t : transactions) {
+                long time = t.getDate().getTime();
+                int action = t.getAction();
+                boolean baseSecurity = (t.getSecurity() == security);
+                double tShares = t.getShares();
+                double amount = t.getAmount();
+                double flow = 0.0;
+                switch (action) {
+                    case TransactionRecord.BUY:
+                        currentShares += tShares;
+                        flow = -amount;
+                        if (tShares != 0.0)
+                            tradePrice = amount/tShares;
+                        break;
+
+                    case TransactionRecord.SELL:
+                        currentShares -= tShares;
+                        flow = -amount;
+                        if (tShares != 0.0)
+                            tradePrice = -amount/tShares;
+                        break;
+
+                    case TransactionRecord.REINVEST:
+                    case TransactionRecord.SPLIT:
+                        currentShares += tShares;
+                        break;
+
+                    case TransactionRecord.INCOME:
+                    case TransactionRecord.EXPENSE:
+                    case TransactionRecord.RETURN_OF_CAPITAL:
+                        flow = -amount;
+                        break;
+
+                    case TransactionRecord.EXCHANGE:
+                        if (baseSecurity) {
+                            flow = tShares*getPrice(time, tradePrice);
+                            currentShares -= tShares;
+                        } else {
+                            currentShares += t.getNewShares();
+                            flow = -t.getNewShares()*getPrice(time, tradePrice);
+                        }
+                        break;
+
+                    case TransactionRecord.SPIN_OFF:
+                        if (baseSecurity) {
+                            flow = t.getNewShares()*getSpinOffPrice(t);
+                        } else {
+                            currentShares += t.getNewShares();
+                            flow = -t.getNewShares()*getPrice(time, tradePrice);
+                        }
+                        break;
+                }
+
+                if (Math.abs(currentShares) < 0.00005)
+                    currentShares = 0.0;
+
+                if (count == 0 || times[count-1] != time)
+                    times[count++] = time;
+
+                shares[count-1] = currentShares;
+                eventFlows[count-1] += flow;
+                tradePrices[count-1] = tradePrice;
+            }
+        }
+
+        /**
+         * Get the price for the new security in a spin-off
+         *
+         * @param       t               SPIN_OFF transaction
+         * @return                      Price
+         */
+        private double getSpinOffPrice(TransactionRecord t) {
+            double price = new PriceIndex(t.getNewSecurity()).getPrice(t.getDate().getTime());
+            if (price == 0.0 && t.getNewShares() != 0.0)
+                price = t.getAmount()/t.getNewShares();
+
+            return price;
+        }
+
+        /**
+         * Get the security price on a date
+         *
+         * @param       time            Date
+         * @param       tradePrice      Most recent trade price
+         * @return                      Price
+         */
+        private double getPrice(long time, double tradePrice) {
+            double price = prices.getPrice(time);
+            return (price != 0.0 ? price : tradePrice);
+        }
+
+        /**
+         * Locate the first event after a time
+         *
+         * @param       time            Time
+         * @return                      Event index
+         */
+        private int findAfter(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low+high)>>>1;
+                if (times[mid] <= time)
+                    low = mid+1;
+                else
+                    high = mid;
+            }
+
+            return low;
+        }
+
+        /**
+         * Get the holding value on a date after the events for the date
+         *
+         * @param       time            Date
+         * @return                      Holding value
+         */
+        private double getValue(long time) {
+            int index = findAfter(time)-1;
+            return (index >= 0 ? getValueAt(index, time) : 0.0);
+        }
+
+        /**
+         * Get the holding value using the shares held after an event
+         *
+         * @param       index           Event index
+         * @param       time            Date
+         * @return                      Holding value
+         */
+        private double getValueAt(int index, long time) {
+            return shares[index]*getPrice(time, tradePrices[index]);
+        }
+
+        /**
+         * Get the net cash flow on a date
+         *
+         * @param       time            Date
+         * @return                      Net cash flow
+         */
+        private double getFlow(long time) {
+            int index = findAfter(time)-1;
+            return (index >= 0 && times[index] == time ? eventFlows[index] : 0.0);
+        }
+    }
+
+    /**
+     * Compute the returns for a range of partitions
+     */
+    private static final class ReturnTask extends RecursiveAction {
+
+        /** Holding partitions */
+        private final List<Partition> partitions;
+
+        /** Start index (inclusive) */
+        private final int start;
+
+        /** End index (exclusive) */
+        private final int end;
+
+        /**
+         * Create the return task
+         *
+         * @param       partitions      Holding partitions
+         * @param       start           Start index
+         * @param       end             End index
+         */
+        private ReturnTask(List<Partition> partitions, int start, int end) {
+            this.partitions = partitions;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Compute the returns, splitting the range if it is too large
+         */
+        @Override
+        protected void compute() {
+            if (end-start <= TASK_THRESHOLD) {
+                for (int i=start; i<end; i++)
+                    partitions.get(i).compute();
+            } else {
+                int mid = (start+end)>>>1;
+                invokeAll(new ReturnTask(partitions, start, mid),
+                          new ReturnTask(partitions, mid, end));
+            }
+        }
+    }
+
+    /**
+     * Return for a security holding or an investment account
+     */
+    public static final class PeriodReturn {
+
+        /** Investment account */
+        private final AccountRecord account;
+
+        /** Security or null for an account return */
+        private final SecurityRecord security;
+
+        /** Starting value */
+        private final double startValue;
+
+        /** Ending value */
+        private final double endValue;
+
+        /** Money-weighted return */
+        private final double xirr;
+
+        /** Time-weighted return */
+        private final double twr;
+
+        /**
+         * Create a period return
+         *
+         * @param       account         Investment account
+         * @param       security        Security or null for an account return
+         * @param       startValue      Starting value
+         * @param       endValue        Ending value
+         * @param       xirr            Money-weighted return
+         * @param       twr             Time-weighted return
+         */
+        private PeriodReturn(AccountRecord account, SecurityRecord security, double startValue,
+                             double endValue, double xirr, double twr) {
+            this.account = account;
+            this.security = security;
+            this.startValue = startValue;
+            this.endValue = endValue;
+            this.xirr = xirr;
+            this.twr = twr;
+        }
+
+        /**
+         * Get the investment account
+         *
+         * @return                      Account
+         */
+        public AccountRecord getAccount() {
+            return account;
+        }
+
+        /**
+         * Get the security
+         *
+         * @return                      Security or null for an account return
+         */
+        public SecurityRecord getSecurity() {
+            return security;
+        }
+
+        /**
+         * Get the value at the start of the period
+         *
+         * @return                      Starting value
+         */
+        public double getStartValue() {
+            return startValue;
+        }
+
+        /**
+         * Get the value at the end of the period
+         *
+         * @return                      Ending value
+         */
+        public double getEndValue() {
+            return endValue;
+        }
+
+        /**
+         * Get the annualized money-weighted return
+         *
+         * @return                      Return (1.00 = 100%) or NaN
+         */
+        public double getXirr() {
+            return xirr;
+        }
+
+        /**
+         * Get the cumulative time-weighted return for the period
+         *
+         * @return                      Return (1.00 = 100%) or NaN
+         */
+        public double getTimeWeightedReturn() {
+            return twr;
+        }
+    }
+}
@@ -43,13 +43,13 @@ public class ScheduleAccountComboBoxModel extends AbstractListModel implements C
      * @param       account             Current account or null
      */
     public ScheduleAccountComboBoxModel(AccountRecord account) {
-        accountList = new ArrayList<AccountRecord>(AccountRecord.accounts.size());
+        accountList = new ArrayList<AccountRecord>(AccountRecord.getAccounts().size());
         
         //
         // Add the available BANK and CREDIT accounts.  A hidden account will not
         // be included unless it is the current account.
         //
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (!a.isHidden() || a == account) {
                 int accountType = a.getType();
                 if (accountType == AccountRecord.BANK || accountType == AccountRecord.CREDIT)
@@ -180,8 +180,9 @@ public final class ScheduleDialog extends JDialog implements ActionListener {
                                             "Confirm Delete", JOptionPane.YES_NO_OPTION);
                     if (option == JOptionPane.YES_OPTION) {
                         int modelRow = table.convertRowIndexToModel(row);
-                        ScheduleRecord transaction = ScheduleRecord.transactions.get(modelRow);
-                        ScheduleRecord.transactions.remove(modelRow);
+                        ScheduleRecord transaction = ScheduleRecord.getTransactions().get(modelRow);
+                        ScheduleRecord.getTransactions().remove(modelRow);
+                        LedgerSnapshot.ledgerModified();
                         transaction.clearReferences();
                         tableModel.fireTableRowsDeleted(modelRow, modelRow);
                         Main.dataModified = true;
@@ -296,7 +296,7 @@ public final class ScheduleEditDialog extends JDialog implements ActionListener
                 transaction = null;
                 title = "Add Scheduled Transaction";
             } else {
-                transaction = ScheduleRecord.transactions.get(index);
+                transaction = ScheduleRecord.getTransactions().get(index);
                 title = "Edit Scheduled Transaction";
             }
             
@@ -512,7 +512,7 @@ public final class ScheduleEditDialog extends JDialog implements ActionListener
         // Remove an existing transaction
         //
         if (transaction != null) {
-            ListIterator<ScheduleRecord> li = ScheduleRecord.transactions.listIterator();
+            ListIterator<ScheduleRecord> li = ScheduleRecord.getTransactions().listIterator();
             transactionPosition = 0;
 
             while (li.hasNext()) {
@@ -550,7 +550,8 @@ public final class ScheduleEditDialog extends JDialog implements ActionListener
         // Add the new transaction
         //
         if (transactionPosition >= 0) {
-            ScheduleRecord.transactions.add(transactionPosition, transaction);
+            ScheduleRecord.getTransactions().add(transactionPosition, transaction);
+            LedgerSnapshot.ledgerModified();
             index = transactionPosition;
         } else {
             index = ScheduleRecord.insertTransaction(transaction);
@@ -0,0 +1,386 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The schedule processor creates the transactions for scheduled transactions that
+ * are due.  The due scheduled transactions are placed in a priority queue ordered
+ * by the scheduled date, so a recurring transaction is rescheduled by adding it back
+ * to the queue.  Scheduled transactions with the same date are processed in the
+ * order they were added to the queue, which is the same order used by the scheduled
+ * transaction list.
+ * <p>
+ * The balance for a loan account is computed the first time a loan payment is
+ * processed for the account and is then updated as each new transaction is created.
+ * The new transactions are added to the transaction list as a single batch once all
+ * of the due scheduled transactions have been processed.
+ */
+public final class ScheduleProcessor {
+
+    /** Due scheduled transactions */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+    /** Loan balances indexed by the account identifier */
+    private final Map<Integer, Double> loanBalances = new HashMap<>();
+
+    /** New transactions */
+    private final List<TransactionRecord> newTransactions = new ArrayList<>();
+
+    /** Queue sequence number */
+    private long sequence;
+
+    /**
+     * Create a schedule processor
+     */
+    private ScheduleProcessor() {
+    }
+
+    /**
+     * Process the scheduled transactions that are due on or before the current date
+     *
+     * @param       currentDate     Current date
+     * @return                      TRUE if any transactions were processed
+     */
+    public static boolean processScheduledTransactions(Date currentDate) {
+        ScheduleProcessor processor = new ScheduleProcessor();
+
+        //
+        // Move the due scheduled transactions to the priority queue.  The scheduled
+        // transaction list is sorted by date, so the due transactions are at the
+        // front of the list.
+        //
+        ListIterator<ScheduleRecord> li = ScheduleRecord.getTransactions().listIterator();
+        while (li.hasNext()) {
+            ScheduleRecord r = li.next();
+            if (r.getDate().compareTo(currentDate) > 0)
+                break;
+
+            li.remove();
+            processor.addEntry(r);
+        }
+
+        if (processor.queue.isEmpty())
+            return false;
+
+        //
+        // Process the due scheduled transactions until we reach the current date
+        //
+        while (!processor.queue.isEmpty() &&
+                            processor.queue.peek().schedule.getDate().compareTo(currentDate) <= 0) {
+            ScheduleRecord r = processor.queue.poll().schedule;
+            if (processor.processEntry(r))
+                processor.addEntry(r);
+        }
+
+        //
+        // Return the rescheduled transactions to the scheduled transaction list
+        //
+        while (!processor.queue.isEmpty())
+            ScheduleRecord.insertTransaction(processor.queue.poll().schedule);
+
+        //
+        // Add the new transactions to the transaction list
+        //
+        TransactionRecord.insertTransactions(processor.newTransactions);
+        Main.dataModified = true;
+        return true;
+    }
+
+    /**
+     * Get the next date for a recurring scheduled transaction
+     *
+     * @param       scheduleType    Schedule type
+     * @param       date            Current scheduled date
+     * @return                      Next scheduled date
+     */
+    public static Date getNextDate(int scheduleType, Date date) {
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(date);
+        switch (scheduleType) {
+            case ScheduleRecord.WEEKLY:
+                cal.add(Calendar.DAY_OF_YEAR, 7);
+                break;
+
+            case ScheduleRecord.BIWEEKLY:
+                int day = cal.get(Calendar.DAY_OF_MONTH);
+                if (day == 1) {
+                    cal.set(Calendar.DAY_OF_MONTH, 15);
+                } else {
+                    cal.set(Calendar.DAY_OF_MONTH, 1);
+                    cal.add(Calendar.MONTH, 1);
+                }
+                break;
+
+            case ScheduleRecord.MONTHLY:
+                cal.add(Calendar.MONTH, 1);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Schedule type "+scheduleType+" is not recognized");
+        }
+
+        return cal.getTime();
+    }
+
+    /**
+     * Get the loan account for a scheduled loan payment.  We always have two
+     * splits for a scheduled loan payment: one for the interest payment and the
+     * other for the principal payment.
+     *
+     * @param       r               Scheduled transaction
+     * @return                      Loan account or null if this is not a loan payment
+     */
+    public static AccountRecord getLoanAccount(ScheduleRecord r) {
+        List<TransactionSplit> splits = r.getSplits();
+        if (splits != null && splits.size() == 2 && r.getAmount() < 0.0) {
+            for (TransactionSplit split : splits) {
+                AccountRecord loanAccount = split.getAccount();
+                if (loanAccount != null && loanAccount.getType() == AccountRecord.LOAN)
+                    return loanAccount;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Allocate a loan payment between interest and principal.  The interest is
+     * based on the current loan balance and the loan rate.  The principal payment
+     * will not exceed the loan balance.
+     *
+     * @param       loanAccount     Loan account
+     * @param       balance         Current loan balance
+     * @param       amount          Payment amount
+     * @return                      Array containing the interest and principal payments
+     */
+    public static double[] allocateLoanPayment(AccountRecord loanAccount, double balance, double amount) {
+        double rate = loanAccount.getLoanRate()/12.0;
+        double interest = (double)Math.round(balance*rate*100.0)/100.0;
+        double principal = (double)Math.round((amount-interest)*100.0)/100.0;
+        if (principal < balance)
+            principal = balance;
+
+        return new double[] {interest, principal};
+    }
+
+    /**
+     * Add a scheduled transaction to the priority queue
+     *
+     * @param       r               Scheduled transaction
+     */
+    private void addEntry(ScheduleRecord r) {
+        queue.add(new Entry(r, sequence++));
+    }
+
+    /**
+     * Create the transaction for a scheduled transaction
+     *
+     * @param       r               Scheduled transaction
+     * @return                      TRUE if the scheduled transaction should be rescheduled
+     */
+    private boolean processEntry(ScheduleRecord r) {
+        boolean rescheduleTransaction = true;
+        Date scheduledDate = r.getDate();
+
+        //
+        // Build the new transaction
+        //
+        TransactionRecord t = new TransactionRecord(scheduledDate, r.getAccount());
+        t.setName(r.getDescription());
+        t.setAmount(r.getAmount());
+        t.setCategory(r.getCategory());
+        t.setTransferAccount(r.getTransferAccount());
+        t.setMemo("Scheduled transaction");
+
+        //
+        // Copy any splits and update a loan payment based on the current
+        // loan balance
+        //
+        List<TransactionSplit> splits = r.getSplits();
+        if (splits != null) {
+            splits = TransactionSplit.copySplits(splits);
+            t.setSplits(splits);
+
+            AccountRecord loanAccount = getLoanAccount(r);
+            if (loanAccount != null) {
+                double balance = getLoanBalance(loanAccount);
+
+                //
+                // The transaction amount will be allocated between the two
+                // splits based on the loan rate.  The total payment will then
+                // be set to the sum of the interest and principal payments.
+                //
+                double[] payment = allocateLoanPayment(loanAccount, balance, r.getAmount());
+                double interest = payment[0];
+                double principal = payment[1];
+                if (Math.abs(balance-principal) < 0.005)
+                    rescheduleTransaction = false;
+
+                for (TransactionSplit split : splits) {
+                    if (split.getAccount() == loanAccount)
+                        split.setAmount(principal);
+                    else
+                        split.setAmount(interest);
+                }
+
+                t.setAmount(principal+interest);
+            }
+        }
+
+        //
+        // Save the new transaction and update the cached loan balances
+        //
+        newTransactions.add(t);
+        updateLoanBalances(t);
+
+        //
+        // Reschedule a recurring transaction
+        //
+        int scheduleType = r.getType();
+        if (scheduleType == ScheduleRecord.SINGLE || !rescheduleTransaction)
+            return false;
+
+        r.setDate(getNextDate(scheduleType, scheduledDate));
+        return true;
+    }
+
+    /**
+     * Get the current balance for a loan account
+     *
+     * @param       loanAccount     Loan account
+     * @return                      Loan balance
+     */
+    private double getLoanBalance(AccountRecord loanAccount) {
+        Double balance = loanBalances.get(loanAccount.getID());
+        if (balance == null) {
+            double total = 0.0;
+            List<TransactionRecord> transactions = TransactionIndex.getIndex().getTransactions(loanAccount);
+            CheckpointRecord checkpoint = CheckpointRecord.getCheckpoint(new Date());
+            if (checkpoint != null) {
+
+                //
+                // Start with the checkpoint balance and add the transactions
+                // following the checkpoint year
+                //
+                total = checkpoint.getBalance(loanAccount);
+                ListIterator<TransactionRecord> i = transactions.listIterator(transactions.size());
+                while (i.hasPrevious()) {
+                    TransactionRecord x = i.previous();
+                    if (CheckpointRecord.getYear(x.getDate()) <= checkpoint.getYear())
+                        break;
+
+                    total += getAccountAmount(x, loanAccount);
+                }
+            } else {
+                for (TransactionRecord x : transactions)
+                    total += getAccountAmount(x, loanAccount);
+            }
+
+            balance = total;
+            loanBalances.put(loanAccount.getID(), balance);
+        }
+
+        return balance;
+    }
+
+    /**
+     * Update the cached loan balances for a new transaction
+     *
+     * @param       t               New transaction
+     */
+    private void updateLoanBalances(TransactionRecord t) {
+        for (Map.Entry<Integer, Double> entry : loanBalances.entrySet()) {
+            AccountRecord loanAccount = AccountRecord.getAccount(entry.getKey());
+            double amount = getAccountAmount(t, loanAccount);
+            if (amount != 0.0)
+                entry.setValue(entry.getValue()+amount);
+        }
+    }
+
+    /**
+     * Get the transaction amount as it pertains to an account
+     *
+     * @param       t               Transaction
+     * @param       account         Account
+     * @return                      Amount or zero if the account is not referenced
+     */
+    private static double getAccountAmount(TransactionRecord t, AccountRecord account) {
+        if (t.getAccount() == account)
+            return t.getAmount();
+
+        if (t.getTransferAccount() == account)
+            return -t.getAmount();
+
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                if (split.getAccount() == account)
+                    return -split.getAmount();
+            }
+        }
+
+        return 0.0;
+    }
+
+    /**
+     * Priority queue entry ordered by the scheduled date and then by the
+     * sequence number
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        /** Scheduled transaction */
+        private final ScheduleRecord schedule;
+
+        /** Sequence number */
+        private final long sequence;
+
+        /**
+         * Create a queue entry
+         *
+         * @param       schedule        Scheduled transaction
+         * @param       sequence        Sequence number
+         */
+        private Entry(ScheduleRecord schedule, long sequence) {
+            this.schedule = schedule;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Compare two entries
+         *
+         * @param       o               Entry to compare
+         * @return                      Negative, zero or positive
+         */
+        @Override
+        public int compareTo(Entry o) {
+            int cmp = schedule.getDate().compareTo(o.schedule.getDate());
+            if (cmp == 0)
+                cmp = Long.compare(sequence, o.sequence);
+
+            return cmp;
+        }
+    }
+}
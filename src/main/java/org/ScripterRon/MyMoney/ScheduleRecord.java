@@ -29,8 +29,8 @@ import java.util.*;
  * <li>MONTHLY
  * </ul>
  * <p>
- * All scheduled transaction records are contained in the <code>transactions</code>
- * list.  The entries are added to the list in ascending date sequence.
+ * All scheduled transaction records are contained in the <code>getTransactions()</code>
+ * list for the current database context.  The entries are added to the list in ascending date sequence.
  * <p>
  * The scheduled transaction record is encoded as follows:
  * <pre>
@@ -65,9 +65,6 @@ public final class ScheduleRecord {
     /** Schedule type strings */
     private static final String[] scheduleTypeStrings = {"Single", "Weekly", "Biweekly", "Monthly"};
 
-    /** Scheduled transactions */
-    public static List<ScheduleRecord> transactions;
-
     /** The encoded ScheduleRecord ASN.1 tag identifier */
     private static final byte tagID=(byte)(Asn1Stream.ASN1_APPLICATION+7);
 
@@ -160,7 +157,7 @@ public final class ScheduleRecord {
             int accountID = seq.decodeInteger(false);
             amount = seq.decodeDouble(false);
 
-            for (AccountRecord a : AccountRecord.accounts) {
+            for (AccountRecord a : AccountRecord.getAccounts()) {
                 if (a.getID() == accountID) {
                     account = a;
                     account.addReference();
@@ -179,7 +176,7 @@ public final class ScheduleRecord {
                         seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+0)) {
                 int categoryID = seq.decodeInteger(true);
 
-                for (CategoryRecord c : CategoryRecord.categories) {
+                for (CategoryRecord c : CategoryRecord.getCategories()) {
                     if (c.getID() == categoryID) {
                         category = c;
                         category.addReference();
@@ -199,7 +196,7 @@ public final class ScheduleRecord {
                         seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+1)) {
                 int transferID = seq.decodeInteger(true);
 
-                for (AccountRecord a : AccountRecord.accounts) {
+                for (AccountRecord a : AccountRecord.getAccounts()) {
                     if (a.getID() == transferID) {
                         transferAccount = a;
                         transferAccount.addReference();
@@ -577,6 +574,15 @@ public final class ScheduleRecord {
         }
     }
 
+    /**
+     * Get the scheduled transactions for the current database context
+     *
+     * @return                      Scheduled transaction list
+     */
+    public static List<ScheduleRecord> getTransactions() {
+        return DatabaseContext.getCurrent().schedules;
+    }
+
     /**
      * Insert a scheduled transaction into the transaction list
      *
@@ -584,6 +590,7 @@ public final class ScheduleRecord {
      * @return                      The index of the inserted transaction
      */
     public static int insertTransaction(ScheduleRecord transaction) {
+        List<ScheduleRecord> transactions = getTransactions();
         int index, lowIndex, highIndex;
         Date date = transaction.getDate();
         int lastElem = transactions.size()-1;
@@ -607,6 +614,7 @@ public final class ScheduleRecord {
             transactions.add(highIndex, transaction);
         }
 
+        LedgerSnapshot.ledgerModified();
         return highIndex;
     }
 
@@ -23,7 +23,7 @@ import java.awt.event.*;
 
 /**
  * The ScheduleTableModel class provides a table model consisting of scheduled transactions.
- * The table rows correspond to the list elements in ScheduleRecord.transactions.  The
+ * The table rows correspond to the list elements in ScheduleRecord.getTransactions().  The
  * application should call the fireTableRowsInserted() and fireTableRowsDeleted() methods
  * when the scheduled transaction list is modified.
  */
@@ -81,7 +81,7 @@ public final class ScheduleTableModel extends AbstractTableModel {
      * @return                  The number of rows
      */
     public int getRowCount() {
-        return ScheduleRecord.transactions.size();
+        return ScheduleRecord.getTransactions().size();
     }
 
     /**
@@ -92,10 +92,10 @@ public final class ScheduleTableModel extends AbstractTableModel {
      * @return                  Returns the object associated with the cell
      */
     public Object getValueAt(int row, int column) {
-        if (row >= ScheduleRecord.transactions.size())
+        if (row >= ScheduleRecord.getTransactions().size())
             throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
 
-        ScheduleRecord r = ScheduleRecord.transactions.get(row);
+        ScheduleRecord r = ScheduleRecord.getTransactions().get(row);
         AccountRecord a;
         CategoryRecord c;
         Object value;
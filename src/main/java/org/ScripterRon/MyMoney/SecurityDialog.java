@@ -43,7 +43,7 @@ public final class SecurityDialog extends JDialog implements ActionListener {
         //
         // Create the list model
         //
-        listModel = new DBElementListModel(SecurityRecord.securities);
+        listModel = new DBElementListModel(SecurityRecord.getSecurities());
 
         //
         // Create the security list
@@ -190,7 +190,8 @@ public final class SecurityDialog extends JDialog implements ActionListener {
                                         "Security is referenced by one or more transactions",
                                         "Error", JOptionPane.ERROR_MESSAGE);
                         } else {
-                            SecurityRecord.securities.remove(security);
+                            SecurityRecord.getSecurities().remove(security);
+                            LedgerSnapshot.ledgerModified();
                             listModel.removeDBElement(security);
                             Main.dataModified = true;
                         }
@@ -15,6 +15,7 @@
  */
 package org.ScripterRon.MyMoney;
 
+import java.util.Date;
 import java.util.SortedSet;
 
 import javax.swing.*;
@@ -51,6 +52,12 @@ public final class SecurityEditDialog extends JDialog implements ActionListener
     /** Income payment model */
     private DBElementTypeComboBoxModel incomePaymentModel;
 
+    /** Maturity date field */
+    private JFormattedTextField maturityDate;
+
+    /** Coupon rate field */
+    private JFormattedTextField couponRate;
+
     /** Security hidden field */
     private JCheckBox securityHidden;
 
@@ -79,6 +86,8 @@ public final class SecurityEditDialog extends JDialog implements ActionListener
         //    Security Name:   <text-field>
         //    Ticker Symbol:   <text-field>
         //    Income Payments: <combo-box>
+        //    Maturity Date:   <text-field>
+        //    Coupon Rate (%): <text-field>
         //    Security Hidden: <check-box>
         //
         JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
@@ -117,6 +126,24 @@ public final class SecurityEditDialog extends JDialog implements ActionListener
             incomePaymentModel.setSelectedItem(SecurityRecord.getPaymentTypeString(SecurityRecord.NO_PAYMENTS));
         editPane.add(incomePayment);
 
+        editPane.add(new JLabel("Maturity Date:", JLabel.RIGHT));
+        maturityDate = new JFormattedTextField(new EditDate());
+        maturityDate.setColumns(8);
+        maturityDate.setInputVerifier(new EditInputVerifier(true));
+        maturityDate.addActionListener(new FormattedTextFieldListener(this));
+        if (security != null && security.getMaturityDate() != null)
+            maturityDate.setValue(security.getMaturityDate());
+        editPane.add(maturityDate);
+
+        editPane.add(new JLabel("Coupon Rate (%):", JLabel.RIGHT));
+        couponRate = new JFormattedTextField(new EditNumber(4, true));
+        couponRate.setColumns(8);
+        couponRate.setInputVerifier(new EditInputVerifier(true));
+        couponRate.addActionListener(new FormattedTextFieldListener(this));
+        if (security != null && security.getCouponRate() != 0.0)
+            couponRate.setValue(new Double(security.getCouponRate()*100.0));
+        editPane.add(couponRate);
+
         editPane.add(Box.createGlue());
         securityHidden = new JCheckBox("Security Hidden");
         if (security != null)
@@ -251,7 +278,7 @@ public final class SecurityEditDialog extends JDialog implements ActionListener
             return false;
         }
         
-        for (SecurityRecord s : SecurityRecord.securities) {
+        for (SecurityRecord s : SecurityRecord.getSecurities()) {
             if (name.equals(s.getName()) && s != security) {
                 JOptionPane.showMessageDialog(this, "Security name '"+name+"' is already in use",
                                               "Error", JOptionPane.ERROR_MESSAGE);
@@ -263,31 +290,43 @@ public final class SecurityEditDialog extends JDialog implements ActionListener
         int paymentType = incomePaymentModel.getTypeAt(incomePayment.getSelectedIndex());
         boolean hidden = securityHidden.isSelected();
 
+        Date maturity = null;
+        if (maturityDate.isEditValid())
+            maturity = (Date)maturityDate.getValue();
+
+        double rate = 0.0;
+        if (couponRate.isEditValid())
+            rate = (((Number)couponRate.getValue()).doubleValue())/100.0;
+
         //
         // Create a new security or update an existing security
         //
         if (security == null) {
             newSecurity = true;
             security = new SecurityRecord(name, type);
-            if (SecurityRecord.securities.contains(security)) {
+            if (SecurityRecord.getSecurities().contains(security)) {
                 JOptionPane.showMessageDialog(this, "Security '"+name+"' already exists",
                                               "Error", JOptionPane.ERROR_MESSAGE);
                 return false;
             }
             
-            SecurityRecord.securities.add(security);
+            SecurityRecord.getSecurities().add(security);
         } else {
             newSecurity = false;
             security.setType(type);
             if (!security.getName().equals(name)) {
-                SecurityRecord.securities.remove(security);
+                SecurityRecord.getSecurities().remove(security);
                 security.setName(name);
-                SecurityRecord.securities.add(security);
+                SecurityRecord.getSecurities().add(security);
             }
         }
 
+        LedgerSnapshot.ledgerModified();
+
         security.setSymbol(symbol);
         security.setPaymentType(paymentType);
+        security.setMaturityDate(maturity);
+        security.setCouponRate(rate);
         security.setHide(hidden);
         
         if (newSecurity)
@@ -60,6 +60,39 @@ public class SecurityHolding {
         lots = new ArrayList<>(5);
         gains = new ArrayList<>(5);
     }
+
+    /**
+     * Create a copy of a security holding.  The security lots are copied and
+     * the capital gains are not.
+     *
+     * @param       holding         Security holding
+     */
+    SecurityHolding(SecurityHolding holding) {
+        this(holding.account, holding.security);
+        totalShares = holding.totalShares;
+        totalCost = holding.totalCost;
+        annualYield = holding.annualYield;
+        for (SecurityLot lot : holding.lots)
+            lots.add(new SecurityLot(lot.date, lot.shares, lot.cost));
+    }
+
+    /**
+     * Restore a security holding from a checkpoint.  The security lots are
+     * restored using restoreLot().
+     *
+     * @param       account         Account containing the security
+     * @param       security        Security record
+     * @param       totalShares     Total number of shares
+     * @param       totalCost       Total cost
+     * @param       annualYield     Annual yield
+     */
+    SecurityHolding(AccountRecord account, SecurityRecord security,
+                    double totalShares, double totalCost, double annualYield) {
+        this(account, security);
+        this.totalShares = totalShares;
+        this.totalCost = totalCost;
+        this.annualYield = annualYield;
+    }
     
     /**
      * Get the account containing the security
@@ -128,6 +161,65 @@ public class SecurityHolding {
         return gains;
     }
     
+    /**
+     * Get the number of security lots
+     *
+     * @return                      Number of security lots
+     */
+    int getLotCount() {
+        return lots.size();
+    }
+
+    /**
+     * Get the acquisition date for a security lot
+     *
+     * @param       index           Lot index
+     * @return                      Date acquired
+     */
+    Date getLotDate(int index) {
+        return lots.get(index).date;
+    }
+
+    /**
+     * Get the number of shares in a security lot
+     *
+     * @param       index           Lot index
+     * @return                      Number of shares
+     */
+    double getLotShares(int index) {
+        return lots.get(index).shares;
+    }
+
+    /**
+     * Get the cost of a security lot
+     *
+     * @param       index           Lot index
+     * @return                      Cost of shares
+     */
+    double getLotCost(int index) {
+        return lots.get(index).cost;
+    }
+
+    /**
+     * Get the unrounded share and cost totals
+     *
+     * @return                      Total shares and total cost
+     */
+    double[] getTotals() {
+        return new double[] {totalShares, totalCost};
+    }
+
+    /**
+     * Restore a security lot.  The holding totals are not changed.
+     *
+     * @param       date            Date acquired
+     * @param       shares          Number of shares
+     * @param       cost            Cost of shares
+     */
+    void restoreLot(Date date, double shares, double cost) {
+        lots.add(new SecurityLot(date, shares, cost));
+    }
+
     /**
      * Locate and update the security holding for the supplied transaction.
      * A new security holding will be created if necessary.  Entries in the
@@ -140,11 +232,28 @@ public class SecurityHolding {
      */
     public static void updateSecurityHolding(List<SecurityHolding> holdings,
                                              TransactionRecord t) {
+        updateSecurityHolding(holdings, t, true);
+    }
+
+    /**
+     * Locate and update the security holding for the supplied transaction.  A
+     * missing BUY transaction is reported only if requested.  A caller that is not
+     * running on the event dispatch thread must not request the report and can
+     * use the return value instead.
+     *
+     * @param       holdings            Sorted list of security holdings
+     * @param       t                   Transaction to be processed
+     * @param       warn                TRUE to report a missing BUY transaction
+     * @return                          FALSE if the BUY transaction is missing
+     */
+    static boolean updateSecurityHolding(List<SecurityHolding> holdings,
+                                         TransactionRecord t, boolean warn) {
         AccountRecord account = t.getAccount();
         SecurityRecord security = t.getSecurity();
         String name = security.getName();
         int action = t.getAction();
         boolean addSecurity = true;
+        boolean found = true;
         int index = 0;
 
         //
@@ -171,7 +280,9 @@ public class SecurityHolding {
                     n.processTransaction(t);
                     holdings.add(index, n);
                 } else {
-                    JOptionPane.showMessageDialog(Main.mainWindow, 
+                    found = false;
+                    if (warn)
+                        JOptionPane.showMessageDialog(Main.mainWindow, 
                                 "Missing BUY transaction for security "+name,
                                 "Warning", JOptionPane.WARNING_MESSAGE);
                 }
@@ -192,7 +303,9 @@ public class SecurityHolding {
                 n.processTransaction(t);
                 holdings.add(n);
             } else {
-                JOptionPane.showMessageDialog(Main.mainWindow, 
+                found = false;
+                if (warn)
+                    JOptionPane.showMessageDialog(Main.mainWindow, 
                                 "Missing BUY transaction for security "+name,
                                 "Warning", JOptionPane.WARNING_MESSAGE);
             }
@@ -244,14 +357,18 @@ public class SecurityHolding {
                 holdings.add(n);
             }
         }
+
+        return found;
     }
     
     /**
-     * Process an investment transaction for this security
+     * Process an investment transaction for this security.  The transaction
+     * must be for the holding account and must reference the holding security
+     * as either the base security or the new security.
      * 
-     * @param                       Investment transaction
+     * @param       t               Investment transaction
      */
-    private void processTransaction(TransactionRecord t) {
+    public void processTransaction(TransactionRecord t) {
         Date date = t.getDate();
         int action = t.getAction();
         SecurityRecord baseSecurity = t.getSecurity();
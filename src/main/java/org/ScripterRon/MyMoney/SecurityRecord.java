@@ -41,8 +41,8 @@ import java.util.*;
  * <li>ANNUAL
  * </ul>
  * <p>
- * All security records are contained in the <code>securities</code> sorted
- * set.  The entries in the set are sorted by the security name. Two security
+ * All security records are contained in the <code>getSecurities()</code> sorted
+ * set for the current database context.  The entries in the set are sorted by the security name. Two security
  * records are equal if they have the same security name.
  * <p>
  * The security record is encoded as follows:
@@ -54,7 +54,9 @@ import java.util.*;
  *     securityHidden              BOOLEAN,
  *     tickerSymbol                BMPSTRING,
  *     priceHistory            [0] SEQUENCE OF PriceHistory OPTIONAL,
- *     paymentType             [1] INTEGER OPTIONAL }
+ *     paymentType             [1] INTEGER OPTIONAL,
+ *     maturityDate            [2] UTCTIME OPTIONAL,
+ *     couponRate              [3] REAL OPTIONAL }
  * </pre>
  */
 public final class SecurityRecord extends DBElement {
@@ -111,15 +113,6 @@ public final class SecurityRecord extends DBElement {
     private static final String[] paymentTypeStrings = {
         "None", "Monthly", "Quarterly", "Semi-Annual", "Annual"};
     
-    /** The set of defined securities */
-    public static SortedSet<SecurityRecord> securities;
-    
-    /** The security map */
-    private static Map<Integer, SecurityRecord> map;
-
-    /** The next SecurityRecord identifier */
-    private static int nextRecordID = 1;
-
     /** The encoded SecurityRecord ASN.1 tag identifier */
     private static final byte tagID = (byte)(Asn1Stream.ASN1_APPLICATION+1);
 
@@ -129,6 +122,12 @@ public final class SecurityRecord extends DBElement {
     /** Ticker symbol */
     private String tickerSymbol;
 
+    /** Maturity date (only for a fixed-income security) */
+    private Date maturityDate;
+
+    /** Annual coupon rate (only for a fixed-income security) */
+    private double couponRate;
+
     /** Price history */
     SortedSet<PriceHistory> priceHistory;
 
@@ -145,7 +144,8 @@ public final class SecurityRecord extends DBElement {
         //
         // Create the new security
         //
-        recordID = nextRecordID++;
+        DatabaseContext context = DatabaseContext.getCurrent();
+        recordID = context.nextSecurityID++;
         elementName = name;
         setType(type);
         tickerSymbol = new String();
@@ -154,10 +154,7 @@ public final class SecurityRecord extends DBElement {
         //
         // Add the security to the map
         //
-        if (map == null)
-            map = new HashMap<>();
-        
-        map.put(new Integer(recordID), this);
+        context.securityMap.put(new Integer(recordID), this);
     }
 
     /**
@@ -213,6 +210,16 @@ public final class SecurityRecord extends DBElement {
             if (seq.getLength() != 0 && seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+1))
                 paymentType = seq.decodeInteger(true);
 
+            //
+            // The maturity date and coupon rate are encoded as optional
+            // context-specific fields with identifiers 2 and 3
+            //
+            if (seq.getLength() != 0 && seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+2))
+                maturityDate = seq.decodeTime(true);
+
+            if (seq.getLength() != 0 && seq.getTag() == (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+3))
+                couponRate = seq.decodeDouble(true);
+
             //
             //  Check for unconsummed data
             //
@@ -222,16 +229,14 @@ public final class SecurityRecord extends DBElement {
             //
             //  Update the next record identifier
             //
-            if (recordID >= nextRecordID)
-                nextRecordID = recordID+1;
+            DatabaseContext context = DatabaseContext.getCurrent();
+            if (recordID >= context.nextSecurityID)
+                context.nextSecurityID = recordID+1;
             
             //
             // Add the security to the map
             //
-            if (map == null)
-                map = new HashMap<>();
-        
-            map.put(new Integer(recordID), this);
+            context.securityMap.put(new Integer(recordID), this);
         } catch (Asn1Exception exc) {
             throw new DBException("ASN.1 decode error", exc);
         }
@@ -262,6 +267,16 @@ public final class SecurityRecord extends DBElement {
         int seqLength = 0;
         int priceCount = priceHistory.size();
         EncodeStream stream = new EncodeStream(128+priceCount*32);
+
+        //
+        // Encode the coupon rate and maturity date as optional context-specific
+        // fields with identifiers 3 and 2.
+        //
+        if (couponRate != 0.0)
+            seqLength += stream.encodeDouble(couponRate, (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+3));
+
+        if (maturityDate != null)
+            seqLength += stream.encodeTime(maturityDate, (byte)(Asn1Stream.ASN1_CONTEXT_SPECIFIC+2));
         
         //
         // Encode the payment type as an optional context-specific sequence
@@ -302,6 +317,15 @@ public final class SecurityRecord extends DBElement {
         return stream.getData();
     }
     
+    /**
+     * Get the set of defined securities for the current database context
+     *
+     * @return                      Set of securities sorted by name
+     */
+    public static SortedSet<SecurityRecord> getSecurities() {
+        return DatabaseContext.getCurrent().securities;
+    }
+
     /**
      * Get the security associated with the supplied record identifier.
      *
@@ -309,11 +333,7 @@ public final class SecurityRecord extends DBElement {
      * @return                      The security or NULL
      */
     public static SecurityRecord getSecurity(int recordID) {
-        SecurityRecord security = null;
-        if (map != null)
-            security = map.get(new Integer(recordID));
-        
-        return security;
+        return DatabaseContext.getCurrent().securityMap.get(new Integer(recordID));
     }
 
     /**
@@ -358,6 +378,8 @@ public final class SecurityRecord extends DBElement {
         PriceHistory ph = new PriceHistory(price);
         priceHistory.remove(ph);
         priceHistory.add(ph);
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
     }
 
     /**
@@ -380,6 +402,8 @@ public final class SecurityRecord extends DBElement {
         PriceHistory ph = new PriceHistory(date, price);
         priceHistory.remove(ph);
         priceHistory.add(ph);
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
     }
 
     /**
@@ -390,6 +414,8 @@ public final class SecurityRecord extends DBElement {
     public void removePrice(Date date) {
         PriceHistory ph = new PriceHistory(date, 0.0);
         priceHistory.remove(ph);
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
     }
 
     /**
@@ -489,6 +515,48 @@ public final class SecurityRecord extends DBElement {
             throw new IllegalArgumentException("Payment type "+type+" is invalid");
 
         paymentType = type;
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
+    }
+
+    /**
+     * Get the maturity date
+     *
+     * @return                      The maturity date or null if there is no maturity date
+     */
+    public Date getMaturityDate() {
+        return maturityDate;
+    }
+
+    /**
+     * Set the maturity date
+     *
+     * @param       date            The maturity date or null if there is no maturity date
+     */
+    public void setMaturityDate(Date date) {
+        maturityDate = date;
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
+    }
+
+    /**
+     * Get the annual coupon rate
+     *
+     * @return                      The coupon rate (1.00 = 100%)
+     */
+    public double getCouponRate() {
+        return couponRate;
+    }
+
+    /**
+     * Set the annual coupon rate
+     *
+     * @param       rate            The coupon rate (1.00 = 100%)
+     */
+    public void setCouponRate(double rate) {
+        couponRate = rate;
+        BondPortfolio.priceChanged(this);
+        LedgerSnapshot.ledgerModified();
     }
 
     /**
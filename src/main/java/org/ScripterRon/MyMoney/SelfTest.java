@@ -0,0 +1,212 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.io.PrintStream;
+import java.util.BitSet;
+
+/**
+ * Known-answer checks for the numerical routines used by the reports and the
+ * reconcile dialog.  The checks are run by the self-test batch command and do not
+ * use the database.  Each check compares a computed value with a value that can be
+ * worked out by hand.
+ */
+final class SelfTest {
+
+    /** Tolerance for a computed rate */
+    private static final double TOLERANCE = 1.0e-8;
+
+    /** Output stream */
+    private final PrintStream out;
+
+    /** Number of checks */
+    private int checks;
+
+    /** Number of failed checks */
+    private int failures;
+
+    /**
+     * Create the self-test
+     *
+     * @param       out             Output stream
+     */
+    private SelfTest(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Run the known-answer checks
+     *
+     * @param       out             Output stream
+     * @return                      Number of failed checks
+     */
+    static int run(PrintStream out) {
+        SelfTest test = new SelfTest(out);
+        test.checkXirr();
+        test.checkBondYield();
+        test.checkSubsetSearch();
+        out.printf("%d checks, %d failed%n", test.checks, test.failures);
+        return test.failures;
+    }
+
+    /**
+     * Check the internal rate of return
+     */
+    private void checkXirr() {
+
+        //
+        // -1000 now and +1100 in one year is 10% per year
+        //
+        check("XIRR for one year", 0.10,
+              ReturnsEngine.getXirr(new double[] {0.0, 1.0}, new double[] {-1000.0, 1100.0}, 2));
+
+        //
+        // -1000 now and +1210 in two years is also 10% per year
+        //
+        check("XIRR for two years", 0.10,
+              ReturnsEngine.getXirr(new double[] {0.0, 2.0}, new double[] {-1000.0, 1210.0}, 2));
+
+        //
+        // There is no rate without both a payment and a receipt
+        //
+        check("XIRR without a receipt", Double.NaN,
+              ReturnsEngine.getXirr(new double[] {0.0, 1.0}, new double[] {-1000.0, -100.0}, 2));
+    }
+
+    /**
+     * Check the bond yield.  The yields are annual effective rates, so a bond
+     * bought at par has a yield equal to the coupon rate when the coupon is paid
+     * annually and (1+c/2)**2-1 when the coupon is paid twice a year.
+     */
+    private void checkBondYield() {
+        double[] times = new double[10];
+        double[] amounts = new double[10];
+        for (int i=0; i<10; i++) {
+            times[i] = (double)(i+1);
+            amounts[i] = 5.0;
+        }
+
+        amounts[9] += 100.0;
+        check("Annual par bond price", 100.0, BondYield.getPrice(times, amounts, 0.05));
+        check("Annual par bond yield", 0.05, BondYield.getYield(times, amounts, 100.0));
+        check("Annual par bond yield (Brent)", 0.05, BondYield.getYieldBrent(times, amounts, 100.0));
+
+        times = new double[20];
+        amounts = new double[20];
+        for (int i=0; i<20; i++) {
+            times[i] = (double)(i+1)/2.0;
+            amounts[i] = 3.0;
+        }
+
+        amounts[19] += 100.0;
+        check("Semiannual par bond yield", 1.03*1.03-1.0, BondYield.getYield(times, amounts, 100.0));
+        check("Semiannual par bond yield (Brent)", 1.03*1.03-1.0,
+              BondYield.getYieldBrent(times, amounts, 100.0));
+
+        //
+        // A zero-coupon bond paying 121 in two years and bought for 100 yields 10%
+        //
+        check("Zero-coupon bond yield", 0.10,
+              BondYield.getYield(new double[] {2.0}, new double[] {121.0}, 100.0));
+    }
+
+    /**
+     * Check the subset search used to match a statement ending balance
+     */
+    private void checkSubsetSearch() {
+
+        //
+        // 7.00 is reached by 5.00 and 2.00 after trying and excluding 4.00
+        //
+        long[] amounts = {400, 500, 200, -100};
+        BitSet selected = StatementMatcher.selectSubset(amounts, amounts.length, 700,
+                                                        StatementMatcher.MAX_STEPS);
+        check("Subset for 7.00", "{1, 2}", String.valueOf(selected));
+
+        //
+        // An odd total cannot be formed from even amounts
+        //
+        amounts = new long[] {200, 400, 600};
+        selected = StatementMatcher.selectSubset(amounts, amounts.length, 300,
+                                                 StatementMatcher.MAX_STEPS);
+        check("Subset for an odd total", "null", String.valueOf(selected));
+
+        //
+        // 3 cents from 4, 2 and 1 cents takes four steps: include 4, exclude 4,
+        // include 2, include 1.  The match is found at a limit of four steps and
+        // the search is abandoned at a limit of three steps.
+        //
+        amounts = new long[] {4, 2, 1};
+        selected = StatementMatcher.selectSubset(amounts, amounts.length, 3, 4);
+        check("Subset at the step limit", "{1, 2}", String.valueOf(selected));
+        selected = StatementMatcher.selectSubset(amounts, amounts.length, 3, 3);
+        check("Subset past the step limit", "null", String.valueOf(selected));
+
+        //
+        // A search over 2**40 subsets is abandoned at the search limit
+        //
+        amounts = new long[40];
+        for (int i=0; i<amounts.length; i++)
+            amounts[i] = 2;
+
+        selected = StatementMatcher.selectSubset(amounts, amounts.length, 1,
+                                                 StatementMatcher.MAX_STEPS);
+        check("Subset search abandoned", "null", String.valueOf(selected));
+    }
+
+    /**
+     * Check a computed rate
+     *
+     * @param       name            Check name
+     * @param       expected        Expected value or NaN
+     * @param       actual          Computed value
+     */
+    private void check(String name, double expected, double actual) {
+        boolean passed;
+        if (Double.isNaN(expected))
+            passed = Double.isNaN(actual);
+        else
+            passed = (Math.abs(actual-expected) <= TOLERANCE*Math.max(1.0, Math.abs(expected)));
+
+        report(name, passed, String.format("expected %.10f, computed %.10f", expected, actual));
+    }
+
+    /**
+     * Check a computed result
+     *
+     * @param       name            Check name
+     * @param       expected        Expected result
+     * @param       actual          Computed result
+     */
+    private void check(String name, String expected, String actual) {
+        report(name, expected.equals(actual), "expected "+expected+", computed "+actual);
+    }
+
+    /**
+     * Report the result of a check
+     *
+     * @param       name            Check name
+     * @param       passed          TRUE if the check passed
+     * @param       detail          Expected and computed values
+     */
+    private void report(String name, boolean passed, String detail) {
+        checks++;
+        if (!passed) {
+            failures++;
+            out.println("FAILED: "+name+": "+detail);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statement matcher selects the unreconciled transactions that appear on an
+ * account statement.  The statement can be supplied as a list of statement lines
+ * or as just the ending balance.
+ * <p>
+ * Statement lines are matched using a hash join on the amount.  A statement line
+ * with a check number matches just a transaction with the same check number.  The
+ * transaction date must be within the date tolerance of the statement date and the
+ * transaction with the closest date is selected when there is more than one match.
+ * Each transaction is matched at most once.
+ * <p>
+ * When just the ending balance is known, the matcher searches for a set of
+ * transactions which are not pending and whose total is the difference between the
+ * ending balance and the current reconciled balance.  The search considers the
+ * oldest transactions first and a branch is pruned when the remaining positive or
+ * negative amounts cannot reach the target.  The search is abandoned after a fixed
+ * number of steps so the dialog remains responsive.
+ * <p>
+ * All amounts are converted to cents before they are compared.
+ */
+public final class StatementMatcher {
+
+    /** Maximum number of search steps for a balance match */
+    static final int MAX_STEPS = 2000000;
+
+    /** Milliseconds per day */
+    private static final long DAY_MILLIS = 24L*60L*60L*1000L;
+
+    /** Unreconciled transactions */
+    private final ReconcileIndex index;
+
+    /** Number of statement lines that were not matched */
+    private int unmatchedCount;
+
+    /**
+     * Create a statement matcher
+     *
+     * @param       index           Unreconciled transactions for the account
+     */
+    public StatementMatcher(ReconcileIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the number of statement lines that were not matched by the last
+     * call to matchLines()
+     *
+     * @return                      Number of unmatched lines
+     */
+    public int getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+    /**
+     * Match statement lines to the unreconciled transactions
+     *
+     * @param       lines           Statement lines
+     * @param       toleranceDays   Maximum number of days between the statement
+     *                              date and the transaction date
+     * @return                      Matched entries in the reconcile index
+     */
+    public BitSet matchLines(List<StatementLine> lines, int toleranceDays) {
+        BitSet matched = new BitSet(index.size());
+        unmatchedCount = 0;
+
+        //
+        // Build the hash table using the transaction amount as the key
+        //
+        Map<Long, List<Integer>> amountMap = new HashMap<>();
+        for (int i=0; i<index.size(); i++) {
+            Long key = Math.round(index.getAmount(i)*100.0);
+            List<Integer> bucket = amountMap.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(2);
+                amountMap.put(key, bucket);
+            }
+
+            bucket.add(i);
+        }
+
+        //
+        // Probe the hash table for each statement line
+        //
+        for (StatementLine line : lines) {
+            List<Integer> bucket = amountMap.get(line.getAmount());
+            int bestEntry = -1;
+            long bestDistance = Long.MAX_VALUE;
+            if (bucket != null) {
+                for (Integer entry : bucket) {
+                    if (matched.get(entry))
+                        continue;
+
+                    TransactionRecord t = index.getTransaction(entry);
+                    if (line.getCheckNumber() != 0) {
+                        if (!index.isSource(entry) || t.getCheckNumber() != line.getCheckNumber())
+                            continue;
+                    }
+
+                    long distance = Math.abs(Math.round((double)(t.getDate().getTime()-
+                                                    line.getDate().getTime())/(double)DAY_MILLIS));
+                    if (distance <= toleranceDays && distance < bestDistance) {
+                        bestEntry = entry;
+                        bestDistance = distance;
+                    }
+                }
+            }
+
+            if (bestEntry >= 0)
+                matched.set(bestEntry);
+            else
+                unmatchedCount++;
+        }
+
+        return matched;
+    }
+
+    /**
+     * Select the transactions needed to reach the statement ending balance
+     *
+     * @param       endingBalance   Statement ending balance
+     * @return                      Selected entries or null if no match was found
+     */
+    public BitSet matchBalance(double endingBalance) {
+        long target = Math.round((endingBalance-index.getReconciledBalance())*100.0);
+        BitSet selected = new BitSet(index.size());
+        if (target == 0)
+            return selected;
+
+        //
+        // Get the candidate entries (the reconcile index is sorted by date)
+        //
+        int[] entries = new int[index.size()];
+        long[] amounts = new long[index.size()];
+        int count = 0;
+        for (int i=0; i<index.size(); i++) {
+            long amount = Math.round(index.getAmount(i)*100.0);
+            if (!index.isPending(i) && amount != 0) {
+                entries[count] = i;
+                amounts[count] = amount;
+                count++;
+            }
+        }
+
+        BitSet positions = selectSubset(amounts, count, target, MAX_STEPS);
+        if (positions == null)
+            return null;
+
+        for (int i=positions.nextSetBit(0); i>=0; i=positions.nextSetBit(i+1))
+            selected.set(entries[i]);
+
+        return selected;
+    }
+
+    /**
+     * Search for a subset of the amounts with the target total.  The amounts are
+     * considered in order and each position is either included (state 1) or excluded
+     * (state 2).  The search backtracks when the target cannot be reached using the
+     * remaining positions and is abandoned after the maximum number of steps.
+     *
+     * @param       amounts         Amounts in cents
+     * @param       count           Number of amounts
+     * @param       target          Target total in cents
+     * @param       maxSteps        Maximum number of search steps
+     * @return                      Selected positions or null if no subset was found
+     */
+    static BitSet selectSubset(long[] amounts, int count, long target, int maxSteps) {
+
+        //
+        // Compute the remaining positive and negative amounts for each position
+        //
+        long[] positiveRemaining = new long[count+1];
+        long[] negativeRemaining = new long[count+1];
+        for (int i=count-1; i>=0; i--) {
+            positiveRemaining[i] = positiveRemaining[i+1]+Math.max(amounts[i], 0);
+            negativeRemaining[i] = negativeRemaining[i+1]+Math.min(amounts[i], 0);
+        }
+
+        //
+        // Search for a subset with the target total
+        //
+        byte[] state = new byte[count];
+        long remaining = target;
+        int depth = 0;
+        int steps = 0;
+        while (remaining != 0) {
+            if (++steps > maxSteps)
+                return null;
+
+            if (depth < count && remaining >= negativeRemaining[depth] &&
+                                 remaining <= positiveRemaining[depth]) {
+                state[depth] = 1;
+                remaining -= amounts[depth];
+                depth++;
+                continue;
+            }
+
+            while (true) {
+                if (--depth < 0)
+                    return null;
+
+                if (state[depth] == 1) {
+                    state[depth] = 2;
+                    remaining += amounts[depth];
+                    depth++;
+                    break;
+                }
+
+                state[depth] = 0;
+            }
+        }
+
+        BitSet selected = new BitSet(count);
+        for (int i=0; i<depth; i++) {
+            if (state[i] == 1)
+                selected.set(i);
+        }
+
+        return selected;
+    }
+
+    /**
+     * Read the statement lines from a CSV file.  Each line contains the date
+     * (mm/dd/yyyy), the amount and an optional check number.  Payments are
+     * negative and deposits are positive.  The first line is skipped if it
+     * is a column header.
+     *
+     * @param       file            Statement file
+     * @return                      Statement lines
+     * @exception   IOException     Unable to read the statement file
+     */
+    public static List<StatementLine> readStatement(File file) throws IOException {
+        List<StatementLine> lines = new ArrayList<>();
+        EditDate dateEditor = new EditDate();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line=in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0)
+                    continue;
+
+                String[] fields = line.split(",");
+                for (int i=0; i<fields.length; i++)
+                    fields[i] = fields[i].replace("\"", "").trim();
+
+                try {
+                    if (fields.length < 2)
+                        throw new ParseException("Amount missing", 0);
+
+                    Date date = (Date)dateEditor.stringToValue(fields[0]);
+                    long amount = Math.round(Double.valueOf(fields[1])*100.0);
+                    int checkNumber = 0;
+                    if (fields.length > 2 && fields[2].length() != 0)
+                        checkNumber = Integer.valueOf(fields[2]);
+
+                    lines.add(new StatementLine(date, amount, checkNumber));
+                } catch (ParseException | NumberFormatException exc) {
+                    if (lineNumber > 1)
+                        throw new IOException("Statement line "+lineNumber+" is not valid");
+                }
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Statement line
+     */
+    public static final class StatementLine {
+
+        /** Statement date */
+        private final Date date;
+
+        /** Amount in cents */
+        private final long amount;
+
+        /** Check number or zero */
+        private final int checkNumber;
+
+        /**
+         * Create a statement line
+         *
+         * @param       date            Statement date
+         * @param       amount          Amount in cents
+         * @param       checkNumber     Check number or zero
+         */
+        public StatementLine(Date date, long amount, int checkNumber) {
+            this.date = date;
+            this.amount = amount;
+            this.checkNumber = checkNumber;
+        }
+
+        /**
+         * Get the statement date
+         *
+         * @return                      Statement date
+         */
+        public Date getDate() {
+            return date;
+        }
+
+        /**
+         * Get the amount
+         *
+         * @return                      Amount in cents
+         */
+        public long getAmount() {
+            return amount;
+        }
+
+        /**
+         * Get the check number
+         *
+         * @return                      Check number or zero
+         */
+        public int getCheckNumber() {
+            return checkNumber;
+        }
+    }
+}
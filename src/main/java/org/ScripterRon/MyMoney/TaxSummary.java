@@ -0,0 +1,285 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The tax summary contains the yearly totals for each category type.  The totals
+ * are maintained in cents and are indexed by the category type.
+ * <p>
+ * The category totals for all years that are not in the cache are computed in a
+ * single pass over the transaction list, with each year summed in parallel on the
+ * common ForkJoin pool.  The short-term and long-term capital gains are obtained
+ * from the capital gains engine and are added to the SHORT_TERM_CAPITAL_GAIN and
+ * LONG_TERM_CAPITAL_GAIN totals.  Tax-deferred accounts are not included in the
+ * capital gains.
+ * <p>
+ * The cached totals for a year are discarded when a transaction in that year is
+ * added or removed.  Since the cost basis for a sale depends on earlier purchases,
+ * the cached capital gains for later years are also discarded when an investment
+ * transaction is added or removed.  All of the cached totals are discarded when
+ * the type of a category is changed.
+ */
+public final class TaxSummary {
+
+    /** Number of entries in a totals array */
+    private static final int TYPE_COUNT = CategoryRecord.getTypeCount();
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            TaxSummary.transactionChanged(event.getTransaction());
+        }
+    };
+
+    /**
+     * Get the totals for a year
+     *
+     * @param       year            Tax year
+     * @return                      Totals in cents indexed by category type
+     */
+    public static synchronized long[] getTotals(int year) {
+        return getTotals(year, year).get(year);
+    }
+
+    /**
+     * Get the totals for a range of years.  The totals for years that are
+     * not in the cache will be computed.
+     *
+     * @param       startYear       First year (inclusive)
+     * @param       endYear         Last year (inclusive)
+     * @return                      Totals in cents indexed by category type for each year
+     */
+    public static synchronized Map<Integer, long[]> getTotals(int startYear, int endYear) {
+        //
+        // The capital gains require the lot history, so all of the transaction
+        // partitions must be loaded before the caches are used
+        //
+        TransactionPartitions.loadAll();
+        DatabaseContext context = DatabaseContext.getCurrent();
+        Map<Integer, long[]> categoryTotals = context.categoryTotals;
+        Map<Integer, long[]> gainTotals = context.gainTotals;
+        Map<Integer, long[]> results = new HashMap<>();
+
+        //
+        // Compute the category totals for the years that are not in the cache
+        //
+        List<Integer> missingYears = new ArrayList<>();
+        for (int year=startYear; year<=endYear; year++) {
+            if (!categoryTotals.containsKey(year))
+                missingYears.add(year);
+        }
+
+        if (!missingYears.isEmpty())
+            computeCategoryTotals(missingYears, categoryTotals);
+
+        //
+        // Compute the capital gains for the years that are not in the cache
+        //
+        int firstGainYear = Integer.MAX_VALUE;
+        int lastGainYear = Integer.MIN_VALUE;
+        for (int year=startYear; year<=endYear; year++) {
+            if (!gainTotals.containsKey(year)) {
+                firstGainYear = Math.min(firstGainYear, year);
+                lastGainYear = Math.max(lastGainYear, year);
+            }
+        }
+
+        if (firstGainYear <= lastGainYear)
+            computeGainTotals(firstGainYear, lastGainYear, gainTotals);
+
+        //
+        // Combine the category totals and the capital gains
+        //
+        for (int year=startYear; year<=endYear; year++) {
+            long[] totals = categoryTotals.get(year).clone();
+            long[] gains = gainTotals.get(year);
+            totals[CategoryRecord.SHORT_TERM_CAPITAL_GAIN] += gains[0];
+            totals[CategoryRecord.LONG_TERM_CAPITAL_GAIN] += gains[1];
+            results.put(year, totals);
+        }
+
+        return results;
+    }
+
+    /**
+     * A transaction has been added to or removed from the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static synchronized void transactionChanged(TransactionRecord t) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        Map<Integer, long[]> categoryTotals = context.categoryTotals;
+        Map<Integer, long[]> gainTotals = context.gainTotals;
+        if (categoryTotals.isEmpty() && gainTotals.isEmpty())
+            return;
+
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(t.getDate());
+        int year = cal.get(Calendar.YEAR);
+        categoryTotals.remove(year);
+        gainTotals.remove(year);
+        if (t.getSecurity() != null) {
+            List<Integer> years = new ArrayList<>(gainTotals.keySet());
+            for (Integer gainYear : years) {
+                if (gainYear > year)
+                    gainTotals.remove(gainYear);
+            }
+        }
+    }
+
+    /**
+     * Discard all cached totals
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        context.categoryTotals.clear();
+        context.gainTotals.clear();
+    }
+
+    /**
+     * Compute the category totals for the specified years
+     *
+     * @param       years           List of years
+     * @param       categoryTotals  Category totals by year
+     */
+    private static void computeCategoryTotals(List<Integer> years, Map<Integer, long[]> categoryTotals) {
+        Map<Integer, List<TransactionRecord>> yearTransactions = new HashMap<>();
+        for (Integer year : years)
+            yearTransactions.put(year, new ArrayList<TransactionRecord>());
+
+        //
+        // Partition the transactions by year
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        int lastYear = years.get(years.size()-1);
+        for (TransactionRecord t : TransactionRecord.getTransactions()) {
+            cal.setTime(t.getDate());
+            int year = cal.get(Calendar.YEAR);
+            if (year > lastYear)
+                break;
+
+            List<TransactionRecord> list = yearTransactions.get(year);
+            if (list != null)
+                list.add(t);
+        }
+
+        //
+        // Sum each year in parallel
+        //
+        List<YearTask> tasks = new ArrayList<>(years.size());
+        for (Integer year : years)
+            tasks.add(new YearTask(yearTransactions.get(year)));
+
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        for (int i=0; i<years.size(); i++)
+            categoryTotals.put(years.get(i), tasks.get(i).totals);
+    }
+
+    /**
+     * Compute the capital gains for the specified years
+     *
+     * @param       startYear       First year (inclusive)
+     * @param       endYear         Last year (inclusive)
+     * @param       gainTotals      Capital gains by year (short-term, long-term)
+     */
+    private static void computeGainTotals(int startYear, int endYear, Map<Integer, long[]> gainTotals) {
+        GregorianCalendar cal = new GregorianCalendar(startYear, 0, 1, 0, 0, 0);
+        Date startDate = cal.getTime();
+        cal.set(endYear, 11, 31, 23, 59, 59);
+        Date endDate = cal.getTime();
+        for (int year=startYear; year<=endYear; year++)
+            gainTotals.put(year, new long[2]);
+
+        CapitalGainsEngine engine = new CapitalGainsEngine(endDate, true);
+        for (CapitalGainRecord g : engine.getCapitalGains(startDate, endDate)) {
+            cal.setTime(g.getPurchaseDate());
+            cal.add(Calendar.YEAR, 1);
+            boolean longTerm = (g.getSellDate().compareTo(cal.getTime()) > 0);
+            cal.setTime(g.getSellDate());
+            long gain = Math.round((g.getSellAmount()-g.getCostBasis())*100.0);
+            gainTotals.get(cal.get(Calendar.YEAR))[longTerm ? 1 : 0] += gain;
+        }
+    }
+
+    /**
+     * Sum the category totals for a single year
+     */
+    private static final class YearTask extends RecursiveAction {
+
+        /** Transactions for the year */
+        private final List<TransactionRecord> transactions;
+
+        /** Totals indexed by category type */
+        private final long[] totals = new long[TYPE_COUNT];
+
+        /**
+         * Create the task
+         *
+         * @param       transactions    Transactions for the year
+         */
+        private YearTask(List<TransactionRecord> transactions) {
+            this.transactions = transactions;
+        }
+
+        /**
+         * Sum the category amounts.  The amount for an investment transaction
+         * is negated (except for a REINVEST transaction) so that income is
+         * positive and expenses are negative.
+         */
+        @Override
+        protected void compute() {
+            for (TransactionRecord t : transactions) {
+                boolean negate = (t.getAccount().getType() == AccountRecord.INVESTMENT);
+                List<TransactionSplit> splits = t.getSplits();
+                if (splits != null) {
+                    for (TransactionSplit split : splits) {
+                        CategoryRecord c = split.getCategory();
+                        if (c != null) {
+                            long amount = Math.round(split.getAmount()*100.0);
+                            totals[c.getType()] += (negate ? -amount : amount);
+                        }
+                    }
+                } else {
+                    CategoryRecord c = t.getCategory();
+                    if (c != null) {
+                        long amount = Math.round(t.getAmount()*100.0);
+                        if (negate && t.getAction() != TransactionRecord.REINVEST)
+                            amount = -amount;
+
+                        totals[c.getType()] += amount;
+                    }
+                }
+            }
+        }
+    }
+}
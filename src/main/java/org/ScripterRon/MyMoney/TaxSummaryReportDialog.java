@@ -0,0 +1,385 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+import org.ScripterRon.Report.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.print.*;
+
+/**
+ * Tax summary report dialog.  The report contains the totals for each tax
+ * category type for the selected year and is generated from the tax summary.
+ */
+public final class TaxSummaryReportDialog extends JDialog implements ActionListener {
+
+    /** Report column names */
+    private static final String[] columnNames = {"Tax Category", "Amount"};
+
+    /** Report element sizes */
+    private static final int[] elementSizes = {200, 80};
+
+    /** Report element positions */
+    private static final int[] elementPositions = {2, 211};
+
+    /** Report element alignments */
+    private static final int[] elementAlignments = {
+        ReportElement.LEFT_ALIGNMENT, ReportElement.RIGHT_ALIGNMENT};
+
+    /** Tax year field */
+    private JFormattedTextField yearField;
+
+    /**
+     * Create the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public TaxSummaryReportDialog(JFrame parent) {
+        super(parent, "Tax Summary Report", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Set the tax year to the previous year
+        //
+        GregorianCalendar cal = new GregorianCalendar();
+        cal.setTime(Main.getCurrentDate());
+        yearField = new JFormattedTextField(new EditNumber(0, false));
+        yearField.setColumns(4);
+        yearField.setInputVerifier(new EditInputVerifier(false));
+        yearField.addActionListener(new FormattedTextFieldListener(this));
+        yearField.setValue(new Integer(cal.get(Calendar.YEAR)-1));
+
+        //
+        // Create the edit pane
+        //
+        //    Tax Year:          <text-field>
+        //
+        JPanel editPane = new JPanel(new GridLayout(0, 2, 5, 5));
+
+        editPane.add(new JLabel("Tax Year:", JLabel.RIGHT));
+        editPane.add(yearField);
+
+        //
+        // Create the buttons (Create Report, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Create Report");
+        button.setActionCommand("create report");
+        button.addActionListener(this);
+        buttonPane.add(button);
+        getRootPane().setDefaultButton(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(editPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * TaxSummaryReportDialog action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "create report" - Create the report
+        // "done" - Done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "create report":
+                    if (!yearField.isEditValid()) {
+                        JOptionPane.showMessageDialog(this, "You must specify the tax year",
+                                                      "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        generateReport(((Number)yearField.getValue()).intValue());
+                    }
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (ReportException exc) {
+            Main.logException("Exception while generating report", exc);
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Generate the report
+     *
+     * @param       year            The tax year
+     * @exception   ReportException Error while generating the report
+     */
+    private void generateReport(int year) throws ReportException {
+
+        //
+        // Create the report data model
+        //
+        ReportModel reportModel = new SummaryModel(year);
+
+        //
+        // Create the report
+        //
+        Report report = new Report("Tax Summary Report", reportModel);
+        ReportState reportState = report.getState();
+        ReportGroup defaultGroup = reportState.getGroup(reportState.getGroupCount()-1);
+
+        //
+        // Highlight the column headers
+        //
+        defaultGroup.getHeader().setBackgroundColor(new Color(235, 235, 235));
+        defaultGroup.getHeader().setBorderColor(Color.BLACK);
+
+        //
+        // Set the page format using 8.5x11 paper in landscape mode with 1/2" side
+        // margins and 1/4" top margins.
+        //
+        // All measurements are in points (a point is 1/72 of an inch).  Report element
+        // coordinates are relative to the imageable area.  The printWidth and printHeight
+        // variables refer to the rotated page, thus printWidth is along the paper y-axis
+        // and printHeight is along the paper x-axis.
+        //
+        int paperWidth = 612;
+        int paperHeight = 792;
+        int topMargin = 36;
+        int leftMargin = 18;
+        int printWidth = paperHeight - 2*topMargin;
+        int printHeight = paperWidth - 2*leftMargin;
+
+        Paper paper = new Paper();
+        paper.setSize(paperWidth, paperHeight);
+        paper.setImageableArea(leftMargin, topMargin, printHeight, printWidth);
+
+        PageFormat pageFormat = new PageFormat();
+        pageFormat.setPaper(paper);
+        pageFormat.setOrientation(PageFormat.LANDSCAPE);
+        reportState.setPageFormat(pageFormat);
+
+        //
+        // Create the report fonts
+        //
+        Font plainFont = new Font("SansSerif", Font.PLAIN, 10);
+        Font boldFont = new Font("SansSerif", Font.BOLD, 10);
+        reportState.setDefaultFont(plainFont);
+        ReportLabel label;
+        ReportField field;
+
+        //
+        // Create the page header containing the report title
+        //
+        label = new ReportLabel(String.format("Tax Summary Report for %04d", year));
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(0, 0, printWidth, 25));
+        label.setHorizontalAlignment(ReportElement.CENTER_ALIGNMENT);
+        label.setVerticalAlignment(ReportElement.TOP_ALIGNMENT);
+        reportState.getPageHeader().addElement(label);
+
+        //
+        // Create the page footer containing the page number
+        //
+        reportState.addExpression(new PageFunction("Page Number"));
+
+        label = new ReportLabel("Page");
+        label.setFont(boldFont);
+        label.setBounds(new Rectangle(printWidth/2-30, 0, 25, 25));
+        label.setHorizontalAlignment(ReportElement.RIGHT_ALIGNMENT);
+        label.setVerticalAlignment(ReportElement.BOTTOM_ALIGNMENT);
+        reportState.getPageFooter().addElement(label);
+
+        field = new ReportField("Page Number");
+        field.setFont(boldFont);
+        field.setBounds(new Rectangle(printWidth/2, 0, 25, 25));
+        field.setHorizontalAlignment(ReportElement.LEFT_ALIGNMENT);
+        field.setVerticalAlignment(ReportElement.BOTTOM_ALIGNMENT);
+        reportState.getPageFooter().addElement(field);
+
+        //
+        // Create the text elements for the report
+        //
+        for (int i=0; i<columnNames.length; i++) {
+
+            //
+            // Set the column header label
+            //
+            label = new ReportLabel(columnNames[i]);
+            label.setBounds(new Rectangle(elementPositions[i], 0, elementSizes[i], 14));
+            label.setFont(boldFont);
+            label.setHorizontalAlignment(elementAlignments[i]);
+            defaultGroup.getHeader().addElement(label);
+
+            //
+            // Set the column field
+            //
+            field = new ReportField(columnNames[i]);
+            field.setBounds(new Rectangle(elementPositions[i], 0, elementSizes[i], 12));
+            field.setHorizontalAlignment(elementAlignments[i]);
+            if (i == 1)
+                field.setRenderer(new ReportAmountRenderer());
+
+            reportState.getRowBand().addElement(field);
+        }
+
+        //
+        // Display the print preview dialog
+        //
+        report.showPreview(this);
+    }
+
+    /**
+     * Show the tax summary report dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new TaxSummaryReportDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Tax summary report model
+     */
+    private class SummaryModel implements ReportModel {
+
+        /** Category types */
+        private List<Integer> types;
+
+        /** Category type totals in cents */
+        private List<Long> typeTotals;
+
+        /**
+         * Create the report model.  The general INCOME and EXPENSE category types
+         * are not included and category types without any activity are omitted.
+         *
+         * @param       year        Tax year
+         */
+        SummaryModel(int year) {
+            long[] totals = TaxSummary.getTotals(year);
+            types = new ArrayList<>();
+            typeTotals = new ArrayList<>();
+            for (int type : CategoryRecord.getTypes()) {
+                if (type == CategoryRecord.INCOME || type == CategoryRecord.EXPENSE)
+                    continue;
+
+                if (totals[type] != 0) {
+                    types.add(type);
+                    typeTotals.add(totals[type]);
+                }
+            }
+        }
+
+        /**
+         * Get the number of columns
+         *
+         * @return                  The number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * Get the number of rows
+         *
+         * @return                  The number of rows
+         */
+        public int getRowCount() {
+            return types.size();
+        }
+
+        /**
+         * Get the column name
+         *
+         * @param       column      Column index
+         * @return                  Column name
+         */
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        /**
+         * Get the object class for a column
+         *
+         * @param       column      Column index
+         * @return                  Object class
+         */
+        public Class<?> getColumnClass(int column) {
+            return String.class;
+        }
+
+        /**
+         * Get the value for a cell
+         *
+         * @param       row         Row index
+         * @param       column      Column index
+         * @return                  Cell value
+         */
+        public Object getValueAt(int row, int column) {
+            if (row >= types.size())
+                throw new IndexOutOfBoundsException("Report row "+row+" is not valid");
+
+            Object value;
+            switch (column) {
+                case 0:                         // Tax category
+                    value = CategoryRecord.getTypeString(types.get(row));
+                    break;
+
+                case 1:                         // Amount
+                    value = String.format("%,.2f", (double)typeTotals.get(row)/100.0);
+                    break;
+
+                default:
+                    throw new IndexOutOfBoundsException("Report column "+column+" is not valid");
+            }
+
+            return value;
+        }
+    }
+}
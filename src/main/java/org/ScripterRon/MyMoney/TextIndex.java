@@ -0,0 +1,556 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The text index is an inverted index over the transaction names, memos and split
+ * descriptions.  Each indexed transaction is assigned an ordinal and the index maps
+ * each token and each token trigram to the list of ordinals for the transactions
+ * containing the token or trigram.  A token is a sequence of letters and digits and
+ * is converted to lower case before it is indexed.
+ * <p>
+ * The ordinals in a posting list are in ascending order and are stored as
+ * variable-length deltas.  Ordinals are assigned in ascending order, so a
+ * new transaction is always appended to the end of a posting list.  A removed
+ * transaction is not removed from the posting lists.  Instead, its ordinal is no
+ * longer mapped to a transaction and it is skipped when searching.  The index is
+ * rebuilt when more than half of the ordinals have been removed.
+ * <p>
+ * The index is built on a background thread when the database is loaded.  Changes
+ * made while the index is being built are queued and applied when the build is
+ * complete.  A search will wait until the build is complete.
+ */
+public final class TextIndex {
+
+    /** Minimum number of ordinals before removed ordinals are reclaimed */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    /** Transactions to be indexed by the build thread */
+    private List<TransactionRecord> buildList;
+
+    /** Changes made while the index is being built (TRUE for add, FALSE for remove) */
+    private final List<Object[]> pendingChanges = new ArrayList<>();
+
+    /** Index build is complete */
+    private boolean built;
+
+    /** Transaction for each ordinal (null if the transaction has been removed) */
+    private final List<TransactionRecord> ordinals = new ArrayList<>();
+
+    /** Ordinal for each transaction */
+    private final Map<TransactionRecord, Integer> ordinalMap = new IdentityHashMap<>();
+
+    /** Number of removed ordinals */
+    private int removedCount;
+
+    /** Token postings */
+    private final Map<String, Posting> tokens = new HashMap<>();
+
+    /** Trigram postings */
+    private final Map<String, Posting> trigrams = new HashMap<>();
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            TransactionRecord t = event.getTransaction();
+            switch (event.getType()) {
+                case LedgerEvent.INSERT:
+                    transactionAdded(t);
+                    break;
+
+                case LedgerEvent.DELETE:
+                    transactionRemoved(t);
+                    break;
+
+                default:
+                    transactionRemoved(event.getBeforeTransaction());
+                    transactionAdded(t);
+            }
+        }
+    };
+
+    /**
+     * Create a text index for a transaction list
+     *
+     * @param       transactions    Transactions to be indexed
+     */
+    private TextIndex(List<TransactionRecord> transactions) {
+        buildList = transactions;
+    }
+
+    /**
+     * Start building the text index for the current transaction list.  The index
+     * is built on a background thread.
+     */
+    public static void build() {
+        final TextIndex newIndex = new TextIndex(new ArrayList<>(TransactionRecord.getTransactions()));
+        synchronized(TextIndex.class) {
+            DatabaseContext.getCurrent().textIndex = newIndex;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                newIndex.populate();
+            }
+        }, "Text Index Builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the text index, starting a build if necessary
+     *
+     * @return                      The text index
+     */
+    public static TextIndex getIndex() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        TextIndex currentIndex;
+        synchronized(TextIndex.class) {
+            currentIndex = context.textIndex;
+        }
+
+        if (currentIndex == null) {
+            build();
+            synchronized(TextIndex.class) {
+                currentIndex = context.textIndex;
+            }
+        }
+
+        return currentIndex;
+    }
+
+    /**
+     * Discard the current text index
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext.getCurrent().textIndex = null;
+    }
+
+    /**
+     * A transaction has been added to the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionAdded(TransactionRecord t) {
+        TextIndex currentIndex;
+        synchronized(TextIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().textIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.change(t, true);
+    }
+
+    /**
+     * A transaction has been removed from the transaction list
+     *
+     * @param       t               Transaction
+     */
+    private static void transactionRemoved(TransactionRecord t) {
+        TextIndex currentIndex;
+        synchronized(TextIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().textIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.change(t, false);
+    }
+
+    /**
+     * Search for transactions containing all of the words in the search text.
+     * A word matches if it is contained in the transaction name, memo or split
+     * description (the comparison is not case-sensitive).  This method will wait
+     * if the index is still being built.
+     *
+     * @param       text            Search text
+     * @return                      Matching transactions sorted by date
+     * @exception   InterruptedException    Wait interrupted
+     */
+    public synchronized List<TransactionRecord> search(String text) throws InterruptedException {
+        while (!built)
+            wait();
+
+        List<String> words = getTokens(text);
+        List<TransactionRecord> results = new ArrayList<>();
+        if (words.isEmpty())
+            return results;
+
+        //
+        // Get the candidate ordinals for each word and intersect the lists
+        //
+        int[] candidates = null;
+        for (String word : words) {
+            int[] wordOrdinals = getCandidates(word);
+            candidates = (candidates == null ? wordOrdinals : intersect(candidates, wordOrdinals));
+            if (candidates.length == 0)
+                return results;
+        }
+
+        //
+        // Verify each candidate since the trigrams in a word are not necessarily
+        // contiguous in the indexed text
+        //
+        for (int ordinal : candidates) {
+            TransactionRecord t = ordinals.get(ordinal);
+            if (t == null)
+                continue;
+
+            List<String> texts = getText(t);
+            boolean match = true;
+            for (String word : words) {
+                boolean found = false;
+                for (String s : texts) {
+                    if (s.contains(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+
+                if (!found) {
+                    match = false;
+                    break;
+                }
+            }
+
+            if (match)
+                results.add(t);
+        }
+
+        //
+        // Ordinals for transactions added after the index was built are not in
+        // date order, so sort the results by date (the sort is stable)
+        //
+        Collections.sort(results, new Comparator<TransactionRecord>() {
+            @Override
+            public int compare(TransactionRecord t1, TransactionRecord t2) {
+                return t1.getDate().compareTo(t2.getDate());
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Build the index for the transactions in the build list
+     */
+    private void populate() {
+        List<TransactionRecord> transactions;
+        synchronized(this) {
+            transactions = buildList;
+            buildList = null;
+        }
+
+        for (TransactionRecord t : transactions)
+            add(t);
+
+        synchronized(this) {
+            for (Object[] change : pendingChanges) {
+                if ((Boolean)change[1])
+                    add((TransactionRecord)change[0]);
+                else
+                    remove((TransactionRecord)change[0]);
+            }
+
+            pendingChanges.clear();
+            built = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Add or remove a transaction
+     *
+     * @param       t               Transaction
+     * @param       added           TRUE if the transaction was added
+     */
+    private synchronized void change(TransactionRecord t, boolean added) {
+        if (!built) {
+            pendingChanges.add(new Object[] {t, added});
+        } else if (added) {
+            add(t);
+        } else {
+            remove(t);
+            if (removedCount > COMPACT_THRESHOLD && removedCount > ordinals.size()/2)
+                compact();
+        }
+    }
+
+    /**
+     * Add a transaction to the index
+     *
+     * @param       t               Transaction
+     */
+    private void add(TransactionRecord t) {
+        int ordinal = ordinals.size();
+        ordinals.add(t);
+        ordinalMap.put(t, ordinal);
+        Set<String> tokenSet = new HashSet<>();
+        Set<String> trigramSet = new HashSet<>();
+        for (String s : getText(t)) {
+            for (String token : getTokens(s)) {
+                if (tokenSet.add(token)) {
+                    for (int i=0; i+3<=token.length(); i++)
+                        trigramSet.add(token.substring(i, i+3));
+                }
+            }
+        }
+
+        for (String token : tokenSet)
+            getPosting(tokens, token).add(ordinal);
+
+        for (String trigram : trigramSet)
+            getPosting(trigrams, trigram).add(ordinal);
+    }
+
+    /**
+     * Remove a transaction from the index
+     *
+     * @param       t               Transaction
+     */
+    private void remove(TransactionRecord t) {
+        Integer ordinal = ordinalMap.remove(t);
+        if (ordinal != null) {
+            ordinals.set(ordinal, null);
+            removedCount++;
+        }
+    }
+
+    /**
+     * Rebuild the index using the transactions that have not been removed
+     */
+    private void compact() {
+        List<TransactionRecord> transactions = new ArrayList<>(ordinals.size()-removedCount);
+        for (TransactionRecord t : ordinals) {
+            if (t != null)
+                transactions.add(t);
+        }
+
+        ordinals.clear();
+        ordinalMap.clear();
+        tokens.clear();
+        trigrams.clear();
+        removedCount = 0;
+        for (TransactionRecord t : transactions)
+            add(t);
+    }
+
+    /**
+     * Get the candidate ordinals for a search word.  The trigram postings are
+     * intersected for a word with at least 3 characters.  Otherwise, the postings
+     * for all tokens containing the word are merged.
+     *
+     * @param       word            Search word
+     * @return                      Candidate ordinals in ascending order
+     */
+    private int[] getCandidates(String word) {
+        int[] candidates;
+        if (word.length() >= 3) {
+            candidates = null;
+            for (int i=0; i+3<=word.length(); i++) {
+                Posting posting = trigrams.get(word.substring(i, i+3));
+                if (posting == null)
+                    return new int[0];
+
+                int[] trigramOrdinals = posting.decode();
+                candidates = (candidates == null ? trigramOrdinals : intersect(candidates, trigramOrdinals));
+            }
+        } else {
+            Set<Integer> ordinalSet = new HashSet<>();
+            for (Map.Entry<String, Posting> entry : tokens.entrySet()) {
+                if (entry.getKey().contains(word)) {
+                    for (int ordinal : entry.getValue().decode())
+                        ordinalSet.add(ordinal);
+                }
+            }
+
+            candidates = new int[ordinalSet.size()];
+            int i = 0;
+            for (Integer ordinal : ordinalSet)
+                candidates[i++] = ordinal;
+
+            Arrays.sort(candidates);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Intersect two ordinal lists
+     *
+     * @param       list1           First list in ascending order
+     * @param       list2           Second list in ascending order
+     * @return                      Intersection in ascending order
+     */
+    private static int[] intersect(int[] list1, int[] list2) {
+        int[] result = new int[Math.min(list1.length, list2.length)];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < list1.length && j < list2.length) {
+            if (list1[i] < list2[j]) {
+                i++;
+            } else if (list1[i] > list2[j]) {
+                j++;
+            } else {
+                result[count++] = list1[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Get the posting for a key, creating it if necessary
+     *
+     * @param       map             Posting map
+     * @param       key             Token or trigram
+     * @return                      Posting
+     */
+    private static Posting getPosting(Map<String, Posting> map, String key) {
+        Posting posting = map.get(key);
+        if (posting == null) {
+            posting = new Posting();
+            map.put(key, posting);
+        }
+
+        return posting;
+    }
+
+    /**
+     * Get the indexed text for a transaction in lower case
+     *
+     * @param       t               Transaction
+     * @return                      List of text strings
+     */
+    private static List<String> getText(TransactionRecord t) {
+        List<String> texts = new ArrayList<>(3);
+        texts.add(t.getName().toLowerCase());
+        texts.add(t.getMemo().toLowerCase());
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                String description = split.getDescription();
+                if (description != null && description.length() != 0)
+                    texts.add(description.toLowerCase());
+            }
+        }
+
+        return texts;
+    }
+
+    /**
+     * Split a string into lower-case tokens
+     *
+     * @param       text            Text string
+     * @return                      List of tokens
+     */
+    private static List<String> getTokens(String text) {
+        List<String> tokenList = new ArrayList<>();
+        int start = -1;
+        for (int i=0; i<=text.length(); i++) {
+            if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0)
+                    start = i;
+            } else if (start >= 0) {
+                tokenList.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+
+        return tokenList;
+    }
+
+    /**
+     * A posting is a compressed list of ordinals in ascending order.  Each ordinal
+     * is stored as the difference from the previous ordinal using a variable-length
+     * encoding with 7 bits per byte.  The high-order bit is set in all but the last
+     * byte of an encoded value.
+     */
+    private static final class Posting {
+
+        /** Encoded ordinals */
+        private byte[] data = new byte[4];
+
+        /** Number of bytes used */
+        private int length;
+
+        /** Number of ordinals */
+        private int count;
+
+        /** Last ordinal */
+        private int lastOrdinal;
+
+        /**
+         * Append an ordinal to the list
+         *
+         * @param       ordinal         Ordinal greater than the last ordinal
+         */
+        private void add(int ordinal) {
+            int delta = (count == 0 ? ordinal : ordinal-lastOrdinal);
+            if (length+5 > data.length)
+                data = Arrays.copyOf(data, data.length*2);
+
+            while ((delta&~0x7f) != 0) {
+                data[length++] = (byte)((delta&0x7f)|0x80);
+                delta >>>= 7;
+            }
+
+            data[length++] = (byte)delta;
+            lastOrdinal = ordinal;
+            count++;
+        }
+
+        /**
+         * Decode the ordinals
+         *
+         * @return                      Ordinals in ascending order
+         */
+        private int[] decode() {
+            int[] result = new int[count];
+            int ordinal = 0;
+            int offset = 0;
+            for (int i=0; i<count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    delta |= (b&0x7f)<<shift;
+                    shift += 7;
+                } while ((b&0x80) != 0);
+
+                ordinal = (i == 0 ? delta : ordinal+delta);
+                result[i] = ordinal;
+            }
+
+            return result;
+        }
+    }
+}
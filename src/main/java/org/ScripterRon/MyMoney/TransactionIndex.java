@@ -0,0 +1,296 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The transaction index provides random access to the transaction list and a
+ * date-ordered transaction list for each account.  The transaction list is a
+ * linked list, so the index maintains an array copy which can be searched by date.
+ * <p>
+ * A transaction is included in the account list for the transaction account, the
+ * transfer account and each split account.  The split accounts are saved when the
+ * transaction is added, so the transaction is removed from the same account lists
+ * even if a split list shared with an edit dialog is changed before the removal.
+ * <p>
+ * The index is built in a single pass over the transaction list the first time it
+ * is referenced and is then updated as transactions are added and removed.  The
+ * index is discarded when a new database is loaded.
+ */
+public final class TransactionIndex {
+
+    /** Transactions sorted by date */
+    private final List<TransactionRecord> transactions;
+
+    /** Account transaction lists indexed by the account identifier */
+    private final Map<Integer, List<TransactionRecord>> accountTransactions = new HashMap<>();
+
+    /** Split accounts saved for each split transaction */
+    private final Map<TransactionRecord, int[]> splitAccounts = new IdentityHashMap<>();
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            //
+            // The accounts are not changed when a transaction is updated in place
+            //
+            if (event.getType() == LedgerEvent.INSERT)
+                transactionAdded(event.getPosition(), event.getTransaction());
+            else if (event.getType() == LedgerEvent.DELETE)
+                transactionRemoved(event.getPosition(), event.getTransaction());
+        }
+    };
+
+    /**
+     * Create the transaction index from the current transaction list
+     */
+    private TransactionIndex() {
+        transactions = new ArrayList<>(TransactionRecord.getTransactions());
+        for (TransactionRecord t : transactions) {
+            int[] accountIDs = getAccountIDs(t);
+            for (int accountID : accountIDs)
+                getAccountList(accountID).add(t);
+        }
+    }
+
+    /**
+     * Get the transaction index, building it if necessary
+     *
+     * @return                      The transaction index
+     */
+    public static synchronized TransactionIndex getIndex() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.transactionIndex == null)
+            context.transactionIndex = new TransactionIndex();
+
+        return context.transactionIndex;
+    }
+
+    /**
+     * Discard the current transaction index.  The index will be rebuilt the next
+     * time it is referenced.
+     */
+    public static synchronized void invalidate() {
+        DatabaseContext.getCurrent().transactionIndex = null;
+    }
+
+    /**
+     * A transaction has been added to the transaction list
+     *
+     * @param       position        Position of the transaction in the transaction list
+     * @param       t               Transaction
+     */
+    private static void transactionAdded(int position, TransactionRecord t) {
+        TransactionIndex currentIndex;
+        synchronized(TransactionIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().transactionIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.add(position, t);
+    }
+
+    /**
+     * A transaction has been removed from the transaction list
+     *
+     * @param       position        Former position of the transaction in the transaction list
+     * @param       t               Transaction
+     */
+    private static void transactionRemoved(int position, TransactionRecord t) {
+        TransactionIndex currentIndex;
+        synchronized(TransactionIndex.class) {
+            currentIndex = DatabaseContext.getCurrent().transactionIndex;
+        }
+
+        if (currentIndex != null)
+            currentIndex.remove(position, t);
+    }
+
+    /**
+     * Get the transactions sorted by date.  The returned list must not be modified.
+     *
+     * @return                      Transaction list
+     */
+    public List<TransactionRecord> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Get the transactions for an account sorted by date.  The list includes
+     * transactions where the account is the transaction account, the transfer
+     * account or a split account.  The returned list must not be modified.
+     *
+     * @param       account         Account
+     * @return                      Transaction list
+     */
+    public synchronized List<TransactionRecord> getTransactions(AccountRecord account) {
+        return getAccountList(account.getID());
+    }
+
+    /**
+     * Locate the first transaction in a date-ordered list with a date that is
+     * not before the specified date
+     *
+     * @param       list            Transaction list sorted by date
+     * @param       date            Date
+     * @return                      List index (list size if there is no such transaction)
+     */
+    public static int findFirst(List<TransactionRecord> list, Date date) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low+high)>>>1;
+            if (list.get(mid).getDate().compareTo(date) < 0)
+                low = mid+1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Locate the first transaction in a date-ordered list with a date that is
+     * after the specified date
+     *
+     * @param       list            Transaction list sorted by date
+     * @param       date            Date
+     * @return                      List index (list size if there is no such transaction)
+     */
+    public static int findAfter(List<TransactionRecord> list, Date date) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low+high)>>>1;
+            if (list.get(mid).getDate().compareTo(date) <= 0)
+                low = mid+1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Add a transaction to the index
+     *
+     * @param       position        Position in the transaction list
+     * @param       t               Transaction
+     */
+    private synchronized void add(int position, TransactionRecord t) {
+        transactions.add(position, t);
+        int[] accountIDs = getAccountIDs(t);
+        for (int accountID : accountIDs) {
+            List<TransactionRecord> list = getAccountList(accountID);
+            list.add(findAfter(list, t.getDate()), t);
+        }
+
+        if (t.getSplits() != null)
+            splitAccounts.put(t, accountIDs);
+    }
+
+    /**
+     * Remove a transaction from the index
+     *
+     * @param       position        Former position in the transaction list
+     * @param       t               Transaction
+     */
+    private synchronized void remove(int position, TransactionRecord t) {
+        transactions.remove(position);
+        int[] accountIDs = splitAccounts.remove(t);
+        if (accountIDs == null)
+            accountIDs = getAccountIDs(t);
+
+        for (int accountID : accountIDs) {
+            List<TransactionRecord> list = getAccountList(accountID);
+            for (int i=findFirst(list, t.getDate()); i<list.size(); i++) {
+                if (list.get(i) == t) {
+                    list.remove(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the account list for an account, creating it if necessary
+     *
+     * @param       accountID       Account identifier
+     * @return                      Account list
+     */
+    private List<TransactionRecord> getAccountList(int accountID) {
+        List<TransactionRecord> list = accountTransactions.get(accountID);
+        if (list == null) {
+            list = new ArrayList<>();
+            accountTransactions.put(accountID, list);
+        }
+
+        return list;
+    }
+
+    /**
+     * Get the identifiers of the accounts referenced by a transaction.  Each
+     * account is returned just once.
+     *
+     * @param       t               Transaction
+     * @return                      Account identifiers
+     */
+    private static int[] getAccountIDs(TransactionRecord t) {
+        List<TransactionSplit> splits = t.getSplits();
+        int[] accountIDs = new int[2+(splits != null ? splits.size() : 0)];
+        int count = 0;
+        accountIDs[count++] = t.getAccount().getID();
+        AccountRecord transferAccount = t.getTransferAccount();
+        if (transferAccount != null)
+            count = addAccountID(accountIDs, count, transferAccount.getID());
+
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                if (split.getAccount() != null)
+                    count = addAccountID(accountIDs, count, split.getAccount().getID());
+            }
+        }
+
+        int[] result = new int[count];
+        System.arraycopy(accountIDs, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Add an account identifier if it is not already in the array
+     *
+     * @param       accountIDs      Account identifiers
+     * @param       count           Number of identifiers in the array
+     * @param       accountID       Account identifier
+     * @return                      Updated number of identifiers
+     */
+    private static int addAccountID(int[] accountIDs, int count, int accountID) {
+        for (int i=0; i<count; i++) {
+            if (accountIDs[i] == accountID)
+                return count;
+        }
+
+        accountIDs[count] = accountID;
+        return count+1;
+    }
+}
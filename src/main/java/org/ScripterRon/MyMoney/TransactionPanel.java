@@ -15,6 +15,8 @@
  */
 package org.ScripterRon.MyMoney;
 
+import java.util.List;
+
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
@@ -23,6 +25,9 @@ import java.awt.event.*;
 
 /**
  * Abstract class for the transaction panels
+ * <p>
+ * The preceding transaction partition is loaded when the table is scrolled back
+ * to the first row and the main window then rebuilds the panel.
  */
 public abstract class TransactionPanel extends JPanel {
 
@@ -43,6 +48,9 @@ public abstract class TransactionPanel extends JPanel {
 
     /** Panel name label */
     protected JLabel nameLabel;
+
+    /** Scroll listener has been added */
+    private boolean scrollListenerAdded;
     
     /**
      * Create the transaction panel
@@ -53,6 +61,45 @@ public abstract class TransactionPanel extends JPanel {
         super(lm);
     }
     
+    /**
+     * Add the scroll listener when the panel is added to a container
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (scrollListenerAdded || scrollPane == null || scrollPane.getVerticalScrollBar() == null)
+            return;
+
+        //
+        // Load the preceding transaction partition when the table is scrolled
+        // back to the first row after being positioned away from it
+        //
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+            private boolean awayFromTop;
+
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent ae) {
+                if (ae.getValueIsAdjusting())
+                    return;
+
+                JScrollBar scrollBar = (JScrollBar)ae.getAdjustable();
+                if (ae.getValue() > scrollBar.getMinimum()) {
+                    awayFromTop = true;
+                } else if (awayFromTop) {
+                    awayFromTop = false;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (TransactionPartitions.loadPrevious() && Main.mainWindow != null)
+                                Main.mainWindow.partitionsChanged();
+                        }
+                    });
+                }
+            }
+        });
+        scrollListenerAdded = true;
+    }
+
     /**
      * Get the account for the transaction panel
      *
@@ -103,6 +150,47 @@ public abstract class TransactionPanel extends JPanel {
         }
     }
     
+    /**
+     * Get the transaction displayed in the first visible row
+     *
+     * @return                      The transaction or null
+     */
+    public TransactionRecord getFirstVisibleTransaction() {
+        if (table == null || scrollPane == null || !(table.getModel() instanceof AccountTableModel))
+            return null;
+
+        int row = table.rowAtPoint(scrollPane.getViewport().getViewPosition());
+        if (row < 0)
+            return null;
+
+        return ((AccountTableModel)table.getModel()).getTransactionAt(table.convertRowIndexToModel(row));
+    }
+
+    /**
+     * Position the table so the row for a transaction is the first visible row
+     *
+     * @param       transaction     The transaction
+     * @return                      TRUE if the transaction is in the table
+     */
+    public boolean showTransaction(TransactionRecord transaction) {
+        if (table == null || scrollPane == null || !(table.getModel() instanceof AccountTableModel))
+            return false;
+
+        AccountTableModel tableModel = (AccountTableModel)table.getModel();
+        JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
+        if (scrollBar == null)
+            return false;
+
+        for (int i=0; i<tableModel.getRowCount(); i++) {
+            if (tableModel.getTransactionAt(i) == transaction) {
+                scrollBar.setValue(table.convertRowIndexToView(i)*table.getRowHeight());
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Select and show the specified row
      *
@@ -157,6 +245,41 @@ public abstract class TransactionPanel extends JPanel {
         super.validate();
     }
 
+    /**
+     * A transaction for the account has been added while the panel is not displayed.
+     * Subclasses should override this method if they do not use AccountTableModel.
+     *
+     * @param       transaction     The new transaction
+     */
+    public void transactionAdded(TransactionRecord transaction) {
+        if (table != null && table.getModel() instanceof AccountTableModel)
+            ((AccountTableModel)table.getModel()).transactionAdded(-1, transaction);
+    }
+
+    /**
+     * A transaction has been removed while the panel is not displayed.  The
+     * transaction may not be an account transaction.  Subclasses should override
+     * this method if they do not use AccountTableModel.
+     *
+     * @param       transaction     The removed transaction
+     */
+    public void transactionRemoved(TransactionRecord transaction) {
+        if (table != null && table.getModel() instanceof AccountTableModel)
+            ((AccountTableModel)table.getModel()).transactionRemoved(transaction);
+    }
+
+    /**
+     * Transactions have been modified in place while the panel is not displayed.
+     * The transactions may not be account transactions.  Subclasses should override
+     * this method if they do not use AccountTableModel.
+     *
+     * @param       transactions    The modified transactions
+     */
+    public void transactionsModified(List<TransactionRecord> transactions) {
+        if (table != null && table.getModel() instanceof AccountTableModel)
+            ((AccountTableModel)table.getModel()).transactionsModified(transactions);
+    }
+
     /**
      * Refresh the transaction panel when account transactions have changed.
      * Subclasses should override this method to provide account-specific
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.awt.Dialog;
+import java.awt.EventQueue;
+import java.awt.Window;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.SortedMap;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * The transactions are stored in a partition file for each year (see Database).  The
+ * partitions for the current year and the previous year are loaded with the database
+ * and the older partitions are loaded when they are needed:
+ * <ul>
+ * <li>A register loads the preceding partition when it is scrolled back to the first row
+ * <li>A report, graph or query loads the partitions covered by its date range
+ * <li>The security holdings, capital gains and investment returns load all of the
+ *     partitions since they depend on the lot history
+ * <li>The reconcile dialog loads the partitions with unreconciled transactions for
+ *     the account
+ * </ul>
+ * <p>
+ * The loaded partitions are always the most recent partitions and a valid year-end
+ * checkpoint exists for the last partition that is not loaded.  A balance or holdings
+ * computation starts with that checkpoint and a register starts with the checkpoint
+ * balance, so the results are correct without the older transactions.
+ * <p>
+ * The older partitions are evicted when the heap usage after a garbage collection
+ * exceeds the eviction threshold.  The partitions for the current year and the previous
+ * year are not evicted and a partition with modified transactions is not evicted until
+ * the database has been saved.
+ * <p>
+ * The partitions for the application context are loaded on the event dispatch thread
+ * since that is the only thread that modifies the database.
+ */
+public final class TransactionPartitions {
+
+    /** Heap usage eviction threshold (percentage of the maximum heap size) */
+    private static final long EVICT_THRESHOLD = 80;
+
+    /** Ledger cache registered with the ledger event bus */
+    static final LedgerCache ledgerCache = new LedgerCache() {
+        @Override
+        public void transactionChanged(LedgerEvent event) {
+            transactionModified(event.getTransaction());
+        }
+    };
+
+    /**
+     * Load the partitions for the year containing the supplied date and the
+     * following years
+     *
+     * @param       date            Date
+     */
+    public static void load(Date date) {
+        loadYear(CheckpointRecord.getYear(date));
+    }
+
+    /**
+     * Load all of the partitions
+     */
+    public static void loadAll() {
+        loadYear(0);
+    }
+
+    /**
+     * Load the partition preceding the first loaded partition
+     *
+     * @return                      TRUE if a partition was loaded
+     */
+    public static boolean loadPrevious() {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.firstLoadedYear == 0)
+            return false;
+
+        SortedMap<Integer, PartitionRecord> unloaded = context.partitions.headMap(context.firstLoadedYear);
+        if (unloaded.isEmpty())
+            return false;
+
+        return loadYear(unloaded.lastKey());
+    }
+
+    /**
+     * Load the partitions containing unreconciled transactions for an account.  The
+     * oldest partition with unreconciled transactions and the following partitions
+     * are loaded, so the transactions in the partitions that are not loaded have all
+     * been reconciled.
+     *
+     * @param       account         Account
+     */
+    public static void loadUnreconciled(AccountRecord account) {
+        DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.firstLoadedYear == 0)
+            return;
+
+        for (PartitionRecord p : context.partitions.headMap(context.firstLoadedYear).values()) {
+            if (p.hasUnreconciled(account)) {
+                loadYear(p.getYear());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the checkpoint for the last partition that is not loaded.  This is
+     * the starting point for a computation using the loaded transactions.
+     *
+     * @return                      Checkpoint or null if all partitions are loaded
+     */
+    public static CheckpointRecord getOpeningCheckpoint() {
+        int firstLoadedYear = DatabaseContext.getCurrent().firstLoadedYear;
+        if (firstLoadedYear == 0)
+            return null;
+
+        return CheckpointRecord.getCheckpoint(new GregorianCalendar(firstLoadedYear, 0, 1).getTime());
+    }
+
+    /**
+     * A transaction has been added, removed or modified.  The partition for the
+     * transaction year will be written when the database is saved.
+     *
+     * @param       transaction     Transaction
+     */
+    public static void transactionModified(TransactionRecord transaction) {
+        DatabaseContext.getCurrent().modifiedYears.add(CheckpointRecord.getYear(transaction.getDate()));
+    }
+
+    /**
+     * Start monitoring the heap usage.  The older partitions for the application
+     * context are evicted when the heap usage after a garbage collection exceeds
+     * the eviction threshold.
+     */
+    public static void startMemoryMonitor() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long maxSize = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && maxSize > 0)
+                pool.setCollectionUsageThreshold(maxSize/100*EVICT_THRESHOLD);
+        }
+
+        NotificationEmitter emitter = (NotificationEmitter)ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (notification.getType().equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+                    EventQueue.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            evict();
+                        }
+                    });
+                }
+            }
+        }, null, null);
+    }
+
+    /**
+     * Load the partitions for the supplied year and the following years in the
+     * current database context
+     *
+     * @param       year            Partition year (0 to load all partitions)
+     * @return                      TRUE if partitions were loaded
+     */
+    private static boolean loadYear(final int year) {
+        final DatabaseContext context = DatabaseContext.getCurrent();
+        if (context.database == null || context.firstLoadedYear == 0 || year >= context.firstLoadedYear)
+            return false;
+
+        if (Main.headless || !context.isApplicationContext() || EventQueue.isDispatchThread())
+            return loadPartitions(context, year);
+
+        final boolean[] result = new boolean[1];
+        try {
+            EventQueue.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    result[0] = loadPartitions(context, year);
+                }
+            });
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading transactions", exc);
+        } catch (InvocationTargetException exc) {
+            throw new IllegalStateException("Unable to load transactions", exc.getCause());
+        }
+
+        return result[0];
+    }
+
+    /**
+     * Load the partitions for a database context
+     *
+     * @param       context         Database context
+     * @param       year            Partition year (0 to load all partitions)
+     * @return                      TRUE if partitions were loaded
+     */
+    private static boolean loadPartitions(DatabaseContext context, int year) {
+        boolean loaded = false;
+        try {
+            loaded = context.database.loadPartitions(year);
+        } catch (IOException exc) {
+            Main.logException("Unable to load transactions", exc);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Evict the older partitions for the application context.  The partitions are
+     * not evicted while a dialog is displayed since the dialog may be using the
+     * transactions.  The main window discards the transaction panels after the
+     * partitions have been evicted.
+     */
+    private static void evict() {
+        DatabaseContext context = DatabaseContext.getApplicationContext();
+        if (context.database == null || Main.mainWindow == null)
+            return;
+
+        for (Window window : Main.mainWindow.getOwnedWindows()) {
+            if (window instanceof Dialog && window.isShowing())
+                return;
+        }
+
+        if (context.database.evictPartitions())
+            Main.mainWindow.partitionsChanged();
+    }
+}
@@ -0,0 +1,518 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A transaction query selects transactions from the transaction list.  The query
+ * criteria are set using the setter methods, each of which returns the query so
+ * that the calls can be chained:
+ * <pre>
+ *     for (TransactionRecord t : new TransactionQuery().setAccount(account)
+ *                                                      .setDateRange(startDate, endDate))
+ *         ...
+ * </pre>
+ * <p>
+ * The query is evaluated lazily as the results are iterated.  The access path is
+ * chosen when iteration begins: the date-ordered transaction list is searched for
+ * the date range, the account transaction list is used for an account query, and
+ * the transaction list is scanned when neither is available.  The path selecting the
+ * fewest candidate transactions is used and the remaining criteria are applied to
+ * each candidate.  The results are always returned in date order.  The transaction
+ * partitions covering the date range are loaded before the transaction list is searched.
+ * <p>
+ * When split expansion is requested, a split transaction is returned as a temporary
+ * transaction for each split in the same manner as the transaction report.  The
+ * category, amount and text criteria are then applied to the expanded transactions.
+ * <p>
+ * A query can also select transactions from a date-ordered list such as the
+ * transaction list in a ledger snapshot.  The list is searched for the date range
+ * and the transaction index is not used, so the query can be evaluated on any thread.
+ * <p>
+ * The transaction list must not be modified while the results are being iterated.
+ */
+public final class TransactionQuery implements Iterable<TransactionRecord> {
+
+    /** Start date or null */
+    private Date startDate;
+
+    /** End date or null */
+    private Date endDate;
+
+    /** Account or null */
+    private AccountRecord account;
+
+    /** Category or null */
+    private CategoryRecord category;
+
+    /** Security or null */
+    private SecurityRecord security;
+
+    /** Transaction actions or null */
+    private int[] actions;
+
+    /** Reconciled state (0 for any, 1 for reconciled, -1 for not reconciled) */
+    private int reconciledState;
+
+    /** Minimum amount */
+    private double minAmount = -Double.MAX_VALUE;
+
+    /** Maximum amount */
+    private double maxAmount = Double.MAX_VALUE;
+
+    /** Search text (lower case) or null */
+    private String text;
+
+    /** Expand split transactions */
+    private boolean expandSplits;
+
+    /** Transaction list or null to use the transaction index */
+    private final List<TransactionRecord> transactions;
+
+    /**
+     * Create a query that selects all transactions
+     */
+    public TransactionQuery() {
+        transactions = null;
+    }
+
+    /**
+     * Create a query that selects transactions from a transaction list
+     *
+     * @param       transactions    Transaction list sorted by date
+     */
+    public TransactionQuery(List<TransactionRecord> transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * Select transactions within a date range.  Either date may be null.
+     *
+     * @param       startDate       Start date (inclusive) or null
+     * @param       endDate         End date (inclusive) or null
+     * @return                      This query
+     */
+    public TransactionQuery setDateRange(Date startDate, Date endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        return this;
+    }
+
+    /**
+     * Select transactions for an account.  The account can be the transaction
+     * account, the transfer account or a split account.
+     *
+     * @param       account         Account or null
+     * @return                      This query
+     */
+    public TransactionQuery setAccount(AccountRecord account) {
+        this.account = account;
+        return this;
+    }
+
+    /**
+     * Select transactions for a category.  A split transaction that is not
+     * expanded is selected if any of the splits are for the category.
+     *
+     * @param       category        Category or null
+     * @return                      This query
+     */
+    public TransactionQuery setCategory(CategoryRecord category) {
+        this.category = category;
+        return this;
+    }
+
+    /**
+     * Select transactions for a security.  The security can be either the
+     * transaction security or the new security.
+     *
+     * @param       security        Security or null
+     * @return                      This query
+     */
+    public TransactionQuery setSecurity(SecurityRecord security) {
+        this.security = security;
+        return this;
+    }
+
+    /**
+     * Select transactions with one of the specified actions
+     *
+     * @param       actions         Transaction actions
+     * @return                      This query
+     */
+    public TransactionQuery setActions(int... actions) {
+        this.actions = (actions.length != 0 ? actions.clone() : null);
+        return this;
+    }
+
+    /**
+     * Select transactions based on the reconciled state.  The reconciled flags for
+     * the query account are used if an account has been specified, otherwise the
+     * reconciled flags for the transaction account are used.  A transaction that
+     * is pending reconciliation is not reconciled.
+     *
+     * @param       reconciled      TRUE to select reconciled transactions
+     * @return                      This query
+     */
+    public TransactionQuery setReconciled(boolean reconciled) {
+        reconciledState = (reconciled ? 1 : -1);
+        return this;
+    }
+
+    /**
+     * Select transactions within an amount range.  The amount is the amount as it
+     * pertains to the query account if an account has been specified, otherwise it
+     * is the amount as it pertains to the transaction account.
+     *
+     * @param       minAmount       Minimum amount (inclusive)
+     * @param       maxAmount       Maximum amount (inclusive)
+     * @return                      This query
+     */
+    public TransactionQuery setAmountRange(double minAmount, double maxAmount) {
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        return this;
+    }
+
+    /**
+     * Select transactions containing the search text in the name, the memo or a
+     * split description.  The comparison is not case-sensitive.
+     *
+     * @param       text            Search text or null
+     * @return                      This query
+     */
+    public TransactionQuery setText(String text) {
+        this.text = (text != null && text.length() != 0 ? text.toLowerCase() : null);
+        return this;
+    }
+
+    /**
+     * Expand split transactions into a temporary transaction for each split
+     *
+     * @param       expandSplits    TRUE to expand split transactions
+     * @return                      This query
+     */
+    public TransactionQuery setExpandSplits(boolean expandSplits) {
+        this.expandSplits = expandSplits;
+        return this;
+    }
+
+    /**
+     * Return an iterator for the query results (Iterable interface)
+     *
+     * @return                      Result iterator
+     */
+    @Override
+    public Iterator<TransactionRecord> iterator() {
+        return new ResultIterator();
+    }
+
+    /**
+     * Return a sequential stream of the query results
+     *
+     * @return                      Result stream
+     */
+    public Stream<TransactionRecord> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Return the query results as a list
+     *
+     * @return                      Result list
+     */
+    public List<TransactionRecord> getResults() {
+        List<TransactionRecord> results = new ArrayList<>();
+        for (TransactionRecord t : this)
+            results.add(t);
+
+        return results;
+    }
+
+    /**
+     * Check if a transaction satisfies the transaction criteria.  The category,
+     * amount and text criteria are checked separately when splits are expanded.
+     *
+     * @param       t               Transaction
+     * @return                      TRUE if the transaction is selected
+     */
+    private boolean matches(TransactionRecord t) {
+        Date date = t.getDate();
+        if (startDate != null && date.compareTo(startDate) < 0)
+            return false;
+
+        if (endDate != null && date.compareTo(endDate) > 0)
+            return false;
+
+        if (security != null && t.getSecurity() != security && t.getNewSecurity() != security)
+            return false;
+
+        if (actions != null) {
+            boolean found = false;
+            for (int action : actions) {
+                if (t.getAction() == action) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found)
+                return false;
+        }
+
+        //
+        // Determine the reconciled flags and the amount as they pertain to the
+        // query account
+        //
+        int reconciled;
+        double amount;
+        if (account == null || t.getAccount() == account) {
+            reconciled = ((t.getReconciled()&TransactionRecord.SOURCE_RECONCILED) != 0 ? 1 : -1);
+            amount = t.getAmount();
+        } else if (t.getTransferAccount() == account) {
+            reconciled = ((t.getReconciled()&TransactionRecord.TARGET_RECONCILED) != 0 ? 1 : -1);
+            amount = -t.getAmount();
+        } else {
+            TransactionSplit accountSplit = null;
+            List<TransactionSplit> splits = t.getSplits();
+            if (splits != null) {
+                for (TransactionSplit split : splits) {
+                    if (split.getAccount() == account) {
+                        accountSplit = split;
+                        break;
+                    }
+                }
+            }
+
+            if (accountSplit == null)
+                return false;
+
+            reconciled = ((accountSplit.getReconciled()&TransactionRecord.TARGET_RECONCILED) != 0 ? 1 : -1);
+            amount = -accountSplit.getAmount();
+        }
+
+        if (reconciledState != 0 && reconciled != reconciledState)
+            return false;
+
+        if (expandSplits && t.getSplits() != null)
+            return true;
+
+        if (amount < minAmount || amount > maxAmount)
+            return false;
+
+        if (category != null) {
+            List<TransactionSplit> splits = t.getSplits();
+            if (splits != null) {
+                boolean found = false;
+                for (TransactionSplit split : splits) {
+                    if (split.getCategory() == category) {
+                        found = true;
+                        break;
+                    }
+                }
+
+                if (!found)
+                    return false;
+            } else if (t.getCategory() != category) {
+                return false;
+            }
+        }
+
+        if (text != null && !containsText(t))
+            return false;
+
+        return true;
+    }
+
+    /**
+     * Check if an expanded split transaction satisfies the split criteria
+     *
+     * @param       x               Expanded transaction
+     * @return                      TRUE if the transaction is selected
+     */
+    private boolean matchesSplit(TransactionRecord x) {
+        if (category != null && x.getCategory() != category)
+            return false;
+
+        if (x.getAmount() < minAmount || x.getAmount() > maxAmount)
+            return false;
+
+        if (text != null && !containsText(x))
+            return false;
+
+        return true;
+    }
+
+    /**
+     * Check if a transaction contains the search text
+     *
+     * @param       t               Transaction
+     * @return                      TRUE if the text is found
+     */
+    private boolean containsText(TransactionRecord t) {
+        if (t.getName().toLowerCase().contains(text))
+            return true;
+
+        if (t.getMemo().toLowerCase().contains(text))
+            return true;
+
+        List<TransactionSplit> splits = t.getSplits();
+        if (splits != null) {
+            for (TransactionSplit split : splits) {
+                String description = split.getDescription();
+                if (description != null && description.toLowerCase().contains(text))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Query result iterator
+     */
+    private final class ResultIterator implements Iterator<TransactionRecord> {
+
+        /** Candidate transactions */
+        private final List<TransactionRecord> candidates;
+
+        /** Current candidate index */
+        private int index;
+
+        /** End candidate index (exclusive) */
+        private final int endIndex;
+
+        /** Expanded transactions for the current split transaction */
+        private final List<TransactionRecord> expanded = new ArrayList<>();
+
+        /** Current expanded transaction index */
+        private int expandedIndex;
+
+        /** Next result or null */
+        private TransactionRecord next;
+
+        /**
+         * Create the result iterator and select the access path
+         */
+        private ResultIterator() {
+            if (transactions == null) {
+                if (startDate != null)
+                    TransactionPartitions.load(startDate);
+                else
+                    TransactionPartitions.loadAll();
+            }
+
+            TransactionIndex transactionIndex = (transactions == null ? TransactionIndex.getIndex() : null);
+            List<TransactionRecord> list = (transactions != null ? transactions : transactionIndex.getTransactions());
+            int start = (startDate != null ? TransactionIndex.findFirst(list, startDate) : 0);
+            int end = (endDate != null ? TransactionIndex.findAfter(list, endDate) : list.size());
+            if (account != null && transactionIndex != null) {
+                List<TransactionRecord> accountList = transactionIndex.getTransactions(account);
+                int accountStart = (startDate != null ?
+                                TransactionIndex.findFirst(accountList, startDate) : 0);
+                int accountEnd = (endDate != null ?
+                                TransactionIndex.findAfter(accountList, endDate) : accountList.size());
+                if (accountEnd-accountStart <= end-start) {
+                    list = accountList;
+                    start = accountStart;
+                    end = accountEnd;
+                }
+            }
+
+            candidates = list;
+            index = start;
+            endIndex = Math.max(start, end);
+            next = findNext();
+        }
+
+        /**
+         * Check if there is another result
+         *
+         * @return                      TRUE if there is another result
+         */
+        @Override
+        public boolean hasNext() {
+            return (next != null);
+        }
+
+        /**
+         * Return the next result
+         *
+         * @return                      Next transaction
+         */
+        @Override
+        public TransactionRecord next() {
+            if (next == null)
+                throw new NoSuchElementException("No more query results");
+
+            TransactionRecord result = next;
+            next = findNext();
+            return result;
+        }
+
+        /**
+         * Locate the next result
+         *
+         * @return                      Next transaction or null
+         */
+        private TransactionRecord findNext() {
+            while (true) {
+                while (expandedIndex < expanded.size()) {
+                    TransactionRecord x = expanded.get(expandedIndex++);
+                    if (matchesSplit(x))
+                        return x;
+                }
+
+                if (index >= endIndex)
+                    return null;
+
+                TransactionRecord t = candidates.get(index++);
+                if (!matches(t))
+                    continue;
+
+                List<TransactionSplit> splits = t.getSplits();
+                if (!expandSplits || splits == null)
+                    return t;
+
+                //
+                // Create a temporary transaction for each split.  The date is
+                // suppressed for all but the first expanded transaction.
+                //
+                expanded.clear();
+                expandedIndex = 0;
+                boolean expandedTransaction = false;
+                for (TransactionSplit split : splits) {
+                    TransactionRecord x = new TransactionRecord(t.getDate(), t.getAccount());
+                    x.setName(t.getName());
+                    x.setMemo(split.getDescription());
+                    x.setCategory(split.getCategory());
+                    x.setTransferAccount(split.getAccount());
+                    x.setAmount(split.getAmount());
+                    x.setExpandedTransaction(expandedTransaction);
+                    expandedTransaction = true;
+                    expanded.add(x);
+                }
+            }
+        }
+    }
+}
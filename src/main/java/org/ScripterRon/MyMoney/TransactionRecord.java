@@ -37,9 +37,10 @@ import java.util.*;
  * <li>SPLIT                Split shares
  * </ul>
  * <p>
- * All transaction records are contained in the <code>transactions</code>
- * linked list.  The list entries are sorted by date and new entries are
- * added after all transactions with the same date.
+ * All transaction records are contained in the <code>getTransactions()</code>
+ * linked list for the current database context.  The list entries are sorted by date and new entries are
+ * added after all transactions with the same date.  The list contains the transactions for the loaded
+ * partitions and the partition for a new transaction is loaded before the transaction is inserted.
  * <p>
  * The transaction record is encoded as follows:
  * <pre>
@@ -130,9 +131,6 @@ public final class TransactionRecord implements Cloneable {
     /** Target account reconciled */
     public static final int TARGET_RECONCILED=8;
 
-    /** All database transactions */
-    public static List<TransactionRecord> transactions;
-
     /** The encoded TransactionRecord ASN.1 tag identifier */
     private static final byte tagID=(byte)(Asn1Stream.ASN1_APPLICATION+5);
 
@@ -932,13 +930,13 @@ public final class TransactionRecord implements Cloneable {
         // Release the existing splits
         //
         if (this.splits != null) {
-            ListIterator<TransactionSplit> li = splits.listIterator();
+            ListIterator<TransactionSplit> li = this.splits.listIterator();
             while (li.hasNext()) {
                 TransactionSplit split = li.next();
                 split.clearReferences();
             }
 
-            splits.clear();
+            this.splits.clear();
         }
 
         //
@@ -1023,6 +1021,27 @@ public final class TransactionRecord implements Cloneable {
         clearReferences();
     }
 
+    /**
+     * Get the transactions for the current database context
+     *
+     * @return                      Transaction list sorted by date
+     */
+    public static List<TransactionRecord> getTransactions() {
+        return DatabaseContext.getCurrent().transactions;
+    }
+
+    /**
+     * Get the transactions for the current database context after loading all
+     * of the transaction partitions.  This is used when the complete transaction
+     * history is needed, such as computing the security lots.
+     *
+     * @return                      Transaction list sorted by date
+     */
+    public static List<TransactionRecord> getAllTransactions() {
+        TransactionPartitions.loadAll();
+        return getTransactions();
+    }
+
     /**
      * Insert a transaction into the current transaction list
      *
@@ -1030,7 +1049,133 @@ public final class TransactionRecord implements Cloneable {
      * @return                      The index of the inserted transaction
      */
     public static int insertTransaction(TransactionRecord transaction) {
-        return insertTransaction(transactions, transaction);
+        return insertTransaction(transaction, null);
+    }
+
+    /**
+     * Insert a transaction into the current transaction list.  The transaction
+     * replaces a transaction that has been removed by removeTransaction() and the
+     * ledger listeners receive a single UPDATE event for the change.
+     *
+     * @param       transaction     Transaction to be inserted
+     * @param       replaced        Transaction being replaced or null
+     * @return                      The index of the inserted transaction
+     */
+    public static int insertTransaction(TransactionRecord transaction, TransactionRecord replaced) {
+        TransactionPartitions.load(transaction.getDate());
+        int index = insertTransaction(getTransactions(), transaction);
+        LedgerEventBus.publish(LedgerEvent.inserted(transaction, replaced, index));
+        return index;
+    }
+
+    /**
+     * Insert a group of transactions into the current transaction list.  The new
+     * transactions must be sorted by date and are merged with the transaction
+     * list in a single pass.  A new transaction is inserted after any existing
+     * transactions with the same date.
+     *
+     * @param       newTransactions     Transactions sorted by date
+     */
+    public static void insertTransactions(List<TransactionRecord> newTransactions) {
+        if (newTransactions.isEmpty())
+            return;
+
+        //
+        // Load the partitions for the new transactions
+        //
+        TransactionPartitions.load(newTransactions.get(0).getDate());
+
+        //
+        // Merge the new transactions with the transaction list
+        //
+        int[] positions = new int[newTransactions.size()];
+        ListIterator<TransactionRecord> i = getTransactions().listIterator();
+        int index = 0;
+        int count = 0;
+        for (TransactionRecord t : newTransactions) {
+            Date date = t.getDate();
+            while (i.hasNext()) {
+                if (i.next().getDate().compareTo(date) > 0) {
+                    i.previous();
+                    break;
+                }
+
+                index++;
+            }
+
+            i.add(t);
+            positions[count++] = index++;
+        }
+
+        //
+        // Publish the new transactions in position order
+        //
+        count = 0;
+        for (TransactionRecord t : newTransactions)
+            LedgerEventBus.publish(LedgerEvent.inserted(t, null, positions[count++]));
+    }
+
+    /**
+     * Insert a transaction into the current transaction list at the specified
+     * position.  The caller is responsible for ensuring that the position is
+     * consistent with the transaction date.
+     *
+     * @param       position        List position
+     * @param       transaction     Transaction to be inserted
+     */
+    public static void insertTransaction(int position, TransactionRecord transaction) {
+        insertTransaction(position, transaction, null);
+    }
+
+    /**
+     * Insert a transaction into the current transaction list at the specified
+     * position.  The transaction replaces a transaction that has been removed by
+     * removeTransaction() and the ledger listeners receive a single UPDATE event
+     * for the change.
+     *
+     * @param       position        List position
+     * @param       transaction     Transaction to be inserted
+     * @param       replaced        Transaction being replaced or null
+     */
+    public static void insertTransaction(int position, TransactionRecord transaction,
+                                         TransactionRecord replaced) {
+        getTransactions().add(position, transaction);
+        LedgerEventBus.publish(LedgerEvent.inserted(transaction, replaced, position));
+    }
+
+    /**
+     * Remove a transaction from the current transaction list
+     *
+     * @param       transaction     Transaction to be removed
+     * @return                      The index of the removed transaction or -1
+     */
+    public static int removeTransaction(TransactionRecord transaction) {
+        int index = 0;
+        ListIterator<TransactionRecord> i = getTransactions().listIterator();
+        while (i.hasNext()) {
+            if (i.next() == transaction) {
+                i.remove();
+                LedgerEventBus.publish(LedgerEvent.deleted(transaction, index));
+                return index;
+            }
+
+            index++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Transactions in the current transaction list have been modified in place.
+     * Only the reconciliation state may be changed in place since the derived
+     * caches remove a transaction using its current values.  A change to any
+     * other field must be made by removing the transaction and inserting it again.
+     *
+     * @param       modified        Modified transactions
+     */
+    public static void transactionsModified(Collection<TransactionRecord> modified) {
+        for (TransactionRecord t : modified)
+            LedgerEventBus.publish(LedgerEvent.updated(t));
     }
 
     /**
@@ -1087,6 +1232,8 @@ public final class TransactionRecord implements Cloneable {
                 category.addReference();
             if (security != null)
                 security.addReference();
+            if (newSecurity != null)
+                newSecurity.addReference();
             if (splits != null)
                 t.splits = TransactionSplit.copySplits(splits);
         } catch (CloneNotSupportedException exc) {
@@ -286,7 +286,7 @@ public final class TransactionReportDialog extends JDialog implements ActionList
         // Create the list of loan account names
         //
         List<String> loanAccountNames = new ArrayList<>(10);
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a.getType() == AccountRecord.LOAN)
                 loanAccountNames.add("["+a.getName()+"]");
         }
@@ -502,7 +502,7 @@ public final class TransactionReportDialog extends JDialog implements ActionList
             //
             // Create the report transaction list
             //
-            listData = new ArrayList<>(TransactionRecord.transactions.size());
+            listData = new ArrayList<>(TransactionRecord.getTransactions().size());
 
             //
             // Build the report data using transactions within the specified date range
@@ -514,22 +514,14 @@ public final class TransactionReportDialog extends JDialog implements ActionList
             // Transactions without a category will not be included when sorting by
             // category
             //
-            for (TransactionRecord t : TransactionRecord.transactions) {
+            TransactionQuery query = new TransactionQuery().setDateRange(startDate, endDate)
+                                                           .setCategory(category);
+            for (TransactionRecord t : query) {
                 String name;
                 int index = 0;
                 boolean addTransaction = true;
-
-                //
-                // Process transactions within the specified date range
-                // and for the specified category (if any)
-                //
                 Date date = t.getDate();
-                if (date.compareTo(startDate) < 0 || date.compareTo(endDate) > 0)
-                    continue;
-                
                 List<TransactionSplit> splits = t.getSplits();
-                if (splits == null && category != null && t.getCategory() != category)
-                    continue;
 
                 //
                 // Process the transaction
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2005-2014 Ronald W Hoffman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ScripterRon.MyMoney;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Transaction search dialog.  The dialog searches the transaction names, memos
+ * and split descriptions for all accounts using the text index.
+ */
+public final class TransactionSearchDialog extends JDialog implements ActionListener {
+
+    /** Search table column classes */
+    private static final Class<?>[] columnClasses = {
+        Date.class, String.class, String.class, String.class, Double.class};
+
+    /** Search table column names */
+    private static final String[] columnNames = {
+        "Date", "Account", "Name", "Memo", "Amount"};
+
+    /** Search table column types */
+    private static final int[] columnTypes = {
+        SizedTable.DATE_COLUMN, SizedTable.NAME_COLUMN, SizedTable.NAME_COLUMN,
+        SizedTable.MEMO_COLUMN, SizedTable.AMOUNT_COLUMN};
+
+    /** Search text field */
+    private JTextField searchField;
+
+    /** Search status label */
+    private JLabel statusLabel;
+
+    /** Search table model */
+    private SearchTableModel tableModel;
+
+    /**
+     * Create the dialog
+     *
+     * @param       parent          Parent frame
+     */
+    public TransactionSearchDialog(JFrame parent) {
+        super(parent, "Find Transactions", true);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        //
+        // Create the search pane
+        //
+        //    Search for: <text-field>
+        //
+        searchField = new JTextField(30);
+        searchField.setActionCommand("search");
+        searchField.addActionListener(this);
+
+        JPanel searchPane = new JPanel();
+        searchPane.add(new JLabel("Search for:", JLabel.RIGHT));
+        searchPane.add(searchField);
+
+        //
+        // Create the search results table
+        //
+        tableModel = new SearchTableModel();
+        JTable table = new SizedTable(tableModel, columnTypes);
+        Dimension tableSize = table.getPreferredSize();
+        table.setPreferredScrollableViewportSize(new Dimension(tableSize.width, 20*table.getRowHeight()));
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+
+        statusLabel = new JLabel(" ");
+        JPanel statusPane = new JPanel();
+        statusPane.add(statusLabel);
+
+        //
+        // Create the buttons (Search, Done)
+        //
+        JPanel buttonPane = new JPanel();
+        buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
+
+        JButton button = new JButton("Search");
+        button.setActionCommand("search");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
+        button = new JButton("Done");
+        button.setActionCommand("done");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        //
+        // Set up the content pane
+        //
+        JPanel contentPane = new JPanel();
+        contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
+        contentPane.setOpaque(true);
+        contentPane.setBorder(BorderFactory.createEmptyBorder(30, 30, 30, 30));
+        contentPane.add(searchPane);
+        contentPane.add(Box.createVerticalStrut(10));
+        contentPane.add(scrollPane);
+        contentPane.add(statusPane);
+        contentPane.add(Box.createVerticalStrut(15));
+        contentPane.add(buttonPane);
+        setContentPane(contentPane);
+    }
+
+    /**
+     * Show the transaction search dialog
+     *
+     * @param       parent          Parent window for the dialog
+     */
+    public static void showDialog(JFrame parent) {
+        try {
+            JDialog dialog = new TransactionSearchDialog(parent);
+            dialog.pack();
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        } catch (Exception exc) {
+            Main.logException("Exception while displaying dialog", exc);
+        }
+    }
+
+    /**
+     * Action performed (ActionListener interface)
+     *
+     * @param       ae              Action event
+     */
+    public void actionPerformed(ActionEvent ae) {
+
+        //
+        // Process the action command
+        //
+        // "search" - Search the transactions
+        // "done" - Done
+        //
+        try {
+            switch (ae.getActionCommand()) {
+                case "search":
+                    String text = searchField.getText().trim();
+                    if (text.length() == 0) {
+                        JOptionPane.showMessageDialog(this, "You must specify the search text",
+                                                      "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        TransactionPartitions.loadAll();
+                        long startTime = System.currentTimeMillis();
+                        List<TransactionRecord> results = TextIndex.getIndex().search(text);
+                        long elapsedTime = System.currentTimeMillis()-startTime;
+                        tableModel.setResults(results);
+                        statusLabel.setText(String.format("%d transactions found in %d ms",
+                                                          results.size(), elapsedTime));
+                    }
+                    break;
+
+                case "done":
+                    setVisible(false);
+                    dispose();
+                    break;
+            }
+        } catch (Exception exc) {
+            Main.logException("Exception while processing action event", exc);
+        }
+    }
+
+    /**
+     * Search results table model
+     */
+    private class SearchTableModel extends AbstractTableModel {
+
+        /** Search results */
+        private List<TransactionRecord> listData = new ArrayList<>();
+
+        /**
+         * Set the search results
+         *
+         * @param       results     Search results
+         */
+        public void setResults(List<TransactionRecord> results) {
+            listData = results;
+            fireTableDataChanged();
+        }
+
+        /**
+         * Get the number of columns in the table
+         *
+         * @return                  The number of columns
+         */
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        /**
+         * Get the column class
+         *
+         * @param       column      Column number
+         * @return                  The column class
+         */
+        public Class<?> getColumnClass(int column) {
+            return columnClasses[column];
+        }
+
+        /**
+         * Get the column name
+         *
+         * @param       column      Column number
+         * @return                  Column name
+         */
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        /**
+         * Get the number of rows in the table
+         *
+         * @return                  The number of rows
+         */
+        public int getRowCount() {
+            return listData.size();
+        }
+
+        /**
+         * Get the value for a cell
+         *
+         * @param       row         Row number
+         * @param       column      Column number
+         * @return                  Returns the object associated with the cell
+         */
+        public Object getValueAt(int row, int column) {
+            if (row >= listData.size())
+                throw new IndexOutOfBoundsException("Table row "+row+" is not valid");
+
+            TransactionRecord t = listData.get(row);
+            Object value;
+            switch (column) {
+                case 0:                                 // Date
+                    value = t.getDate();
+                    break;
+
+                case 1:                                 // Account
+                    value = t.getAccount().getName();
+                    break;
+
+                case 2:                                 // Name
+                    value = t.getName();
+                    break;
+
+                case 3:                                 // Memo
+                    value = t.getMemo();
+                    break;
+
+                case 4:                                 // Amount
+                    value = new Double(t.getAmount());
+                    break;
+
+                default:
+                    throw new IndexOutOfBoundsException("Table column "+column+" is not valid");
+            }
+
+            return value;
+        }
+    }
+}
@@ -118,7 +118,7 @@ public final class TransactionSplit implements Cloneable {
             reconciled = seq.decodeInteger(false);
 
             if (categoryID != 0) {
-                for (CategoryRecord c : CategoryRecord.categories) {
+                for (CategoryRecord c : CategoryRecord.getCategories()) {
                     if (c.getID() == categoryID) {
                         category = c;
                         category.addReference();
@@ -131,7 +131,7 @@ public final class TransactionSplit implements Cloneable {
             }
 
             if (accountID != 0) {
-                for (AccountRecord a : AccountRecord.accounts) {
+                for (AccountRecord a : AccountRecord.getAccounts()) {
                     if (a.getID() == accountID) {
                         account = a;
                         account.addReference();
@@ -52,7 +52,7 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
      * @param       category            Transaction category or null.
      */
     public TransferComboBoxModel(AccountRecord account, AccountRecord transferAccount, CategoryRecord category) {
-        transferList = new ArrayList<DBElement>(AccountRecord.accounts.size()+CategoryRecord.categories.size()+1);
+        transferList = new ArrayList<DBElement>(AccountRecord.getAccounts().size()+CategoryRecord.getCategories().size()+1);
         transferList.add(null);
         
         //
@@ -60,7 +60,7 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
         // included nor will ASSET and INVESTMENT accounts.  A hidden account will not be
         // included unless it is the current transaction transfer account.
         //
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a != account && (!a.isHidden() || a == transferAccount)) {
                 int accountType = a.getType();
                 if (accountType != AccountRecord.ASSET && accountType != AccountRecord.INVESTMENT)
@@ -72,7 +72,7 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
         // Add the category names.  A hidden category will not be included unless it
         // is the current transaction category.
         //
-        for (CategoryRecord c : CategoryRecord.categories) {
+        for (CategoryRecord c : CategoryRecord.getCategories()) {
             if (!c.isHidden() || c == category)
                 transferList.add(c);
         }
@@ -85,7 +85,7 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
      * @param       transferAccount     Transaction transfer account or null.
      */
     public TransferComboBoxModel(AccountRecord account, AccountRecord transferAccount) {
-        transferList = new ArrayList<DBElement>(AccountRecord.accounts.size()+1);
+        transferList = new ArrayList<DBElement>(AccountRecord.getAccounts().size()+1);
         transferList.add(null);
         
         //
@@ -93,7 +93,7 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
         // included nor will ASSET and INVESTMENT accounts.  A hidden account will not be
         // included unless it is the current transaction transfer account.
         //
-        for (AccountRecord a : AccountRecord.accounts) {
+        for (AccountRecord a : AccountRecord.getAccounts()) {
             if (a != account && (!a.isHidden() || a == transferAccount)) {
                 int accountType = a.getType();
                 if (accountType != AccountRecord.ASSET && accountType != AccountRecord.INVESTMENT)
@@ -108,14 +108,14 @@ public final class TransferComboBoxModel extends AbstractListModel implements Co
      * @param       category            Transaction category or null.
      */
     public TransferComboBoxModel(CategoryRecord category) {
-        transferList = new ArrayList<DBElement>(CategoryRecord.categories.size()+1);
+        transferList = new ArrayList<DBElement>(CategoryRecord.getCategories().size()+1);
         transferList.add(null);
         
         //
         // Add the category names.  A hidden category will not be included unless it
         // is the current transaction category.
         //
-        for (CategoryRecord c : CategoryRecord.categories) {
+        for (CategoryRecord c : CategoryRecord.getCategories()) {
             if (!c.isHidden() || c == category)
                 transferList.add(c);
         }        
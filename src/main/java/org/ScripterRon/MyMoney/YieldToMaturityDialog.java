@@ -15,9 +15,7 @@
  */
 package org.ScripterRon.MyMoney;
 
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -110,7 +108,7 @@ public final class YieldToMaturityDialog extends JDialog implements ActionListen
         editPane.add(costField);
         
         //
-        // Create the buttons (Calculate, Cancel)
+        // Create the buttons (Calculate, Holdings, Cancel)
         //
         JPanel buttonPane = new JPanel();
         buttonPane.setLayout(new BoxLayout(buttonPane, BoxLayout.X_AXIS));
@@ -123,6 +121,13 @@ public final class YieldToMaturityDialog extends JDialog implements ActionListen
         
         buttonPane.add(Box.createHorizontalStrut(10));
 
+        button = new JButton("Holdings");
+        button.setActionCommand("holdings");
+        button.addActionListener(this);
+        buttonPane.add(button);
+
+        buttonPane.add(Box.createHorizontalStrut(10));
+
         button = new JButton("Cancel");
         button.setActionCommand("cancel");
         button.addActionListener(this);
@@ -178,6 +183,10 @@ public final class YieldToMaturityDialog extends JDialog implements ActionListen
                     }
                     break;
                     
+                case "holdings":
+                    BondPortfolioDialog.showDialog(this);
+                    break;
+
                 case "cancel":
                     setVisible(false);
                     dispose();
@@ -260,131 +269,21 @@ public final class YieldToMaturityDialog extends JDialog implements ActionListen
         purchaseCost = ((Double)costField.getValue()).doubleValue();
         
         //
-        // Get the purchase date
-        //
-        GregorianCalendar calendar = new GregorianCalendar();
-        calendar.setTime(purchaseDate);
-        int purchaseYear = calendar.get(Calendar.YEAR);
-        int purchaseMonth = calendar.get(Calendar.MONTH);
-                        
-        //
-        // Get the maturity date
-        //
-        calendar.setTime(maturityDate);
-        int maturityYear = calendar.get(Calendar.YEAR);
-        int maturityMonth = calendar.get(Calendar.MONTH);
-        
-        //
-        // Calculate the number of full years until maturity
-        //
-        int fullYears = maturityYear - purchaseYear;
-        if (purchaseMonth > maturityMonth)
-            fullYears--;
-        
-        //
-        // Calculate the estimated yield to maturity
-        //
-        // YTM = (C + (F - P) / N) / ((F + P ) / 2)
+        // Build the cash flows assuming annual coupon payments and compute
+        // the yield for the purchase cost.  The purchase cost does not include
+        // accrued interest.
         //
-        //  C = Annual coupon payment
-        //  F = Face value of bond
-        //  P = Purchase cost of bond
-        //  N = Number of years to maturity
-        //
-        double couponPayment = faceValue*(couponYield/100.0);
-        yieldToMaturity = (couponPayment + (faceValue-purchaseCost)/(double)Math.max(fullYears, 1)) /
-                                ((faceValue+purchaseCost)/2.0) * 100.0;
-        
-        //
-        // Starting with the estimated yield to maturity, calculate the
-        // purchase value for the bond and then interate by adjusting the
-        // yield for each iteration based on the previous result.  We will
-        // stop when the purchase value reaches the purchase cost.
-        //
-        // PV = C/(1+R) + C/(1+R)**2 + C/(1+R)**3 ... C/(1+R)**N + F/(1+R)**N
-        //
-        //  C = Annual coupon payment
-        //  R = Estimated yield to maturity
-        //  F = Face value of bond
-        //  N = Number of years to maturity
-        //
-        // The coupon payment and interest rate will be pro-rated for a partial
-        // year
-        //
-        int direction = 0;
-        double previousDifference = 0.0;
-        double previousYield = 0.0;
-        
-        while (true) {
-            double purchaseValue = 0.0;
-            double rateProduct = 1.0;
-            double rate = 1.0 + (yieldToMaturity/100.0);
-            
-            //
-            // Process the full years
-            //
-            for (int year=1; year<=fullYears; year++) {
-                rateProduct = rateProduct * rate;
-                purchaseValue += couponPayment / rateProduct;
-            }
-
-            //
-            // Process a partial year
-            //
-            if (purchaseMonth != maturityMonth) {
-                int months;
-                if (purchaseMonth < maturityMonth)
-                    months = maturityMonth - purchaseMonth;
-                else
-                    months = 12 - (purchaseMonth - maturityMonth);
-                
-                double ratio = (double)months/12.0;
-                double partialPayment = couponPayment*ratio;
-                double partialRate = yieldToMaturity/100.0*ratio;
-                rateProduct = rateProduct * (1.0+partialRate);
-                purchaseValue += partialPayment / rateProduct;
-            }
-            
-            //
-            // Calculate the final purchase value
-            //
-            purchaseValue += faceValue / rateProduct;
-            
-            //
-            // Stop when the purchase value reaches the purchase cost.  Otherwise,
-            // adjust the estimated yield to maturity and repeat.
-            //
-            double difference = purchaseValue - purchaseCost;
-            if (Math.abs(difference) < 0.01)
-                break;
-            
-            if (direction == 0) {
-                if (difference > 0.0) {
-                    direction = 1;
-                } else {
-                    direction = -1;
-                }
-            } else if (direction == 1 ) {
-                if (difference < 0.0) {
-                    if (Math.abs(previousDifference) < Math.abs(difference))
-                        yieldToMaturity = previousYield;
-                    
-                    break;
-                }
-            } else {
-                if (difference > 0.0) {
-                    if (Math.abs(previousDifference) < Math.abs(difference))
-                        yieldToMaturity = previousYield;
-                    
-                    break;
-                }
-            }
-            
-            previousYield = yieldToMaturity;
-            previousDifference = difference;
-            yieldToMaturity += 0.005 * direction;
+        BondYield.CashFlows cashFlows = BondYield.getCashFlows(purchaseDate, maturityDate, faceValue,
+                                                               couponYield/100.0, 1);
+        double yield = cashFlows.getYield(purchaseCost);
+        if (Double.isNaN(yield)) {
+            JOptionPane.showMessageDialog(this, "Unable to compute the yield to maturity",
+                                          "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
         }
-        
+
+        yieldToMaturity = yield*100.0;
+
         //
         // All done
         //